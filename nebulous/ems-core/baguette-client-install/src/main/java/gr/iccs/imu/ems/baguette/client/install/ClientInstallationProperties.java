@@ -164,4 +164,21 @@ public class ClientInstallationProperties implements InitializingBean {
     public static class K8sClientInstallationProperties {
         private Map<String,String> extraEnvVars = new LinkedHashMap<>();
     }
+
+    // ----------------------------------------------------
+
+    private FleetInstallationProperties fleet = new FleetInstallationProperties();
+
+    @Data
+    public static class FleetInstallationProperties {
+        private boolean enabled;                    // Fleet installation mode. Tasks are executed in waves
+        private boolean sharedSshClient = true;     // Use one SshClient instance for all installation tasks
+        private boolean skipUnchangedUploads = true;// Skip uploading files whose checksum matches the remote file
+        private String remoteChecksumCommand = "sha256sum '%s' 2>/dev/null";
+        private int concurrency = 20;               // Max. tasks executed in parallel within a wave
+        private int waveSize = 50;                  // Max. tasks per wave
+        private long waveCollectTimeout = 2000;     // Time (millis) to wait for more tasks before starting a wave
+        private double failureBudget = 0.2;         // Max. ratio of failed tasks in a wave, before aborting queued tasks
+        private int minWaveSizeForBudget = 5;       // Failure budget is checked only for waves with at least that many tasks
+    }
 }
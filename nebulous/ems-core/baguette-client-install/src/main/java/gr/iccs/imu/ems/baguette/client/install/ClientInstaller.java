@@ -25,6 +25,7 @@ import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.stereotype.Service;
 
@@ -44,7 +45,7 @@ import static gr.iccs.imu.ems.baguette.client.install.ClientInstallationTask.TAS
 @Slf4j
 @Service
 @RequiredArgsConstructor
-public class ClientInstaller implements InitializingBean {
+public class ClientInstaller implements InitializingBean, DisposableBean {
     private static ClientInstaller singleton;
 
     private final ClientInstallationProperties properties;
@@ -58,71 +59,104 @@ public class ClientInstaller implements InitializingBean {
 
     private final AtomicLong taskCounter = new AtomicLong();
     private ExecutorService executorService;
+    private InstallationWaveScheduler waveScheduler;
 
     @Override
     public void afterPropertiesSet() {
         singleton = this;
-        executorService = Executors.newFixedThreadPool(properties.getWorkers());
+        if (properties.getFleet().isEnabled()) {
+            log.info("ClientInstaller: Fleet installation mode is enabled: {}", properties.getFleet());
+            waveScheduler = new InstallationWaveScheduler(properties.getFleet(), this::runTask, this::abortTask);
+        } else {
+            executorService = Executors.newFixedThreadPool(properties.getWorkers());
+        }
         properties.getInstallationContextProcessorPlugins().forEach(pluginClass -> {
             log.debug("ClientInstaller: Initializing plugin: {}", pluginClass);
             pluginManager.initializePlugin(pluginClass);
         });
     }
 
+    @Override
+    public void destroy() {
+        log.debug("ClientInstaller: Shutting down");
+        if (waveScheduler!=null) waveScheduler.shutdown();
+        if (executorService!=null) executorService.shutdownNow();
+        SshClientInstaller.stopSharedSshClient();
+    }
+
     public static ClientInstaller instance() { return singleton; }
 
     public void addTask(@NotNull ClientInstallationTask task) {
-        executorService.submit(() -> {
-            long taskCnt = taskCounter.getAndIncrement();
-            String resultStr = "";
-            String callbackStr = "";
-            String errorStr = "";
-
-            // Execute task
-            boolean result = false;
+        if (waveScheduler!=null)
+            waveScheduler.addTask(task);
+        else
+            executorService.submit(() -> runTask(task));
+    }
+
+    private void abortTask(@NonNull ClientInstallationTask task, String reason) {
+        long taskCnt = taskCounter.getAndIncrement();
+        log.warn("ClientInstaller: Client installation Task #{} aborted: task-id={}, node-id={}, address={}, reason={}",
+                taskCnt, task.getId(), task.getNodeId(), task.getAddress(), reason);
+        if (task.getNodeRegistryEntry()!=null)
+            task.getNodeRegistryEntry().nodeInstallationError(null);
+        try {
+            sendSuccessClientInstallationReport(taskCnt, task, reason);
+        } catch (Throwable t) {
+            log.info("ClientInstaller: EXCEPTION while sending Client installation report for Task #{}: Exception: ", taskCnt, t);
+        }
+    }
+
+    private boolean runTask(@NonNull ClientInstallationTask task) {
+        long taskCnt = taskCounter.getAndIncrement();
+        String resultStr = "";
+        String callbackStr = "";
+        String errorStr = "";
+
+        // Execute task
+        boolean result = false;
+        try {
+            log.info("ClientInstaller: Executing Client installation Task #{}: task-id={}, node-id={}, name={}, type={}, address={}",
+                    taskCnt, task.getId(), task.getNodeId(), task.getName(), task.getType(), task.getAddress());
+            long startTm = System.currentTimeMillis();
+            result = executeTask(task, taskCnt);
+            long endTm = System.currentTimeMillis();
+            resultStr = result ? "SUCCESS" : "FAILED";
+            log.info("ClientInstaller: Client installation Task #{}: result={}, duration={}ms",
+                    taskCnt, resultStr, endTm - startTm);
+        } catch (Throwable t) {
+            log.error("ClientInstaller: Exception caught in Client installation Task #{}: Exception: ", taskCnt, t);
+            errorStr = "EXCEPTION " + t.getMessage();
+        }
+
+        // Run callback (if any)
+        if (result && task.getCallback()!=null) {
             try {
-                log.info("ClientInstaller: Executing Client installation Task #{}: task-id={}, node-id={}, name={}, type={}, address={}",
-                        taskCnt, task.getId(), task.getNodeId(), task.getName(), task.getType(), task.getAddress());
+                log.debug("ClientInstaller: CALLBACK started: Task #{}: task-id={}", taskCnt, task.getId());
                 long startTm = System.currentTimeMillis();
-                result = executeTask(task, taskCnt);
+                callbackStr = task.getCallback().call();
                 long endTm = System.currentTimeMillis();
-                resultStr = result ? "SUCCESS" : "FAILED";
-                log.info("ClientInstaller: Client installation Task #{}: result={}, duration={}ms",
-                        taskCnt, resultStr, endTm - startTm);
+                log.info("ClientInstaller: CALLBACK completed: Task #{}: callback-result={}, duration={}ms", taskCnt, callbackStr, endTm - startTm);
+                if (! "OK".equalsIgnoreCase(callbackStr)) resultStr = "FAILED";
             } catch (Throwable t) {
-                log.error("ClientInstaller: Exception caught in Client installation Task #{}: Exception: ", taskCnt, t);
-                errorStr = "EXCEPTION " + t.getMessage();
-            }
-
-            // Run callback (if any)
-            if (result && task.getCallback()!=null) {
-                try {
-                    log.debug("ClientInstaller: CALLBACK started: Task #{}: task-id={}", taskCnt, task.getId());
-                    long startTm = System.currentTimeMillis();
-                    callbackStr = task.getCallback().call();
-                    long endTm = System.currentTimeMillis();
-                    log.info("ClientInstaller: CALLBACK completed: Task #{}: callback-result={}, duration={}ms", taskCnt, callbackStr, endTm - startTm);
-                    if (! "OK".equalsIgnoreCase(callbackStr)) resultStr = "FAILED";
-                } catch (Throwable t) {
-                    log.error("ClientInstaller: CALLBACK: Exception caught while running callback of Client installation Task #{}: Exception: ", taskCnt, t);
-                    callbackStr = "CALLBACK-EXCEPTION " + t.getMessage();
-                    resultStr = "FAILED";
-                }
-            } else {
-                if (result)
-                    log.debug("ClientInstaller: No CALLBACK found for Task #{}", taskCnt);
-                else
-                    log.debug("ClientInstaller: Skipped CALLBACK because execution failed for Task #{}", taskCnt);
+                log.error("ClientInstaller: CALLBACK: Exception caught while running callback of Client installation Task #{}: Exception: ", taskCnt, t);
+                callbackStr = "CALLBACK-EXCEPTION " + t.getMessage();
+                resultStr = "FAILED";
             }
+        } else {
+            if (result)
+                log.debug("ClientInstaller: No CALLBACK found for Task #{}", taskCnt);
+            else
+                log.debug("ClientInstaller: Skipped CALLBACK because execution failed for Task #{}", taskCnt);
+        }
 
-            // Send execution report to local broker
-            try {
-                resultStr = StringUtils.defaultIfBlank(resultStr, "ERROR: " + errorStr + " " + callbackStr);
-                sendSuccessClientInstallationReport(taskCnt, task, resultStr);
-            } catch (Throwable t) {
-                log.info("ClientInstaller: EXCEPTION while sending Client installation report for Task #{}: Exception: ", taskCnt, t);
-            }
-        });
+        // Send execution report to local broker
+        try {
+            resultStr = StringUtils.defaultIfBlank(resultStr, "ERROR: " + errorStr + " " + callbackStr);
+            sendSuccessClientInstallationReport(taskCnt, task, resultStr);
+        } catch (Throwable t) {
+            log.info("ClientInstaller: EXCEPTION while sending Client installation report for Task #{}: Exception: ", taskCnt, t);
+        }
+        return "SUCCESS".equals(resultStr);
     }
 
     private boolean executeTask(ClientInstallationTask task, long taskCounter) {
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.baguette.client.install;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Fleet installation scheduler.
+ * Collects installation tasks into waves, executes each wave with bounded concurrency, and
+ * waits for it to complete before starting the next one. If the failed tasks of a wave exceed
+ * the failure budget, the tasks still queued are aborted instead of being executed.
+ */
+@Slf4j
+class InstallationWaveScheduler {
+    private final ClientInstallationProperties.FleetInstallationProperties properties;
+    private final Predicate<ClientInstallationTask> taskRunner;
+    private final BiConsumer<ClientInstallationTask, String> taskAbortHandler;
+
+    private final LinkedBlockingQueue<ClientInstallationTask> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService waveExecutor;
+    private final Thread dispatcher;
+    private final AtomicInteger waveCounter = new AtomicInteger();
+
+    InstallationWaveScheduler(@NonNull ClientInstallationProperties.FleetInstallationProperties properties,
+                              @NonNull Predicate<ClientInstallationTask> taskRunner,
+                              @NonNull BiConsumer<ClientInstallationTask, String> taskAbortHandler)
+    {
+        this.properties = properties;
+        this.taskRunner = taskRunner;
+        this.taskAbortHandler = taskAbortHandler;
+        this.waveExecutor = Executors.newFixedThreadPool(Math.max(1, properties.getConcurrency()));
+        this.dispatcher = new Thread(this::dispatchLoop, "client-installation-wave-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+        log.info("InstallationWaveScheduler: Started: concurrency={}, wave-size={}, failure-budget={}",
+                properties.getConcurrency(), properties.getWaveSize(), properties.getFailureBudget());
+    }
+
+    void addTask(@NonNull ClientInstallationTask task) {
+        queue.add(task);
+    }
+
+    int getQueuedTasks() {
+        return queue.size();
+    }
+
+    private void dispatchLoop() {
+        while (! Thread.currentThread().isInterrupted()) {
+            try {
+                List<ClientInstallationTask> wave = collectWave();
+                executeWave(wave);
+            } catch (InterruptedException e) {
+                log.warn("InstallationWaveScheduler: Dispatcher interrupted. Exiting");
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("InstallationWaveScheduler: Exception in dispatcher: ", e);
+            }
+        }
+    }
+
+    private List<ClientInstallationTask> collectWave() throws InterruptedException {
+        List<ClientInstallationTask> wave = new ArrayList<>();
+        wave.add(queue.take());
+
+        // Wait a little for more tasks, so that a burst of requests forms one wave
+        int waveSize = Math.max(1, properties.getWaveSize());
+        long deadline = System.currentTimeMillis() + Math.max(0, properties.getWaveCollectTimeout());
+        while (wave.size() < waveSize) {
+            long remaining = deadline - System.currentTimeMillis();
+            ClientInstallationTask task = remaining > 0
+                    ? queue.poll(remaining, TimeUnit.MILLISECONDS) : queue.poll();
+            if (task==null) break;
+            wave.add(task);
+        }
+        return wave;
+    }
+
+    private void executeWave(List<ClientInstallationTask> wave) throws InterruptedException {
+        int waveNum = waveCounter.incrementAndGet();
+        log.info("InstallationWaveScheduler: Wave #{}: Starting: tasks={}, queued={}", waveNum, wave.size(), queue.size());
+        long startTm = System.currentTimeMillis();
+
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (ClientInstallationTask task : wave)
+            futures.add(waveExecutor.submit(() -> taskRunner.test(task)));
+
+        int failed = 0;
+        for (Future<Boolean> future : futures) {
+            try {
+                if (! future.get()) failed++;
+            } catch (ExecutionException e) {
+                log.warn("InstallationWaveScheduler: Wave #{}: Task raised exception: ", waveNum, e.getCause());
+                failed++;
+            }
+        }
+        log.info("InstallationWaveScheduler: Wave #{}: Completed in {}ms: tasks={}, failed={}",
+                waveNum, System.currentTimeMillis() - startTm, wave.size(), failed);
+
+        // Check failure budget
+        double failureRatio = (double) failed / wave.size();
+        if (wave.size() >= properties.getMinWaveSizeForBudget() && failureRatio > properties.getFailureBudget()) {
+            List<ClientInstallationTask> aborted = new ArrayList<>();
+            queue.drainTo(aborted);
+            log.error("InstallationWaveScheduler: Wave #{}: Failure budget exceeded: failed={}/{}, budget={}. Aborting {} queued tasks",
+                    waveNum, failed, wave.size(), properties.getFailureBudget(), aborted.size());
+            String reason = "ABORTED: Failure budget exceeded in wave #%d: failed=%d/%d".formatted(waveNum, failed, wave.size());
+            aborted.forEach(task -> {
+                try {
+                    taskAbortHandler.accept(task, reason);
+                } catch (Exception e) {
+                    log.warn("InstallationWaveScheduler: Exception while aborting task: task-id={}: ", task.getId(), e);
+                }
+            });
+        }
+    }
+
+    void shutdown() {
+        dispatcher.interrupt();
+        waveExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.baguette.client.install.installer;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the SHA-256 checksums of installation artifacts, so that each local file is hashed
+ * only once (until it changes), no matter how many nodes it is uploaded to
+ */
+@Slf4j
+public class ArtifactChecksumCache {
+    private final static ArtifactChecksumCache INSTANCE = new ArtifactChecksumCache();
+
+    private record Entry(long size, long lastModified, String checksum) { }
+
+    private final Map<Path, Entry> cache = new ConcurrentHashMap<>();
+
+    public static ArtifactChecksumCache getInstance() { return INSTANCE; }
+
+    public String checksum(@NonNull Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        long size = Files.size(key);
+        long lastModified = Files.getLastModifiedTime(key).toMillis();
+        Entry entry = cache.get(key);
+        if (entry!=null && entry.size()==size && entry.lastModified()==lastModified)
+            return entry.checksum();
+
+        MessageDigest digest = newDigest();
+        try (InputStream in = Files.newInputStream(key)) {
+            byte[] buffer = new byte[64 * 1024];
+            int len;
+            while ((len = in.read(buffer)) > 0)
+                digest.update(buffer, 0, len);
+        }
+        String checksum = HexFormat.of().formatHex(digest.digest());
+        cache.put(key, new Entry(size, lastModified, checksum));
+        log.trace("ArtifactChecksumCache: Computed checksum: file={}, checksum={}", key, checksum);
+        return checksum;
+    }
+
+    public String checksum(@NonNull byte[] content) {
+        return HexFormat.of().formatHex(newDigest().digest(content));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
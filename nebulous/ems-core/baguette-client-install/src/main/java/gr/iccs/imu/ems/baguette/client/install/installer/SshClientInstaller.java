@@ -74,6 +74,7 @@ import java.util.stream.Stream;
 @Getter
 public class SshClientInstaller implements ClientInstallerPlugin {
     private final static SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss.SSS");
+    private static SshClient sharedSshClient;
 
     private final ClientInstallationTask task;
     private final long taskCounter;
@@ -93,6 +94,7 @@ public class SshClientInstaller implements ClientInstallerPlugin {
     private final ClientInstallationProperties properties;
 
     private SshClient sshClient;
+    private boolean sharedClient;
     //private SimpleClient simpleClient;
     private ClientSession session;
     //private ChannelShell shellChannel;
@@ -199,28 +201,14 @@ public class SshClientInstaller implements ClientInstallerPlugin {
         String username = config.getUsername();
         String password = config.getPassword();
 
-        // Create and configure SSH client
-        this.sshClient = SshClient.setUpDefaultClient();
-        sshClient.setHostConfigEntryResolver(HostConfigEntryResolver.EMPTY);
-        sshClient.setServerKeyVerifier(AcceptAllServerKeyVerifier.INSTANCE);
-
-        //this.simpleClient = SshClient.wrapAsSimpleClient(sshClient);
-        //simpleClient.setConnectTimeout(connectTimeout);
-        //simpleClient.setAuthenticationTimeout(authenticationTimeout);
-
-        // Set a huge idle timeout, keep-alive to true and heartbeat to configured value
-        PropertyResolverUtils.updateProperty(sshClient, CoreModuleProperties.HEARTBEAT_INTERVAL.getName(), heartbeatInterval);      // Prevents server-side connection closing
-        PropertyResolverUtils.updateProperty(sshClient, CoreModuleProperties.HEARTBEAT_REPLY_WAIT.getName(), heartbeatReplyWait);   // Prevents client-side connection closing
-        PropertyResolverUtils.updateProperty(sshClient, CoreModuleProperties.IDLE_TIMEOUT.getName(), Integer.MAX_VALUE);
-        PropertyResolverUtils.updateProperty(sshClient, CoreModuleProperties.SOCKET_KEEPALIVE.getName(), true);               // Socket keep-alive at OS-level
-        log.debug("SshClientInstaller: Set IDLE_TIMEOUT to MAX, SOCKET-KEEP-ALIVE to true, and HEARTBEAT to {}", heartbeatInterval);
-
-        // Explicitly set IO service factory factory to prevent conflict between MINA and Netty options
-        sshClient.setIoServiceFactoryFactory(new MinaServiceFactoryFactory());
+        // Create and configure SSH client, or use the shared one in fleet installation mode
+        this.sharedClient = properties.getFleet().isEnabled() && properties.getFleet().isSharedSshClient();
+        this.sshClient = sharedClient ? getSharedSshClient() : createSshClient();
 
         // Start client and connect to SSH server
         try {
-            sshClient.start();
+            if (! sshClient.isStarted())
+                sshClient.start();
             this.session = sshClient.connect(username, host, port)
                     .verify(connectTimeout)
                     .getSession();
@@ -251,6 +239,52 @@ public class SshClientInstaller implements ClientInstallerPlugin {
         }
     }
 
+    private SshClient getSharedSshClient() {
+        synchronized (SshClientInstaller.class) {
+            if (sharedSshClient==null || ! sharedSshClient.isOpen()) {
+                sharedSshClient = createSshClient();
+                sharedSshClient.start();
+                log.info("SshClientInstaller: Started shared SSH client");
+            }
+            return sharedSshClient;
+        }
+    }
+
+    public static void stopSharedSshClient() {
+        synchronized (SshClientInstaller.class) {
+            if (sharedSshClient!=null) {
+                try {
+                    sharedSshClient.stop();
+                    log.info("SshClientInstaller: Stopped shared SSH client");
+                } catch (Exception e) {
+                    log.warn("SshClientInstaller: EXCEPTION while stopping shared SSH client: ", e);
+                }
+                sharedSshClient = null;
+            }
+        }
+    }
+
+    private SshClient createSshClient() {
+        SshClient sshClient = SshClient.setUpDefaultClient();
+        sshClient.setHostConfigEntryResolver(HostConfigEntryResolver.EMPTY);
+        sshClient.setServerKeyVerifier(AcceptAllServerKeyVerifier.INSTANCE);
+
+        //this.simpleClient = SshClient.wrapAsSimpleClient(sshClient);
+        //simpleClient.setConnectTimeout(connectTimeout);
+        //simpleClient.setAuthenticationTimeout(authenticationTimeout);
+
+        // Set a huge idle timeout, keep-alive to true and heartbeat to configured value
+        PropertyResolverUtils.updateProperty(sshClient, CoreModuleProperties.HEARTBEAT_INTERVAL.getName(), heartbeatInterval);      // Prevents server-side connection closing
+        PropertyResolverUtils.updateProperty(sshClient, CoreModuleProperties.HEARTBEAT_REPLY_WAIT.getName(), heartbeatReplyWait);   // Prevents client-side connection closing
+        PropertyResolverUtils.updateProperty(sshClient, CoreModuleProperties.IDLE_TIMEOUT.getName(), Integer.MAX_VALUE);
+        PropertyResolverUtils.updateProperty(sshClient, CoreModuleProperties.SOCKET_KEEPALIVE.getName(), true);               // Socket keep-alive at OS-level
+        log.debug("SshClientInstaller: Set IDLE_TIMEOUT to MAX, SOCKET-KEEP-ALIVE to true, and HEARTBEAT to {}", heartbeatInterval);
+
+        // Explicitly set IO service factory factory to prevent conflict between MINA and Netty options
+        sshClient.setIoServiceFactoryFactory(new MinaServiceFactoryFactory());
+        return sshClient;
+    }
+
     private PrivateKey getPrivateKey(String pemStr) throws IOException, NoSuchAlgorithmException, InvalidKeySpecException {
         KeyFactory factory = KeyFactory.getInstance("RSA");
         try (StringReader keyReader = new StringReader(pemStr); PemReader pemReader = new PemReader(keyReader)) {
@@ -377,7 +411,8 @@ public class SshClientInstaller implements ClientInstallerPlugin {
             //channel.close(false).await();
             session.close(false);
             //simpleClient.close();
-            sshClient.stop();
+            if (! sharedClient)
+                sshClient.stop();
 
             log.info("SshClientInstaller: Disconnected from remote host: task #{}: host: {}:{}", taskCounter, host, port);
             return true;
@@ -542,6 +577,15 @@ public class SshClientInstaller implements ClientInstallerPlugin {
             return true;
         }
 
+        if (isRemoteFileUnchanged(() -> ArtifactChecksumCache.getInstance().checksum(Paths.get(localFilePath)), remoteFilePath)) {
+            streamLogger.logMessage("UPLOAD: SKIPPED: Remote file is unchanged: %s -> %s\n".formatted(localFilePath, remoteFilePath));
+            log.info("SshClientInstaller: Skipped upload of unchanged file: task #{}: local: {} -> remote: {}", taskCounter, localFilePath, remoteFilePath);
+            return true;
+        }
+        return scpUpload(localFilePath, remoteFilePath);
+    }
+
+    private boolean scpUpload(String localFilePath, String remoteFilePath) throws IOException {
         streamLogger.logMessage("UPLOAD: SCP: %s -> %s\n".formatted(localFilePath, remoteFilePath));
         try {
             long startTm = System.currentTimeMillis();
@@ -565,6 +609,12 @@ public class SshClientInstaller implements ClientInstallerPlugin {
             return true;
         }
 
+        if (isRemoteFileUnchanged(() -> ArtifactChecksumCache.getInstance().checksum(content.getBytes()), remoteFilePath)) {
+            streamLogger.logMessage("WRITE FILE: SKIPPED: Remote file is unchanged: %s\n".formatted(remoteFilePath));
+            log.info("SshClientInstaller: Skipped writing unchanged file: task #{}: remote: {}, content-length={}", taskCounter, remoteFilePath, content.length());
+            return true;
+        }
+
         streamLogger.logMessage("WRITE FILE: SCP: %s, content-length=%d \n".formatted(remoteFilePath, content.length()));
         try {
             long timestamp = System.currentTimeMillis();
@@ -592,8 +642,8 @@ public class SshClientInstaller implements ClientInstallerPlugin {
             try (FileWriter fw = new FileWriter(tmp.getAbsoluteFile())) { fw.write(content); }
 
             // Upload temporary local file to remote side
-            log.trace("SshClientInstaller: Call 'sshFileUpload': task #{}: temp-file={}, remote={}", taskCounter, tmp, remoteFilePath);
-            sshFileUpload(tmp.getAbsolutePath(), remoteFilePath);
+            log.trace("SshClientInstaller: Call 'scpUpload': task #{}: temp-file={}, remote={}", taskCounter, tmp, remoteFilePath);
+            scpUpload(tmp.getAbsolutePath(), remoteFilePath);
 
             // Delete temporary file
             if (!properties.isKeepTempFiles()) {
@@ -612,6 +662,32 @@ public class SshClientInstaller implements ClientInstallerPlugin {
         return true;
     }
 
+    @FunctionalInterface
+    private interface ChecksumSupplier {
+        String get() throws IOException;
+    }
+
+    private boolean isRemoteFileUnchanged(ChecksumSupplier localChecksum, String remoteFilePath) {
+        // Content-addressed check: compare local and remote file checksums, in fleet installation mode only
+        if (! properties.getFleet().isEnabled() || ! properties.getFleet().isSkipUnchangedUploads())
+            return false;
+        if (StringUtils.isBlank(remoteFilePath) || remoteFilePath.contains("'"))
+            return false;
+        try {
+            String checksum = localChecksum.get();
+            String output = session.executeRemoteCommand(
+                    properties.getFleet().getRemoteChecksumCommand().formatted(remoteFilePath));
+            String remoteChecksum = StringUtils.substringBefore(StringUtils.trimToEmpty(output), " ");
+            log.debug("SshClientInstaller: task #{}: Checksums: remote-file={}, local={}, remote={}",
+                    taskCounter, remoteFilePath, checksum, remoteChecksum);
+            return StringUtils.equalsIgnoreCase(checksum, remoteChecksum);
+        } catch (Exception e) {
+            // Remote file is missing or checksum command is not available
+            log.debug("SshClientInstaller: task #{}: Could not compare checksums of remote file: {}: {}", taskCounter, remoteFilePath, e.getMessage());
+            return false;
+        }
+    }
+
     private INSTRUCTION_RESULT executeInstructionSets() throws IOException {
         List<InstructionsSet> instructionsSetList = task.getInstructionSets();
         INSTRUCTION_RESULT exitResult = INSTRUCTION_RESULT.SUCCESS;
@@ -11,9 +11,12 @@ package gr.iccs.imu.ems.baguette.client.install.plugin;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import gr.iccs.imu.ems.baguette.client.install.ClientInstallationTask;
 import gr.iccs.imu.ems.baguette.client.install.InstallationContextProcessorPlugin;
+import gr.iccs.imu.ems.translate.TranslationContext;
+import gr.iccs.imu.ems.translate.model.MetricConstraint;
 import gr.iccs.imu.ems.util.ConfigWriteService;
 import gr.iccs.imu.ems.util.EmsConstant;
 import lombok.Data;
@@ -21,10 +24,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Service;
 
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 /**
  * Installation context processor plugin for generating 'collector-configurations' setting
@@ -42,6 +42,10 @@ public class CollectorConfigurationsProcessorPlugin implements InstallationConte
 
         Map<String, List<Object>> collectorConfigs = new LinkedHashMap<>();
         String collectorConfigsStr = null;
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        Map<String, List<Double>> sloThresholds = getSloThresholds(task.getTranslationContext());
+        log.trace("CollectorConfigurationsProcessorPlugin: Task #{}: SLO thresholds: {}", taskCounter, sloThresholds);
 
         task.getTranslationContext().getMON().forEach(monitor -> {
             log.trace("CollectorConfigurationsProcessorPlugin: Task #{}: Processing monitor: {}", taskCounter, monitor);
@@ -53,9 +57,17 @@ public class CollectorConfigurationsProcessorPlugin implements InstallationConte
             if (sensorConfig!=null) {
                 if (monitor.getSensor().isPullSensor()) {
                     if (sensorConfig.get("type") instanceof String type && StringUtils.isNotBlank(type)) {
+                        // Add SLO thresholds of sensor metric, used by collectors with adaptive interval
+                        Object sensorSpec = monitor.getSensor();
+                        List<Double> thresholds = sloThresholds.get(monitor.getMetric());
+                        if (thresholds!=null) {
+                            Map<String, Object> sensorMap = mapper.convertValue(monitor.getSensor(), new TypeReference<>() {});
+                            sensorMap.put("slo-thresholds", thresholds);
+                            sensorSpec = sensorMap;
+                        }
                         collectorConfigs
                                 .computeIfAbsent(type, key->new LinkedList<>())
-                                .add(monitor.getSensor());
+                                .add(sensorSpec);
                     }
                 }
             }
@@ -63,8 +75,6 @@ public class CollectorConfigurationsProcessorPlugin implements InstallationConte
 
         try {
             log.debug("CollectorConfigurationsProcessorPlugin: Task #{}: Pull-Sensor collector configurations: \n{}", taskCounter, collectorConfigs);
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
             collectorConfigsStr = mapper
                     .writeValueAsString(collectorConfigs);
         } catch (JsonProcessingException e) {
@@ -93,6 +103,22 @@ public class CollectorConfigurationsProcessorPlugin implements InstallationConte
         log.debug("CollectorConfigurationsProcessorPlugin: Task #{}: processBeforeInstallation: END", taskCounter);
     }
 
+    // Metric name -> thresholds of metric constraints directly on that metric
+    private Map<String, List<Double>> getSloThresholds(TranslationContext translationContext) {
+        Map<String, List<Double>> thresholds = new HashMap<>();
+        if (translationContext==null) return thresholds;
+        for (MetricConstraint constraint : translationContext.getMetricConstraints()) {
+            if (constraint.getMetricContext()==null) continue;
+            Set<String> names = new HashSet<>();
+            names.add(constraint.getMetricContext().getName());
+            if (constraint.getMetricContext().getMetric()!=null)
+                names.add(constraint.getMetricContext().getMetric().getName());
+            names.stream().filter(Objects::nonNull).forEach(name ->
+                    thresholds.computeIfAbsent(name, k -> new ArrayList<>()).add(constraint.getThreshold()));
+        }
+        return thresholds;
+    }
+
     @Override
     public void processAfterInstallation(ClientInstallationTask task, long taskCounter, boolean success) {
         log.debug("CollectorConfigurationsProcessorPlugin: Task #{}: processAfterInstallation: success={}", taskCounter, success);
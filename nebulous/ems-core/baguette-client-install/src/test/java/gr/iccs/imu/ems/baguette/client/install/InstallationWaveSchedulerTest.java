@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.baguette.client.install;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+@Slf4j
+@DisplayName("InstallationWaveScheduler Tests")
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class InstallationWaveSchedulerTest {
+    private InstallationWaveScheduler scheduler;
+    private final Map<String,String> aborted = new ConcurrentHashMap<>();
+
+    @AfterEach
+    public void tearDown() {
+        if (scheduler!=null) scheduler.shutdown();
+    }
+
+    private static ClientInstallationProperties.FleetInstallationProperties newProperties(int concurrency, int waveSize) {
+        ClientInstallationProperties.FleetInstallationProperties properties = new ClientInstallationProperties.FleetInstallationProperties();
+        properties.setEnabled(true);
+        properties.setConcurrency(concurrency);
+        properties.setWaveSize(waveSize);
+        properties.setWaveCollectTimeout(200);
+        properties.setFailureBudget(0.2);
+        properties.setMinWaveSizeForBudget(5);
+        return properties;
+    }
+
+    private void start(ClientInstallationProperties.FleetInstallationProperties properties, Predicate<ClientInstallationTask> runner) {
+        scheduler = new InstallationWaveScheduler(properties, runner, (task, reason) -> aborted.put(task.getId(), reason));
+    }
+
+    private static ClientInstallationTask task(int i) {
+        return ClientInstallationTask.builder().id("task-" + i).build();
+    }
+
+    private static void waitUntil(java.util.function.BooleanSupplier condition, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (! condition.getAsBoolean() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+    }
+
+    @Test
+    void tasksAreExecutedInWavesOfAtMostWaveSize() throws Exception {
+        // Each wave starts only after the previous one has completed, so waves are separated by idle periods
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger peakActive = new AtomicInteger();
+        AtomicInteger waves = new AtomicInteger();
+        List<String> executed = Collections.synchronizedList(new ArrayList<>());
+        Object lock = new Object();
+        start(newProperties(10, 3), task -> {
+            synchronized (lock) {
+                if (active.getAndIncrement()==0) waves.incrementAndGet();
+                peakActive.accumulateAndGet(active.get(), Math::max);
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executed.add(task.getId());
+            active.decrementAndGet();
+            return true;
+        });
+
+        for (int i = 0; i < 7; i++)
+            scheduler.addTask(task(i));
+        waitUntil(() -> executed.size()==7, 10_000);
+
+        Assertions.assertEquals(7, executed.size());
+        Assertions.assertEquals(3, peakActive.get());
+        Assertions.assertEquals(3, waves.get());     // 3 + 3 + 1 tasks
+        Assertions.assertTrue(aborted.isEmpty());
+    }
+
+    @Test
+    void tasksAreStartedInSubmissionOrder() throws Exception {
+        List<String> executed = Collections.synchronizedList(new ArrayList<>());
+        start(newProperties(1, 4), task -> executed.add(task.getId()));
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            scheduler.addTask(task(i));
+            expected.add("task-" + i);
+        }
+        waitUntil(() -> executed.size()==10, 10_000);
+        Assertions.assertEquals(expected, executed);
+    }
+
+    @Test
+    void queuedTasksAreAbortedWhenFailureBudgetIsExceeded() throws Exception {
+        CountDownLatch firstWaveStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstWave = new CountDownLatch(1);
+        AtomicInteger executed = new AtomicInteger();
+        start(newProperties(5, 5), task -> {
+            firstWaveStarted.countDown();
+            try {
+                releaseFirstWave.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executed.incrementAndGet();
+            // 2 out of 5 tasks fail: 0.4 > 0.2 budget
+            return ! task.getId().equals("task-0") && ! task.getId().equals("task-1");
+        });
+
+        for (int i = 0; i < 5; i++)
+            scheduler.addTask(task(i));
+        Assertions.assertTrue(firstWaveStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 5; i < 12; i++)
+            scheduler.addTask(task(i));
+        releaseFirstWave.countDown();
+
+        waitUntil(() -> aborted.size()==7, 5_000);
+        Assertions.assertEquals(7, aborted.size());
+        Assertions.assertEquals(0, scheduler.getQueuedTasks());
+        Assertions.assertEquals(5, executed.get());
+        for (int i = 5; i < 12; i++)
+            Assertions.assertTrue(aborted.get("task-" + i).contains("Failure budget exceeded"), "Not aborted: task-" + i);
+    }
+
+    @Test
+    void failuresWithinBudgetDoNotAbortQueuedTasks() throws Exception {
+        CountDownLatch firstWaveStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstWave = new CountDownLatch(1);
+        AtomicInteger executed = new AtomicInteger();
+        start(newProperties(5, 5), task -> {
+            firstWaveStarted.countDown();
+            try {
+                releaseFirstWave.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executed.incrementAndGet();
+            // 1 out of 5 tasks fails: 0.2 is within budget
+            return ! task.getId().equals("task-0");
+        });
+
+        for (int i = 0; i < 5; i++)
+            scheduler.addTask(task(i));
+        Assertions.assertTrue(firstWaveStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 5; i < 8; i++)
+            scheduler.addTask(task(i));
+        releaseFirstWave.countDown();
+
+        waitUntil(() -> executed.get()==8, 5_000);
+        Assertions.assertEquals(8, executed.get());
+        Assertions.assertTrue(aborted.isEmpty());
+    }
+
+    @Test
+    void exceptionsCountAsFailures() throws Exception {
+        CountDownLatch firstWaveStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstWave = new CountDownLatch(1);
+        start(newProperties(5, 5), task -> {
+            firstWaveStarted.countDown();
+            try {
+                releaseFirstWave.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("Test failure: " + task.getId());
+        });
+
+        for (int i = 0; i < 5; i++)
+            scheduler.addTask(task(i));
+        Assertions.assertTrue(firstWaveStarted.await(5, TimeUnit.SECONDS));
+        scheduler.addTask(task(5));
+        releaseFirstWave.countDown();
+
+        waitUntil(() -> aborted.size()==1, 5_000);
+        Assertions.assertEquals(Set.of("task-5"), aborted.keySet());
+    }
+}
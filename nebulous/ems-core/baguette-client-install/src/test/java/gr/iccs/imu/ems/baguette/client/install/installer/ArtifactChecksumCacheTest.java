@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.baguette.client.install.installer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+@Slf4j
+@DisplayName("ArtifactChecksumCache Tests")
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class ArtifactChecksumCacheTest {
+    private final static String ABC_SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void checksumsOfFilesAndBytesAreSha256() throws Exception {
+        ArtifactChecksumCache cache = new ArtifactChecksumCache();
+        Path file = Files.writeString(directory.resolve("abc.txt"), "abc");
+        Assertions.assertEquals(ABC_SHA256, cache.checksum(file));
+        Assertions.assertEquals(ABC_SHA256, cache.checksum("abc".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void unchangedFileIsServedFromCache() throws Exception {
+        ArtifactChecksumCache cache = new ArtifactChecksumCache();
+        Path file = Files.writeString(directory.resolve("artifact.bin"), "abc");
+        FileTime lastModified = Files.getLastModifiedTime(file);
+        Assertions.assertEquals(ABC_SHA256, cache.checksum(file));
+
+        // Same size and modification time: the file is not hashed again, so the cached checksum is returned
+        Files.writeString(file, "xyz");
+        Files.setLastModifiedTime(file, lastModified);
+        Assertions.assertEquals(ABC_SHA256, cache.checksum(file));
+
+        // Relative and absolute paths of the same file share the cache entry
+        Path relative = Path.of("").toAbsolutePath().relativize(file);
+        Assertions.assertEquals(ABC_SHA256, cache.checksum(relative));
+    }
+
+    @Test
+    void modifiedFileIsHashedAgain() throws Exception {
+        ArtifactChecksumCache cache = new ArtifactChecksumCache();
+        Path file = Files.writeString(directory.resolve("artifact.bin"), "abc");
+        FileTime lastModified = Files.getLastModifiedTime(file);
+        String first = cache.checksum(file);
+
+        // Size changes
+        Files.writeString(file, "abcd");
+        Files.setLastModifiedTime(file, lastModified);
+        String second = cache.checksum(file);
+        Assertions.assertNotEquals(first, second);
+        Assertions.assertEquals(cache.checksum("abcd".getBytes(StandardCharsets.UTF_8)), second);
+
+        // Modification time changes
+        Files.writeString(file, "abce");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified.toMillis() + 10_000));
+        Assertions.assertEquals(cache.checksum("abce".getBytes(StandardCharsets.UTF_8)), cache.checksum(file));
+    }
+}
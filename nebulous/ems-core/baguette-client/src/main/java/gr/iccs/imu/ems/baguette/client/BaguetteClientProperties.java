@@ -53,4 +53,8 @@ public class BaguetteClientProperties extends SshClientProperties {
 
 	private long sendStatisticsDelay = 10000L;
 	private String sendStatisticsDestination;
+	private int sendStatisticsFullFrameInterval = 30;	// Send all statistics every N rounds, and only changed ones in between
+
+	private String metricsExporterAddress = "127.0.0.1";
+	private int metricsExporterPort = -1;
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.baguette.client;
+
+import com.sun.net.httpserver.HttpServer;
+import gr.iccs.imu.ems.util.EmsMetrics;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Service;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Exports EMS client hot-path metrics (see {@link EmsMetrics}) in Prometheus format,
+ * at 'http://<metrics-exporter-address>:<metrics-exporter-port>/metrics'.
+ * EMS client has no web server, so a lightweight JDK HTTP server is used. Disabled if port is not positive.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ClientMetricsExporter implements InitializingBean, DisposableBean {
+    private final BaguetteClientProperties properties;
+    private PrometheusMeterRegistry registry;
+    private HttpServer server;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        if (properties.getMetricsExporterPort()<=0) {
+            log.debug("ClientMetricsExporter: Disabled");
+            return;
+        }
+
+        registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        Metrics.addRegistry(registry);
+
+        server = HttpServer.create(new InetSocketAddress(properties.getMetricsExporterAddress(), properties.getMetricsExporterPort()), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] response = registry.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+        log.info("ClientMetricsExporter: Started: address={}, port={}", properties.getMetricsExporterAddress(), properties.getMetricsExporterPort());
+    }
+
+    @Override
+    public void destroy() {
+        if (server!=null) server.stop(0);
+        if (registry!=null) {
+            Metrics.removeRegistry(registry);
+            registry.close();
+        }
+    }
+}
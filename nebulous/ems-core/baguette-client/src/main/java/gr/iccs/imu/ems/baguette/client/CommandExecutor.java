@@ -120,6 +120,8 @@ public class CommandExecutor {
     @Autowired
     private TaskScheduler taskScheduler;
     private ScheduledFuture<?> statsSendTask;
+    private final StatisticsDeltaCodec.Encoder statsEncoder = new StatisticsDeltaCodec.Encoder();
+    private long statsSendRound;
     @Autowired
     private SystemResourceMonitor systemResourceMonitor;
 
@@ -696,6 +698,8 @@ public class CommandExecutor {
                 sendStatisticsStop();
             else if ("CLEAR".equalsIgnoreCase(operation))
                 clearStatistics();
+            else if ("FULL".equalsIgnoreCase(operation))
+                statsEncoder.requestFullFrame();
             else {
                 log.error("BaguetteClient: Unknown STATS operation: {}", operation);
             }
@@ -999,7 +1003,7 @@ public class CommandExecutor {
                         BrokerCepStatementSubscriber statementSubscriber =
                                 new BrokerCepStatementSubscriber(subscriberName, topic, rule, brokerCepService, passwordUtil, Collections.emptySet());
                         brokerCepService.getCepService().addStatementSubscriber(
-                                statementSubscriber
+                                groupingName, statementSubscriber
                         );
                         groupingsSubscribers.computeIfAbsent(groupingName, s -> new LinkedList<>()).add(statementSubscriber);
                     }
@@ -1351,6 +1355,7 @@ public class CommandExecutor {
         String destination = baguetteClient.getBaguetteClientProperties().getSendStatisticsDestination();
         if (StringUtils.isNotBlank(destination))
             brokerCepService.getEventCache().excludeDestination(destination);
+        statsEncoder.requestFullFrame();
         statsSendTask = taskScheduler.scheduleWithFixedDelay(() -> {
             try {
                 _collectAndSendStatistics(true);
@@ -1373,8 +1378,12 @@ public class CommandExecutor {
         if (statsMap!=null) clientStats.putAll(statsMap);
         if (sysMap!=null) clientStats.putAll(sysMap);
         if (sendStats && out!=null) {
-            log.debug("-STATS: {}", clientStats);
-            out.println("-STATS:" + SerializationUtil.serializeToString(clientStats));
+            // Only numeric statistics are pushed, as deltas. Latest events are available on demand (GET-STATS)
+            int fullFrameInterval = baguetteClient.getBaguetteClientProperties().getSendStatisticsFullFrameInterval();
+            boolean forceFull = fullFrameInterval<=1 || statsSendRound++ % fullFrameInterval == 0;
+            String frame = statsEncoder.encode(StatisticsDeltaCodec.numericOnly(clientStats), forceFull);
+            log.debug("-STATS-DELTA: {}", frame);
+            out.println("-STATS-DELTA:" + frame);
         }
 
         // Send stats event to local broker
@@ -1400,6 +1409,7 @@ public class CommandExecutor {
 
     private void clearStatistics() {
         brokerCepService.clearBrokerCepStatistics();
+        statsEncoder.requestFullFrame();
         log.info("Statistics cleared");
         if (out!=null) out.println("STATISTICS CLEARED");
     }
@@ -43,6 +43,8 @@ import java.util.Optional;
 @Slf4j
 @Service
 public class Sshc implements gr.iccs.imu.ems.common.client.SshClient<BaguetteClientProperties> {
+    private final static int CHANNEL_BUFFER_SIZE = 8192;
+
     private BaguetteClientProperties config;
     private SshClient client;
     private SimpleClient simple;
@@ -161,18 +163,15 @@ public class Sshc implements gr.iccs.imu.ems.common.client.SshClient<BaguetteCli
 
         // Open command shell channel
         this.channel = session.createChannel(ClientChannel.CHANNEL_SHELL);
-        PipedInputStream pIn = new PipedInputStream();
-        PipedOutputStream pOut = new PipedOutputStream();
-        //PipedOutputStream pErr = new PipedOutputStream();
-        this.in = new BufferedInputStream(pIn);
-        this.out = new PrintStream(pOut, true);
-        //this.err = new PrintStream(pErr, true);
-
-        channel.setIn(new PipedInputStream(pOut));
-        channel.setOut(new PipedOutputStream(pIn));
-        //channel.setErr(new PipedOutputStream(pErr));
-
-        channel.open();
+        channel.setStreaming(ClientChannel.Streaming.Sync);
+        channel.open()
+                .verify(connectTimeout);
+
+        // Read server input directly from the stream the channel fills (subject to SSH window flow control),
+        // and write replies to the channel through a buffer flushed at the end of each line (i.e. message).
+        // No piped streams (and copying threads) are used in between
+        this.in = new BufferedInputStream(channel.getInvertedOut(), CHANNEL_BUFFER_SIZE);
+        this.out = new PrintStream(new BufferedOutputStream(channel.getInvertedIn(), CHANNEL_BUFFER_SIZE), true);
 
         log.info("SSH client is ready");
         this.started = true;
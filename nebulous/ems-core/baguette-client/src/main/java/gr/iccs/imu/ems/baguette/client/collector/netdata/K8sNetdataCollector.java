@@ -12,15 +12,20 @@ package gr.iccs.imu.ems.baguette.client.collector.netdata;
 import gr.iccs.imu.ems.baguette.client.IClientCollector;
 import gr.iccs.imu.ems.baguette.client.collector.ClientCollectorContext;
 import gr.iccs.imu.ems.brokercep.event.EventMap;
+import gr.iccs.imu.ems.common.collector.AbstractEndpointCollectorProperties;
+import gr.iccs.imu.ems.common.collector.AdaptiveInterval;
 import gr.iccs.imu.ems.common.collector.CollectorConstant;
 import gr.iccs.imu.ems.common.collector.CollectorContext;
+import gr.iccs.imu.ems.common.collector.DeadbandFilter;
 import gr.iccs.imu.ems.common.collector.netdata.INetdataCollector;
 import gr.iccs.imu.ems.common.collector.netdata.NetdataCollectorProperties;
 import gr.iccs.imu.ems.util.EmsConstant;
+import gr.iccs.imu.ems.util.EmsMetrics;
 import gr.iccs.imu.ems.util.EventBus;
 import gr.iccs.imu.ems.util.StrUtil;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.InitializingBean;
@@ -30,6 +35,7 @@ import org.springframework.web.client.RestClient;
 
 import java.io.Serializable;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -78,6 +84,10 @@ public class K8sNetdataCollector implements IClientCollector, INetdataCollector,
         double valueOnError = Double.NEGATIVE_INFINITY;
         Collection<String> components;      // Pods
         RESULTS_AGGREGATION aggregation = RESULTS_AGGREGATION.NONE;
+
+        // Adaptive collection interval (null if not enabled)
+        @ToString.Exclude
+        AdaptiveInterval adaptiveInterval;
     }
 
     protected final static Set<String> SENSOR_CONFIG_KEYS_EXCLUDED =
@@ -92,8 +102,10 @@ public class K8sNetdataCollector implements IClientCollector, INetdataCollector,
     private final EventBus<String, Object, Object> eventBus;
     private final RestClient restClient = RestClient.create();
     private final List<ScheduledFuture<?>> scheduledFuturesList = new LinkedList<>();
+    private final List<AdaptiveCollectionTask> adaptiveTasksList = new LinkedList<>();
     private boolean started;
     private List<Map<String, Object>> configurations;
+    private DeadbandFilter deadbandFilter;
 
     @Override
     public void afterPropertiesSet() throws Exception {
@@ -133,6 +145,8 @@ public class K8sNetdataCollector implements IClientCollector, INetdataCollector,
     @Override
     public void start() {
         if (started) return;
+        deadbandFilter = properties.getDeadband().isEnabled()
+                ? new DeadbandFilter("K8sNetdataCollector", properties.getDeadband()) : null;
         if (configurations!=null)
             doStart();
         started = true;
@@ -144,6 +158,7 @@ public class K8sNetdataCollector implements IClientCollector, INetdataCollector,
         if (!started) return;
         started = false;
         doStop();
+        if (deadbandFilter!=null) deadbandFilter.clear();
         log.debug("K8sNetdataCollector: Stopped");
     }
 
@@ -347,15 +362,28 @@ public class K8sNetdataCollector implements IClientCollector, INetdataCollector,
             log.debug("K8sNetdataCollector: doStart(): cfgCtx: {}", cfgCtx);
 
             // Schedule data collection task
-            scheduledFuturesList.add( taskScheduler.scheduleAtFixedRate(() -> {
-                log.debug("K8sNetdataCollector: Sensor-{}: Starting collection...\n{}", sensorNum.get(), cfgCtx);
+            final int sensor = sensorNum.get();
+            Runnable collectionTask = () -> {
+                log.debug("K8sNetdataCollector: Sensor-{}: Starting collection...\n{}", sensor, cfgCtx);
                 collectData(cfgCtx);
-                log.debug("K8sNetdataCollector: Sensor-{}: Starting collection...Done", sensorNum.get());
-            }, duration) );
-            log.debug("K8sNetdataCollector: doStart(): Sensor-{}: destination={}, components={}, interval={}, urlSuffix={}",
-                    sensorNum.get(), cfgCtx.destination, cfgCtx.components, duration, cfgCtx.urlSuffix);
-            log.info("K8sNetdataCollector: Collecting Netdata metric '{}.{}' into '{}', every {} {}",
-                    cfgCtx.context, cfgCtx.dimensions, cfgCtx.destination, period, unit.name().toLowerCase());
+                log.debug("K8sNetdataCollector: Sensor-{}: Starting collection...Done", sensor);
+            };
+            AbstractEndpointCollectorProperties.AdaptiveIntervalProperties adaptiveSettings =
+                    AdaptiveInterval.getSensorSettings(properties.getAdaptive(), map);
+            if (adaptiveSettings!=null) {
+                cfgCtx.adaptiveInterval = new AdaptiveInterval("K8sNetdataCollector", destinationName, duration,
+                        adaptiveSettings, AdaptiveInterval.getSensorSloThresholds(map));
+                AdaptiveCollectionTask task = new AdaptiveCollectionTask(cfgCtx.adaptiveInterval, collectionTask);
+                adaptiveTasksList.add(task);
+                task.future = taskScheduler.schedule(task, Instant.now());
+            } else {
+                scheduledFuturesList.add( taskScheduler.scheduleAtFixedRate(collectionTask, duration) );
+            }
+            log.debug("K8sNetdataCollector: doStart(): Sensor-{}: destination={}, components={}, interval={}, adaptive={}, urlSuffix={}",
+                    sensorNum.get(), cfgCtx.destination, cfgCtx.components, duration, adaptiveSettings!=null, cfgCtx.urlSuffix);
+            log.info("K8sNetdataCollector: Collecting Netdata metric '{}.{}' into '{}', every {} {}{}",
+                    cfgCtx.context, cfgCtx.dimensions, cfgCtx.destination, period, unit.name().toLowerCase(),
+                    adaptiveSettings!=null ? " (adaptive)" : "");
         });
         log.trace("K8sNetdataCollector: doStart(): scheduledFuturesList={}", scheduledFuturesList);
         log.debug("K8sNetdataCollector: doStart(): END");
@@ -445,124 +473,77 @@ public class K8sNetdataCollector implements IClientCollector, INetdataCollector,
         log.debug("K8sNetdataCollector: collectDataFromNode(): BEGIN: apiVer={}, url={}, results-aggregation={}, destination={}, components={}, node-address={}",
                 cfgCtx.apiVer, url, cfgCtx.aggregation, cfgCtx.destination, cfgCtx.components, address);
 
-        Map<String,Double> resultsMap = new HashMap<>();
-        long timestamp = -1L;
-        if (cfgCtx.apiVer==1) {
-            Map response = restClient.get()
-                    .uri(url)
-                    .retrieve()
-                    .body(Map.class);
-            // Need to call for each pod separately
-            // or get the total
-            timestamp = Long.parseLong( response.get("before").toString() );
-            List<String> chart_ids = (List) response.get("chart_ids");
-            List<String> dimension_ids = (List) response.get("dimension_ids");
-            List<String> latest_values = (List) response.get("view_latest_value");
-            for (int i=0, n=chart_ids.size(); i<n; i++) {
-                String id = chart_ids.get(i) + "|" + dimension_ids.get(i);
-                try {
-                    if (includeResult(cfgCtx, id)) {
-                        double v = Double.parseDouble(latest_values.get(i));
-                        resultsMap.put(id, v);
-                    }
-                } catch (Exception e) {
-                    log.warn("K8sNetdataCollector: collectDataFromNode(): ERROR at index #{}: id={}, value={}, Exception: ",
-                            i, id, latest_values.get(i), e);
-                    if (! cfgCtx.skipValueOnError)
-                        resultsMap.put(id, cfgCtx.valueOnError);
-                }
-            }
-        } else
-        if (cfgCtx.apiVer==2) {
-            log.debug("K8sNetdataCollector: collectDataFromNode(): Calling Netdata: apiVer={}, url={}", cfgCtx.apiVer, url);
-            Map response = restClient.get()
-                    .uri(url)
-                    .retrieve()
-                    .body(Map.class);
-            log.trace("K8sNetdataCollector: collectDataFromNode(): apiVer={}, response={}", cfgCtx.apiVer, response);
-
-            if (response!=null) {
-                Map view = (Map) response.get("view");
-
-                // Check and (debug) print few values
-                try {
-                    String result = Objects.requireNonNullElse(response.get("result"), "").toString();
-                    //resultsMap.put("result", result);
-                    if (view!=null) {
-                        long after = Long.parseLong(view.get("after").toString());
-                        long before = Long.parseLong(view.get("before").toString());
-                        timestamp = before;
-                        log.trace("K8sNetdataCollector: collectDataFromNode(): result={}, after={}, before={}", result, after, before);
-                    }
-                } catch (Exception e) {
-                    Map v = (Map) response.get("view");
-                    if (log.isDebugEnabled())
-                        log.debug("K8sNetdataCollector: collectDataFromNode(): Problem with acquired values: result={}, view={}, after={}, before={} :: Exception: ",
-                                response.get("result"), v, v!=null ? v.get("after") : null, v!=null ? v.get("before") : null, e);
-                    else
-                        log.warn("K8sNetdataCollector: collectDataFromNode(): Problem with acquired values: result={}, view={}, after={}, before={}",
-                                response.get("result"), v, v!=null ? v.get("after") : null, v!=null ? v.get("before") : null);
-                }
+        if (cfgCtx.apiVer!=1 && cfgCtx.apiVer!=2) {
+            log.warn("K8sNetdataCollector: collectDataFromNode(): Unsupported Netdata API version: apiVer={}, url={}", cfgCtx.apiVer, url);
+            return;
+        }
 
-                // Extract measurements
-                if (view!=null && view.get("dimensions") instanceof Map) {
-                    Map dimensions = (Map) view.get("dimensions");
-                    List<String> ids = (List<String>) dimensions.get("ids");
-                    List<String> units = (List<String>) dimensions.get("units");
-                    Map stsMap = (Map) dimensions.get("sts");
-                    List<Number> values = stsMap==null ? null : (List<Number>) stsMap.get("avg");
-                    log.trace("K8sNetdataCollector: collectDataFromNode():    ids={}", ids);
-                    log.trace("K8sNetdataCollector: collectDataFromNode():  units={}", units);
-                    log.trace("K8sNetdataCollector: collectDataFromNode(): values={}", values);
-                    if (ids!=null && units!=null && values!=null) {
-                        for (int i = 0, n = ids.size(); i < n; i++) {
-                            try {
-                                if (includeResult(cfgCtx, ids.get(i))) {
-                                    double v = values.get(i).doubleValue();
-                                    resultsMap.put(ids.get(i), v);
-                                }
-                            } catch (Exception e) {
-                                log.warn("K8sNetdataCollector: collectDataFromNode(): ERROR at index #{}: id={}, value={}, Exception: ",
-                                        i, ids.get(i), values.get(i), e);
-                                if (!cfgCtx.skipValueOnError)
-                                    resultsMap.put(ids.get(i), cfgCtx.valueOnError);
-                            }
-                        }
-                    }
-                }
+        // Stream the response through the extractor, instead of materializing it as nested maps and lists
+        log.debug("K8sNetdataCollector: collectDataFromNode(): Calling Netdata: apiVer={}, url={}", cfgCtx.apiVer, url);
+        NetdataDataExtractor.Results results = restClient.get()
+                .uri(url)
+                .exchange((request, response) -> {
+                    if (response.getStatusCode().isError())
+                        throw new IllegalStateException("Netdata responded with error: status="+response.getStatusCode()+", url="+url);
+                    return NetdataDataExtractor.extract(response.getBody(), cfgCtx.apiVer, id -> includeResult(cfgCtx, id));
+                });
+        long timestamp = results.timestamp;
+
+        // Handle values that could not be parsed (duplicate ids are already merged by the extractor)
+        int size = 0;
+        for (int i=0; i<results.size; i++) {
+            if (results.invalid[i]) {
+                log.warn("K8sNetdataCollector: collectDataFromNode(): ERROR at index #{}: id={}, Invalid value", i, results.ids[i]);
+                if (cfgCtx.skipValueOnError) continue;
+                results.values[i] = cfgCtx.valueOnError;
             }
+            results.ids[size] = results.ids[i];
+            results.values[size] = results.values[i];
+            size++;
         }
-
-        log.debug("K8sNetdataCollector: collectDataFromNode(): Data collected: timestamp={}, results={}", timestamp, resultsMap);
+        if (log.isDebugEnabled())
+            log.debug("K8sNetdataCollector: collectDataFromNode(): Data collected: timestamp={}, ids={}, values={}", timestamp,
+                    Arrays.toString(Arrays.copyOf(results.ids, size)), Arrays.toString(Arrays.copyOf(results.values, size)));
 
         // Publish collected data to destination
-        if (!resultsMap.isEmpty()) {
-            final long timestamp1 = timestamp;
+        if (size>0) {
             Map<String, CollectorContext.PUBLISH_RESULT> publishResults = new LinkedHashMap<>();
             if (cfgCtx.aggregation == RESULTS_AGGREGATION.NONE) {
-                resultsMap.forEach((k, v) -> {
-                    publishResults.put(k + "=" + v, publishMetricEvent(cfgCtx.destination, k, v, timestamp1, address));
-                });
+                for (int i=0; i<size; i++) {
+                    String k = results.ids[i];
+                    double v = results.values[i];
+                    publishResults.put(k + "=" + v, publishMetricEvent(cfgCtx.destination, k, v, timestamp, address));
+                    if (cfgCtx.adaptiveInterval!=null)
+                        cfgCtx.adaptiveInterval.observe(address + "/" + k, v);
+                }
             } else {
+                double sum = 0, min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+                for (int i=0; i<size; i++) {
+                    double v = results.values[i];
+                    sum += v;
+                    if (v<min) min = v;
+                    if (v>max) max = v;
+                }
                 double result = switch (cfgCtx.aggregation) {
-                    case SUM -> resultsMap.values().stream().mapToDouble(Double::doubleValue).sum();
-                    case AVERAGE -> resultsMap.values().stream().mapToDouble(Double::doubleValue).average().orElse(0);
-                    case COUNT -> resultsMap.values().size();
-                    case MIN -> resultsMap.values().stream().mapToDouble(Double::doubleValue).min().orElse(0);
-                    case MAX -> resultsMap.values().stream().mapToDouble(Double::doubleValue).max().orElse(0);
+                    case SUM -> sum;
+                    case AVERAGE -> sum / size;
+                    case COUNT -> size;
+                    case MIN -> min;
+                    case MAX -> max;
                     case NONE -> throw new IllegalArgumentException("FATAL: Execution should never have reached this point");
                 };
-                if (!resultsMap.isEmpty())
-                    publishResults.put(null, publishMetricEvent(cfgCtx.destination, null, result, timestamp1, address));
-                //else log.trace("K8sNetdataCollector: collectDataFromNode(): No results. Will not publish anything");
+                publishResults.put(null, publishMetricEvent(cfgCtx.destination, null, result, timestamp, address));
+                if (cfgCtx.adaptiveInterval!=null)
+                    cfgCtx.adaptiveInterval.observe(address, result);
             }
             log.debug("K8sNetdataCollector: collectDataFromNode(): Events published: results={}", publishResults);
         } else {
-            log.debug("K8sNetdataCollector: collectDataFromNode(): No Events published because resultsMap is empty");
+            log.debug("K8sNetdataCollector: collectDataFromNode(): No Events published because no results were collected");
         }
 
         long endTm = System.currentTimeMillis();
         log.debug("K8sNetdataCollector: collectDataFromNode(): END: duration={}ms", endTm-startTm);
+        EmsMetrics.recordSampled(endTm-startTm, "ems.collector.scrape", "collector", "K8sNetdataCollector", "node", String.valueOf(address));
     }
 
     private boolean includeResult(ConfigContext cfgCtx, String id) {
@@ -661,6 +642,8 @@ public class K8sNetdataCollector implements IClientCollector, INetdataCollector,
         // Cancel all task scheduler futures
         scheduledFuturesList.forEach(future -> future.cancel(true));
         scheduledFuturesList.clear();
+        adaptiveTasksList.forEach(AdaptiveCollectionTask::cancel);
+        adaptiveTasksList.clear();
         log.debug("K8sNetdataCollector: doStop():  END");
     }
 
@@ -669,6 +652,9 @@ public class K8sNetdataCollector implements IClientCollector, INetdataCollector,
     }
 
     protected CollectorContext.PUBLISH_RESULT publishMetricEvent(String metricName, String key, double metricValue, long timestamp, String nodeAddress) {
+        DeadbandFilter filter = deadbandFilter;
+        if (filter!=null && ! filter.shouldSend(metricName, new DeadbandFilter.SeriesKey(key, nodeAddress), metricValue))
+            return CollectorContext.PUBLISH_RESULT.SKIPPED;
         EventMap event = new EventMap(metricValue, 1, timestamp);
         return sendEvent(metricName, metricName, key, event, null, true);
     }
@@ -683,4 +669,28 @@ public class K8sNetdataCollector implements IClientCollector, INetdataCollector,
         log.trace("K8sNetdataCollector:    Publishing metric: {}: {} -> result: {}", metricName, event.getMetricValue(), result);
         return result;
     }
+
+    @RequiredArgsConstructor
+    private class AdaptiveCollectionTask implements Runnable {
+        private final AdaptiveInterval adaptiveInterval;
+        private final Runnable collector;
+        private volatile ScheduledFuture<?> future;
+        private volatile boolean cancelled;
+
+        public void run() {
+            if (cancelled) return;
+            try {
+                collector.run();
+            } finally {
+                if (! cancelled)
+                    future = taskScheduler.schedule(this, Instant.now().plus(adaptiveInterval.next()));
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            ScheduledFuture<?> f = future;
+            if (f!=null) f.cancel(true);
+        }
+    }
 }
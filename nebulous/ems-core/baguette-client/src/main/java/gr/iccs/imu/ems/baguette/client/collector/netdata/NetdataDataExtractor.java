@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.baguette.client.collector.netdata;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Streaming extractor of Netdata '/api/v1/data' and '/api/v2/data' responses.
+ * It scans the response once, keeps only the needed arrays in primitive buffers
+ * (ids, values), without building the response object tree.
+ * The results filter is applied as soon as the ids are known, so the values of excluded charts
+ * are skipped while streaming. Values found before their ids (not the usual Netdata field order)
+ * are buffered and filtered after the scan.
+ * Duplicate ids are merged, at the position of their first occurrence, with the last valid value.
+ */
+@Slf4j
+class NetdataDataExtractor {
+    private final static JsonFactory jsonFactory = new JsonFactory();
+
+    /**
+     * Extracted results. Only the first {@code size} entries of {@code ids} and {@code values} are valid.
+     * Entries whose value could not be parsed are NaN, and flagged in {@code invalid}.
+     */
+    static class Results {
+        long timestamp = -1L;
+        int size;
+        String[] ids = new String[0];
+        double[] values = new double[0];
+        boolean[] invalid = new boolean[0];
+    }
+
+    private static class StringArray {
+        String[] data = new String[64];
+        int size;
+        void add(String s) {
+            if (size==data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = s;
+        }
+    }
+
+    private static class DoubleArray {
+        double[] data = new double[64];
+        boolean[] invalid = new boolean[64];
+        int size;
+        void add(double v, boolean bad) {
+            if (size==data.length) {
+                data = Arrays.copyOf(data, size * 2);
+                invalid = Arrays.copyOf(invalid, size * 2);
+            }
+            invalid[size] = bad;
+            data[size++] = v;
+        }
+    }
+
+    // Scan state: ids are filtered once known, and values are then read only for the included ids
+    private static class Scan {
+        final int apiVer;
+        final Predicate<String> includeResult;
+        final Results results = new Results();
+        final StringArray ids = new StringArray();
+        final StringArray dimensionIds = new StringArray();    // API v1 only
+        final DoubleArray values = new DoubleArray();
+        boolean idsRead;
+        boolean dimensionIdsRead;
+        boolean valuesRead;
+        String[] includedIds;           // Set once ids are known
+        boolean[] included;             // Per id position. Set once ids are known
+        boolean valuesFiltered;         // True if only the values of included ids were kept
+
+        Scan(int apiVer, Predicate<String> includeResult) {
+            this.apiVer = apiVer;
+            this.includeResult = includeResult;
+        }
+
+        void idsCompleted() {
+            if (! idsRead || apiVer==1 && ! dimensionIdsRead) return;
+            int n = apiVer==1 ? Math.min(ids.size, dimensionIds.size) : ids.size;
+            included = new boolean[n];
+            StringArray accepted = new StringArray();
+            for (int i=0; i<n; i++) {
+                String id = apiVer==1 ? ids.data[i] + "|" + dimensionIds.data[i] : ids.data[i];
+                if (included[i] = includeResult.test(id))
+                    accepted.add(id);
+            }
+            includedIds = Arrays.copyOf(accepted.data, accepted.size);
+        }
+    }
+
+    static Results extract(@NonNull InputStream in, int apiVer, @NonNull Predicate<String> includeResult) throws IOException {
+        if (apiVer!=1 && apiVer!=2)
+            throw new IllegalArgumentException("Unsupported Netdata API version: "+apiVer);
+        Scan scan = new Scan(apiVer, includeResult);
+
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            if (parser.nextToken()!=JsonToken.START_OBJECT)
+                throw new IOException("Netdata response is not a JSON object");
+            if (apiVer==1)
+                scanV1(parser, scan);
+            else
+                scanV2(parser, "", scan);
+        }
+        if (scan.included==null) {
+            // Ids were missing or incomplete
+            scan.idsRead = scan.dimensionIdsRead = true;
+            scan.idsCompleted();
+        }
+
+        // Combine included ids and values
+        Results results = scan.results;
+        int idCount = scan.included.length;
+        if (idCount!=scan.values.size && ! scan.valuesFiltered)
+            log.debug("NetdataDataExtractor: Number of ids and values differ: ids={}, values={}", idCount, scan.values.size);
+        int n = scan.valuesFiltered
+                ? Math.min(scan.includedIds.length, scan.values.size)
+                : Math.min(idCount, scan.values.size);
+        results.ids = new String[n];
+        results.values = new double[n];
+        results.invalid = new boolean[n];
+        int k = 0;
+        if (scan.valuesFiltered) {
+            for (int i=0; i<n; i++, k++) {
+                results.ids[k] = scan.includedIds[i];
+                results.values[k] = scan.values.data[i];
+                results.invalid[k] = scan.values.invalid[i];
+            }
+        } else {
+            for (int i=0, j=0; i<n; i++) {
+                if (! scan.included[i]) continue;
+                results.ids[k] = scan.includedIds[j++];
+                results.values[k] = scan.values.data[i];
+                results.invalid[k] = scan.values.invalid[i];
+                k++;
+            }
+        }
+        results.size = mergeDuplicates(results.ids, results.values, results.invalid, k);
+        return results;
+    }
+
+    private static void scanV1(JsonParser parser, Scan scan) throws IOException {
+        while (parser.nextToken()==JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "before" -> scan.results.timestamp = parseLong(parser);
+                case "chart_ids" -> {
+                    readStrings(parser, token, scan.ids);
+                    scan.idsRead = true;
+                    scan.idsCompleted();
+                }
+                case "dimension_ids" -> {
+                    readStrings(parser, token, scan.dimensionIds);
+                    scan.dimensionIdsRead = true;
+                    scan.idsCompleted();
+                }
+                case "view_latest_value" -> readValues(parser, token, scan);
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private static void scanV2(JsonParser parser, String path, Scan scan) throws IOException {
+        // Only descends into 'view', 'view.dimensions' and 'view.dimensions.sts'
+        while (parser.nextToken()==JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            String fieldPath = path.isEmpty() ? field : path + "." + field;
+            switch (fieldPath) {
+                case "view", "view.dimensions", "view.dimensions.sts" -> {
+                    if (token==JsonToken.START_OBJECT)
+                        scanV2(parser, fieldPath, scan);
+                    else
+                        parser.skipChildren();
+                }
+                case "view.before" -> scan.results.timestamp = parseLong(parser);
+                case "view.dimensions.ids" -> {
+                    readStrings(parser, token, scan.ids);
+                    scan.idsRead = true;
+                    scan.idsCompleted();
+                }
+                case "view.dimensions.sts.avg" -> readValues(parser, token, scan);
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private static void readValues(JsonParser parser, JsonToken token, Scan scan) throws IOException {
+        if (scan.valuesRead) {
+            parser.skipChildren();
+            return;
+        }
+        scan.valuesRead = true;
+        if (scan.included==null) {
+            // Ids not known yet. Keep all values, and filter them after the scan
+            readDoubles(parser, token, scan.values, null);
+        } else {
+            scan.valuesFiltered = true;
+            readDoubles(parser, token, scan.values, scan.included);
+        }
+    }
+
+    // Merges entries with the same id into the first occurrence, keeping the last valid value. Returns the new size
+    private static int mergeDuplicates(String[] ids, double[] values, boolean[] invalid, int size) {
+        if (size<2) return size;
+
+        // Sort positions by id (stable), so that duplicates become adjacent, in their original order
+        int[] order = new int[size];
+        for (int i=0; i<size; i++) order[i] = i;
+        sortById(order, new int[size], 0, size, ids);
+
+        boolean[] dropped = null;
+        for (int i=1, runStart=0; i<=size; i++) {
+            if (i<size && Objects.equals(ids[order[i]], ids[order[runStart]])) continue;
+            if (i - runStart > 1) {
+                if (dropped==null) dropped = new boolean[size];
+                int first = order[runStart];
+                for (int j=runStart+1; j<i; j++) {
+                    int dup = order[j];
+                    if (! invalid[dup] || invalid[first]) {
+                        values[first] = values[dup];
+                        invalid[first] = invalid[dup];
+                    }
+                    dropped[dup] = true;
+                }
+            }
+            runStart = i;
+        }
+        if (dropped==null) return size;
+
+        int k = 0;
+        for (int i=0; i<size; i++) {
+            if (dropped[i]) continue;
+            ids[k] = ids[i];
+            values[k] = values[i];
+            invalid[k] = invalid[i];
+            k++;
+        }
+        return k;
+    }
+
+    // Stable merge sort of positions, by the ids at these positions (nulls first)
+    private static void sortById(int[] order, int[] tmp, int from, int to, String[] ids) {
+        if (to - from < 2) return;
+        int mid = (from + to) >>> 1;
+        sortById(order, tmp, from, mid, ids);
+        sortById(order, tmp, mid, to, ids);
+        int i = from, j = mid, k = from;
+        while (i<mid && j<to)
+            tmp[k++] = compareIds(ids[order[j]], ids[order[i]])<0 ? order[j++] : order[i++];
+        while (i<mid) tmp[k++] = order[i++];
+        while (j<to) tmp[k++] = order[j++];
+        System.arraycopy(tmp, from, order, from, to - from);
+    }
+
+    private static int compareIds(String a, String b) {
+        if (a==null) return b==null ? 0 : -1;
+        return b==null ? 1 : a.compareTo(b);
+    }
+
+    private static void readStrings(JsonParser parser, JsonToken token, StringArray buffer) throws IOException {
+        if (token!=JsonToken.START_ARRAY) { parser.skipChildren(); return; }
+        while ((token = parser.nextToken())!=JsonToken.END_ARRAY) {
+            buffer.add(token==JsonToken.VALUE_NULL ? null : parser.getText());
+            parser.skipChildren();
+        }
+    }
+
+    // Reads an array of numbers. If 'included' is given, only the values at included positions are kept
+    private static void readDoubles(JsonParser parser, JsonToken token, DoubleArray buffer, boolean[] included) throws IOException {
+        if (token!=JsonToken.START_ARRAY) { parser.skipChildren(); return; }
+        int pos = 0;
+        while ((token = parser.nextToken())!=JsonToken.END_ARRAY) {
+            if (included!=null && (pos>=included.length || ! included[pos++])) {
+                parser.skipChildren();
+                continue;
+            }
+            if (token==JsonToken.VALUE_NUMBER_INT || token==JsonToken.VALUE_NUMBER_FLOAT) {
+                buffer.add(parser.getDoubleValue(), false);
+            } else if (token==JsonToken.VALUE_STRING) {
+                try {
+                    buffer.add(Double.parseDouble(parser.getText()), false);
+                } catch (NumberFormatException e) {
+                    buffer.add(Double.NaN, true);
+                }
+            } else {
+                buffer.add(Double.NaN, true);
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static long parseLong(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token==JsonToken.VALUE_NUMBER_INT || token==JsonToken.VALUE_NUMBER_FLOAT)
+            return parser.getLongValue();
+        if (token==JsonToken.VALUE_STRING)
+            return Long.parseLong(parser.getText().trim());
+        parser.skipChildren();
+        return -1L;
+    }
+}
@@ -12,13 +12,17 @@ package gr.iccs.imu.ems.baguette.client.collector.prometheus;
 import gr.iccs.imu.ems.baguette.client.IClientCollector;
 import gr.iccs.imu.ems.brokercep.event.EventMap;
 import gr.iccs.imu.ems.common.collector.AbstractEndpointCollector;
+import gr.iccs.imu.ems.common.collector.AbstractEndpointCollectorProperties;
+import gr.iccs.imu.ems.common.collector.AdaptiveInterval;
 import gr.iccs.imu.ems.common.collector.CollectorContext;
+import gr.iccs.imu.ems.common.collector.DeadbandFilter;
 import gr.iccs.imu.ems.common.collector.prometheus.IPrometheusCollector;
 import gr.iccs.imu.ems.common.collector.prometheus.OpenMetricsParser;
 import gr.iccs.imu.ems.common.collector.prometheus.PrometheusCollectorProperties;
 import gr.iccs.imu.ems.common.k8s.K8sClient;
 import gr.iccs.imu.ems.util.EventBus;
 import lombok.Data;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.http.ResponseEntity;
@@ -51,6 +55,7 @@ public class PrometheusCollector2 extends AbstractEndpointCollector<String> impl
     private final PrometheusCollectorProperties properties;
     private List<Map<String, Serializable>> configurations = List.of();
     private final List<ScheduledFuture<?>> scrapingTasks = new LinkedList<>();
+    private final List<AdaptiveScrapingTask> adaptiveScrapingTasks = new LinkedList<>();
     private RestClient restClient;
     private OpenMetricsParser openMetricsParser;
     private final LinkedBlockingQueue<EventMap> eventsQueue = new LinkedBlockingQueue<>();
@@ -148,10 +153,19 @@ public class PrometheusCollector2 extends AbstractEndpointCollector<String> impl
                 // Prepare pod filter
                 final PodFilter podFilter = getPrometheusPodFilter(config);
 
-                scrapingTasks.add(taskScheduler.scheduleAtFixedRate(
-                        () -> scrapeEndpoint(url, prometheusMetric, allowedTags, destination, podFilter), startsAt, period));
-                log.info("Collectors::{}: Added monitoring task: prometheus-metric={}, destination={}, url={}, starts-at={}, period={}",
-                        collectorId, prometheusMetric, destination, url, startsAt, period);
+                AbstractEndpointCollectorProperties.AdaptiveIntervalProperties adaptiveSettings = AdaptiveInterval.getSensorSettings(properties.getAdaptive(), config);
+                if (adaptiveSettings!=null) {
+                    AdaptiveInterval adaptiveInterval = new AdaptiveInterval(collectorId, destination, period, adaptiveSettings, AdaptiveInterval.getSensorSloThresholds(config));
+                    AdaptiveScrapingTask task = new AdaptiveScrapingTask(adaptiveInterval,
+                            () -> scrapeEndpoint(url, prometheusMetric, allowedTags, destination, podFilter, adaptiveInterval));
+                    adaptiveScrapingTasks.add(task);
+                    task.future = taskScheduler.schedule(task, startsAt);
+                } else {
+                    scrapingTasks.add(taskScheduler.scheduleAtFixedRate(
+                            () -> scrapeEndpoint(url, prometheusMetric, allowedTags, destination, podFilter, null), startsAt, period));
+                }
+                log.info("Collectors::{}: Added monitoring task: prometheus-metric={}, destination={}, url={}, starts-at={}, period={}, adaptive={}",
+                        collectorId, prometheusMetric, destination, url, startsAt, period, adaptiveSettings!=null);
             } else
                 log.warn("Collectors::{}: applyNewConfigurations: Skipped sensor: {}", collectorId, config);
         });
@@ -166,6 +180,12 @@ public class PrometheusCollector2 extends AbstractEndpointCollector<String> impl
             list.forEach(task -> task.cancel(true));
             log.trace("Collectors::{}: cancelScrapingTasks: Cancelled previous scraping tasks: {}", collectorId, scrapingTasks);
         }
+        if (! adaptiveScrapingTasks.isEmpty()) {
+            List<AdaptiveScrapingTask> list = new ArrayList<>(adaptiveScrapingTasks);
+            adaptiveScrapingTasks.clear();
+            list.forEach(AdaptiveScrapingTask::cancel);
+            log.trace("Collectors::{}: cancelScrapingTasks: Cancelled previous adaptive scraping tasks: {}", collectorId, list.size());
+        }
     }
 
     private boolean checkConfig(Map<String, Serializable> config) {
@@ -301,7 +321,7 @@ public class PrometheusCollector2 extends AbstractEndpointCollector<String> impl
         this.openMetricsParser = new OpenMetricsParser();
     }
 
-    private void scrapeEndpoint(String urlPattern, String prometheusMetric, Map<String, Set<String>> allowedTags, String destination, PodFilter podFilter) {
+    private void scrapeEndpoint(String urlPattern, String prometheusMetric, Map<String, Set<String>> allowedTags, String destination, PodFilter podFilter, AdaptiveInterval adaptiveInterval) {
         log.debug("Collectors::{}: scrapeEndpoint: BEGIN: Scraping Prometheus endpoints for sensor: url-pattern={}, prometheusMetric={}, destination={}, podFilter={}",
                 collectorId, urlPattern, prometheusMetric, destination, podFilter);
 
@@ -361,6 +381,8 @@ public class PrometheusCollector2 extends AbstractEndpointCollector<String> impl
 
                     // Publish extracted values
                     queueForPublish(prometheusMetric, destination, matches, node, url);
+                    if (adaptiveInterval!=null)
+                        matches.forEach(m -> adaptiveInterval.observe(node + "/" + m.getTags(), m.getMetricValue()));
                 }
 
                 log.trace("Collectors::{}: scrapeEndpoint: Done scraping node: {} -- Endpoint: {}", collectorId, node, url);
@@ -395,7 +417,10 @@ public class PrometheusCollector2 extends AbstractEndpointCollector<String> impl
     private void queueForPublish(String prometheusMetric, String destination, List<OpenMetricsParser.MetricInstance> metricInstances, Serializable node, String endpoint) {
         log.debug("Collectors::{}: queueForPublish: metric={}, destination={}, metricInstances={}, node={}, endpoint={}",
                 collectorId, node, prometheusMetric, destination, metricInstances, endpoint);
+        DeadbandFilter filter = deadbandFilter;
         metricInstances.forEach(v -> {
+            if (filter!=null && ! filter.shouldSend(destination, new DeadbandFilter.SeriesKey(node, v.getTags()), v.getMetricValue()))
+                return;
             EventMap event = new EventMap(v.getMetricValue(), 1);
             event.setEventProperty("metric", prometheusMetric);
             event.setEventProperty("source-node", node);
@@ -428,6 +453,30 @@ public class PrometheusCollector2 extends AbstractEndpointCollector<String> impl
         eventPublishThread.start();
     }
 
+    @RequiredArgsConstructor
+    private class AdaptiveScrapingTask implements Runnable {
+        private final AdaptiveInterval adaptiveInterval;
+        private final Runnable scraper;
+        private volatile ScheduledFuture<?> future;
+        private volatile boolean cancelled;
+
+        public void run() {
+            if (cancelled) return;
+            try {
+                scraper.run();
+            } finally {
+                if (! cancelled)
+                    future = taskScheduler.schedule(this, Instant.now().plus(adaptiveInterval.next()));
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            ScheduledFuture<?> f = future;
+            if (f!=null) f.cancel(true);
+        }
+    }
+
     @Data
     private static class PodFilter {
         private final String namePrefix;
@@ -24,18 +24,13 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DurationFormatUtils;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.ApplicationContext;
-import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Component;
 
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
-import java.time.Duration;
-import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Client-side Self-Healing plugin
@@ -52,11 +47,11 @@ public class SelfHealingPlugin implements Plugin, InitializingBean, EventBus.Eve
     private final PasswordUtil passwordUtil;
     private final NodeInfoHelper nodeInfoHelper;
     private final RecoveryContext recoveryContext;
+    private final RecoveryScheduler recoveryScheduler;
 
     private boolean started;
 
-    private final HashMap<NodeKey,ScheduledFuture<?>> waitingTasks = new HashMap<>();
-    private final TaskScheduler taskScheduler;
+    private final HashMap<NodeKey,RecoveryScheduler.ScheduledRecovery> waitingTasks = new HashMap<>();
 
     @Override
     public void afterPropertiesSet() {
@@ -79,6 +74,7 @@ public class SelfHealingPlugin implements Plugin, InitializingBean, EventBus.Eve
         eventBus.subscribe(CommandExecutor.EVENT_CLUSTER_NODE_REMOVED, this);
         eventBus.subscribe(NetdataCollector.NETDATA_NODE_OK, this);
         eventBus.subscribe(NetdataCollector.NETDATA_NODE_FAILED, this);
+        eventBus.subscribe(RecoveryConstant.SELF_HEALING_RECOVERY_FAILED, this);
         log.info("SelfHealingPlugin: Started");
     }
 
@@ -92,12 +88,15 @@ public class SelfHealingPlugin implements Plugin, InitializingBean, EventBus.Eve
         eventBus.unsubscribe(CommandExecutor.EVENT_CLUSTER_NODE_REMOVED, this);
         eventBus.unsubscribe(NetdataCollector.NETDATA_NODE_OK, this);
         eventBus.unsubscribe(NetdataCollector.NETDATA_NODE_FAILED, this);
+        eventBus.unsubscribe(RecoveryConstant.SELF_HEALING_RECOVERY_FAILED, this);
 
         // Cancel all waiting recovery tasks
-        waitingTasks.forEach((nodeKey,future) -> {
-            future.cancel(true);
-        });
-        waitingTasks.clear();
+        synchronized (waitingTasks) {
+            waitingTasks.forEach((nodeKey,recovery) -> {
+                if (recovery!=null) recovery.cancel();
+            });
+            waitingTasks.clear();
+        }
         log.info("SelfHealingPlugin: Stopped");
     }
 
@@ -126,6 +125,12 @@ public class SelfHealingPlugin implements Plugin, InitializingBean, EventBus.Eve
             processNetdataNodeOkEvent(message);
         } else
 
+        // Failed recovery attempts
+        if (RecoveryConstant.SELF_HEALING_RECOVERY_FAILED.equals(topic)) {
+            log.debug("SelfHealingPlugin: onMessage(): RECOVERY FAILED: message={}", message);
+            processRecoveryFailedEvent(message);
+        } else
+
         // Unsupported message
         {
             log.debug("SelfHealingPlugin: onMessage(): Unsupported message: topic={}, message={}, sender={}",
@@ -166,7 +171,7 @@ public class SelfHealingPlugin implements Plugin, InitializingBean, EventBus.Eve
             }
 
             // Cancel any waiting recovery task
-            cancelRecoveryTask(nodeId, nodeAddress, EmsClientRecoveryTask.class, false);
+            cancelRecoveryTask(nodeId, nodeAddress, EmsClientRecoveryTask.class, false, true);
         } else {
             log.warn("SelfHealingPlugin: processClusterNodeAddedEvent(): Message is not a {} object. Will ignore it.", ClusterMembershipEvent.class.getSimpleName());
         }
@@ -234,7 +239,22 @@ public class SelfHealingPlugin implements Plugin, InitializingBean, EventBus.Eve
                 StringUtils.isNotBlank(nodeAddress)
                         ? NetdataAgentRecoveryTask.class
                         : NetdataAgentLocalRecoveryTask.class;
-        cancelRecoveryTask(null, nodeAddress, recoverTaskClass, false);
+        cancelRecoveryTask(null, nodeAddress, recoverTaskClass, false, true);
+    }
+
+    // ------------------------------------------------------------------------
+
+    private void processRecoveryFailedEvent(Object message) {
+        // Report failure to the scheduled recoveries of the node, so that they count against the node circuit breaker
+        String nodeAddress = message!=null ? message.toString() : "";
+        synchronized (waitingTasks) {
+            waitingTasks.forEach((nodeKey, recovery) -> {
+                if (recovery!=null && nodeAddress.equals(nodeKey.getAddress())) {
+                    log.debug("SelfHealingPlugin: processRecoveryFailedEvent(): Recovery attempt failed: target={}", recovery.getTarget());
+                    recoveryScheduler.targetRecoveryFailed(recovery.getTarget());
+                }
+            });
+        }
     }
 
     // ------------------------------------------------------------------------
@@ -263,46 +283,48 @@ public class SelfHealingPlugin implements Plugin, InitializingBean, EventBus.Eve
             log.debug("SelfHealingPlugin: createRecoveryTask(): Node address is blank. Node info will not be retrieved: id={}, address={}", nodeId, nodeAddress);
         }
 
-        // Schedule node recovery task
+        // Schedule node recovery task (with backoff and jitter, subject to recovery concurrency cap and circuit breaker)
         final RecoveryTask recoveryTask = applicationContext.getBean(recoveryTaskClass);
         if (nodeInfo!=null && !nodeInfo.isEmpty())
             recoveryTask.setNodeInfo(nodeInfo);
-        final AtomicInteger retries = new AtomicInteger(0);
-        Instant firstAttempt;
-        Duration retryDelay;
-        ScheduledFuture<?> future = taskScheduler.scheduleWithFixedDelay(
-                () -> {
+        String target = getRecoveryTarget(nodeAddress, recoveryTaskClass);
+        if (recoveryScheduler.isCircuitOpen(target))
+            log.warn("SelfHealingPlugin: createRecoveryTask(): Recovery circuit is open for Node. Recovery will be postponed: id={}, address={}", nodeId, nodeAddress);
+        RecoveryScheduler.ScheduledRecovery recovery = recoveryScheduler.schedule(target,
+                retry -> {
                     try {
-                        log.info("SelfHealingPlugin: Retry #{}: Recovering node: id={}, address={}", retries.get(), nodeId, nodeAddress);
+                        log.info("SelfHealingPlugin: Retry #{}: Recovering node: id={}, address={}", retry, nodeId, nodeAddress);
                         recoveryTask.runNodeRecovery(recoveryContext);
                         //NOTE: 'recoveryTask.runNodeRecovery()' must send SELF_HEALING_RECOVERY_COMPLETED or _FAILED event
                     } catch (Exception e) {
                         log.error("SelfHealingPlugin: EXCEPTION while recovering node: node-address={} -- Exception: ", nodeAddress, e);
                         eventBus.send(RecoveryConstant.SELF_HEALING_RECOVERY_FAILED, nodeAddress);
                     }
-                    if (retries.getAndIncrement() >= selfHealingProperties.getRecovery().getMaxRetries()) {
-                        log.warn("SelfHealingPlugin: Max retries reached. No more recovery retries for node: id={}, address={}", nodeId, nodeAddress);
-                        cancelRecoveryTask(nodeId, nodeAddress, recoveryTaskClass, true);
-                        eventBus.send(RecoveryConstant.SELF_HEALING_RECOVERY_GIVE_UP, nodeAddress);
-
-                        // Notify EMS server about giving up recovery due to permanent failure
-                        commandExecutor.notifyEmsServer("RECOVERY GIVE_UP "+nodeId+" @ "+nodeAddress);
-                    }
                 },
-                firstAttempt = Instant.now().plusMillis(selfHealingProperties.getRecovery().getDelay()),
-                retryDelay = Duration.ofMillis(selfHealingProperties.getRecovery().getRetryDelay())
-        );
-        waitingTasks.put(nodeKey, future);
+                () -> {
+                    log.warn("SelfHealingPlugin: Max retries reached. No more recovery retries for node: id={}, address={}", nodeId, nodeAddress);
+                    cancelRecoveryTask(nodeId, nodeAddress, recoveryTaskClass, true, false);
+                    eventBus.send(RecoveryConstant.SELF_HEALING_RECOVERY_GIVE_UP, nodeAddress);
+
+                    // Notify EMS server about giving up recovery due to permanent failure
+                    commandExecutor.notifyEmsServer("RECOVERY GIVE_UP "+nodeId+" @ "+nodeAddress);
+                });
+        synchronized (waitingTasks) {
+            waitingTasks.put(nodeKey, recovery);
+        }
         log.info("SelfHealingPlugin: createRecoveryTask(): Created recovery task for Node: id={}, address={}, first-attempt-at={}, retry-delay={}",
-                nodeId, nodeAddress, firstAttempt, DurationFormatUtils.formatDurationHMS(retryDelay.toMillis()));
+                nodeId, nodeAddress, recovery.getFirstAttemptAt(),
+                DurationFormatUtils.formatDurationHMS(selfHealingProperties.getRecovery().getRetryDelay()));
     }
 
-    private void cancelRecoveryTask(String nodeId, @NonNull String nodeAddress, @NonNull Class<? extends RecoveryTask> recoveryTaskClass, boolean retainNodeKey) {
+    private void cancelRecoveryTask(String nodeId, @NonNull String nodeAddress, @NonNull Class<? extends RecoveryTask> recoveryTaskClass, boolean retainNodeKey, boolean recovered) {
         NodeKey nodeKey = new NodeKey(nodeAddress, recoveryTaskClass);
         synchronized (waitingTasks) {
-            ScheduledFuture<?> future = retainNodeKey ? waitingTasks.put(nodeKey, null) : waitingTasks.remove(nodeKey);
-            if (future != null) {
-                future.cancel(true);
+            RecoveryScheduler.ScheduledRecovery recovery = retainNodeKey ? waitingTasks.put(nodeKey, null) : waitingTasks.remove(nodeKey);
+            if (recovered)
+                recoveryScheduler.targetRecovered(getRecoveryTarget(nodeAddress, recoveryTaskClass));
+            if (recovery != null) {
+                recovery.cancel();
                 nodeInfoHelper.remove(nodeId, nodeAddress);
                 log.info("SelfHealingPlugin: cancelRecoveryTask(): Cancelled recovery task for Node: id={}, address={}", nodeId, nodeAddress);
             } else
@@ -310,6 +332,10 @@ public class SelfHealingPlugin implements Plugin, InitializingBean, EventBus.Eve
         }
     }
 
+    private static String getRecoveryTarget(String nodeAddress, Class<? extends RecoveryTask> recoveryTaskClass) {
+        return nodeAddress+"/"+recoveryTaskClass.getSimpleName();
+    }
+
     @Data
     @AllArgsConstructor
     protected static class NodeKey {
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.baguette.client;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.channel.ClientChannel;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.mina.MinaServiceFactoryFactory;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.command.Command;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Runs {@link Sshc} against an in-process SSH server, whose shells hand their streams to the test.
+ * The server side plays the role of the Baguette server, sending commands and reading client replies.
+ * The benchmark also runs against the piped-stream channel setup that Sshc used before, for comparison.
+ */
+@Slf4j
+@DisplayName("Sshc Tests")
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class SshcTest {
+    private final static String USERNAME = "client";
+    private final static String PASSWORD = "secret";
+
+    @TempDir
+    Path directory;
+
+    private SshServer sshd;
+    private Sshc sshc;
+    private SshClient pipedClient;
+    private final BlockingQueue<ServerShell> serverShells = new LinkedBlockingQueue<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    // Client side streams of a shell channel
+    private record ClientStreams(InputStream in, PrintStream out) { }
+
+    private class ServerShell implements Command {
+        private InputStream in;
+        private OutputStream out;
+
+        @Override public void setInputStream(InputStream in) { this.in = in; }
+        @Override public void setOutputStream(OutputStream out) { this.out = out; }
+        @Override public void setErrorStream(OutputStream err) { }
+        @Override public void setExitCallback(ExitCallback callback) { }
+        @Override public void start(ChannelSession channel, Environment env) { serverShells.add(this); }
+        @Override public void destroy(ChannelSession channel) { }
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        sshd = SshServer.setUpDefaultServer();
+        sshd.setHost("127.0.0.1");
+        sshd.setPort(0);
+        sshd.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(directory.resolve("hostkey.ser")));
+        sshd.setPasswordAuthenticator((username, password, session) -> USERNAME.equals(username) && PASSWORD.equals(password));
+        sshd.setShellFactory(channel -> new ServerShell());
+        sshd.setIoServiceFactoryFactory(new MinaServiceFactoryFactory());
+        sshd.start();
+
+        BaguetteClientProperties properties = new BaguetteClientProperties();
+        properties.setClientId("test-client");
+        properties.setServerAddress("127.0.0.1");
+        properties.setServerPort(sshd.getPort());
+        properties.setServerUsername(USERNAME);
+        properties.setServerPassword(PASSWORD);
+        properties.setConnectTimeout(10_000);
+        properties.setAuthTimeout(10_000);
+
+        sshc = new Sshc();
+        sshc.setUseServerKeyVerifier(false);
+        sshc.setConfiguration(properties);
+        sshc.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        if (sshc!=null) sshc.stop();
+        if (pipedClient!=null) pipedClient.stop();
+        if (sshd!=null) sshd.stop(true);
+    }
+
+    private ServerShell nextServerShell() throws InterruptedException {
+        ServerShell shell = serverShells.poll(10, TimeUnit.SECONDS);
+        Assertions.assertNotNull(shell, "Shell channel not opened");
+        return shell;
+    }
+
+    // Opens a shell channel linked to the client through two pipes, as Sshc did before reading
+    // and writing the channel streams directly
+    private ClientStreams openPipedChannel() throws IOException {
+        pipedClient = SshClient.setUpDefaultClient();
+        pipedClient.setIoServiceFactoryFactory(new MinaServiceFactoryFactory());
+        pipedClient.start();
+        ClientSession session = pipedClient.connect(USERNAME, "127.0.0.1", sshd.getPort())
+                .verify(10_000)
+                .getSession();
+        session.addPasswordIdentity(PASSWORD);
+        session.auth().verify(10_000);
+
+        ClientChannel channel = session.createChannel(ClientChannel.CHANNEL_SHELL);
+        PipedInputStream pIn = new PipedInputStream();
+        PipedOutputStream pOut = new PipedOutputStream();
+        channel.setIn(new PipedInputStream(pOut));
+        channel.setOut(new PipedOutputStream(pIn));
+        channel.open().verify(10_000);
+        return new ClientStreams(new BufferedInputStream(pIn), new PrintStream(pOut, true));
+    }
+
+    // Server sends messages and reads the client replies (one per message), while the client reads
+    // each message from its input stream and replies through its output stream
+    private List<String> exchange(ServerShell shell, ClientStreams client, List<String> messages, List<String> received) throws Exception {
+        Future<?> serverWriter = executor.submit(() -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(shell.out, StandardCharsets.UTF_8));
+            for (String message : messages) {
+                writer.write(message);
+                writer.write('\n');
+                writer.flush();
+            }
+            return null;
+        });
+        Future<List<String>> serverReader = executor.submit(() -> {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(shell.in, StandardCharsets.UTF_8));
+            List<String> replies = new ArrayList<>();
+            String line;
+            while (replies.size() < messages.size() && (line = reader.readLine())!=null)
+                replies.add(line);
+            return replies;
+        });
+
+        BufferedReader clientReader = new BufferedReader(new InputStreamReader(client.in(), StandardCharsets.UTF_8));
+        for (int i = 0; i < messages.size(); i++) {
+            String line = clientReader.readLine();
+            Assertions.assertNotNull(line, "Channel closed after messages: " + i);
+            received.add(line);
+            client.out().println("-ACK " + i + " " + line.length());
+        }
+
+        serverWriter.get(60, TimeUnit.SECONDS);
+        return serverReader.get(60, TimeUnit.SECONDS);
+    }
+
+    private List<String> exchange(List<String> messages, List<String> received) throws Exception {
+        return exchange(nextServerShell(), new ClientStreams(sshc.getIn(), sshc.getOut()), messages, received);
+    }
+
+    // Server sends one message at a time and waits for its reply. Returns the round-trip time of each message (in nanos)
+    private long[] roundTrips(ServerShell shell, ClientStreams client, List<String> messages) throws Exception {
+        Future<?> clientResponder = executor.submit(() -> {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(client.in(), StandardCharsets.UTF_8));
+            for (int i = 0; i < messages.size(); i++)
+                client.out().println("-ACK " + i + " " + reader.readLine().length());
+            return null;
+        });
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(shell.out, StandardCharsets.UTF_8));
+        BufferedReader reader = new BufferedReader(new InputStreamReader(shell.in, StandardCharsets.UTF_8));
+        long[] latencies = new long[messages.size()];
+        for (int i = 0; i < messages.size(); i++) {
+            long startTime = System.nanoTime();
+            writer.write(messages.get(i));
+            writer.write('\n');
+            writer.flush();
+            String reply = reader.readLine();
+            latencies[i] = System.nanoTime() - startTime;
+            Assertions.assertEquals("-ACK " + i + " " + messages.get(i).length(), reply);
+        }
+        clientResponder.get(60, TimeUnit.SECONDS);
+        return latencies;
+    }
+
+    private static String percentileMicros(long[] sortedLatencies, double percentile) {
+        int index = (int) Math.ceil(percentile / 100 * sortedLatencies.length) - 1;
+        return "%.1f".formatted(sortedLatencies[Math.max(0, index)] / 1000.0);
+    }
+
+    // Runs a pipelined exchange (for throughput) and then one message at a time (for round-trip latency)
+    private void benchmark(String variant, ServerShell shell, ClientStreams client, int count, int roundTripCount) throws Exception {
+        List<String> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            messages.add("EVENT " + i + " " + "v".repeat(100));
+
+        // Warm-up exchanges and round trips are not recorded
+        exchange(shell, client, messages.subList(0, count / 4), new ArrayList<>());
+        roundTrips(shell, client, messages.subList(0, roundTripCount / 4));
+
+        long startTime = System.nanoTime();
+        List<String> received = new ArrayList<>(count);
+        List<String> replies = exchange(shell, client, messages, received);
+        long duration = System.nanoTime() - startTime;
+        Assertions.assertEquals(count, received.size());
+        Assertions.assertEquals(count, replies.size());
+
+        long[] latencies = roundTrips(shell, client, messages.subList(0, roundTripCount));
+        Arrays.sort(latencies);
+        log.info("SshcTest: Benchmark: {}: messages={}, duration={}ms, throughput={} msg/s, round-trips={}, latency (us): p50={}, p90={}, p99={}, p99.9={}, max={}",
+                variant, count, duration / 1_000_000, Math.round(count / (duration / 1e9)), roundTripCount,
+                percentileMicros(latencies, 50), percentileMicros(latencies, 90), percentileMicros(latencies, 99),
+                percentileMicros(latencies, 99.9), percentileMicros(latencies, 100));
+    }
+
+    @Test
+    void messagesAndRepliesArriveInOrder() throws Exception {
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            messages.add("SET-PARAM key-" + i + " value-" + i);
+
+        List<String> received = new ArrayList<>();
+        List<String> replies = exchange(messages, received);
+
+        Assertions.assertEquals(messages, received);
+        Assertions.assertEquals(messages.size(), replies.size());
+        for (int i = 0; i < replies.size(); i++)
+            Assertions.assertEquals("-ACK " + i + " " + messages.get(i).length(), replies.get(i));
+    }
+
+    @Test
+    void messagesLargerThanChannelBuffersArriveIntact() throws Exception {
+        // Larger than the client stream buffers, the SSH packet size and the initial channel window
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            messages.add("SET-CONSTANTS " + i + " " + "x".repeat(256 * 1024 + i));
+
+        List<String> received = new ArrayList<>();
+        List<String> replies = exchange(messages, received);
+
+        Assertions.assertEquals(messages, received);
+        Assertions.assertEquals(messages.size(), replies.size());
+    }
+
+    @Test
+    void benchmarkMessageRoundTrips() throws Exception {
+        int count = 20_000;
+        int roundTripCount = 5_000;
+        benchmark("channel streams", nextServerShell(), new ClientStreams(sshc.getIn(), sshc.getOut()), count, roundTripCount);
+
+        ClientStreams piped = openPipedChannel();
+        benchmark("piped streams", nextServerShell(), piped, count, roundTripCount);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.baguette.client.collector.netdata;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Predicate;
+
+@Slf4j
+@DisplayName("NetdataDataExtractor Tests")
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class NetdataDataExtractorTest {
+    private final static String V1_RESPONSE = """
+            {
+              "api": 1,
+              "id": "",
+              "after": 1700000000,
+              "before": 1700000005,
+              "chart_ids": [ "k8s.cgroup.ns1_pod1.cpu", "k8s.cgroup.ns1_pod1.cpu", "k8s.cgroup.ns2_pod2.cpu", "system.cpu" ],
+              "dimension_ids": [ "user", "system", "user", "idle" ],
+              "latest_values": [ 1, 2, 3, 4 ],
+              "view_latest_value": [ 10.5, 20, "bad", 40 ],
+              "result": { "labels": [ "time", "user", "system" ], "data": [ [ 1700000005, 10.5, 20 ] ] }
+            }
+            """;
+
+    private final static String V2_RESPONSE = """
+            {
+              "api": 2,
+              "summary": { "nodes": [ { "mg": "x" } ], "contexts": [ ] },
+              "view": {
+                "title": "CPU",
+                "after": 1700000000,
+                "before": 1700000010,
+                "dimensions": {
+                  "grouped_by": [ "instance" ],
+                  "ids": [ "ns1_pod1", "ns2_pod2", "ns1_pod3" ],
+                  "names": [ "ns1_pod1", "ns2_pod2", "ns1_pod3" ],
+                  "sts": {
+                    "min": [ 0, 0, 0 ],
+                    "avg": [ 1.5, 2.5, null ],
+                    "max": [ 9, 9, 9 ]
+                  }
+                }
+              },
+              "result": { "data": [ [ 1700000010, 1.5, 2.5, 3.5 ] ] }
+            }
+            """;
+
+    private static NetdataDataExtractor.Results extract(String json, int apiVer, Predicate<String> includeResult) throws IOException {
+        return NetdataDataExtractor.extract(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), apiVer, includeResult);
+    }
+
+    private static List<String> ids(NetdataDataExtractor.Results results) {
+        return Arrays.asList(Arrays.copyOf(results.ids, results.size));
+    }
+
+    @Test
+    void apiV1IdsAndValuesAreExtracted() throws Exception {
+        NetdataDataExtractor.Results results = extract(V1_RESPONSE, 1, id -> true);
+        Assertions.assertEquals(1700000005L, results.timestamp);
+        Assertions.assertEquals(List.of("k8s.cgroup.ns1_pod1.cpu|user", "k8s.cgroup.ns1_pod1.cpu|system",
+                "k8s.cgroup.ns2_pod2.cpu|user", "system.cpu|idle"), ids(results));
+        Assertions.assertEquals(10.5, results.values[0]);
+        Assertions.assertEquals(20, results.values[1]);
+        Assertions.assertTrue(results.invalid[2]);
+        Assertions.assertTrue(Double.isNaN(results.values[2]));
+        Assertions.assertFalse(results.invalid[3]);
+        Assertions.assertEquals(40, results.values[3]);
+    }
+
+    @Test
+    void apiV2IdsAndValuesAreExtracted() throws Exception {
+        NetdataDataExtractor.Results results = extract(V2_RESPONSE, 2, id -> true);
+        Assertions.assertEquals(1700000010L, results.timestamp);
+        Assertions.assertEquals(List.of("ns1_pod1", "ns2_pod2", "ns1_pod3"), ids(results));
+        Assertions.assertEquals(1.5, results.values[0]);
+        Assertions.assertEquals(2.5, results.values[1]);
+        Assertions.assertTrue(results.invalid[2]);
+    }
+
+    @Test
+    void excludedResultsAreSkipped() throws Exception {
+        // API v1: the filter gets the full 'chart|dimension' id
+        List<String> tested = new ArrayList<>();
+        NetdataDataExtractor.Results results = extract(V1_RESPONSE, 1, id -> {
+            tested.add(id);
+            return id.startsWith("k8s.cgroup.ns1_");
+        });
+        Assertions.assertEquals(4, tested.size());
+        Assertions.assertEquals(List.of("k8s.cgroup.ns1_pod1.cpu|user", "k8s.cgroup.ns1_pod1.cpu|system"), ids(results));
+        Assertions.assertEquals(10.5, results.values[0]);
+        Assertions.assertEquals(20, results.values[1]);
+
+        // API v2: the invalid value of the excluded id is not reported
+        results = extract(V2_RESPONSE, 2, id -> ! id.equals("ns1_pod3"));
+        Assertions.assertEquals(List.of("ns1_pod1", "ns2_pod2"), ids(results));
+        Assertions.assertEquals(2.5, results.values[1]);
+        Assertions.assertFalse(results.invalid[0] || results.invalid[1]);
+    }
+
+    @Test
+    void valuesBeforeIdsAreFilteredAfterScan() throws Exception {
+        String json = """
+                { "view_latest_value": [ 1, 2, 3 ], "before": 5, "dimension_ids": [ "a", "b", "c" ], "chart_ids": [ "x", "y", "x" ] }
+                """;
+        NetdataDataExtractor.Results results = extract(json, 1, id -> id.startsWith("x|"));
+        Assertions.assertEquals(5L, results.timestamp);
+        Assertions.assertEquals(List.of("x|a", "x|c"), ids(results));
+        Assertions.assertEquals(1, results.values[0]);
+        Assertions.assertEquals(3, results.values[1]);
+    }
+
+    @Test
+    void duplicateIdsAreMergedAtFirstPositionWithLastValidValue() throws Exception {
+        String json = """
+                { "view": { "before": 7, "dimensions": { "ids": [ "b", "a", "b", "c", "a", "b" ], "sts": { "avg": [ 1, 2, 3, 4, "x", 6 ] } } } }
+                """;
+        NetdataDataExtractor.Results results = extract(json, 2, id -> true);
+        Assertions.assertEquals(List.of("b", "a", "c"), ids(results));
+        Assertions.assertEquals(6, results.values[0]);
+        Assertions.assertEquals(2, results.values[1]);     // The later invalid value does not replace a valid one
+        Assertions.assertFalse(results.invalid[1]);
+        Assertions.assertEquals(4, results.values[2]);
+    }
+
+    @Test
+    void missingValuesGiveNoResults() throws Exception {
+        NetdataDataExtractor.Results results = extract("{ \"view\": { \"dimensions\": { \"ids\": [ \"a\" ] } } }", 2, id -> true);
+        Assertions.assertEquals(0, results.size);
+        Assertions.assertEquals(-1L, results.timestamp);
+    }
+
+    @Test
+    void unsupportedApiVersionIsRejected() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> extract(V2_RESPONSE, 3, id -> true));
+        Assertions.assertThrows(IOException.class, () -> extract("[ 1, 2 ]", 2, id -> true));
+    }
+}
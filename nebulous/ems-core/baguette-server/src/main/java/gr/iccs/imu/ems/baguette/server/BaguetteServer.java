@@ -466,8 +466,7 @@ public class BaguetteServer implements InitializingBean, EventBus.EventConsumer<
     }
 
     private List<String> createClientList(Set<NodeRegistryEntry.STATE> states) {
-        return nodeRegistry.getNodes().stream()
-                .filter(entry->states.contains(entry.getState()))
+        return nodeRegistry.getNodesByState(states).stream()
                 .map(entry -> {
                     log.debug("createClientList: Node ip-address: {}", entry.getIpAddress());
                     log.debug("createClientList: Node preregistration info: {}", entry.getPreregistration());
@@ -479,8 +478,7 @@ public class BaguetteServer implements InitializingBean, EventBus.EventConsumer<
     }
 
     private Map<String, Map<String, String>> createClientMap(Set<NodeRegistryEntry.STATE> states) {
-        return nodeRegistry.getNodes().stream()
-                .filter(entry -> states.contains(entry.getState()))
+        return nodeRegistry.getNodesByState(states).stream()
                 .sorted(Comparator.comparing(NodeRegistryEntry::getClientId))
                 .collect(Collectors.toMap(NodeRegistryEntry::getClientId, entry -> {
                     log.debug("createClientMap: Node ip-address: {}", entry.getIpAddress());
@@ -61,6 +61,10 @@ public class ClientShellCommand implements Command, Runnable, ServerSessionAware
         return activeCmdMap.get(address);
     }
 
+    public static long getStatisticsVersion() {
+        return ClientStatisticsHistory.getGlobalVersion();
+    }
+
     public static ClientShellCommand getActiveById(@NotBlank String id) {
         return activeCmdList.stream().filter(csc->csc.getId().equals(id)).findFirst().orElse(null);
     }
@@ -112,8 +116,8 @@ public class ClientShellCommand implements Command, Runnable, ServerSessionAware
     @Setter
     private NodeRegistryEntry nodeRegistryEntry;
 
-    @Getter
-    private Map<String, Object> clientStatistics;
+    private final ClientStatisticsHistory clientStatisticsHistory = new ClientStatisticsHistory();
+    private final StatisticsDeltaCodec.Decoder clientStatisticsDecoder = new StatisticsDeltaCodec.Decoder();
     @Getter
     private ClientConfiguration clientConfiguration;
 
@@ -429,14 +433,32 @@ public class ClientShellCommand implements Command, Runnable, ServerSessionAware
             } else {
                 log.warn("{}--> Invalid Client property: input line: ", line);
             }
+        } else if (line.startsWith("-STATS-DELTA:")) {
+            Map<String, Number> stats;
+            try {
+                stats = clientStatisticsDecoder.decode(line.substring("-STATS-DELTA:".length()));
+            } catch (Exception e) {
+                log.warn("{}--> Invalid Client STATS frame: {}, Exception: {}", getId(), line, e.getMessage());
+                stats = null;
+            }
+            if (stats!=null) {
+                Map<String, Object> statsMap = new LinkedHashMap<>(stats);
+                statsMap.put("_received_at_server_timestamp", System.currentTimeMillis());
+                log.trace("{}--> Client STATS received: {}", getId(), statsMap);
+                clientStatisticsHistory.add(statsMap);
+            } else {
+                log.debug("{}--> Client STATS out of sequence. Requesting full statistics", getId());
+                sendCommand("SEND-STATS FULL", Level.DEBUG);
+            }
         } else if (line.startsWith("-STATS:")) {
+            // Java-serialized statistics sent by older EMS clients
             String statsStr = line.substring("-STATS:".length());
             Object statsObj = SerializationUtil.deserializeFromString(statsStr);
             if (statsObj instanceof Map) {
                 Map<String, Object> statsMap = StrUtil.castToMapStringObject(statsObj);
                 statsMap.put("_received_at_server_timestamp", System.currentTimeMillis());
                 log.debug("{}--> Client STATS received: {}", getId(), statsMap);
-                this.clientStatistics = statsMap;
+                clientStatisticsHistory.add(statsMap);
             } else if (statsObj==null) {
                 log.debug("{}--> Client STATS object is NULL", getId());
             } else {
@@ -535,6 +557,25 @@ public class ClientShellCommand implements Command, Runnable, ServerSessionAware
             this.clientPort = getClientPort();
     }
 
+    /**
+     * Returns a (modifiable) copy of the latest client statistics, or null if none have been received
+     */
+    public Map<String, Object> getClientStatistics() {
+        Map<String, Object> stats = clientStatisticsHistory.latest();
+        return stats!=null ? new LinkedHashMap<>(stats) : null;
+    }
+
+    /**
+     * Returns the latest (unmodifiable) client statistics snapshot, or null if none have been received
+     */
+    public Map<String, Object> getClientStatisticsSnapshot() {
+        return clientStatisticsHistory.latest();
+    }
+
+    public List<Map<String, Object>> getClientStatisticsHistory() {
+        return clientStatisticsHistory.asList();
+    }
+
     public String getClientId() {
         if (StringUtils.isNotBlank(clientId)) return clientId;
         clientId = getId();
@@ -615,6 +656,7 @@ public class ClientShellCommand implements Command, Runnable, ServerSessionAware
     public Object readFromClient(String cmd, Level logLevel) {
         String uuid = UUID.randomUUID().toString();
         log.trace("ClientShellCommand.readFromClient: uuid={}, cmd={}", uuid, cmd);
+        long startTm = System.currentTimeMillis();
         Object oldValue = inputsMap.remove(uuid);
         log.trace("ClientShellCommand.readFromClient: uuid={}, old-inputMap-value={}", uuid, oldValue);
         log.trace("ClientShellCommand.readFromClient: uuid={}, inputMap-BEFORE={}", uuid, inputsMap);
@@ -627,6 +669,8 @@ public class ClientShellCommand implements Command, Runnable, ServerSessionAware
         log.trace("ClientShellCommand.readFromClient: uuid={}, inputMap-BEFORE={}", uuid, inputsMap);
         Object input = inputsMap.remove(uuid);
         log.trace("ClientShellCommand.readFromClient: uuid={}, Input found: {}", uuid, input);
+        EmsMetrics.recordSampled(System.currentTimeMillis() - startTm, "ems.baguette.command.round-trip",
+                "command", StringUtils.substringBefore(cmd.trim(), " "));
         return input;
     }
 
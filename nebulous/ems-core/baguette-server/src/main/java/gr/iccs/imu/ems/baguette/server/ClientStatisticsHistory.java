@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.baguette.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-size ring of (immutable) EMS client statistics snapshots, precomputed when statistics are received,
+ * so that readers (info service, web admin, topic beacon) do not need to assemble them.
+ */
+public class ClientStatisticsHistory {
+    public final static int DEFAULT_SIZE = 30;
+    private final static AtomicLong globalVersion = new AtomicLong();
+
+    private final Object[] ring;
+    private int next;
+    private int size;
+    private volatile Map<String, Object> latest;
+
+    public ClientStatisticsHistory() {
+        this(DEFAULT_SIZE);
+    }
+
+    public ClientStatisticsHistory(int capacity) {
+        ring = new Object[Math.max(1, capacity)];
+    }
+
+    /**
+     * Version incremented on every statistics update of any EMS client
+     */
+    public static long getGlobalVersion() {
+        return globalVersion.get();
+    }
+
+    public synchronized void add(Map<String, Object> stats) {
+        Map<String, Object> snapshot = Collections.unmodifiableMap(stats);
+        ring[next] = snapshot;
+        next = (next + 1) % ring.length;
+        if (size < ring.length) size++;
+        latest = snapshot;
+        globalVersion.incrementAndGet();
+    }
+
+    public Map<String, Object> latest() {
+        return latest;
+    }
+
+    /**
+     * Snapshots, from the oldest to the latest
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized List<Map<String, Object>> asList() {
+        List<Map<String, Object>> list = new ArrayList<>(size);
+        int start = (next - size + ring.length) % ring.length;
+        for (int i=0; i<size; i++)
+            list.add((Map<String, Object>) ring[(start + i) % ring.length]);
+        return list;
+    }
+}
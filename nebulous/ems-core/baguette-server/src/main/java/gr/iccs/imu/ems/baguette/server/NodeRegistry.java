@@ -9,6 +9,7 @@
 
 package gr.iccs.imu.ems.baguette.server;
 
+import gr.iccs.imu.ems.baguette.server.coordinator.cluster.IClusterZone;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
@@ -19,24 +20,44 @@ import org.springframework.stereotype.Service;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
- * Node Registry
+ * Node Registry.
+ * Nodes are kept in a concurrent map keyed by IP address, with secondary indexes by client id, reference,
+ * state and cluster zone. Lookups never lock. Registry changes (and index updates) are serialized,
+ * and readers get immutable snapshots of the node list, in registration order. Changes only invalidate
+ * the snapshot, and the first read after them rebuilds it, so registering N nodes costs O(N) rather than O(N²).
+ * State and zone indexes are ordered by registration sequence, so their lookups return nodes in registration order too.
+ * Entries notify the registry when their state, zone or reference change, so that indexes are kept up-to-date.
  */
 @Slf4j
 @Service
 public class NodeRegistry {
-    private final Map<String,NodeRegistryEntry> registry = new LinkedHashMap<>();
+    private final Map<String,NodeRegistryEntry> registry = new ConcurrentHashMap<>();
+    private final Map<String,NodeRegistryEntry> byClientId = new ConcurrentHashMap<>();
+    private final Map<String,NodeRegistryEntry> byReference = new ConcurrentHashMap<>();
+    private final Map<NodeRegistryEntry.STATE,Map<Long,NodeRegistryEntry>> byState = new ConcurrentHashMap<>();
+    private final Map<String,Map<Long,NodeRegistryEntry>> byZone = new ConcurrentHashMap<>();
+    private final Map<String,IndexKeys> indexKeys = new LinkedHashMap<>();   // Index keys of registered entries (by IP address, in registration order)
+    private long registrationSequence;
     private final List<NodeRegistryEntry> archived = new LinkedList<>();
+    private volatile Snapshot snapshot = EMPTY_SNAPSHOT;                   // Null when stale
     @Getter @Setter
     private ServerCoordinator coordinator;
 
-    public synchronized NodeRegistryEntry addNode(Map<String,Object> nodeInfo, String clientId) throws UnknownHostException {
+    private record IndexKeys(long sequence, String clientId, String reference, NodeRegistryEntry.STATE state, String zoneId) { }
+
+    private record Snapshot(List<NodeRegistryEntry> nodes, List<String> addresses) { }
+
+    private final static Snapshot EMPTY_SNAPSHOT = new Snapshot(List.of(), List.of());
+
+    public NodeRegistryEntry addNode(Map<String,Object> nodeInfo, String clientId) throws UnknownHostException {
         String hostnameOrAddress = getIpAddressFromNodeInfo(nodeInfo);
         String ipAddress = hostnameOrAddress;
 
-        // Get IP address from provided hostname or address
+        // Get IP address from provided hostname or address (outside the registry lock, since it might take long)
         Throwable errorObj = null;
         if (StringUtils.isNotBlank(ipAddress)) {
             try {
@@ -58,28 +79,31 @@ public class NodeRegistry {
         nodeInfo.put("original-address", hostnameOrAddress);
         nodeInfo.put("address", ipAddress);
 
-        // Check if an entry with the same IP address is already registered
-        NodeRegistryEntry entry = registry.get(ipAddress);
-        if (entry!=null) {
-            log.debug("NodeRegistry.addNode(): Node already pre-registered: ip-address={}\nOld Node Info: {}\nNew Node Info: {}",
-                    ipAddress, entry, nodeInfo);
-            if (coordinator!=null && coordinator.allowAlreadyPreregisteredNode(nodeInfo)) {
-                log.info("NodeRegistry.addNode(): PREVIOUS NODE INFO WILL BE OVERWRITTEN: ip-address={}\nOld Node Info: {}\nNew Node Info: {}",
+        synchronized (this) {
+            // Check if an entry with the same IP address is already registered
+            NodeRegistryEntry entry = registry.get(ipAddress);
+            if (entry!=null) {
+                log.debug("NodeRegistry.addNode(): Node already pre-registered: ip-address={}\nOld Node Info: {}\nNew Node Info: {}",
                         ipAddress, entry, nodeInfo);
-            } else {
-                log.error("NodeRegistry.addNode(): Node already pre-registered and coordinator does not allow new pre-registration requests to overwrite the existing one: ip-address={}\nOld Node Info: {}\nNew Node Info: {}",
-                        ipAddress, entry, nodeInfo);
-                throw new IllegalStateException("NODE ALREADY PRE-REGISTERED: "+ipAddress);
+                if (coordinator!=null && coordinator.allowAlreadyPreregisteredNode(nodeInfo)) {
+                    log.info("NodeRegistry.addNode(): PREVIOUS NODE INFO WILL BE OVERWRITTEN: ip-address={}\nOld Node Info: {}\nNew Node Info: {}",
+                            ipAddress, entry, nodeInfo);
+                    unregister(entry);
+                } else {
+                    log.error("NodeRegistry.addNode(): Node already pre-registered and coordinator does not allow new pre-registration requests to overwrite the existing one: ip-address={}\nOld Node Info: {}\nNew Node Info: {}",
+                            ipAddress, entry, nodeInfo);
+                    throw new IllegalStateException("NODE ALREADY PRE-REGISTERED: "+ipAddress);
+                }
             }
-        }
 
-        // Create and register node registry entry
-        entry = new NodeRegistryEntry(ipAddress, clientId, coordinator.getServer()).nodePreregistration(nodeInfo);
-        if (errorObj!=null) entry.getErrors().add(errorObj);
-        nodeInfo.put("baguette-client-id", clientId);
-        registry.put(ipAddress, entry);
-        log.debug("NodeRegistry.addNode(): Added info for node at address: {}\nNode info: {}", ipAddress, nodeInfo);
-        return entry;
+            // Create and register node registry entry
+            entry = new NodeRegistryEntry(ipAddress, clientId, coordinator.getServer()).nodePreregistration(nodeInfo);
+            if (errorObj!=null) entry.getErrors().add(errorObj);
+            nodeInfo.put("baguette-client-id", clientId);
+            register(entry);
+            log.debug("NodeRegistry.addNode(): Added info for node at address: {}\nNode info: {}", ipAddress, nodeInfo);
+            return entry;
+        }
     }
 
     public synchronized void removeNode(NodeRegistryEntry nodeEntry) {
@@ -93,7 +117,8 @@ public class NodeRegistry {
     }
 
     public synchronized void removeNode(String ipAddress) {
-        registry.remove(ipAddress);
+        NodeRegistryEntry entry = ipAddress!=null ? registry.get(ipAddress) : null;
+        if (entry!=null) unregister(entry);
         log.debug("NodeRegistry.removeNode(): Removed info for node at address: {}", ipAddress);
     }
 
@@ -106,38 +131,85 @@ public class NodeRegistry {
     }
 
     public synchronized void clearNodes() {
+        registry.values().forEach(entry -> entry.setIndexListener(null));
         registry.clear();
+        byClientId.clear();
+        byReference.clear();
+        byState.clear();
+        byZone.clear();
+        indexKeys.clear();
+        registrationSequence = 0;
+        snapshot = EMPTY_SNAPSHOT;
         log.debug("NodeRegistry.clearNodes(): Cleared node info registry");
     }
 
     public NodeRegistryEntry getNodeByAddress(String ipAddress) {
-        NodeRegistryEntry entry = registry.get(ipAddress);
+        NodeRegistryEntry entry = ipAddress!=null ? registry.get(ipAddress) : null;
         log.debug("NodeRegistry.getNodeByAddress(): Returning info for node at address: {}\nNode Info: {}", ipAddress, entry);
         return entry;
     }
 
     public NodeRegistryEntry getNodeByReference(String ref) {
-        return registry.values().stream()
-                .filter(n->n.getReference().equals(ref))
-                .findAny().orElse(null);
+        return ref!=null ? byReference.get(ref) : null;
     }
 
     public NodeRegistryEntry getNodeByClientId(String clientId) {
-        return registry.values().stream()
-                .filter(n->n.getClientId().equals(clientId))
-                .findAny().orElse(null);
+        return clientId!=null ? byClientId.get(clientId) : null;
+    }
+
+    public List<NodeRegistryEntry> getNodesByState(@NonNull NodeRegistryEntry.STATE state) {
+        Map<Long,NodeRegistryEntry> nodes = byState.get(state);
+        return nodes!=null ? List.copyOf(nodes.values()) : List.of();
+    }
+
+    public List<NodeRegistryEntry> getNodesByState(@NonNull Set<NodeRegistryEntry.STATE> states) {
+        // Merge per-state results by registration sequence
+        TreeMap<Long,NodeRegistryEntry> result = new TreeMap<>();
+        states.forEach(state -> {
+            Map<Long,NodeRegistryEntry> nodes = byState.get(state);
+            if (nodes!=null) result.putAll(nodes);
+        });
+        return List.copyOf(result.values());
+    }
+
+    public List<NodeRegistryEntry> getNodesByZone(String zoneId) {
+        Map<Long,NodeRegistryEntry> nodes = zoneId!=null ? byZone.get(zoneId) : null;
+        return nodes!=null ? List.copyOf(nodes.values()) : List.of();
+    }
+
+    public int getNodeCount() {
+        return registry.size();
     }
 
     public Collection<String> getNodeAddresses() {
-        return registry.keySet();
+        return getSnapshot().addresses();
     }
 
     public Collection<NodeRegistryEntry> getNodes() {
-        return registry.values();
+        return getSnapshot().nodes();
     }
 
     public Collection<String> getNodeReferences() {
-        return registry.values().stream().map(NodeRegistryEntry::getReference).collect(Collectors.toList());
+        return getSnapshot().nodes().stream().map(NodeRegistryEntry::getReference).toList();
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot s = snapshot;
+        return s!=null ? s : buildSnapshot();
+    }
+
+    private synchronized Snapshot buildSnapshot() {
+        // Another reader might have rebuilt the snapshot while this one was waiting for the lock
+        if (snapshot!=null) return snapshot;
+        List<NodeRegistryEntry> nodes = new ArrayList<>(indexKeys.size());
+        List<String> addresses = new ArrayList<>(indexKeys.size());
+        indexKeys.keySet().forEach(ipAddress -> {
+            nodes.add(registry.get(ipAddress));
+            addresses.add(ipAddress);
+        });
+        Snapshot s = new Snapshot(Collections.unmodifiableList(nodes), Collections.unmodifiableList(addresses));
+        snapshot = s;
+        return s;
     }
 
     public synchronized void archiveNode(@NonNull NodeRegistryEntry entry) {
@@ -159,7 +231,80 @@ public class NodeRegistry {
 
         // Archive node
         archived.add(entry);
-        registry.remove(entry.getIpAddress());
+        unregister(entry);
         entry.nodeArchived(null);
     }
+
+    // ------------------------------------------------------------------------
+    //  Index maintenance. Callers must hold the registry lock, except for 'reindex'
+    // ------------------------------------------------------------------------
+
+    private void register(NodeRegistryEntry entry) {
+        String ipAddress = entry.getIpAddress();
+        registry.put(ipAddress, entry);
+        updateIndexes(entry);
+        entry.setIndexListener(this::reindex);
+        snapshot = null;
+    }
+
+    private void unregister(NodeRegistryEntry entry) {
+        String ipAddress = entry.getIpAddress();
+        if (registry.get(ipAddress)!=entry) return;
+        entry.setIndexListener(null);
+        registry.remove(ipAddress);
+        IndexKeys keys = indexKeys.remove(ipAddress);
+        if (keys!=null) removeFromIndexes(entry, keys);
+        snapshot = null;
+    }
+
+    // Called by entries when their state, zone or reference change
+    private synchronized void reindex(NodeRegistryEntry entry) {
+        if (registry.get(entry.getIpAddress())!=entry) return;
+        updateIndexes(entry);
+    }
+
+    private void updateIndexes(NodeRegistryEntry entry) {
+        // Read current values from entry, so concurrent changes of the same entry end up in the latest values.
+        // A newly registered entry gets the next registration sequence, which orders it in state and zone indexes
+        IndexKeys oldKeys = indexKeys.get(entry.getIpAddress());
+        long sequence = oldKeys!=null ? oldKeys.sequence() : ++registrationSequence;
+        IClusterZone zone = entry.getClusterZone();
+        IndexKeys newKeys = new IndexKeys(sequence, entry.getClientId(), entry.getReference(), entry.getState(),
+                zone!=null ? zone.getId() : null);
+        if (newKeys.equals(oldKeys)) return;
+        indexKeys.put(entry.getIpAddress(), newKeys);
+        if (oldKeys!=null) removeFromIndexes(entry, oldKeys);
+
+        if (newKeys.clientId()!=null) byClientId.put(newKeys.clientId(), entry);
+        if (newKeys.reference()!=null) byReference.put(newKeys.reference(), entry);
+        if (newKeys.state()!=null)
+            byState.computeIfAbsent(newKeys.state(), s -> new ConcurrentSkipListMap<>()).put(sequence, entry);
+        if (newKeys.zoneId()!=null)
+            byZone.computeIfAbsent(newKeys.zoneId(), z -> new ConcurrentSkipListMap<>()).put(sequence, entry);
+    }
+
+    private void removeFromIndexes(NodeRegistryEntry entry, IndexKeys keys) {
+        if (keys.clientId()!=null) removeIfSame(byClientId, keys.clientId(), entry);
+        if (keys.reference()!=null) removeIfSame(byReference, keys.reference(), entry);
+        if (keys.state()!=null) {
+            Map<Long,NodeRegistryEntry> nodes = byState.get(keys.state());
+            if (nodes!=null) removeIfSame(nodes, keys.sequence(), entry);
+        }
+        if (keys.zoneId()!=null) {
+            Map<Long,NodeRegistryEntry> nodes = byZone.get(keys.zoneId());
+            if (nodes!=null && removeIfSame(nodes, keys.sequence(), entry) && nodes.isEmpty())
+                byZone.remove(keys.zoneId());
+        }
+    }
+
+    // Entries are compared by identity, since their equals() depends on mutable fields
+    private static <K> boolean removeIfSame(Map<K,NodeRegistryEntry> index, K key, NodeRegistryEntry entry) {
+        boolean[] removed = { false };
+        index.computeIfPresent(key, (k, v) -> {
+            if (v!=entry) return v;
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
 }
@@ -17,6 +17,7 @@ import org.apache.commons.lang3.StringUtils;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.function.Consumer;
 
 @Data
 @AllArgsConstructor
@@ -34,9 +35,10 @@ public class NodeRegistryEntry {
     @JsonIgnore
     private final transient BaguetteServer baguetteServer;
     @Getter private String hostname;
-    @Getter private STATE state = null;
+    @Getter private volatile STATE state = null;
     @Getter private Instant stateLastUpdate;
-    @Getter private String reference = UUID.randomUUID().toString();
+    @Getter @Setter(AccessLevel.NONE)
+    private String reference = UUID.randomUUID().toString();     // Changed only by refreshReference(), which updates the registry indexes
     @Getter private List<Object> errors = new LinkedList<>();
     @JsonIgnore
     @Getter private transient Map<String, String> preregistration = new LinkedHashMap<>();
@@ -47,7 +49,10 @@ public class NodeRegistryEntry {
     @JsonIgnore
     @Getter private transient Map<String, String> removal = new LinkedHashMap<>();
     @JsonIgnore
-    @Getter @Setter private transient IClusterZone clusterZone;
+    @Getter private transient IClusterZone clusterZone;
+    @JsonIgnore @ToString.Exclude @EqualsAndHashCode.Exclude
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.PACKAGE)
+    private transient Consumer<NodeRegistryEntry> indexListener;    // Notified when an indexed field changes
 
     @JsonIgnore
     public BaguetteServer getBaguetteServer() {
@@ -71,11 +76,27 @@ public class NodeRegistryEntry {
     }
 
     private void setState(@NonNull STATE s) {
+        boolean changed = state != s;
         state = s;
         stateLastUpdate = Instant.now();
+        if (changed) notifyIndexListener();
     }
 
-    public void refreshReference() { reference = UUID.randomUUID().toString(); }
+    public void setClusterZone(IClusterZone zone) {
+        boolean changed = clusterZone != zone;
+        clusterZone = zone;
+        if (changed) notifyIndexListener();
+    }
+
+    public void refreshReference() {
+        reference = UUID.randomUUID().toString();
+        notifyIndexListener();
+    }
+
+    private void notifyIndexListener() {
+        Consumer<NodeRegistryEntry> listener = indexListener;
+        if (listener != null) listener.accept(this);
+    }
 
     public boolean canRecover() {
         return state != null && switch (state) {
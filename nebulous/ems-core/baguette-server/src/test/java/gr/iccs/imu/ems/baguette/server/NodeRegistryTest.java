@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.baguette.server;
+
+import gr.iccs.imu.ems.baguette.server.coordinator.cluster.IClusterZone;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@Slf4j
+@DisplayName("NodeRegistry Tests")
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class NodeRegistryTest {
+    private final static NodeRegistryEntry.STATE[] FINAL_STATES = {
+            NodeRegistryEntry.STATE.INSTALLED, NodeRegistryEntry.STATE.REGISTERED,
+            NodeRegistryEntry.STATE.DISCONNECTED, NodeRegistryEntry.STATE.NODE_FAILED };
+
+    private NodeRegistry registry;
+
+    @BeforeEach
+    public void setUp() {
+        ServerCoordinator coordinator = mock(ServerCoordinator.class, withSettings().stubOnly());
+        when(coordinator.allowAlreadyPreregisteredNode(any())).thenReturn(true);
+        registry = new NodeRegistry();
+        registry.setCoordinator(coordinator);
+    }
+
+    private static IClusterZone zone(String id) {
+        IClusterZone zone = mock(IClusterZone.class, withSettings().stubOnly());
+        when(zone.getId()).thenReturn(id);
+        return zone;
+    }
+
+    private static String address(int i) {
+        return "10.%d.%d.%d".formatted(i >> 16 & 0xFF, i >> 8 & 0xFF, i & 0xFF);
+    }
+
+    private NodeRegistryEntry addNode(int i) throws Exception {
+        Map<String,Object> nodeInfo = new HashMap<>();
+        nodeInfo.put("address", address(i));
+        nodeInfo.put("id", "node-" + i);
+        return registry.addNode(nodeInfo, "client-" + i);
+    }
+
+    private static List<String> addresses(Collection<NodeRegistryEntry> entries) {
+        return entries.stream().map(NodeRegistryEntry::getIpAddress).toList();
+    }
+
+    @Test
+    void indexesFollowEntryChanges() throws Exception {
+        NodeRegistryEntry entry = addNode(1);
+        Assertions.assertSame(entry, registry.getNodeByAddress(address(1)));
+        Assertions.assertSame(entry, registry.getNodeByClientId("client-1"));
+        Assertions.assertSame(entry, registry.getNodeByReference(entry.getReference()));
+        Assertions.assertEquals(List.of(entry), registry.getNodesByState(NodeRegistryEntry.STATE.PREREGISTERED));
+
+        entry.nodeInstalling(null);
+        Assertions.assertTrue(registry.getNodesByState(NodeRegistryEntry.STATE.PREREGISTERED).isEmpty());
+        Assertions.assertEquals(List.of(entry), registry.getNodesByState(NodeRegistryEntry.STATE.INSTALLING));
+
+        String oldReference = entry.getReference();
+        entry.refreshReference();
+        Assertions.assertNull(registry.getNodeByReference(oldReference));
+        Assertions.assertSame(entry, registry.getNodeByReference(entry.getReference()));
+
+        IClusterZone zone = zone("zone-1");
+        entry.setClusterZone(zone);
+        Assertions.assertEquals(List.of(entry), registry.getNodesByZone("zone-1"));
+        entry.setClusterZone(null);
+        Assertions.assertTrue(registry.getNodesByZone("zone-1").isEmpty());
+
+        registry.removeNode(entry);
+        Assertions.assertNull(registry.getNodeByAddress(address(1)));
+        Assertions.assertNull(registry.getNodeByClientId("client-1"));
+        Assertions.assertTrue(registry.getNodesByState(NodeRegistryEntry.STATE.INSTALLING).isEmpty());
+
+        // Removed entries no longer update the indexes
+        entry.nodeInstallationComplete(null);
+        Assertions.assertTrue(registry.getNodesByState(NodeRegistryEntry.STATE.INSTALLED).isEmpty());
+    }
+
+    @Test
+    void nodesByStateAreReturnedInRegistrationOrder() throws Exception {
+        List<NodeRegistryEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            entries.add(addNode(9 - i).nodeInstalling(null));
+
+        // State changes do not affect the order
+        entries.get(0).nodeInstallationComplete(null);
+        entries.get(0).nodeInstalling(null);
+        Assertions.assertEquals(addresses(entries), addresses(registry.getNodesByState(NodeRegistryEntry.STATE.INSTALLING)));
+
+        // Mixed states are merged in registration order
+        for (int i = 0; i < entries.size(); i += 2)
+            entries.get(i).nodeInstallationComplete(null);
+        Assertions.assertEquals(addresses(entries), addresses(registry.getNodesByState(
+                Set.of(NodeRegistryEntry.STATE.INSTALLED, NodeRegistryEntry.STATE.INSTALLING))));
+
+        // A re-registered node goes to the end, as in getNodes()
+        NodeRegistryEntry replaced = addNode(9).nodeInstalling(null);
+        List<String> expected = new ArrayList<>(addresses(registry.getNodes()));
+        Assertions.assertEquals(address(9), expected.get(expected.size() - 1));
+        Assertions.assertEquals(List.of(replaced), registry.getNodesByState(NodeRegistryEntry.STATE.INSTALLING).stream()
+                .filter(e -> e.getIpAddress().equals(address(9))).toList());
+        Assertions.assertEquals(expected, addresses(registry.getNodesByState(
+                Set.of(NodeRegistryEntry.STATE.INSTALLED, NodeRegistryEntry.STATE.INSTALLING))));
+    }
+
+    @Test
+    void nodeListIsRebuiltOnlyWhenReadAfterChanges() throws Exception {
+        int count = 50_000;
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) addNode(i);
+        log.info("NodeRegistryTest: Registered {} nodes in {}ms", count, System.currentTimeMillis() - startTime);
+
+        Collection<NodeRegistryEntry> nodes = registry.getNodes();
+        Assertions.assertEquals(count, nodes.size());
+        Assertions.assertSame(nodes, registry.getNodes());
+        Assertions.assertEquals(addresses(nodes), List.copyOf(registry.getNodeAddresses()));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> nodes.remove(nodes.iterator().next()));
+
+        // Snapshots already returned are not affected by later changes
+        registry.removeNode(address(0));
+        NodeRegistryEntry replaced = addNode(1);
+        Assertions.assertEquals(count, nodes.size());
+        List<String> expected = new ArrayList<>();
+        for (int i = 2; i < count; i++) expected.add(address(i));
+        expected.add(address(1));
+        Assertions.assertEquals(expected, addresses(registry.getNodes()));
+        Assertions.assertSame(replaced, List.copyOf(registry.getNodes()).get(count - 2));
+
+        registry.clearNodes();
+        Assertions.assertTrue(registry.getNodes().isEmpty());
+        Assertions.assertTrue(registry.getNodeAddresses().isEmpty());
+    }
+
+    @Test
+    void entryHashCodeDoesNotDependOnRegistration() throws Exception {
+        NodeRegistryEntry entry = addNode(1);
+        int hashCode = entry.hashCode();
+        Map<NodeRegistryEntry,String> map = new HashMap<>();
+        map.put(entry, "pending");
+
+        registry.removeNode(entry);
+        Assertions.assertEquals(hashCode, entry.hashCode());
+        Assertions.assertEquals("pending", map.get(entry));
+    }
+
+    @Test
+    void concurrentRegistrationsUpdatesAndQueriesKeepIndexesConsistent() throws Exception {
+        int workers = 8;
+        int nodesPerWorker = 500;
+        int queriers = 4;
+        IClusterZone[] zones = { zone("zone-0"), zone("zone-1"), zone("zone-2") };
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong queries = new AtomicLong();
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+
+        long startTime = System.currentTimeMillis();
+        try (ExecutorService executor = Executors.newFixedThreadPool(workers + queriers)) {
+            // Queriers run lookups, while workers change the registry
+            List<Future<?>> queryFutures = new ArrayList<>();
+            for (int q = 0; q < queriers; q++) {
+                queryFutures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (running.get()) {
+                        try {
+                            int i = random.nextInt(workers * nodesPerWorker);
+                            NodeRegistryEntry byAddress = registry.getNodeByAddress(address(i));
+                            NodeRegistryEntry byClientId = registry.getNodeByClientId("client-" + i);
+                            if (byClientId!=null && ! byClientId.getIpAddress().equals(address(i)))
+                                throw new AssertionError("Wrong node for client id: " + byClientId);
+                            if (byAddress!=null && ! byAddress.getClientId().equals("client-" + i))
+                                throw new AssertionError("Wrong node for address: " + byAddress);
+
+                            List<NodeRegistryEntry> nodes = registry.getNodesByState(FINAL_STATES[random.nextInt(FINAL_STATES.length)]);
+                            if (new HashSet<>(addresses(nodes)).size()!=nodes.size())
+                                throw new AssertionError("Duplicate nodes in state index");
+                            registry.getNodesByZone(zones[random.nextInt(zones.length)].getId());
+                            registry.getNodes().size();
+                            queries.incrementAndGet();
+                        } catch (Throwable t) {
+                            errors.add(t);
+                        }
+                    }
+                }));
+            }
+
+            // Each worker registers its own nodes, moves them through states and zones, and removes every 10th node
+            List<Future<?>> workerFutures = new ArrayList<>();
+            for (int w = 0; w < workers; w++) {
+                final int worker = w;
+                workerFutures.add(executor.submit(() -> {
+                    for (int n = 0; n < nodesPerWorker; n++) {
+                        int i = worker * nodesPerWorker + n;
+                        NodeRegistryEntry entry = addNode(i);
+                        entry.nodeInstalling(null);
+                        entry.setClusterZone(zones[(i + 1) % zones.length]);
+                        entry.nodeInstallationComplete(null);
+                        entry.refreshReference();
+                        entry.setClusterZone(zones[i % zones.length]);
+                        switch (FINAL_STATES[i % FINAL_STATES.length]) {
+                            case REGISTERED -> entry.nodeRegistered(Map.of());
+                            case DISCONNECTED -> entry.nodeDisconnected(Map.of());
+                            case NODE_FAILED -> entry.nodeFailed(Map.of());
+                            default -> { }
+                        }
+                        if (i % 10 == 0) registry.removeNode(address(i));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : workerFutures) future.get(60, TimeUnit.SECONDS);
+            running.set(false);
+            for (Future<?> future : queryFutures) future.get(10, TimeUnit.SECONDS);
+        }
+        long duration = System.currentTimeMillis() - startTime;
+        log.info("NodeRegistryTest: nodes={}, queries={}, duration={}ms", workers * nodesPerWorker, queries.get(), duration);
+        Assertions.assertTrue(errors.isEmpty(), "Errors during concurrent access: " + errors);
+
+        // Indexes must match a full scan of the registry, in registration order
+        int total = workers * nodesPerWorker;
+        Collection<NodeRegistryEntry> nodes = registry.getNodes();
+        Assertions.assertEquals(total - total / 10, nodes.size());
+        Assertions.assertEquals(nodes.size(), registry.getNodeCount());
+        for (NodeRegistryEntry.STATE state : NodeRegistryEntry.STATE.values()) {
+            Assertions.assertEquals(addresses(nodes.stream().filter(e -> e.getState()==state).toList()),
+                    addresses(registry.getNodesByState(state)), "State index mismatch: " + state);
+        }
+        for (IClusterZone zone : zones) {
+            Assertions.assertEquals(addresses(nodes.stream().filter(e -> e.getClusterZone()==zone).toList()),
+                    addresses(registry.getNodesByZone(zone.getId())), "Zone index mismatch: " + zone.getId());
+        }
+        for (int i = 0; i < total; i++) {
+            NodeRegistryEntry entry = registry.getNodeByAddress(address(i));
+            if (i % 10 == 0) {
+                Assertions.assertNull(entry);
+                Assertions.assertNull(registry.getNodeByClientId("client-" + i));
+                continue;
+            }
+            Assertions.assertNotNull(entry);
+            Assertions.assertEquals(FINAL_STATES[i % FINAL_STATES.length], entry.getState());
+            Assertions.assertSame(entry, registry.getNodeByClientId("client-" + i));
+            Assertions.assertSame(entry, registry.getNodeByReference(entry.getReference()));
+        }
+    }
+}
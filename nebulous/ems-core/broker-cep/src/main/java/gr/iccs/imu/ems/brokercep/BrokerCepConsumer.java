@@ -9,10 +9,13 @@
 
 package gr.iccs.imu.ems.brokercep;
 
+import com.google.gson.Gson;
 import gr.iccs.imu.ems.brokercep.broker.BrokerConfig;
 import gr.iccs.imu.ems.brokercep.cep.CepService;
 import gr.iccs.imu.ems.brokercep.event.EventMap;
+import gr.iccs.imu.ems.brokercep.event.EventRecorder;
 import gr.iccs.imu.ems.brokercep.properties.BrokerCepProperties;
+import gr.iccs.imu.ems.util.EmsMetrics;
 import gr.iccs.imu.ems.util.StrUtil;
 import jakarta.jms.*;
 import lombok.Getter;
@@ -22,6 +25,7 @@ import org.apache.activemq.broker.BrokerService;
 import org.apache.activemq.command.ActiveMQDestination;
 import org.apache.activemq.command.ActiveMQObjectMessage;
 import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.ActiveMQTopic;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.ApplicationListener;
@@ -29,13 +33,14 @@ import org.springframework.context.event.ContextClosedEvent;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.time.Instant;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
@@ -47,6 +52,8 @@ public class BrokerCepConsumer implements MessageListener, InitializingBean, App
     private final static AtomicLong objectEventCounter = new AtomicLong(0);
     private final static AtomicLong otherEventCounter = new AtomicLong(0);
     private final static AtomicLong eventFailuresCounter = new AtomicLong(0);
+    private final static AtomicLong batchedEventCounter = new AtomicLong(0);
+    private final static Gson gson = new Gson();
 
     private final BrokerCepProperties properties;
     private final BrokerConfig brokerConfig;
@@ -55,12 +62,14 @@ public class BrokerCepConsumer implements MessageListener, InitializingBean, App
 
     private Connection connection;
     private Session session;
-    private final Map<String,MessageConsumer> addedDestinations = new HashMap<>();
+    private MessageConsumer batchConsumer;
+    private final Map<String,MessageConsumer> addedDestinations = new ConcurrentHashMap<>();
 
     private final TaskScheduler scheduler;
     private boolean shuttingDown;
 
     private final EventCache eventCache;
+    private final EventLoopback eventLoopback;
 
     @Getter
     private final List<MessageListener> listeners = new LinkedList<>();
@@ -68,6 +77,7 @@ public class BrokerCepConsumer implements MessageListener, InitializingBean, App
     @Override
     public void afterPropertiesSet() {
         initialize();
+        eventLoopback.setLocalConsumer(this);
     }
 
     public synchronized void initialize() {
@@ -86,6 +96,7 @@ public class BrokerCepConsumer implements MessageListener, InitializingBean, App
             connection = (brokerConfig.getBrokerLocalAdminUsername() != null)
                     ? connectionFactory.createConnection(brokerConfig.getBrokerLocalAdminUsername(), brokerConfig.getBrokerLocalAdminPassword())
                     : connectionFactory.createConnection();
+            eventLoopback.registerInternalConnection(connection);
             connection.setExceptionListener(e -> {
                 if (!shuttingDown) {
                     log.warn("BrokerCepConsumer: Connection exception listener: Exception caught: ", e);
@@ -94,6 +105,10 @@ public class BrokerCepConsumer implements MessageListener, InitializingBean, App
             });
             connection.start();
             session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+
+            // Consume event batches forwarded by other nodes
+            batchConsumer = session.createConsumer(session.createTopic(EventBatchEnvelope.BATCH_TOPIC));
+            batchConsumer.setMessageListener(this);
             log.debug("BrokerCepConsumer.initialize(): Initializing Broker-CEP consumer instance... done");
         } catch (Exception ex) {
             log.error("BrokerCepConsumer.initialize(): EXCEPTION: ", ex);
@@ -126,6 +141,7 @@ public class BrokerCepConsumer implements MessageListener, InitializingBean, App
         }
         session = null;
         connection = null;
+        batchConsumer = null;
     }
 
     public synchronized void addQueue(String queueName) {
@@ -178,6 +194,28 @@ public class BrokerCepConsumer implements MessageListener, InitializingBean, App
         // Log message
         logMessage(message);
 
+        // Skip CEP outputs of this node, already delivered in-process
+        try {
+            if (message!=null && eventLoopback.isDeliveredInProcess(message)) {
+                log.trace("BrokerCepConsumer.onMessage(): Skipping message already delivered in-process: {}", message);
+                return;
+            }
+        } catch (JMSException ex) {
+            log.warn("BrokerCepConsumer.onMessage(): EXCEPTION while checking message origin: ", ex);
+        }
+
+        // Unpack event batches, and handle each event like the ones received one by one
+        try {
+            if (message!=null && EventBatchEnvelope.isBatch(message)) {
+                handleEventBatch(message);
+                return;
+            }
+        } catch (Exception ex) {
+            log.error("BrokerCepConsumer.onMessage(): EXCEPTION while handling event batch: ", ex);
+            eventFailuresCounter.incrementAndGet();
+            return;
+        }
+
         // Record message
         if (brokerConfig.getEventRecorder()!=null)
             brokerConfig.getEventRecorder().recordRegisteredEvent(message);
@@ -193,8 +231,10 @@ public class BrokerCepConsumer implements MessageListener, InitializingBean, App
                 // Send message to Esper
                 if (mesg.getObject() instanceof Map) {
                     //cepService.handleEvent(StrUtil.castToMapStringObject(mesg.getObject()), messageDestination.getPhysicalName());
+                    long decodeStart = EmsMetrics.startSample();
                     EventMap eventMap = new EventMap(StrUtil.castToMapStringObject(mesg.getObject()));
                     copyEventProperties(message, eventMap);
+                    EmsMetrics.stopSample(decodeStart, "ems.jms.decode", "type", "object");
                     cepService.handleEvent(eventMap, messageDestination.getPhysicalName());
                     eventCache.cacheEvent(eventMap, messageDestination.getPhysicalName());
                 } else {
@@ -211,8 +251,10 @@ public class BrokerCepConsumer implements MessageListener, InitializingBean, App
 
                 // Send message to Esper
                 //cepService.handleEvent(mesg.getText(), messageDestination.getPhysicalName());
+                long decodeStart = EmsMetrics.startSample();
                 EventMap eventMap = new com.google.gson.Gson().fromJson(mesg.getText(), EventMap.class);
                 copyEventProperties(message, eventMap);
+                EmsMetrics.stopSample(decodeStart, "ems.jms.decode", "type", "text");
                 log.trace("BrokerCepConsumer.onMessage(): event-map={}", eventMap);
                 cepService.handleEvent(eventMap, messageDestination.getPhysicalName());
                 eventCache.cacheEvent(eventMap, messageDestination.getPhysicalName());
@@ -232,6 +274,83 @@ public class BrokerCepConsumer implements MessageListener, InitializingBean, App
         }
     }
 
+    // Batched events of the topics consumed by this node are recorded and passed to listeners (as messages,
+    // like the ones received from the broker), and then handed to the CEP engine
+    private void handleEventBatch(Message message) throws JMSException, IOException {
+        long decodeStart = EmsMetrics.startSample();
+        List<EventBatchEnvelope.Entry> entries = EventBatchEnvelope.fromMessage(message);
+        EmsMetrics.stopSample(decodeStart, "ems.jms.decode", "type", "batch");
+        log.debug("BrokerCepConsumer.handleEventBatch(): Event batch received: events={}", entries.size());
+
+        EventRecorder recorder = brokerConfig.getEventRecorder();
+        for (EventBatchEnvelope.Entry entry : entries) {
+            try {
+                if (! containsDestination(entry.topic())) {
+                    log.trace("BrokerCepConsumer.handleEventBatch(): Skipping event of topic not consumed: topic={}, event={}", entry.topic(), entry.event());
+                    continue;
+                }
+                EventMap eventMap = entry.toEventMap();
+                log.trace("BrokerCepConsumer.handleEventBatch(): Batched event: topic={}, event-map={}", entry.topic(), eventMap);
+
+                Message eventMessage = recorder!=null || ! listeners.isEmpty() ? toMessage(eventMap, entry.topic()) : null;
+                if (recorder!=null)
+                    recorder.recordRegisteredEvent(eventMessage);
+                if (eventMessage!=null)
+                    listeners.forEach(l -> l.onMessage(eventMessage));
+
+                cepService.handleEvent(eventMap, entry.topic());
+                eventCache.cacheEvent(eventMap, entry.topic());
+                batchedEventCounter.incrementAndGet();
+                eventCounter.incrementAndGet();
+            } catch (Exception ex) {
+                log.error("BrokerCepConsumer.handleEventBatch(): EXCEPTION while handling batched event: topic={}, event={}, exception: ",
+                        entry.topic(), entry.event(), ex);
+                eventFailuresCounter.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Handle a CEP output of this node, delivered in-process (see {@link EventLoopback})
+     */
+    void handleLoopbackEvent(EventMap eventMap, String destination) {
+        try {
+            log.debug("BrokerCepConsumer.handleLoopbackEvent(): Event delivered in-process: destination={}, payload={}", destination, eventMap);
+
+            // Event recorder and listeners expect JMS messages. Only create one if needed
+            EventRecorder recorder = brokerConfig.getEventRecorder();
+            Message message = recorder!=null || ! listeners.isEmpty() ? toMessage(eventMap, destination) : null;
+            if (recorder!=null)
+                recorder.recordRegisteredEvent(message);
+
+            cepService.routeEvent(eventMap, destination);
+            eventCache.cacheEvent(eventMap, destination);
+            objectEventCounter.incrementAndGet();
+            eventCounter.incrementAndGet();
+
+            if (message!=null)
+                listeners.forEach(l -> l.onMessage(message));
+        } catch (Exception ex) {
+            log.error("BrokerCepConsumer.handleLoopbackEvent(): EXCEPTION: ", ex);
+            eventFailuresCounter.incrementAndGet();
+        }
+    }
+
+    // Creates a text message, like the ones received from the broker, with the event and its properties
+    private static Message toMessage(EventMap eventMap, String destination) throws JMSException {
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setText(gson.toJson(eventMap));
+        message.setJMSDestination(new ActiveMQTopic(destination));
+        message.setJMSTimestamp(System.currentTimeMillis());
+        if (eventMap.getEventProperties()!=null) {
+            for (Map.Entry<String, Object> property : eventMap.getEventProperties().entrySet()) {
+                if (property.getValue()!=null)
+                    message.setStringProperty(property.getKey(), property.getValue().toString());
+            }
+        }
+        return message;
+    }
+
     private void logMessage(Message message) {
         boolean logBrokerMessages = properties.isLogBrokerMessages();
         boolean logBrokerMessagesFull = properties.isLogBrokerMessagesFull();
@@ -292,11 +411,13 @@ public class BrokerCepConsumer implements MessageListener, InitializingBean, App
     public static long getObjectEventCounter() { return objectEventCounter.get(); }
     public static long getOtherEventCounter() { return otherEventCounter.get(); }
     public static long getEventFailuresCounter() { return eventFailuresCounter.get(); }
+    public static long getBatchedEventCounter() { return batchedEventCounter.get(); }
     public static synchronized void clearCounters() {
         eventCounter.set(0L);
         textEventCounter.set(0L);
         objectEventCounter.set(0L);
         otherEventCounter.set(0L);
         eventFailuresCounter.set(0L);
+        batchedEventCounter.set(0L);
     }
 }
\ No newline at end of file
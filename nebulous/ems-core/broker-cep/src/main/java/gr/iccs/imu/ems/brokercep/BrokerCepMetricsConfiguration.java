@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.brokercep;
+
+import gr.iccs.imu.ems.brokercep.properties.BrokerCepProperties;
+import gr.iccs.imu.ems.util.EmsMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Applies the 'brokercep.metrics-*' settings to the (process-wide) hot-path metrics helper
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class BrokerCepMetricsConfiguration implements InitializingBean {
+    private final BrokerCepProperties properties;
+
+    @Override
+    public void afterPropertiesSet() {
+        EmsMetrics.setSampleRate(Math.max(1, properties.getMetricsSampleRate()));
+        EmsMetrics.setHistogramsEnabled(properties.isMetricsHistogramsEnabled());
+        log.debug("BrokerCepMetricsConfiguration: Metrics configured: sample-rate={}, histograms-enabled={}",
+                EmsMetrics.getSampleRate(), EmsMetrics.isHistogramsEnabled());
+    }
+}
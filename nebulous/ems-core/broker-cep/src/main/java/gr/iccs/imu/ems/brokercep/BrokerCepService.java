@@ -18,8 +18,12 @@ import gr.iccs.imu.ems.util.*;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.activemq.advisory.AdvisorySupport;
 import org.apache.activemq.broker.BrokerService;
 import org.apache.activemq.broker.jmx.BrokerView;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.command.ConsumerInfo;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -27,6 +31,7 @@ import org.springframework.stereotype.Service;
 import jakarta.jms.*;
 import javax.management.ObjectName;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.nio.charset.Charset;
@@ -36,6 +41,7 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -55,6 +61,8 @@ public class BrokerCepService {
     private CepService cepService;
     @Getter
     private EventCache eventCache;
+    @Getter
+    private EventLoopback eventLoopback;
 
     private Gson gson;
 
@@ -201,6 +209,63 @@ public class BrokerCepService {
         publishSerializable(null, brokerConfig.getBrokerLocalUserUsername(), brokerConfig.getBrokerLocalUserPassword(), destinationName, event, convertToJson);
     }
 
+    public synchronized void publishEventBatch(String connectionString, String username, String password, List<EventBatchEnvelope.Entry> entries, boolean compress) throws JMSException {
+        if (connectionString == null) connectionString = properties.getBrokerUrlForConsumer();
+        ConnectionFactory connectionFactory = brokerConfig.getConnectionFactoryFor(connectionString);
+        Connection connection = StringUtils.isBlank(username)
+                ? connectionFactory.createConnection()
+                : connectionFactory.createConnection(username, password);
+        try {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = session.createProducer(session.createTopic(EventBatchEnvelope.BATCH_TOPIC));
+            producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+
+            Message message;
+            if (compress) {
+                BytesMessage bytesMessage = session.createBytesMessage();
+                bytesMessage.writeBytes(EventBatchEnvelope.toCompressedJson(entries));
+                bytesMessage.setStringProperty(EventBatchEnvelope.BATCH_FORMAT_PROPERTY, EventBatchEnvelope.FORMAT_GZIP);
+                message = bytesMessage;
+            } else {
+                message = session.createTextMessage(EventBatchEnvelope.toJson(entries));
+                message.setStringProperty(EventBatchEnvelope.BATCH_FORMAT_PROPERTY, EventBatchEnvelope.FORMAT_JSON);
+            }
+            producer.send(message);
+            log.debug("BrokerCepService.publishEventBatch(): Event batch sent: connection={}, events={}, compressed={}",
+                    connectionString, entries.size(), compress);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to encode event batch", e);
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Checks if a broker has event batch consumers, i.e. if it is consumed by an EMS supporting event batches.
+     * Relies on consumer advisories, so brokers with advisory support disabled are reported as not supporting batches.
+     */
+    public boolean hasEventBatchConsumers(String connectionString, String username, String password, long timeout) throws JMSException {
+        if (connectionString == null) connectionString = properties.getBrokerUrlForConsumer();
+        ConnectionFactory connectionFactory = brokerConfig.getConnectionFactoryFor(connectionString);
+        Connection connection = StringUtils.isBlank(username)
+                ? connectionFactory.createConnection()
+                : connectionFactory.createConnection(username, password);
+        try {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            // Broker sends an advisory for each existing consumer, right after subscribing
+            MessageConsumer consumer = session.createConsumer(
+                    AdvisorySupport.getConsumerAdvisoryTopic(new ActiveMQTopic(EventBatchEnvelope.BATCH_TOPIC)));
+            Message advisory = consumer.receive(Math.max(1L, timeout));
+            boolean hasConsumers = advisory instanceof ActiveMQMessage message && message.getDataStructure() instanceof ConsumerInfo;
+            log.debug("BrokerCepService.hasEventBatchConsumers(): connection={}, has-consumers={}", connectionString, hasConsumers);
+            return hasConsumers;
+        } finally {
+            connection.close();
+        }
+    }
+
     // When destination is the local broker then hand event to (local) CEP engine, bypassing local broker
     private final static java.util.regex.Pattern urlPattern = java.util.regex.Pattern.compile("^([a-z]+://[a-zA-Z0-9_\\.\\-]+:[0-9]+)([/#\\?].*)?$");
 
@@ -407,7 +472,9 @@ public class BrokerCepService {
         bcepStats.put("count-total-events-object", BrokerCepConsumer.getObjectEventCounter());
         bcepStats.put("count-total-events-other", BrokerCepConsumer.getOtherEventCounter());
         bcepStats.put("count-total-events-failures", BrokerCepConsumer.getEventFailuresCounter());
+        bcepStats.put("count-total-events-batched", BrokerCepConsumer.getBatchedEventCounter());
         bcepStats.put("count-cep-events", CepService.getEventCounter());
+        bcepStats.put("count-cep-late-events", cepService.getLateEventCounter());
 
         bcepStats.put("latest-events", eventCache.asList());
 
@@ -11,18 +11,21 @@ package gr.iccs.imu.ems.brokercep;
 
 import gr.iccs.imu.ems.brokercep.cep.StatementSubscriber;
 import gr.iccs.imu.ems.brokercep.event.EventMap;
+import gr.iccs.imu.ems.util.EmsMetrics;
 import gr.iccs.imu.ems.util.GroupingConfiguration;
 import gr.iccs.imu.ems.util.PasswordUtil;
+import io.micrometer.core.instrument.Counter;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
-import lombok.Setter;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 @Getter
@@ -41,30 +44,50 @@ public class BrokerCepStatementSubscriber implements StatementSubscriber {
     private final BrokerCepService brokerCep;
     @ToString.Exclude
     private final PasswordUtil passwordUtil;
-    @Setter
     private Set<GroupingConfiguration.BrokerConnectionConfig> forwardToGroupings;
+    @Getter(AccessLevel.NONE) @ToString.Exclude
+    private final AtomicReference<Counter> outputCounter = new AtomicReference<>();
+
+    public void setForwardToGroupings(Set<GroupingConfiguration.BrokerConnectionConfig> forwardToGroupings) {
+        this.forwardToGroupings = forwardToGroupings;
+        EventForwarder forwarder = EventForwarder.getInstance();
+        if (forwarder!=null && forwardToGroupings!=null && ! forwardToGroupings.isEmpty())
+            forwarder.forwardsChanged(this);
+    }
 
     public void update(Map<String, Object> eventMap) {
         log.trace("BrokerCepStatementSubscriber.update(): INPUT: {}", eventMap);
         EventMap.checkEvent(eventMap);
+        countOutput();
         publishToLocalBroker(eventMap);
         forwardToGroupings(eventMap);
     }
 
     protected void publishToLocalBroker(Map<String, Object> eventMap) {
         log.debug("- New event received: subscriber={}, topic={}, payload={}", name, topic, eventMap);
+
+        // Deliver event in-process, if its topic is consumed locally
+        EventLoopback loopback = brokerCep.getEventLoopback();
+        if (loopback!=null && loopback.deliver(topic, eventMap)) {
+            if (! loopback.hasExternalConsumers(topic)) {
+                log.trace("- Event delivered in-process only: subscriber={}, topic={}, payload={}", name, topic, eventMap);
+                countLocalPublish(true);
+                return;
+            }
+            eventMap = loopback.markAsDelivered(eventMap);
+        }
+
         String localBrokerUrl = brokerCep.getBrokerCepProperties().getBrokerUrlForConsumer();
         String username = brokerCep.getBrokerUsername();
-        String password = brokerCep.getBrokerPassword();
-        String passwordEncoded = passwordUtil.encodePassword(password);
         try {
             // Queue new event for publishing to Local Broker topic
             EventForwarder.getInstance().addLocalPublishTask(this, topic, eventMap, ()->countLocalPublish(true), ()->countLocalPublish(false));
-            log.trace("- Event queued for publishing to local broker: subscriber={}, local-broker={}, username={}, password={}, topic={}, payload={}",
-                    name, localBrokerUrl, username, passwordEncoded, topic, eventMap);
+            if (log.isTraceEnabled())
+                log.trace("- Event queued for publishing to local broker: subscriber={}, local-broker={}, username={}, password={}, topic={}, payload={}",
+                        name, localBrokerUrl, username, passwordUtil.encodePassword(brokerCep.getBrokerPassword()), topic, eventMap);
         } catch (Exception ex) {
             log.error("- New event: ERROR while queueing event for publishing to local broker: subscriber={}, local-broker={}, username={}, password={}, topic={}, exception=",
-                    name, localBrokerUrl, username, passwordEncoded, topic, ex);
+                    name, localBrokerUrl, username, passwordUtil.encodePassword(brokerCep.getBrokerPassword()), topic, ex);
             countLocalPublish(false);
         }
     }
@@ -88,6 +111,15 @@ public class BrokerCepStatementSubscriber implements StatementSubscriber {
         }
     }
 
+    private void countOutput() {
+        Counter counter = outputCounter.get();
+        if (counter==null) {
+            counter = EmsMetrics.counter("ems.cep.statement.output", "subscriber", name, "topic", topic);
+            outputCounter.set(counter);
+        }
+        counter.increment();
+    }
+
     private void countLocalPublish(boolean success) {
         if (success) counterLocalPublishSuccess.incrementAndGet();
         else counterLocalPublishFailure.incrementAndGet();
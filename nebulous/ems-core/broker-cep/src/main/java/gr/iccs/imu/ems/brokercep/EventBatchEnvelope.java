@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.brokercep;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import gr.iccs.imu.ems.brokercep.event.EventMap;
+import jakarta.jms.BytesMessage;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.TextMessage;
+import lombok.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Envelope carrying several events, for one or more topics, in a single broker message.
+ * Envelopes are published to {@link #BATCH_TOPIC}, either as JSON text, or as GZIP-compressed JSON bytes,
+ * and are unpacked by {@link BrokerCepConsumer}, which handles each event like the ones received one by one.
+ * Senders check that target brokers have batch consumers (see {@link BrokerCepService#hasEventBatchConsumers}),
+ * and forward events one by one to brokers consumed by EMS versions without batch support.
+ */
+public class EventBatchEnvelope {
+    public final static String BATCH_TOPIC = "ems.event.batch";
+    public final static String BATCH_FORMAT_PROPERTY = "ems_batch_format";
+    public final static String FORMAT_JSON = "json";
+    public final static String FORMAT_GZIP = "json+gzip";
+
+    private final static Gson gson = new GsonBuilder().create();
+    private final static Type ENTRIES_TYPE = new TypeToken<List<Entry>>() {}.getType();
+
+    public record Entry(String topic, Map<String,Object> event, Map<String,Object> properties) {
+        public static Entry of(@NonNull String topic, @NonNull Map<String,Object> event) {
+            Map<String,Object> properties = event instanceof EventMap eventMap ? eventMap.getEventProperties() : null;
+            return new Entry(topic, event, properties!=null && ! properties.isEmpty() ? properties : null);
+        }
+
+        public EventMap toEventMap() {
+            EventMap eventMap = new EventMap(event);
+            if (properties!=null) properties.forEach(eventMap::setEventProperty);
+            return eventMap;
+        }
+    }
+
+    public static boolean isBatch(@NonNull Message message) throws JMSException {
+        return message.getStringProperty(BATCH_FORMAT_PROPERTY)!=null;
+    }
+
+    public static String toJson(@NonNull List<Entry> entries) {
+        return gson.toJson(entries, ENTRIES_TYPE);
+    }
+
+    public static byte[] toCompressedJson(@NonNull List<Entry> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+            gson.toJson(entries, ENTRIES_TYPE, writer);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static List<Entry> fromMessage(@NonNull Message message) throws JMSException, IOException {
+        String format = message.getStringProperty(BATCH_FORMAT_PROPERTY);
+        if (FORMAT_JSON.equals(format) && message instanceof TextMessage textMessage) {
+            return gson.fromJson(textMessage.getText(), ENTRIES_TYPE);
+        }
+        if (FORMAT_GZIP.equals(format) && message instanceof BytesMessage bytesMessage) {
+            byte[] payload = new byte[(int) bytesMessage.getBodyLength()];
+            bytesMessage.readBytes(payload);
+            try (Reader reader = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(payload)), StandardCharsets.UTF_8)) {
+                return gson.fromJson(reader, ENTRIES_TYPE);
+            }
+        }
+        throw new IllegalArgumentException("Unsupported event batch: format="+format+", message-type="+message.getClass().getName());
+    }
+}
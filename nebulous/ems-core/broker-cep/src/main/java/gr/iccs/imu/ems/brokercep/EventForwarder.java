@@ -10,6 +10,7 @@
 package gr.iccs.imu.ems.brokercep;
 
 import gr.iccs.imu.ems.brokercep.properties.BrokerCepProperties;
+import gr.iccs.imu.ems.util.EmsMetrics;
 import gr.iccs.imu.ems.util.GroupingConfiguration;
 import lombok.Getter;
 import lombok.NonNull;
@@ -21,9 +22,12 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.stereotype.Service;
 
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
@@ -34,11 +38,28 @@ public class EventForwarder implements InitializingBean, Runnable {
 
     private final BrokerCepProperties properties;
     private final BrokerCepService brokerCepService;
+    private final EventSpillStore eventSpillStore;
     private final LinkedBlockingDeque<EventForwardTask> eventForwardingQueue = new LinkedBlockingDeque<>();
+    private final Map<String,Integer> replaysInFlight = new HashMap<>();     // Only accessed by worker thread
+    private final Map<String,PendingBatch> pendingBatches = new LinkedHashMap<>();     // Only accessed by worker thread
+    private final Map<String,BatchSupport> batchSupport = new HashMap<>();               // Per target broker URL. Only accessed by worker thread
+    private final Map<String,EventForwardTask> replayTargets = new LinkedHashMap<>();  // Only accessed by worker thread
+    private final List<EventForwardTask> parkedReplays = new ArrayList<>();             // Only accessed by worker thread
+    private final Set<String> startupSpills = ConcurrentHashMap.newKeySet();    // Replay keys of events spilled before restart, without replay target yet
+    private final Queue<BrokerCepStatementSubscriber> forwardChanges = new ConcurrentLinkedQueue<>();
+    private long nextReplayCheck;
 
     @Override
     public void afterPropertiesSet() throws Exception {
         if (instance==null) instance = this;
+
+        // Events spilled before restart are replayed once a sender with forwards to their grouping and topic is configured
+        if (eventSpillStore.isEnabled() && properties.getEventSpill().getReplayCheckInterval()>0) {
+            eventSpillStore.getSpilledTopics().forEach(t -> startupSpills.add(t.grouping() + "/" + t.topic()));
+            if (! startupSpills.isEmpty())
+                log.info("EventForwarder: Spilled events found at startup. Waiting for their forwards to be configured: {}", startupSpills);
+        }
+
         Executors.newFixedThreadPool(1).submit(this);
         log.info("EventForwarder: Starting event publish/forward worker");
     }
@@ -57,6 +78,15 @@ public class EventForwarder implements InitializingBean, Runnable {
         addEventForwardTask(sender, brokerConnectionConfig, topic, eventMap, success, failure);
     }
 
+    /**
+     * Notifies forwarder that the forwards of a subscriber have changed, so that events spilled
+     * before restart, for the subscriber topic, can be replayed to the new forward targets
+     */
+    public void forwardsChanged(@NonNull BrokerCepStatementSubscriber subscriber) {
+        if (startupSpills.isEmpty()) return;
+        forwardChanges.add(subscriber);
+    }
+
     public void addLocalPublishTask(@NonNull BrokerCepStatementSubscriber sender, @NonNull String topic, @NonNull Map<String,Object> eventMap, Runnable success, Runnable failure) {
         String brokerUrl = brokerCepService.getBrokerCepProperties().getBrokerUrlForConsumer();
         String username = brokerCepService.getBrokerUsername();
@@ -74,8 +104,15 @@ public class EventForwarder implements InitializingBean, Runnable {
 
         while (true) {
             try {
-                processEventForwardTask(eventForwardingQueue.take());
-                waitFor(delay);
+                EventForwardTask task = pendingBatches.isEmpty() && replayTargets.isEmpty() && startupSpills.isEmpty()
+                        ? eventForwardingQueue.take()
+                        : eventForwardingQueue.poll(millisToNextDeadline(), TimeUnit.MILLISECONDS);
+                if (task!=null && ! addToBatch(task)) {
+                    processEventForwardTask(task);
+                    waitFor(delay);
+                }
+                flushBatches();
+                checkSpilledEvents();
             } catch (Throwable t) {
                 log.warn("EventForwarder: Exception thrown in task processing loop: ", t);
             }
@@ -96,87 +133,34 @@ public class EventForwarder implements InitializingBean, Runnable {
         String topic = task.getTopic();
         Map<String, Object> eventMap = task.getEventMap();
 
+        // Record time spent in queue (since creation or last retry)
+        String target = task.isLocalPublish() ? "local" : String.valueOf(task.getBrokerConnectionConfig().getGrouping());
+        long queuedSince = task.getRetries()>0 ? task.getLastRetryEnd() : task.getCreation();
+        EmsMetrics.recordSampled(System.currentTimeMillis() - queuedSince, "ems.forwarder.queue.wait", "target", target);
+
         // Check if max task processing duration has been exceeded
         long duration = System.currentTimeMillis() - task.getCreation();
-        if (properties.getMaxEventForwardDuration()>0 && duration > properties.getMaxEventForwardDuration()) {
+        if (task.getReplayKey()==null && properties.getMaxEventForwardDuration()>0 && duration > properties.getMaxEventForwardDuration()) {
             log.error("- Max event publish/forward duration exceeded. Dropping event: subscriber={}, forward-to-groupings={}, topic={}, payload={}",
                     senderName, task.getBrokerConnectionConfig(), topic, eventMap);
 
-            runIfNotNull(task.getFailure());
+            dropOrSpillEvent(task);
             return;
         }
 
         // Process event publish/forward task
         try {
-            String brokerUrl = task.getBrokerConnectionConfig().getUrl();
-            String username = task.getBrokerConnectionConfig().getUsername();
-            String password = task.getBrokerConnectionConfig().getPassword();
-
-            if (task.isLocalPublish()) {
-                // Log start of event send to the local broker
-                log.trace("- Publishing event to local broker: subscriber={}, local-broker={}, username={}, password={}, topic={}, retry={}, payload={}",
-                        senderName, brokerUrl, username, "passwordEncoded", topic, task.getRetries(), eventMap);
-            } else {
-                log.trace("- Checking forward broker configuration before event send: subscriber={}, local-broker={}, username={}, password={}, topic={}, retry={}, payload={}",
-                        senderName, brokerUrl, username, "passwordEncoded", topic, task.getRetries(), eventMap);
-                String targetGrouping = task.getBrokerConnectionConfig().getGrouping();
-                log.trace("-   Target grouping: {}", targetGrouping);
-
-                // Check if sender forwards have been cleared (indicating that this node became an aggregator)
-                boolean configChanged = false;
-                boolean forwardsExist = task.getSender().getForwardToGroupings() != null && task.getSender().getForwardToGroupings().size() > 0;
-                log.trace("-   Forwards exist: {}", forwardsExist);
-
-                if (forwardsExist) {
-                    // Get forward broker configuration from the sender
-                    GroupingConfiguration.BrokerConnectionConfig bcc =
-                            task.getSender().getForwardToGroupings().stream()
-                                    .filter(f -> f.getGrouping().equals(targetGrouping))
-                                    .findAny().orElse(null);
-                    log.trace("-   Selected BrokerConnectionConfig: {}", bcc);
-
-                    // Log any changes in forward broker config
-                    String brokerUrl2 = bcc!=null ? bcc.getUrl() : null;
-                    String username2 = bcc!=null ? bcc.getUsername() : null;
-                    String password2 = bcc!=null ? bcc.getPassword() : null;
-
-                    if (!StringUtils.equals(brokerUrl, brokerUrl2)) {
-                        log.warn("-   Forward broker config changed: sender: {}, broker-url: {} -> {}, event: {}", senderName, brokerUrl, brokerUrl2, task.getEventMap());
-                        brokerUrl = brokerUrl2;
-                        configChanged = true;
-                    }
-                    if (!StringUtils.equals(username, username2)) {
-                        log.warn("-   Forward broker config changed: sender: {}, username: {} -> {}, event: {}", senderName, username, username2, task.getEventMap());
-                        username = username2;
-                        configChanged = true;
-                    }
-                    if (!StringUtils.equals(password, password2)) {
-                        log.warn("-   Forward broker config changed: sender: {}, password: ******** -> ********, event: {}", senderName, task.getEventMap());
-                        password = password2;
-                        configChanged = true;
-                    }
-                } else {
-                    log.warn("-   Forwards removed for topic and grouping. Using local broker: topic={}, grouping={}, sender={}, event={}", task.getTopic(), targetGrouping, senderName, task.getEventMap());
-
-                    brokerUrl = brokerCepService.getBrokerCepProperties().getBrokerUrlForConsumer();
-                    username = brokerCepService.getBrokerUsername();
-                    password = brokerCepService.getBrokerPassword();
-                    configChanged = true;
-                }
-
-                // Log start of event send to forward broker
-                if (configChanged)
-                    log.debug("- Forwarding event to grouping: CONFIG-CHANGED: subscriber={}, forward-to-grouping={}, url={}, username={}, topic={}, retry={}, payload={}",
-                            senderName, task.getBrokerConnectionConfig(), brokerUrl, username, topic, task.getRetries(), eventMap);
-                else
-                    log.debug("- Forwarding event to grouping: subscriber={}, forward-to-grouping={}, url={}, username={}, topic={}, retry={}, payload={}",
-                            senderName, task.getBrokerConnectionConfig(), brokerUrl, username, topic, task.getRetries(), eventMap);
-            }
+            GroupingConfiguration.BrokerConnectionConfig connectionConfig = resolveBrokerConnection(task);
+            String brokerUrl = connectionConfig.getUrl();
+            String username = connectionConfig.getUsername();
+            String password = connectionConfig.getPassword();
 
             // Update retry info and try sending event
             task.newRetry();
+            long sendStart = EmsMetrics.startSample();
             brokerCepService.publishEvent(brokerUrl, username, password, topic, eventMap);
             task.completed();
+            EmsMetrics.stopSample(sendStart, "ems.forwarder.send", "target", target);
 
             // Log successful event send
             if (task.isLocalPublish()) {
@@ -190,12 +174,17 @@ public class EventForwarder implements InitializingBean, Runnable {
             // Run successful event send callback
             runIfNotNull(task.getSuccess());
 
+            // Target is reachable. Replay any spilled events
+            replayTaskCompleted(task);
+            replaySpilledEvents(task);
+
         } catch (IllegalArgumentException ex) {
             // Event with errors
             log.error("- Event contains errors. Will not retry to send it: Error while sending event: subscriber={}, forward-to-groupings={}, topic={}, retry={}, duration={}ms, payload={}, exception: ",
                     senderName, task.getBrokerConnectionConfig(), topic, task.getRetries() - 1, task.getTotalDuration(), eventMap, ex);
 
             runIfNotNull(task.getFailure());
+            replayTaskCompleted(task);
 
         } catch (Exception ex) {
             // Increase retry count and log failed event send
@@ -203,27 +192,328 @@ public class EventForwarder implements InitializingBean, Runnable {
             log.error("- Error while sending event: subscriber={}, forward-to-groupings={}, topic={}, retry={}, duration={}ms, payload={}, exception: ",
                     senderName, task.getBrokerConnectionConfig(), topic, task.getRetries()-1, task.getTotalDuration(), eventMap, ex);
 
-            // Check if retries exceeded limits. If not then put event back in the queue.
-            if (properties.getMaxEventForwardRetries()>=0 && task.getRetries() > properties.getMaxEventForwardRetries()) {
-                log.error("- Max event publish/forward retries exceeded. Dropping event: subscriber={}, forward-to-groupings={}, topic={}, payload={}",
-                        senderName, task.getBrokerConnectionConfig(), topic, eventMap);
+            retryOrDropEvent(task);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    //  Event batching (forwards to other groupings only)
+    // ------------------------------------------------------------------------
 
-                runIfNotNull(task.getFailure());
+    private boolean addToBatch(EventForwardTask task) {
+        if (task.isLocalPublish()) return false;
+        String grouping = task.getBrokerConnectionConfig().getGrouping();
+        BrokerCepProperties.EventBatchSettings settings = properties.getEventBatching().getSettingsFor(grouping);
+        if (! settings.isEnabled() || settings.getBatchSize()<=1) return false;
 
-            } else
-            if (properties.getMaxEventForwardDuration()>0 && task.getTotalDuration() > properties.getMaxEventForwardDuration()) {
+        pendingBatches.computeIfAbsent(grouping, g -> new PendingBatch(grouping, settings,
+                System.currentTimeMillis() + Math.max(0L, settings.getMaxLinger())))
+                .tasks.add(task);
+        return true;
+    }
+
+    private long millisToNextDeadline() {
+        long now = System.currentTimeMillis();
+        long next = pendingBatches.values().stream().mapToLong(PendingBatch::getDeadline).min().orElse(Long.MAX_VALUE);
+        if (! replayTargets.isEmpty()) next = Math.min(next, nextReplayCheck);
+        if (! startupSpills.isEmpty()) next = Math.min(next, now + properties.getEventSpill().getReplayCheckInterval());
+        return next==Long.MAX_VALUE ? 0L : Math.max(0L, next - now);
+    }
+
+    private void flushBatches() {
+        if (pendingBatches.isEmpty()) return;
+        long now = System.currentTimeMillis();
+        Iterator<PendingBatch> it = pendingBatches.values().iterator();
+        while (it.hasNext()) {
+            PendingBatch batch = it.next();
+            if (batch.tasks.size() >= batch.settings.getBatchSize() || now >= batch.deadline) {
+                it.remove();
+                processEventBatch(batch);
+            }
+        }
+    }
+
+    private void processEventBatch(PendingBatch batch) {
+        String grouping = batch.grouping;
+        long now = System.currentTimeMillis();
+
+        // Drop expired events, and group the rest by (current) target broker connection
+        Map<GroupingConfiguration.BrokerConnectionConfig, List<EventForwardTask>> tasksPerConnection = new LinkedHashMap<>();
+        for (EventForwardTask task : batch.tasks) {
+            long queuedSince = task.getRetries()>0 ? task.getLastRetryEnd() : task.getCreation();
+            EmsMetrics.recordSampled(now - queuedSince, "ems.forwarder.queue.wait", "target", String.valueOf(grouping));
+            if (task.getReplayKey()==null && properties.getMaxEventForwardDuration()>0 && now - task.getCreation() > properties.getMaxEventForwardDuration()) {
                 log.error("- Max event publish/forward duration exceeded. Dropping event: subscriber={}, forward-to-groupings={}, topic={}, payload={}",
-                        senderName, task.getBrokerConnectionConfig(), topic, eventMap);
+                        task.getSender().getName(), task.getBrokerConnectionConfig(), task.getTopic(), task.getEventMap());
+                dropOrSpillEvent(task);
+                continue;
+            }
+            tasksPerConnection.computeIfAbsent(resolveBrokerConnection(task), k -> new ArrayList<>()).add(task);
+        }
+
+        tasksPerConnection.forEach((connectionConfig, tasks) -> {
+            // Target brokers not consumed by an EMS supporting event batches get the events one by one
+            if (! isBatchSupported(connectionConfig, batch.settings)) {
+                tasks.forEach(this::processEventForwardTask);
+                return;
+            }
+
+            List<EventBatchEnvelope.Entry> entries = tasks.stream()
+                    .map(task -> EventBatchEnvelope.Entry.of(task.getTopic(), task.getEventMap()))
+                    .toList();
+            try {
+                tasks.forEach(EventForwardTask::newRetry);
+                long sendStart = EmsMetrics.startSample();
+                brokerCepService.publishEventBatch(connectionConfig.getUrl(), connectionConfig.getUsername(),
+                        connectionConfig.getPassword(), entries, batch.settings.isCompress());
+                EmsMetrics.stopSample(sendStart, "ems.forwarder.send", "target", String.valueOf(grouping));
+                log.debug("- Event batch forwarded to grouping: grouping={}, url={}, username={}, events={}",
+                        grouping, connectionConfig.getUrl(), connectionConfig.getUsername(), entries.size());
+
+                tasks.forEach(task -> {
+                    task.completed();
+                    runIfNotNull(task.getSuccess());
+                    replayTaskCompleted(task);
+                });
+
+                // Target is reachable. Replay any spilled events
+                tasks.forEach(this::replaySpilledEvents);
+
+            } catch (IllegalArgumentException ex) {
+                log.error("- Event batch contains errors. Will not retry to send it: grouping={}, url={}, events={}, exception: ",
+                        grouping, connectionConfig.getUrl(), entries.size(), ex);
+                tasks.forEach(task -> {
+                    runIfNotNull(task.getFailure());
+                    replayTaskCompleted(task);
+                });
+
+            } catch (Exception ex) {
+                log.error("- Error while sending event batch: grouping={}, url={}, events={}, exception: ",
+                        grouping, connectionConfig.getUrl(), entries.size(), ex);
+                tasks.forEach(task -> {
+                    task.increaseRetries();
+                    retryOrDropEvent(task);
+                });
+            }
+        });
+    }
+
+    private boolean isBatchSupported(GroupingConfiguration.BrokerConnectionConfig connectionConfig, BrokerCepProperties.EventBatchSettings settings) {
+        if (settings.getCapabilityCheckInterval()<=0) return true;
+        long now = System.currentTimeMillis();
+        BatchSupport support = batchSupport.get(connectionConfig.getUrl());
+        if (support!=null && now - support.checkTime() < settings.getCapabilityCheckInterval())
+            return support.supported();
 
-                runIfNotNull(task.getFailure());
+        try {
+            boolean supported = brokerCepService.hasEventBatchConsumers(connectionConfig.getUrl(), connectionConfig.getUsername(),
+                    connectionConfig.getPassword(), settings.getCapabilityCheckTimeout());
+            batchSupport.put(connectionConfig.getUrl(), new BatchSupport(supported, now));
+            if (support==null || support.supported()!=supported)
+                log.info("EventForwarder: Event batch support of target broker: url={}, supported={}", connectionConfig.getUrl(), supported);
+            return supported;
+        } catch (Exception ex) {
+            // Target is probably unreachable. Events are sent one by one, and retried or spilled as usual
+            log.debug("EventForwarder: Could not check event batch support of target broker: url={}, exception: ",
+                    connectionConfig.getUrl(), ex);
+            return false;
+        }
+    }
 
+    // Gets the broker connection to use for task, taking into account any changes in sender forwards since task creation
+    private GroupingConfiguration.BrokerConnectionConfig resolveBrokerConnection(EventForwardTask task) {
+        String senderName = task.getSender().getName();
+        String topic = task.getTopic();
+        Map<String, Object> eventMap = task.getEventMap();
+        String brokerUrl = task.getBrokerConnectionConfig().getUrl();
+        String username = task.getBrokerConnectionConfig().getUsername();
+        String password = task.getBrokerConnectionConfig().getPassword();
+
+        if (task.isLocalPublish()) {
+            // Log start of event send to the local broker
+            log.trace("- Publishing event to local broker: subscriber={}, local-broker={}, username={}, password={}, topic={}, retry={}, payload={}",
+                    senderName, brokerUrl, username, "passwordEncoded", topic, task.getRetries(), eventMap);
+        } else {
+            log.trace("- Checking forward broker configuration before event send: subscriber={}, local-broker={}, username={}, password={}, topic={}, retry={}, payload={}",
+                    senderName, brokerUrl, username, "passwordEncoded", topic, task.getRetries(), eventMap);
+            String targetGrouping = task.getBrokerConnectionConfig().getGrouping();
+            log.trace("-   Target grouping: {}", targetGrouping);
+
+            // Check if sender forwards have been cleared (indicating that this node became an aggregator)
+            boolean configChanged = false;
+            boolean forwardsExist = task.getSender().getForwardToGroupings() != null && task.getSender().getForwardToGroupings().size() > 0;
+            log.trace("-   Forwards exist: {}", forwardsExist);
+
+            if (forwardsExist) {
+                // Get forward broker configuration from the sender
+                GroupingConfiguration.BrokerConnectionConfig bcc =
+                        task.getSender().getForwardToGroupings().stream()
+                                .filter(f -> f.getGrouping().equals(targetGrouping))
+                                .findAny().orElse(null);
+                log.trace("-   Selected BrokerConnectionConfig: {}", bcc);
+
+                // Log any changes in forward broker config
+                String brokerUrl2 = bcc!=null ? bcc.getUrl() : null;
+                String username2 = bcc!=null ? bcc.getUsername() : null;
+                String password2 = bcc!=null ? bcc.getPassword() : null;
+
+                if (!StringUtils.equals(brokerUrl, brokerUrl2)) {
+                    log.warn("-   Forward broker config changed: sender: {}, broker-url: {} -> {}, event: {}", senderName, brokerUrl, brokerUrl2, task.getEventMap());
+                    brokerUrl = brokerUrl2;
+                    configChanged = true;
+                }
+                if (!StringUtils.equals(username, username2)) {
+                    log.warn("-   Forward broker config changed: sender: {}, username: {} -> {}, event: {}", senderName, username, username2, task.getEventMap());
+                    username = username2;
+                    configChanged = true;
+                }
+                if (!StringUtils.equals(password, password2)) {
+                    log.warn("-   Forward broker config changed: sender: {}, password: ******** -> ********, event: {}", senderName, task.getEventMap());
+                    password = password2;
+                    configChanged = true;
+                }
             } else {
-                // Retry limits not exceeded. Put event back in the queue
-                eventForwardingQueue.add(task);
-                log.debug("- Event placed back in queue: subscriber={}, forward-to-groupings={}, topic={}, payload={}",
-                        senderName, task.getBrokerConnectionConfig(), topic, eventMap);
+                log.warn("-   Forwards removed for topic and grouping. Using local broker: topic={}, grouping={}, sender={}, event={}", task.getTopic(), targetGrouping, senderName, task.getEventMap());
+
+                brokerUrl = brokerCepService.getBrokerCepProperties().getBrokerUrlForConsumer();
+                username = brokerCepService.getBrokerUsername();
+                password = brokerCepService.getBrokerPassword();
+                configChanged = true;
             }
+
+            // Log start of event send to forward broker
+            if (configChanged)
+                log.debug("- Forwarding event to grouping: CONFIG-CHANGED: subscriber={}, forward-to-grouping={}, url={}, username={}, topic={}, retry={}, payload={}",
+                        senderName, task.getBrokerConnectionConfig(), brokerUrl, username, topic, task.getRetries(), eventMap);
+            else
+                log.debug("- Forwarding event to grouping: subscriber={}, forward-to-grouping={}, url={}, username={}, topic={}, retry={}, payload={}",
+                        senderName, task.getBrokerConnectionConfig(), brokerUrl, username, topic, task.getRetries(), eventMap);
         }
+
+        return new GroupingConfiguration.BrokerConnectionConfig(task.getBrokerConnectionConfig().getGrouping(),
+                brokerUrl, task.getBrokerConnectionConfig().getCertificate(), username, password);
+    }
+
+    private void retryOrDropEvent(EventForwardTask task) {
+        String senderName = task.getSender().getName();
+        String topic = task.getTopic();
+        Map<String, Object> eventMap = task.getEventMap();
+
+        // Replayed events are retried at the next replay check, in order, instead of being spilled again (behind newer events)
+        if (task.getReplayKey()!=null && properties.getEventSpill().getReplayCheckInterval()>0) {
+            parkedReplays.add(task);
+            addReplayTarget(task);
+            log.debug("- Replayed event will be retried at next replay check: subscriber={}, forward-to-groupings={}, topic={}",
+                    senderName, task.getBrokerConnectionConfig(), topic);
+            return;
+        }
+
+        // Check if retries exceeded limits. If not then put event back in the queue.
+        if (properties.getMaxEventForwardRetries()>=0 && task.getRetries() > properties.getMaxEventForwardRetries()) {
+            log.error("- Max event publish/forward retries exceeded. Dropping event: subscriber={}, forward-to-groupings={}, topic={}, payload={}",
+                    senderName, task.getBrokerConnectionConfig(), topic, eventMap);
+
+            dropOrSpillEvent(task);
+
+        } else
+        if (properties.getMaxEventForwardDuration()>0 && task.getTotalDuration() > properties.getMaxEventForwardDuration()) {
+            log.error("- Max event publish/forward duration exceeded. Dropping event: subscriber={}, forward-to-groupings={}, topic={}, payload={}",
+                    senderName, task.getBrokerConnectionConfig(), topic, eventMap);
+
+            dropOrSpillEvent(task);
+
+        } else {
+            // Retry limits not exceeded. Put event back in the queue
+            eventForwardingQueue.add(task);
+            log.debug("- Event placed back in queue: subscriber={}, forward-to-groupings={}, topic={}, payload={}",
+                    senderName, task.getBrokerConnectionConfig(), topic, eventMap);
+        }
+    }
+
+    private void dropOrSpillEvent(EventForwardTask task) {
+        // Events forwarded to other groupings are spilled to disk, if enabled, to be replayed later
+        if (! task.isLocalPublish() && eventSpillStore.isEnabled()) {
+            if (eventSpillStore.spill(task.getBrokerConnectionConfig().getGrouping(), task.getTopic(), task.getEventMap())) {
+                log.warn("- Event spilled for later replay: subscriber={}, forward-to-groupings={}, topic={}",
+                        task.getSender().getName(), task.getBrokerConnectionConfig(), task.getTopic());
+                addReplayTarget(task);
+            }
+        }
+        runIfNotNull(task.getFailure());
+        replayTaskCompleted(task);
+    }
+
+    private void replaySpilledEvents(EventForwardTask task) {
+        if (task.isLocalPublish() || ! eventSpillStore.isEnabled()) return;
+
+        // Replay one batch at a time per grouping and topic. Next batch is polled when this one completes.
+        String grouping = task.getBrokerConnectionConfig().getGrouping();
+        String replayKey = getReplayKey(task);
+        if (replaysInFlight.containsKey(replayKey)) return;
+        if (! eventSpillStore.hasSpilledEvents(grouping, task.getTopic())) return;
+
+        List<Map<String,Object>> events = eventSpillStore.poll(grouping, task.getTopic(), eventSpillStore.getReplayBatchSize());
+        if (events.isEmpty()) return;
+        replaysInFlight.put(replayKey, events.size());
+        for (Map<String,Object> event : events) {
+            // Callbacks of the original (i.e. triggering) event must not run for replayed events
+            EventForwardTask replayTask = new EventForwardTask(task.getSender(), false, task.getBrokerConnectionConfig(),
+                    task.getTopic(), event, null, null);
+            replayTask.setReplayKey(replayKey);
+            eventForwardingQueue.add(replayTask);
+        }
+        log.info("- Replaying spilled events: subscriber={}, forward-to-grouping={}, topic={}, events={}",
+                task.getSender().getName(), grouping, task.getTopic(), events.size());
+    }
+
+    private static String getReplayKey(EventForwardTask task) {
+        return task.getBrokerConnectionConfig().getGrouping() + "/" + task.getTopic();
+    }
+
+    private void addReplayTarget(EventForwardTask task) {
+        if (properties.getEventSpill().getReplayCheckInterval()<=0) return;
+        if (replayTargets.isEmpty())
+            nextReplayCheck = System.currentTimeMillis() + properties.getEventSpill().getReplayCheckInterval();
+        replayTargets.putIfAbsent(getReplayKey(task), task);
+        startupSpills.remove(getReplayKey(task));
+    }
+
+    private void addStartupReplayTargets() {
+        BrokerCepStatementSubscriber subscriber;
+        while ((subscriber = forwardChanges.poll())!=null) {
+            Set<GroupingConfiguration.BrokerConnectionConfig> forwards = subscriber.getForwardToGroupings();
+            if (forwards==null || subscriber.getTopic()==null) continue;
+            for (GroupingConfiguration.BrokerConnectionConfig forward : forwards) {
+                if (! startupSpills.contains(forward.getGrouping() + "/" + subscriber.getTopic())) continue;
+                // Replay target is only used as a template of replay tasks, i.e. for its sender, forward target and topic
+                addReplayTarget(new EventForwardTask(subscriber, false, forward, subscriber.getTopic(), Collections.emptyMap(), null, null));
+                log.info("EventForwarder: Replay target added for events spilled before restart: subscriber={}, forward-to-grouping={}, topic={}",
+                        subscriber.getName(), forward.getGrouping(), subscriber.getTopic());
+            }
+        }
+    }
+
+    private void checkSpilledEvents() {
+        addStartupReplayTargets();
+
+        // Periodically try to replay spilled events, even if no new events are forwarded to their targets
+        if (replayTargets.isEmpty() || System.currentTimeMillis() < nextReplayCheck) return;
+        nextReplayCheck = System.currentTimeMillis() + properties.getEventSpill().getReplayCheckInterval();
+
+        // Retry replayed events that failed, and replay more events of targets without replays in flight
+        if (! parkedReplays.isEmpty()) {
+            eventForwardingQueue.addAll(parkedReplays);
+            parkedReplays.clear();
+        }
+        replayTargets.values().removeIf(task -> ! replaysInFlight.containsKey(getReplayKey(task))
+                && ! eventSpillStore.hasSpilledEvents(task.getBrokerConnectionConfig().getGrouping(), task.getTopic()));
+        replayTargets.values().forEach(this::replaySpilledEvents);
+        log.debug("EventForwarder: Checked spilled events: replay-targets={}, replays-in-flight={}", replayTargets.keySet(), replaysInFlight);
+    }
+
+    private void replayTaskCompleted(EventForwardTask task) {
+        if (task.getReplayKey()==null) return;
+        replaysInFlight.computeIfPresent(task.getReplayKey(), (k, n) -> n > 1 ? n - 1 : null);
     }
 
     protected void runIfNotNull(Runnable r) {
@@ -231,6 +521,17 @@ public class EventForwarder implements InitializingBean, Runnable {
         r.run();
     }
 
+    private record BatchSupport(boolean supported, long checkTime) { }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class PendingBatch {
+        private final String grouping;
+        private final BrokerCepProperties.EventBatchSettings settings;
+        private final long deadline;
+        private final List<EventForwardTask> tasks = new ArrayList<>();
+    }
+
     @Getter
     @RequiredArgsConstructor
     @ToString
@@ -248,6 +549,8 @@ public class EventForwarder implements InitializingBean, Runnable {
         private long lastRetryEnd;
         private boolean completed;
         private int retries = 0;
+        @Setter
+        private String replayKey;
 
         public void newRetry() {
             if (completed) return;
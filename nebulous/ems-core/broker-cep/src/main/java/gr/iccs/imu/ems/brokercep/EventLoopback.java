@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.brokercep;
+
+import gr.iccs.imu.ems.brokercep.event.EventMap;
+import gr.iccs.imu.ems.brokercep.properties.BrokerCepProperties;
+import jakarta.jms.Connection;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.activemq.ActiveMQConnection;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process delivery of CEP outputs to the local CEP engine, when their topic is consumed locally
+ * (by {@link BrokerCepConsumer}), bypassing the local broker. Outputs are still published to the local broker
+ * if there are external consumers of their topic (tracked by BrokerAdvisoryWatcher), or if consumers cannot be
+ * tracked. Published outputs are marked so that the local consumer does not process them a second time.
+ * The local consumer passes delivered outputs to the event recorder and its listeners, as for outputs received from the broker.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EventLoopback implements InitializingBean {
+    public final static String LOOPBACK_ORIGIN_PROPERTY = "ems_loopback_origin";
+
+    private final BrokerCepProperties properties;
+    @Getter
+    private final String instanceId = UUID.randomUUID().toString();
+    @Setter
+    private BrokerCepConsumer localConsumer;
+
+    private final Set<String> internalConnectionIds = ConcurrentHashMap.newKeySet();
+    private final Map<String, Set<String>> externalConsumers = new ConcurrentHashMap<>();     // destination -> consumer ids
+    private volatile boolean consumersTracked;
+    private final AtomicLong loopbackCounter = new AtomicLong();
+
+    @Override
+    public void afterPropertiesSet() {
+        log.info("EventLoopback: In-process delivery of CEP outputs: enabled={}", properties.isLoopbackEnabled());
+    }
+
+    /**
+     * Delivers event to the local CEP engine, if its topic is consumed locally. Returns true if delivered.
+     */
+    public boolean deliver(@NonNull String topic, @NonNull Map<String, Object> eventMap) {
+        BrokerCepConsumer consumer = localConsumer;
+        if (! properties.isLoopbackEnabled() || consumer==null || ! consumer.containsDestination(topic))
+            return false;
+        consumer.handleLoopbackEvent(new EventMap(eventMap), topic);
+        loopbackCounter.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Returns a copy of event marked as already delivered in-process, to be published to the local broker.
+     */
+    public EventMap markAsDelivered(@NonNull Map<String, Object> eventMap) {
+        EventMap copy = new EventMap(eventMap);
+        copy.setEventProperty(LOOPBACK_ORIGIN_PROPERTY, instanceId);
+        return copy;
+    }
+
+    public boolean isDeliveredInProcess(@NonNull Message message) throws JMSException {
+        return instanceId.equals(message.getStringProperty(LOOPBACK_ORIGIN_PROPERTY));
+    }
+
+    // ------------------------------------------------------------------------
+    //  External consumers tracking
+    // ------------------------------------------------------------------------
+
+    public void registerInternalConnection(Connection connection) {
+        if (connection instanceof ActiveMQConnection amqConnection) {
+            internalConnectionIds.add(amqConnection.getConnectionInfo().getConnectionId().getValue());
+        }
+    }
+
+    public void resetConsumerTracking(boolean tracked) {
+        externalConsumers.clear();
+        consumersTracked = tracked;
+    }
+
+    public void consumerAdded(@NonNull String destination, @NonNull String connectionId, @NonNull String consumerId) {
+        if (internalConnectionIds.contains(connectionId)) return;
+        externalConsumers.computeIfAbsent(destination, k -> ConcurrentHashMap.newKeySet()).add(consumerId);
+        log.debug("EventLoopback: External consumer added: destination={}, consumer={}", destination, consumerId);
+    }
+
+    public void consumerRemoved(@NonNull String consumerId) {
+        externalConsumers.forEach((destination, consumers) -> {
+            if (consumers.remove(consumerId))
+                log.debug("EventLoopback: External consumer removed: destination={}, consumer={}", destination, consumerId);
+        });
+    }
+
+    public boolean hasExternalConsumers(@NonNull String destination) {
+        if (! consumersTracked) return true;
+        Set<String> consumers = externalConsumers.get(destination);
+        return consumers!=null && ! consumers.isEmpty();
+    }
+
+    public long getLoopbackCounter() {
+        return loopbackCounter.get();
+    }
+}
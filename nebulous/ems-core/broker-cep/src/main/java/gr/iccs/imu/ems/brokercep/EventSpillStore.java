@@ -0,0 +1,408 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.brokercep;
+
+import com.google.gson.Gson;
+import gr.iccs.imu.ems.brokercep.event.EventMap;
+import gr.iccs.imu.ems.brokercep.properties.BrokerCepProperties;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Stores events that could not be forwarded (e.g. during a network outage), so that they can be replayed,
+ * with their original timestamps, when the forward target becomes reachable again.
+ * Events are kept per grouping and topic, in a memory-mapped file of fixed size, holding a raw events ring
+ * and one ring per downsampling resolution. Events evicted from a ring are averaged into buckets of the next
+ * resolution, and events evicted from the coarsest ring are dropped.
+ * Disk usage (and mapped memory) is capped by 'maxDiskSize'. Heap usage is one bucket per resolution and topic.
+ * The file of a topic is deleted once all its events have been replayed, freeing its share of 'maxDiskSize'.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EventSpillStore implements InitializingBean, DisposableBean {
+    private final static int MAGIC = 0x454D5353;
+    private final static int VERSION = 1;
+    private final static int FILE_HEADER_SIZE = 256;
+    private final static int KEY_OFFSET = 64;
+    private final static int MAX_TIERS = (KEY_OFFSET - 16) / 4;
+    private final static String FILE_SUFFIX = ".spill";
+    private final static Gson gson = new Gson();
+
+    private final BrokerCepProperties properties;
+    private final Map<String, TopicSpill> topics = new HashMap<>();
+    private final Set<String> rejectedTopics = new HashSet<>();
+    private final AtomicLong spilledCounter = new AtomicLong();
+    private final AtomicLong replayedCounter = new AtomicLong();
+    private final AtomicLong droppedCounter = new AtomicLong();
+
+    private BrokerCepProperties.EventSpillProperties spillProperties;
+    private Path directory;
+    private int[] tierCapacities;
+    private long fileSize;
+    private long diskUsage;
+    private boolean enabled;
+
+    private static class Bucket {
+        long start;
+        int count;
+        double sum;
+        boolean numeric = true;
+        long lastTimestamp;
+        Map<String,Object> lastEvent;
+    }
+
+    private static class TopicSpill {
+        Path file;
+        MappedByteBuffer buffer;
+        SpillRing[] rings;
+        Bucket[] buckets;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        spillProperties = properties.getEventSpill();
+        if (spillProperties==null || ! spillProperties.isEnabled()) return;
+
+        List<Long> resolutions = spillProperties.getDownsamplingResolutions();
+        if (resolutions.size() >= MAX_TIERS)
+            throw new IllegalArgumentException("Too many downsampling resolutions. Max allowed: "+(MAX_TIERS-1));
+        if (resolutions.stream().anyMatch(r -> r==null || r<=0))
+            throw new IllegalArgumentException("Downsampling resolutions must be positive: "+resolutions);
+
+        tierCapacities = new int[1 + resolutions.size()];
+        Arrays.fill(tierCapacities, spillProperties.getDownsampledRingSize());
+        tierCapacities[0] = spillProperties.getRingSize();
+        fileSize = FILE_HEADER_SIZE + Arrays.stream(tierCapacities).mapToLong(c -> SpillRing.HEADER_SIZE + c).sum();
+
+        directory = StringUtils.isNotBlank(spillProperties.getDirectory())
+                ? Paths.get(spillProperties.getDirectory())
+                : Paths.get(System.getProperty("java.io.tmpdir"), "ems-event-spill");
+        Files.createDirectories(directory);
+        loadSpillFiles();
+        enabled = true;
+        log.info("EventSpillStore: Enabled: directory={}, ring-size={}, downsampling-resolutions={}, max-disk-size={}, topics-with-spilled-events={}",
+                directory, spillProperties.getRingSize(), resolutions, spillProperties.getMaxDiskSize(), topics.size());
+    }
+
+    /**
+     * A grouping and topic with spilled events
+     */
+    public record SpilledTopic(String grouping, String topic) { }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getReplayBatchSize() {
+        return spillProperties!=null ? Math.max(1, spillProperties.getReplayBatchSize()) : 1;
+    }
+
+    public long getSpilledCount() { return spilledCounter.get(); }
+    public long getReplayedCount() { return replayedCounter.get(); }
+    public long getDroppedCount() { return droppedCounter.get(); }
+    public synchronized long getDiskUsage() { return diskUsage; }
+
+    public synchronized boolean spill(String grouping, @NonNull String topic, @NonNull Map<String,Object> eventMap) {
+        if (! enabled) return false;
+        TopicSpill spill = getOrCreateTopicSpill(grouping, topic);
+        if (spill==null) {
+            droppedCounter.incrementAndGet();
+            return false;
+        }
+        long timestamp = eventMap.get(EventMap.TIMESTAMP_NAME) instanceof Number n ? n.longValue() : System.currentTimeMillis();
+        byte[] payload = gson.toJson(eventMap).getBytes(StandardCharsets.UTF_8);
+        if (! spill.rings[0].append(timestamp, payload, e -> downsample(spill, 1, e))) {
+            log.warn("EventSpillStore: Event too large for spill ring. Dropping it: grouping={}, topic={}, size={}", grouping, topic, payload.length);
+            droppedCounter.incrementAndGet();
+            return false;
+        }
+        spilledCounter.incrementAndGet();
+        return true;
+    }
+
+    public synchronized boolean hasSpilledEvents(String grouping, @NonNull String topic) {
+        TopicSpill spill = topics.get(key(grouping, topic));
+        return spill!=null && ! isDrained(spill);
+    }
+
+    /**
+     * Returns the groupings and topics with spilled events, e.g. the ones loaded from disk at startup
+     */
+    public synchronized List<SpilledTopic> getSpilledTopics() {
+        List<SpilledTopic> list = new ArrayList<>();
+        topics.forEach((key, spill) -> {
+            if (isDrained(spill)) return;
+            int p = key.indexOf('\n');
+            list.add(new SpilledTopic(StringUtils.defaultIfEmpty(key.substring(0, p), null), key.substring(p + 1)));
+        });
+        return list;
+    }
+
+    private static boolean isDrained(TopicSpill spill) {
+        for (int t=0; t<spill.rings.length; t++)
+            if (! spill.rings[t].isEmpty() || t>0 && spill.buckets[t].count>0) return false;
+        return true;
+    }
+
+    /**
+     * Removes and returns up to 'max' spilled events of the given grouping and topic, oldest first.
+     */
+    public synchronized List<Map<String,Object>> poll(String grouping, @NonNull String topic, int max) {
+        TopicSpill spill = topics.get(key(grouping, topic));
+        if (spill==null) return Collections.emptyList();
+
+        // Coarsest (i.e. oldest) events first. A bucket is older than the contents of finer rings.
+        List<Map<String,Object>> events = new ArrayList<>();
+        for (int t=spill.rings.length-1; t>=0 && events.size()<max; t--) {
+            SpillRing.SpilledEvent e;
+            while (events.size()<max && (e = spill.rings[t].poll())!=null)
+                addDecoded(events, e);
+            if (t>0 && events.size()<max && spill.buckets[t].count>0)
+                addDecoded(events, takeBucket(spill.buckets[t]));
+        }
+        replayedCounter.addAndGet(events.size());
+        if (isDrained(spill))
+            releaseTopicSpill(key(grouping, topic), spill);
+        return events;
+    }
+
+    private void addDecoded(List<Map<String,Object>> events, SpillRing.SpilledEvent e) {
+        try {
+            events.add(decode(e.payload()));
+        } catch (Exception ex) {
+            log.warn("EventSpillStore: Could not decode spilled event. Dropping it: timestamp={}, exception: {}", e.timestamp(), ex.getMessage());
+            droppedCounter.incrementAndGet();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    //  Downsampling
+    // ------------------------------------------------------------------------
+
+    private void downsample(TopicSpill spill, int tier, SpillRing.SpilledEvent event) {
+        if (tier >= spill.rings.length) {
+            droppedCounter.incrementAndGet();
+            log.debug("EventSpillStore: Coarsest ring is full. Dropping oldest event: timestamp={}", event.timestamp());
+            return;
+        }
+        Map<String,Object> eventMap;
+        try {
+            eventMap = decode(event.payload());
+        } catch (Exception ex) {
+            droppedCounter.incrementAndGet();
+            return;
+        }
+
+        long resolution = spillProperties.getDownsamplingResolutions().get(tier-1);
+        long start = event.timestamp() - Math.floorMod(event.timestamp(), resolution);
+        Bucket bucket = spill.buckets[tier];
+        if (bucket.count>0 && bucket.start!=start) {
+            SpillRing.SpilledEvent aggregate = takeBucket(bucket);
+            spill.rings[tier].append(aggregate.timestamp(), aggregate.payload(), e -> downsample(spill, tier+1, e));
+        }
+
+        bucket.start = start;
+        bucket.count++;
+        bucket.lastTimestamp = event.timestamp();
+        bucket.lastEvent = eventMap;
+        if (eventMap.get(EventMap.METRIC_VALUE_NAME) instanceof Number n)
+            bucket.sum += n.doubleValue();
+        else
+            bucket.numeric = false;
+    }
+
+    private SpillRing.SpilledEvent takeBucket(Bucket bucket) {
+        // Keep the latest event of the bucket, with the average metric value
+        Map<String,Object> eventMap = bucket.lastEvent;
+        if (bucket.numeric)
+            eventMap.put(EventMap.METRIC_VALUE_NAME, bucket.sum / bucket.count);
+        SpillRing.SpilledEvent aggregate = new SpillRing.SpilledEvent(
+                bucket.lastTimestamp, gson.toJson(eventMap).getBytes(StandardCharsets.UTF_8));
+        bucket.count = 0;
+        bucket.sum = 0;
+        bucket.numeric = true;
+        bucket.lastEvent = null;
+        return aggregate;
+    }
+
+    private static Map<String,Object> decode(byte[] payload) {
+        @SuppressWarnings("unchecked")
+        Map<String,Object> eventMap = EventMap.parseMap(new String(payload, StandardCharsets.UTF_8));
+        if (eventMap.get(EventMap.LEVEL_NAME) instanceof Double d)
+            eventMap.put(EventMap.LEVEL_NAME, d.intValue());
+        return eventMap;
+    }
+
+    // ------------------------------------------------------------------------
+    //  Spill files
+    // ------------------------------------------------------------------------
+
+    private static String key(String grouping, String topic) {
+        return StringUtils.defaultString(grouping) + "\n" + topic;
+    }
+
+    private TopicSpill getOrCreateTopicSpill(String grouping, String topic) {
+        String key = key(grouping, topic);
+        TopicSpill spill = topics.get(key);
+        if (spill!=null) return spill;
+        if (rejectedTopics.contains(key)) return null;
+
+        if (diskUsage + fileSize > spillProperties.getMaxDiskSize()) {
+            log.warn("EventSpillStore: Max disk size reached. Events of topic will not be spilled: grouping={}, topic={}, disk-usage={}, max-disk-size={}",
+                    grouping, topic, diskUsage, spillProperties.getMaxDiskSize());
+            rejectedTopics.add(key);
+            return null;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > FILE_HEADER_SIZE - KEY_OFFSET) {
+            log.warn("EventSpillStore: Grouping and topic names too long. Events of topic will not be spilled: grouping={}, topic={}", grouping, topic);
+            rejectedTopics.add(key);
+            return null;
+        }
+
+        String fileName = key.replaceAll("[^A-Za-z0-9_.-]", "_") + "-" + Integer.toHexString(key.hashCode()) + FILE_SUFFIX;
+        try {
+            Path file = directory.resolve(fileName);
+            MappedByteBuffer buffer = map(file);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, tierCapacities.length);
+            buffer.putInt(12, keyBytes.length);
+            for (int t=0; t<tierCapacities.length; t++)
+                buffer.putInt(16 + 4*t, tierCapacities[t]);
+            buffer.put(KEY_OFFSET, keyBytes);
+            spill = createTopicSpill(file, buffer, true);
+            topics.put(key, spill);
+            diskUsage += fileSize;
+            log.info("EventSpillStore: Created spill file: grouping={}, topic={}, file={}", grouping, topic, fileName);
+            return spill;
+        } catch (IOException e) {
+            log.warn("EventSpillStore: Could not create spill file. Events of topic will not be spilled: grouping={}, topic={}, exception: ",
+                    grouping, topic, e);
+            rejectedTopics.add(key);
+            return null;
+        }
+    }
+
+    private void releaseTopicSpill(String key, TopicSpill spill) {
+        // The mapping is released when the buffer is garbage collected. Deleting a mapped file is allowed on POSIX systems
+        topics.remove(key);
+        spill.buffer = null;
+        diskUsage -= fileSize;
+        try {
+            Files.deleteIfExists(spill.file);
+            log.debug("EventSpillStore: Deleted drained spill file: {}", spill.file);
+        } catch (IOException e) {
+            log.warn("EventSpillStore: Could not delete drained spill file: {}, exception: {}", spill.file, e.getMessage());
+        }
+
+        // Disk space was freed. Topics rejected earlier can be spilled again
+        rejectedTopics.clear();
+    }
+
+    private TopicSpill createTopicSpill(Path file, MappedByteBuffer buffer, boolean reset) {
+        TopicSpill spill = new TopicSpill();
+        spill.file = file;
+        spill.buffer = buffer;
+        spill.rings = new SpillRing[tierCapacities.length];
+        spill.buckets = new Bucket[tierCapacities.length];
+        int offset = FILE_HEADER_SIZE;
+        for (int t=0; t<tierCapacities.length; t++) {
+            spill.rings[t] = new SpillRing(buffer, offset, tierCapacities[t]);
+            if (reset) spill.rings[t].reset();
+            spill.buckets[t] = new Bucket();
+            offset += SpillRing.HEADER_SIZE + tierCapacities[t];
+        }
+        return spill;
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        }
+    }
+
+    private void loadSpillFiles() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(p -> p.getFileName().toString().endsWith(FILE_SUFFIX)).sorted().toList();
+        }
+        for (Path file : files) {
+            try {
+                if (Files.size(file)!=fileSize || diskUsage + fileSize > spillProperties.getMaxDiskSize()) {
+                    log.warn("EventSpillStore: Spill file size does not match configuration, or max disk size reached. Deleting it: {}", file);
+                    Files.delete(file);
+                    continue;
+                }
+                MappedByteBuffer buffer = map(file);
+                boolean valid = buffer.getInt(0)==MAGIC && buffer.getInt(4)==VERSION && buffer.getInt(8)==tierCapacities.length;
+                for (int t=0; valid && t<tierCapacities.length; t++)
+                    valid = buffer.getInt(16 + 4*t)==tierCapacities[t];
+                int keyLength = buffer.getInt(12);
+                if (! valid || keyLength<=0 || keyLength > FILE_HEADER_SIZE - KEY_OFFSET) {
+                    log.warn("EventSpillStore: Spill file layout does not match configuration. Deleting it: {}", file);
+                    Files.delete(file);
+                    continue;
+                }
+                byte[] keyBytes = new byte[keyLength];
+                buffer.get(KEY_OFFSET, keyBytes);
+                TopicSpill spill = createTopicSpill(file, buffer, false);
+                if (isDrained(spill)) {
+                    log.debug("EventSpillStore: Spill file has no events. Deleting it: {}", file);
+                    Files.delete(file);
+                    continue;
+                }
+                topics.put(new String(keyBytes, StandardCharsets.UTF_8), spill);
+                diskUsage += fileSize;
+                log.debug("EventSpillStore: Loaded spill file: {}", file);
+            } catch (IOException e) {
+                log.warn("EventSpillStore: Could not load spill file: {}, exception: ", file, e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (! enabled) return;
+        // Store pending downsampling buckets, and flush mapped files to disk
+        topics.values().forEach(spill -> {
+            for (int t=1; t<spill.rings.length; t++) {
+                if (spill.buckets[t].count>0) {
+                    SpillRing.SpilledEvent aggregate = takeBucket(spill.buckets[t]);
+                    int tier = t;
+                    spill.rings[t].append(aggregate.timestamp(), aggregate.payload(), e -> downsample(spill, tier+1, e));
+                }
+            }
+            spill.buffer.force();
+        });
+        enabled = false;
+        log.info("EventSpillStore: Closed: spilled={}, replayed={}, dropped={}", spilledCounter.get(), replayedCounter.get(), droppedCounter.get());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.brokercep;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Ring buffer of variable-size records (timestamp and payload), laid out in a region of a (memory-mapped) buffer.
+ * The region starts with a header (head, tail, used bytes, record count), so the ring survives restarts.
+ * When full, the oldest records are evicted and handed to the given eviction consumer.
+ */
+@Slf4j
+class SpillRing {
+    final static int HEADER_SIZE = 16;
+    private final static int RECORD_OVERHEAD = 12;      // int length + long timestamp
+    private final static int WRAP_MARKER = -1;
+
+    record SpilledEvent(long timestamp, byte[] payload) { }
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int dataStart;
+    @Getter
+    private final int capacity;
+
+    private int head;
+    private int tail;
+    private int used;
+    @Getter
+    private int count;
+
+    SpillRing(@NonNull ByteBuffer buffer, int offset, int capacity) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.dataStart = offset + HEADER_SIZE;
+        this.capacity = capacity;
+        load();
+    }
+
+    private void load() {
+        head = buffer.getInt(offset);
+        tail = buffer.getInt(offset + 4);
+        used = buffer.getInt(offset + 8);
+        count = buffer.getInt(offset + 12);
+        boolean valid = head>=0 && head<=capacity && tail>=0 && tail<=capacity
+                && used>=0 && used<=capacity && count>=0 && (count>0 || used==0);
+        if (! valid) {
+            log.warn("SpillRing: Invalid ring header. Resetting ring: head={}, tail={}, used={}, count={}, capacity={}",
+                    head, tail, used, count, capacity);
+            reset();
+        }
+    }
+
+    private void store() {
+        buffer.putInt(offset, head);
+        buffer.putInt(offset + 4, tail);
+        buffer.putInt(offset + 8, used);
+        buffer.putInt(offset + 12, count);
+    }
+
+    void reset() {
+        head = tail = used = count = 0;
+        store();
+    }
+
+    boolean isEmpty() {
+        return count==0;
+    }
+
+    boolean append(long timestamp, @NonNull byte[] payload, Consumer<SpilledEvent> evicted) {
+        int size = RECORD_OVERHEAD + payload.length;
+        if (size > capacity) return false;
+
+        // Evict oldest records until the new record fits (contiguously)
+        while (capacity - used < size + wrapWaste(size)) {
+            SpilledEvent event = poll();
+            if (event==null) break;
+            if (evicted!=null) evicted.accept(event);
+        }
+
+        // Wrap around if the record does not fit at the end of the region, skipping any unusable space.
+        // This includes the case where the region is filled exactly to the end (i.e. no space is wasted).
+        if (tail + size > capacity) {
+            int waste = capacity - tail;
+            if (waste >= 4) buffer.putInt(dataStart + tail, WRAP_MARKER);
+            used += waste;
+            tail = 0;
+        }
+
+        buffer.putInt(dataStart + tail, payload.length);
+        buffer.putLong(dataStart + tail + 4, timestamp);
+        buffer.put(dataStart + tail + RECORD_OVERHEAD, payload);
+        tail += size;
+        used += size;
+        count++;
+        store();
+        return true;
+    }
+
+    private int wrapWaste(int size) {
+        return tail + size > capacity ? capacity - tail : 0;
+    }
+
+    SpilledEvent poll() {
+        if (count==0) return null;
+
+        // Skip the unusable space at the end of the region
+        if (capacity - head < RECORD_OVERHEAD || buffer.getInt(dataStart + head)==WRAP_MARKER) {
+            used -= capacity - head;
+            head = 0;
+        }
+
+        int length = buffer.getInt(dataStart + head);
+        if (length<0 || head + RECORD_OVERHEAD + length > capacity) {
+            log.warn("SpillRing: Invalid record found. Resetting ring: head={}, length={}, count={}", head, length, count);
+            reset();
+            return null;
+        }
+        long timestamp = buffer.getLong(dataStart + head + 4);
+        byte[] payload = new byte[length];
+        buffer.get(dataStart + head + RECORD_OVERHEAD, payload);
+
+        int size = RECORD_OVERHEAD + length;
+        head += size;
+        used -= size;
+        count--;
+        if (count==0) head = tail = used = 0;
+        store();
+        return new SpilledEvent(timestamp, payload);
+    }
+}
@@ -10,6 +10,7 @@
 package gr.iccs.imu.ems.brokercep.broker;
 
 import gr.iccs.imu.ems.brokercep.BrokerCepService;
+import gr.iccs.imu.ems.brokercep.EventLoopback;
 import gr.iccs.imu.ems.brokercep.properties.BrokerCepProperties;
 import gr.iccs.imu.ems.util.PasswordUtil;
 import lombok.RequiredArgsConstructor;
@@ -17,8 +18,11 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.activemq.broker.BrokerService;
 import org.apache.activemq.command.ActiveMQDestination;
 import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.ConsumerId;
+import org.apache.activemq.command.ConsumerInfo;
 import org.apache.activemq.command.DataStructure;
 import org.apache.activemq.command.DestinationInfo;
+import org.apache.activemq.command.RemoveInfo;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.ApplicationListener;
@@ -43,6 +47,7 @@ public class BrokerAdvisoryWatcher implements MessageListener, InitializingBean,
 
 	private final PasswordUtil passwordUtil;
 	private final TaskScheduler taskScheduler;
+	private final EventLoopback eventLoopback;
 
 	private Connection connection;
 	private Session session;
@@ -59,6 +64,7 @@ public class BrokerAdvisoryWatcher implements MessageListener, InitializingBean,
 		try {
 			// close previous session and connection
 			closeConnection();
+			eventLoopback.resetConsumerTracking(false);
 
 			// If an alternative Broker URL is provided for consumer, it will be used
 			if (connectionFactory==null) {
@@ -76,7 +82,9 @@ public class BrokerAdvisoryWatcher implements MessageListener, InitializingBean,
 			this.connection = usesAuthentication
 					? connectionFactory.createConnection(username, password)
 					: connectionFactory.createConnection();
+			eventLoopback.registerInternalConnection(connection);
 			connection.setExceptionListener(e -> {
+				eventLoopback.resetConsumerTracking(false);
 				if (!shuttingDown) {
 					log.warn("BrokerAdvisoryWatcher: Connection exception listener: Exception caught: ", e);
 					initialize();
@@ -86,6 +94,7 @@ public class BrokerAdvisoryWatcher implements MessageListener, InitializingBean,
 
 			// Create a new session, and new consumer for topic
 			this.session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+			eventLoopback.resetConsumerTracking(properties.isBrokerAdvisorySupportEnabled());
 			Topic topic = session.createTopic("ActiveMQ.Advisory.>");
 			MessageConsumer consumer = session.createConsumer(topic);
 			consumer.setMessageListener( this );
@@ -179,6 +188,18 @@ public class BrokerAdvisoryWatcher implements MessageListener, InitializingBean,
 				log.info("BrokerAdvisoryWatcher.onMessage(): Leaving topic: {}", topicName);
 			}*/
 
+		} else if (ds instanceof ConsumerInfo info) {
+			// Track consumers, so that loopback-delivered events are published only if they have external consumers
+			ConsumerId consumerId = info.getConsumerId();
+			log.trace("BrokerAdvisoryWatcher.onMessage(): Received a ConsumerInfo message: destination={}, consumer={}",
+					info.getDestination(), consumerId);
+			if (info.getDestination()!=null)
+				eventLoopback.consumerAdded(info.getDestination().getPhysicalName(), consumerId.getConnectionId(), consumerId.toString());
+
+		} else if (ds instanceof RemoveInfo info && info.getObjectId() instanceof ConsumerId consumerId) {
+			log.trace("BrokerAdvisoryWatcher.onMessage(): Received a RemoveInfo message: consumer={}", consumerId);
+			eventLoopback.consumerRemoved(consumerId.toString());
+
 		} else {
 			log.trace("BrokerAdvisoryWatcher.onMessage(): Message ignored");
 		}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.brokercep.cep;
+
+import com.espertech.esper.client.EPServiceProvider;
+import com.espertech.esper.client.EPStatement;
+import com.espertech.esper.client.soda.EPStatementObjectModel;
+import com.espertech.esper.client.soda.FilterStream;
+import com.espertech.esper.client.soda.Stream;
+import com.espertech.esper.core.service.EPServiceProviderSPI;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A named Esper engine instance, along with the event types its statements consume.
+ * Incoming events are only sent to the engines consuming their type.
+ */
+@Slf4j
+@Getter
+@RequiredArgsConstructor
+class CepEngine {
+    private final String name;
+    private final EPServiceProvider provider;
+    private final boolean asynchronous;         // Uses inbound or outbound thread pools
+    private final Map<String, Set<String>> statementEventTypes = new ConcurrentHashMap<>();     // statement name -> consumed types
+    private final Set<String> allStatementsConsume = ConcurrentHashMap.newKeySet();             // statements consuming any type
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger activeSenders = new AtomicInteger();
+    private volatile boolean retired;
+
+    EPStatement createStatement(@NonNull String statementName, @NonNull String statementText) {
+        EPStatement statement = provider.getEPAdministrator().createEPL(statementText, statementName);
+        registerConsumedTypes(statementName, statementText);
+        return statement;
+    }
+
+    EPStatement getStatement(@NonNull String statementName) {
+        return provider.getEPAdministrator().getStatement(statementName);
+    }
+
+    void statementDestroyed(@NonNull String statementName) {
+        statementEventTypes.remove(statementName);
+        allStatementsConsume.remove(statementName);
+    }
+
+    void destroyAllStatements() {
+        provider.getEPAdministrator().destroyAllStatements();
+        statementEventTypes.clear();
+        allStatementsConsume.clear();
+    }
+
+    boolean hasStatements() {
+        return ! statementEventTypes.isEmpty() || ! allStatementsConsume.isEmpty();
+    }
+
+    boolean consumes(String eventType) {
+        if (! allStatementsConsume.isEmpty()) return true;
+        for (Set<String> types : statementEventTypes.values())
+            if (types.contains(eventType)) return true;
+        return false;
+    }
+
+    /**
+     * Resolves the event type name of a POJO event, the way EPRuntime.sendEvent(Object) does,
+     * i.e. the name its class was registered with, or the class name if not registered
+     */
+    String getBeanEventTypeName(@NonNull Object event) {
+        return ((EPServiceProviderSPI) provider).getEventAdapterService().getBeanEventTypeFactory()
+                .createBeanTypeDefaultName(event.getClass()).getName();
+    }
+
+    /**
+     * Must be called before sending an event to the engine. Returns false if the engine is being destroyed
+     */
+    boolean enter() {
+        activeSenders.incrementAndGet();
+        if (retired) {
+            activeSenders.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    void exit() {
+        activeSenders.decrementAndGet();
+    }
+
+    /**
+     * Stops accepting events, waits (up to the timeout) for the events being sent to complete, and destroys the engine
+     */
+    void retire(long timeoutMillis) {
+        retired = true;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (activeSenders.get()>0 && System.currentTimeMillis()<deadline) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (activeSenders.get()>0)
+            log.warn("CepEngine: Destroying engine while events are still being sent to it: engine={}, senders={}", name, activeSenders.get());
+        destroyAllStatements();
+        destroy();
+    }
+
+    private void registerConsumedTypes(String statementName, String statementText) {
+        // Statements with subqueries or non-filter streams (e.g. patterns) are assumed to consume any type
+        if (StringUtils.containsIgnoreCase(statementText.replaceAll("\\s+", ""), "(select")) {
+            allStatementsConsume.add(statementName);
+            return;
+        }
+        try {
+            EPStatementObjectModel model = provider.getEPAdministrator().compileEPL(statementText);
+            Set<String> types = ConcurrentHashMap.newKeySet();
+            for (Stream stream : model.getFromClause().getStreams()) {
+                if (stream instanceof FilterStream filterStream && filterStream.getFilter()!=null) {
+                    types.add(filterStream.getFilter().getEventTypeName());
+                } else {
+                    allStatementsConsume.add(statementName);
+                    return;
+                }
+            }
+            statementEventTypes.put(statementName, types);
+        } catch (Exception e) {
+            log.debug("CepEngine: Could not determine statement event types. Assuming any: engine={}, statement={}, Exception: ",
+                    name, statementName, e);
+            allStatementsConsume.add(statementName);
+        }
+    }
+
+    void destroy() {
+        provider.destroy();
+    }
+}
@@ -10,30 +10,52 @@
 package gr.iccs.imu.ems.brokercep.cep;
 
 import com.espertech.esper.client.*;
+import com.espertech.esper.client.time.CurrentTimeEvent;
 import gr.iccs.imu.ems.brokercep.event.EventMap;
+import gr.iccs.imu.ems.brokercep.properties.BrokerCepProperties;
+import gr.iccs.imu.ems.util.EmsMetrics;
 import gr.iccs.imu.ems.util.FunctionDefinition;
 import gr.iccs.imu.ems.util.StrUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
-public class CepService implements InitializingBean {
+public class CepService implements InitializingBean, DisposableBean {
+    public final static String DEFAULT_ENGINE = "default";
     private final static AtomicLong eventCounter = new AtomicLong(0);
+    private final static long ENGINE_RETIRE_TIMEOUT = 5000L;
+
+    private final BrokerCepProperties properties;
+
+    /**
+     * Esper engines (the default one, and the per grouping/application ones, if engine isolation is enabled)
+     */
+    private final Map<String, CepEngine> engines = new ConcurrentHashMap<>();
+    private CepEngine defaultEngine;
+    private final ThreadLocal<CepEngine> processingEngine = new ThreadLocal<>();
+
+    /**
+     * Event-time ingestion stage (if event ordering is enabled). Engines then use external (event) time
+     */
+    private volatile EventTimeOrderer eventTimeOrderer;
 
     /**
-     * Esper service
+     * Event types and plug-in functions registered, in order to be added in new engines too
      */
-    private EPServiceProvider epService;
+    private final Map<String, Object> eventTypeDefinitions = new LinkedHashMap<>();
+    private final Map<String, String> aggregatorFunctions = new LinkedHashMap<>();
+    private final Map<String, ConfigurationPlugInSingleRowFunction> singleRowFunctions = new LinkedHashMap<>();
 
     @Override
     public void afterPropertiesSet() {
@@ -46,8 +68,69 @@ public class CepService implements InitializingBean {
      */
     public void initService() {
         log.debug("CepService: Initializing CEP Service...");
+        if (properties.getEventOrdering().isEnabled() && eventTimeOrderer==null)
+            eventTimeOrderer = new EventTimeOrderer(properties.getEventOrdering(),
+                    this::advanceEngineTime, (event, eventType) -> sendToEngines(event, eventType, false));
+        defaultEngine = createEngine(DEFAULT_ENGINE);
+        engines.put(DEFAULT_ENGINE, defaultEngine);
+    }
+
+    @Override
+    public void destroy() {
+        EventTimeOrderer orderer = eventTimeOrderer;
+        eventTimeOrderer = null;
+        if (orderer!=null) {
+            orderer.shutdown();
+            log.debug("CepService: Event-time ingestion stage stopped");
+        }
+    }
+
+    private CepEngine createEngine(String engineName) {
+        BrokerCepProperties.CepEngineThreading threading = properties.getCepEngines().getEngines()
+                .getOrDefault(engineName, properties.getCepEngines().getDefaults());
         Configuration config = new Configuration();
-        epService = EPServiceProviderManager.getDefaultProvider(config);
+        ConfigurationEngineDefaults.Threading threadingConfig = config.getEngineDefaults().getThreading();
+        threadingConfig.setThreadPoolInbound(threading.isInboundThreadPool());
+        threadingConfig.setThreadPoolInboundNumThreads(Math.max(1, threading.getInboundThreads()));
+        threadingConfig.setThreadPoolOutbound(threading.isOutboundThreadPool());
+        threadingConfig.setThreadPoolOutboundNumThreads(Math.max(1, threading.getOutboundThreads()));
+        if (threading.getThreadPoolCapacity()>0) {
+            threadingConfig.setThreadPoolInboundCapacity(threading.getThreadPoolCapacity());
+            threadingConfig.setThreadPoolOutboundCapacity(threading.getThreadPoolCapacity());
+        }
+        if (eventTimeOrderer!=null)
+            threadingConfig.setInternalTimerEnabled(false);
+        // Share data windows of statements with identical stream and view specifications (the translator canonicalizes them)
+        config.getEngineDefaults().getViewResources().setShareViews(true);
+
+        EPServiceProvider provider = DEFAULT_ENGINE.equals(engineName)
+                ? EPServiceProviderManager.getDefaultProvider(config)
+                : EPServiceProviderManager.getProvider("ems-" + engineName, config);
+        if (eventTimeOrderer!=null)
+            provider.getEPRuntime().sendEvent(new CurrentTimeEvent(eventTimeOrderer.getCurrentTime()));
+        CepEngine engine = new CepEngine(engineName, provider, threading.isInboundThreadPool() || threading.isOutboundThreadPool());
+        log.info("CepService: Created CEP engine: name={}, threading={}", engineName, threading);
+        return engine;
+    }
+
+    /**
+     * Get (or create) the engine for a grouping or application. Returns the default engine if engine isolation is disabled
+     */
+    private synchronized CepEngine getEngine(String engineName) {
+        if (StringUtils.isBlank(engineName) || ! properties.getCepEngines().isIsolationEnabled())
+            return defaultEngine;
+        return engines.computeIfAbsent(engineName, name -> {
+            CepEngine engine = createEngine(name);
+            ConfigurationOperations co = engine.getProvider().getEPAdministrator().getConfiguration();
+            eventTypeDefinitions.forEach((typeName, typeDef) -> addEventType(co, typeName, typeDef));
+            aggregatorFunctions.forEach(co::addPlugInAggregationFunctionFactory);
+            singleRowFunctions.values().forEach(co::addPlugInSingleRowFunction);
+            return engine;
+        });
+    }
+
+    public Set<String> getEngineNames() {
+        return Collections.unmodifiableSet(engines.keySet());
     }
 
     /**
@@ -59,7 +142,8 @@ public class CepService implements InitializingBean {
         for (int i = 0; i < properties.length; i++) {
             eventTypeDef.put(properties[i], propertyTypes[i]);
         }
-        epService.getEPAdministrator().getConfiguration().addEventType(eventTypeName, eventTypeDef);
+        eventTypeDefinitions.put(eventTypeName, eventTypeDef);
+        engines.values().forEach(engine -> addEventType(engine.getProvider().getEPAdministrator().getConfiguration(), eventTypeName, eventTypeDef));
     }
 
     /**
@@ -67,7 +151,13 @@ public class CepService implements InitializingBean {
      */
     public synchronized void addEventType(String eventTypeName, Class eventType) {
         log.debug("CepService: Register new Event Type: name={}, event-type={}", eventTypeName, eventType);
-        epService.getEPAdministrator().getConfiguration().addEventType(eventTypeName, eventType);
+        eventTypeDefinitions.put(eventTypeName, eventType);
+        engines.values().forEach(engine -> addEventType(engine.getProvider().getEPAdministrator().getConfiguration(), eventTypeName, eventType));
+    }
+
+    private void addEventType(ConfigurationOperations co, String eventTypeName, Object eventTypeDef) {
+        if (eventTypeDef instanceof Class<?> c) co.addEventType(eventTypeName, c);
+        else co.addEventType(eventTypeName, StrUtil.castToMapStringObject(eventTypeDef));
     }
 
     /**
@@ -75,22 +165,33 @@ public class CepService implements InitializingBean {
      */
     public synchronized void clearEventTypes() {
         log.info("CepService: Clear registered Event Types");
-        ConfigurationOperations co = epService.getEPAdministrator().getConfiguration();
-        EventType[] types = co.getEventTypes();
-        for (EventType t : types) {
-            boolean removed = co.removeEventType(t.getName(), true);
-            log.info("CepService: Event Type: {} --> removed={}", t.getName(), removed);
-        }
+        eventTypeDefinitions.clear();
+        engines.values().forEach(engine -> {
+            ConfigurationOperations co = engine.getProvider().getEPAdministrator().getConfiguration();
+            EventType[] types = co.getEventTypes();
+            for (EventType t : types) {
+                boolean removed = co.removeEventType(t.getName(), true);
+                log.info("CepService: Event Type: {} --> removed={}, engine={}", t.getName(), removed, engine.getName());
+            }
+        });
     }
 
     /**
      * Dynamic registration of new EPL statements and corresponding subscribers
      */
     public synchronized void addStatementSubscriber(StatementSubscriber subscriber) {
-        log.debug("CepService: Register EPL statement and subscriber: {}", subscriber.getName());
+        addStatementSubscriber(null, subscriber);
+    }
+
+    /**
+     * Dynamic registration of new EPL statements and corresponding subscribers, in the engine of a grouping or application
+     */
+    public synchronized void addStatementSubscriber(String engineName, StatementSubscriber subscriber) {
+        CepEngine engine = getEngine(engineName);
+        log.debug("CepService: Register EPL statement and subscriber: {}, engine={}", subscriber.getName(), engine.getName());
         String statementStr = subscriber.getStatement();
         log.debug("CepService: EPL statement: {}", statementStr);
-        EPStatement eventStatement = epService.getEPAdministrator().createEPL(statementStr, subscriber.getName());
+        EPStatement eventStatement = engine.createStatement(subscriber.getName(), statementStr);
         eventStatement.setSubscriber(subscriber);
     }
 
@@ -98,17 +199,29 @@ public class CepService implements InitializingBean {
      * Dynamic de-registration of existing EPL statements and corresponding subscribers
      */
     public synchronized void removeStatementSubscriber(StatementSubscriber subscriber) {
-        EPStatement stmt = epService.getEPAdministrator().getStatement(subscriber.getName());
-        stmt.stop();
-        stmt.destroy();
+        for (CepEngine engine : engines.values()) {
+            EPStatement stmt = engine.getStatement(subscriber.getName());
+            if (stmt!=null) {
+                stmt.stop();
+                stmt.destroy();
+                engine.statementDestroyed(subscriber.getName());
+            }
+        }
     }
 
     /**
-     * Clear all registered Statements
+     * Clear all registered Statements. Non-default engines are destroyed too
      */
     public synchronized void clearStatements() {
         log.info("CepService: Clear registered Statements");
-        epService.getEPAdministrator().destroyAllStatements();
+        // Non-default engines are removed first, so that no new events are sent to them, and destroyed once in-flight events complete
+        List<CepEngine> retiredEngines = engines.values().stream().filter(engine -> engine!=defaultEngine).toList();
+        engines.keySet().retainAll(Set.of(DEFAULT_ENGINE));
+        defaultEngine.destroyAllStatements();
+        retiredEngines.forEach(engine -> {
+            log.info("CepService: Destroying CEP engine: {}", engine.getName());
+            engine.retire(engine==processingEngine.get() ? 0L : ENGINE_RETIRE_TIMEOUT);
+        });
     }
 
     /**
@@ -116,7 +229,11 @@ public class CepService implements InitializingBean {
      */
     public EPStatement getStatementByName(String stmtName) {
         log.debug("CepService.getStatementByName(): statement-name={}", stmtName);
-        return epService.getEPAdministrator().getStatement(stmtName);
+        for (CepEngine engine : engines.values()) {
+            EPStatement stmt = engine.getStatement(stmtName);
+            if (stmt!=null) return stmt;
+        }
+        return null;
     }
 
     /**
@@ -124,8 +241,20 @@ public class CepService implements InitializingBean {
      */
     public void handleEvent(Map<String, Object> event, String eventType) {
         log.debug("CepService.handleEvent(): type={}, event={}", eventType, event);
+        long startNanos = EmsMetrics.startSample();
         EventMap.checkEvent(event);
-        epService.getEPRuntime().sendEvent(event, eventType);
+        dispatchEvent(event, eventType);
+        eventCounter.incrementAndGet();
+        EmsMetrics.stopSample(startNanos, "ems.cep.event.handle", "event-type", String.valueOf(eventType));
+    }
+
+    /**
+     * Route an event, produced while processing another event (e.g. a statement output), back to the engine(s)
+     */
+    public void routeEvent(Map<String, Object> event, String eventType) {
+        log.debug("CepService.routeEvent(): type={}, event={}", eventType, event);
+        EventMap.checkEvent(event);
+        sendToEngines(event, eventType, true);
         eventCounter.incrementAndGet();
     }
 
@@ -134,10 +263,12 @@ public class CepService implements InitializingBean {
      */
     public void handleEvent(String event, String eventType) {
         log.debug("CepService.handleEvent(): type={}, event={}", eventType, event);
+        long startNanos = EmsMetrics.startSample();
         EventMap eventMap = EventMap.parseEventMap(event);
         log.trace("CepService.handleEvent(): event-map={}", eventMap);
-        epService.getEPRuntime().sendEvent(eventMap, eventType);
+        dispatchEvent(eventMap, eventType);
         eventCounter.incrementAndGet();
+        EmsMetrics.stopSample(startNanos, "ems.cep.event.handle", "event-type", String.valueOf(eventType));
     }
 
     /**
@@ -145,35 +276,101 @@ public class CepService implements InitializingBean {
      */
     public void handleEvent(Object event) {
         log.debug("CepService.handleEvent(): event={}", event);
+        long startNanos = EmsMetrics.startSample();
         EventMap.checkEvent(StrUtil.castToMapStringObject(event));
-        epService.getEPRuntime().sendEvent(event);
+        String eventType = defaultEngine.getBeanEventTypeName(event);
+        for (CepEngine engine : engines.values()) {
+            if (engine!=defaultEngine && ! engine.consumes(eventType)) continue;
+            if (! engine.enter()) continue;
+            try {
+                engine.getProvider().getEPRuntime().sendEvent(event);
+            } finally {
+                engine.exit();
+            }
+        }
         eventCounter.incrementAndGet();
+        EmsMetrics.stopSample(startNanos, "ems.cep.event.handle", "event-type", event.getClass().getSimpleName());
+    }
+
+    /**
+     * Hands incoming event to the event-time ingestion stage, if event ordering is enabled, or sends it to the engines
+     */
+    private void dispatchEvent(Map<String, Object> event, String eventType) {
+        EventTimeOrderer orderer = eventTimeOrderer;
+        if (orderer!=null) orderer.offer(event, eventType);
+        else sendToEngines(event, eventType, false);
+    }
+
+    private void advanceEngineTime(long time) {
+        CurrentTimeEvent timeEvent = new CurrentTimeEvent(time);
+        for (CepEngine engine : engines.values()) {
+            if (! engine.enter()) continue;
+            try {
+                engine.getProvider().getEPRuntime().sendEvent(timeEvent);
+            } finally {
+                engine.exit();
+            }
+        }
+    }
+
+    /**
+     * Sends event to the default engine, and to the other engines whose statements consume its type.
+     * Events produced during (synchronous) processing in an engine are routed back to that engine.
+     */
+    private void sendToEngines(Map<String, Object> event, String eventType, boolean route) {
+        CepEngine current = route ? processingEngine.get() : null;
+        for (CepEngine engine : engines.values()) {
+            if (engine!=defaultEngine && ! engine.consumes(eventType)) continue;
+            if (! engine.enter()) continue;
+            try {
+                if (engine==current) {
+                    engine.getProvider().getEPRuntime().route(event, eventType);
+                } else if (engine.isAsynchronous()) {
+                    engine.getProvider().getEPRuntime().sendEvent(event, eventType);
+                } else {
+                    CepEngine previous = processingEngine.get();
+                    processingEngine.set(engine);
+                    try {
+                        engine.getProvider().getEPRuntime().sendEvent(event, eventType);
+                    } finally {
+                        if (previous!=null) processingEngine.set(previous);
+                        else processingEngine.remove();
+                    }
+                }
+            } finally {
+                engine.exit();
+            }
+        }
     }
 
     /**
      * Add a user-defined aggregator function in Esper
      */
-    public void addAggregatorFunction(String functionName, String aggregationFactoryClassName) {
+    public synchronized void addAggregatorFunction(String functionName, String aggregationFactoryClassName) {
         log.debug("CepService.addAggregatorFunction(): function={}, aggregator-factory-class={}", functionName, aggregationFactoryClassName);
-        epService.getEPAdministrator().getConfiguration().addPlugInAggregationFunctionFactory(functionName, aggregationFactoryClassName);
+        aggregatorFunctions.put(functionName, aggregationFactoryClassName);
+        engines.values().forEach(engine -> engine.getProvider().getEPAdministrator().getConfiguration()
+                .addPlugInAggregationFunctionFactory(functionName, aggregationFactoryClassName));
     }
 
     /**
      * Add a user-defined single-row function in Esper
      */
-    public void addSingleRowFunction(String functionName, String className, String methodName) {
+    public synchronized void addSingleRowFunction(String functionName, String className, String methodName) {
         log.debug("CepService.addSingleRowFunction(): function={}, class={}, method={}", functionName, className, methodName);
 		/*epService.getEPAdministrator().getConfiguration().addPlugInSingleRowFunction(functionName, className, methodName,
 			com.espertech.esper.client.ConfigurationPlugInSingleRowFunction.ValueCache.CONFIGURED,		//enum: ENABLED, DISABLED, CONFIGURED
 			com.espertech.esper.client.ConfigurationPlugInSingleRowFunction.FilterOptimizable.ENABLED,	//enum: ENABLED, DISABLED
 			true		// re-throw exceptions
 		);*/
-        com.espertech.esper.client.ConfigurationPlugInSingleRowFunction entry = new com.espertech.esper.client.ConfigurationPlugInSingleRowFunction();
+        ConfigurationPlugInSingleRowFunction entry = new ConfigurationPlugInSingleRowFunction();
         entry.setName(functionName);
         entry.setFunctionClassName(className);
         entry.setFunctionMethodName(methodName);
         entry.setRethrowExceptions(true);
-        epService.getEPAdministrator().getConfiguration().addPlugInSingleRowFunction(entry);
+        singleRowFunctions.put(functionName, entry);
+        engines.values().forEach(engine -> engine.getProvider().getEPAdministrator().getConfiguration()
+                .addPlugInSingleRowFunction(entry));
     }
 
     /**
@@ -181,7 +378,7 @@ public class CepService implements InitializingBean {
      */
     public List<String> getStatementStreams(String statementText) {
         log.debug("CepService.getStatementStreams(): statement={}", statementText);
-        return epService.getEPAdministrator().compileEPL(statementText).getFromClause().getStreams().stream().map(stream -> stream.getStreamName()).collect(Collectors.toList());
+        return defaultEngine.getProvider().getEPAdministrator().compileEPL(statementText).getFromClause().getStreams().stream().map(stream -> stream.getStreamName()).collect(Collectors.toList());
     }
 
     /**
@@ -242,6 +439,11 @@ public class CepService implements InitializingBean {
         MathUtil.clearConstants();
     }
 
+    public long getLateEventCounter() {
+        EventTimeOrderer orderer = eventTimeOrderer;
+        return orderer!=null ? orderer.getLateEvents() : 0L;
+    }
+
     public static long getEventCounter() {
         return eventCounter.get();
     }
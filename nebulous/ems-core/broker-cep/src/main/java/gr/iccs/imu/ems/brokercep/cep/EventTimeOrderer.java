@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.brokercep.cep;
+
+import gr.iccs.imu.ems.brokercep.event.EventMap;
+import gr.iccs.imu.ems.brokercep.properties.BrokerCepProperties;
+import gr.iccs.imu.ems.util.EmsMetrics;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Event-time ingestion stage. Incoming events (of all streams) are buffered, and released in timestamp order
+ * once the watermark (wall-clock time minus allowed lateness) passes their timestamp. Engine time is advanced
+ * to each released event's timestamp, and to the watermark on every tick, so that time windows are evaluated
+ * on event time. Events older than the current engine time are late, and are handled according to the
+ * late events policy. Late events are counted, and reported in a warning at most once per minute.
+ */
+@Slf4j
+class EventTimeOrderer {
+    private final static long LATE_EVENTS_WARN_INTERVAL = 60_000L;
+
+    private record PendingEvent(long timestamp, long sequence, Map<String, Object> event, String eventType) { }
+
+    private final BrokerCepProperties.EventOrderingProperties properties;
+    private final LongConsumer timeAdvancer;
+    private final BiConsumer<Map<String, Object>, String> releaser;
+    private final PriorityQueue<PendingEvent> buffer = new PriorityQueue<>(
+            Comparator.comparingLong(PendingEvent::timestamp).thenComparingLong(PendingEvent::sequence));
+    private final ScheduledExecutorService ticker;
+    private long sequence;
+    private volatile long currentTime;
+    private final AtomicLong lateEvents = new AtomicLong();
+    private long lateEventsSinceWarn;
+    private long lastLateEventsWarn;
+
+    EventTimeOrderer(@NonNull BrokerCepProperties.EventOrderingProperties properties,
+                     @NonNull LongConsumer timeAdvancer, @NonNull BiConsumer<Map<String, Object>, String> releaser)
+    {
+        this.properties = properties;
+        this.timeAdvancer = timeAdvancer;
+        this.releaser = releaser;
+        this.currentTime = watermark();
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cep-event-time-orderer");
+            t.setDaemon(true);
+            return t;
+        });
+        long tick = Math.max(1L, properties.getTickInterval());
+        ticker.scheduleWithFixedDelay(this::tick, tick, tick, TimeUnit.MILLISECONDS);
+        log.info("EventTimeOrderer: Started: allowed-lateness={}ms, tick-interval={}ms, max-buffer-size={}, late-events-policy={}",
+                properties.getAllowedLateness(), tick, properties.getMaxBufferSize(), properties.getLateEventsPolicy());
+    }
+
+    long getCurrentTime() {
+        return currentTime;
+    }
+
+    long getLateEvents() {
+        return lateEvents.get();
+    }
+
+    /**
+     * Buffers event until the watermark passes its timestamp. Late events are handled immediately.
+     */
+    void offer(@NonNull Map<String, Object> event, String eventType) {
+        long timestamp = getTimestamp(event);
+        boolean late;
+        synchronized (this) {
+            late = timestamp < currentTime;
+            if (! late) {
+                buffer.add(new PendingEvent(timestamp, sequence++, event, eventType));
+                if (properties.getMaxBufferSize()<=0 || buffer.size() <= properties.getMaxBufferSize())
+                    return;
+            }
+        }
+        if (late)
+            handleLateEvent(event, eventType, timestamp);
+        else
+            release(Long.MIN_VALUE, true);     // Buffer full. Release the oldest event
+    }
+
+    private void handleLateEvent(Map<String, Object> event, String eventType, long timestamp) {
+        BrokerCepProperties.LATE_EVENTS_POLICY policy = properties.getLateEventsPolicy();
+        EmsMetrics.counter("ems.cep.events.late", "policy", policy.name()).increment();
+        long total = lateEvents.incrementAndGet();
+        log.debug("EventTimeOrderer: Late event: type={}, timestamp={}, engine-time={}, policy={}", eventType, timestamp, currentTime, policy);
+        warnLateEvents(eventType, timestamp, policy, total);
+        switch (policy) {
+            case PROCESS -> releaser.accept(event, eventType);
+            case ROUTE -> {
+                if (properties.getLateEventsType()!=null)
+                    releaser.accept(event, properties.getLateEventsType());
+            }
+            default -> { }
+        }
+    }
+
+    // Rate-limited, so that a late stream does not flood the logs
+    private void warnLateEvents(String eventType, long timestamp, BrokerCepProperties.LATE_EVENTS_POLICY policy, long total) {
+        long count;
+        synchronized (lateEvents) {
+            lateEventsSinceWarn++;
+            long now = System.currentTimeMillis();
+            if (now - lastLateEventsWarn < LATE_EVENTS_WARN_INTERVAL) return;
+            lastLateEventsWarn = now;
+            count = lateEventsSinceWarn;
+            lateEventsSinceWarn = 0;
+        }
+        log.warn("EventTimeOrderer: {} late events since last report (total={}), beyond allowed lateness of {}ms. Last one: type={}, lateness={}ms, policy={}",
+                count, total, properties.getAllowedLateness(), eventType, currentTime - timestamp, policy);
+    }
+
+    private void tick() {
+        try {
+            release(watermark(), false);
+        } catch (Throwable t) {
+            log.warn("EventTimeOrderer: Exception while releasing events: ", t);
+        }
+    }
+
+    // Releases buffered events up to watermark (or just the oldest one), advancing engine time.
+    // Synchronized so that events are released by one thread at a time, in timestamp order.
+    private synchronized void release(long watermark, boolean oldestOnly) {
+        PendingEvent pending;
+        while ((pending = buffer.peek())!=null && (oldestOnly || pending.timestamp() <= watermark)) {
+            buffer.poll();
+            advanceTime(pending.timestamp());
+            releaser.accept(pending.event(), pending.eventType());
+            if (oldestOnly) return;
+        }
+        advanceTime(watermark);
+    }
+
+    private void advanceTime(long time) {
+        if (time <= currentTime) return;
+        currentTime = time;
+        timeAdvancer.accept(time);
+    }
+
+    private long watermark() {
+        return System.currentTimeMillis() - Math.max(0L, properties.getAllowedLateness());
+    }
+
+    private long getTimestamp(Map<String, Object> event) {
+        return event.get(EventMap.TIMESTAMP_NAME) instanceof Number n ? n.longValue() : System.currentTimeMillis();
+    }
+
+    void shutdown() {
+        ticker.shutdownNow();
+        synchronized (this) {
+            buffer.clear();
+        }
+    }
+}
@@ -145,14 +145,14 @@ public class EventRecorder extends LinkedHashMap<String, Object> implements Runn
     public synchronized void close() {
         if (closed) throw new IllegalStateException("EventRecorder has already been closed");
         if (recording) stopRecording();
-        this.closed = true;
         runnerFuture.cancel(false);
         activeEventRecorders.remove(this);
 
-        // wait until all records are written in the file
+        // wait until all records are written in the file (run() does nothing once closed)
         while (!eventQueue.isEmpty()) {
             run();
         }
+        this.closed = true;
 
         // close record file
         try {
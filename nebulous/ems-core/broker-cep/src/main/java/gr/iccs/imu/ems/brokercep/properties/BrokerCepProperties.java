@@ -81,6 +81,11 @@ public class BrokerCepProperties implements InitializingBean {
 
     private int maxEventForwardRetries = -1;
     private long maxEventForwardDuration = -1;
+    private boolean loopbackEnabled;                // Deliver CEP outputs consumed locally in-process (bypasses broker interceptors)
+    private CepEngineProperties cepEngines = new CepEngineProperties();
+    private EventOrderingProperties eventOrdering = new EventOrderingProperties();
+    private EventSpillProperties eventSpill = new EventSpillProperties();
+    private EventBatchingProperties eventBatching = new EventBatchingProperties();
 
     private Usage usage = new Usage();
 
@@ -104,6 +109,9 @@ public class BrokerCepProperties implements InitializingBean {
     private long statsPrinterInitDelay = 30;
     private long statsPrinterRate = 30;
 
+    private int metricsSampleRate = 10;             // Record one in N timings
+    private boolean metricsHistogramsEnabled;
+
     @Data
     public static class Usage {
         private Memory memory = new Memory();
@@ -139,6 +147,66 @@ public class BrokerCepProperties implements InitializingBean {
         private String password;
     }
 
+    @Data
+    public static class EventSpillProperties {
+        private boolean enabled;
+        private String directory;
+        private int ringSize = 1024 * 1024;                 // Raw events ring size per topic (in bytes)
+        private int downsampledRingSize = 256 * 1024;       // Ring size per topic and downsampling resolution (in bytes)
+        private List<Long> downsamplingResolutions = List.of(60_000L, 600_000L);     // in millis
+        private long maxDiskSize = 64 * 1024 * 1024;        // Total size of spill files (in bytes)
+        private int replayBatchSize = 100;
+        private long replayCheckInterval = 30_000;          // Periodic replay attempt of spilled events (in millis). 0 to disable
+    }
+
+    @Data
+    public static class EventBatchingProperties {
+        private EventBatchSettings defaults = new EventBatchSettings();
+        private Map<String, EventBatchSettings> groupings = new HashMap<>();   // Per target grouping settings
+
+        public EventBatchSettings getSettingsFor(String grouping) {
+            return grouping!=null ? groupings.getOrDefault(grouping, defaults) : defaults;
+        }
+    }
+
+    @Data
+    public static class EventBatchSettings {
+        private boolean enabled;
+        private int batchSize = 100;                    // Max. events per batch
+        private long maxLinger = 200;                   // Max. time an event waits for its batch to fill (in millis)
+        private boolean compress;                       // GZIP-compress batches
+        private long capabilityCheckInterval = 300000;  // How often (in millis) to check if target brokers have event batch consumers. Zero or negative disables checks
+        private long capabilityCheckTimeout = 1000;     // Max. wait (in millis) for the consumer advisories of a target broker
+    }
+
+    @Data
+    public static class CepEngineProperties {
+        private boolean isolationEnabled;               // Separate Esper engine per grouping (EMS clients) or application (EMS server)
+        private CepEngineThreading defaults = new CepEngineThreading();
+        private Map<String, CepEngineThreading> engines = new HashMap<>();     // Per engine (grouping or application) settings
+    }
+
+    public enum LATE_EVENTS_POLICY { DROP, PROCESS, ROUTE }
+
+    @Data
+    public static class EventOrderingProperties {
+        private boolean enabled;                        // Feed events to Esper in timestamp order, using event time. Not for engines with inbound thread pool
+        private long allowedLateness = 2000;            // Max. event delay (in millis). Events are buffered for that long
+        private long tickInterval = 100;                // Engine time advancement interval (in millis)
+        private int maxBufferSize = 100000;             // Oldest events are released when buffer is full
+        private LATE_EVENTS_POLICY lateEventsPolicy = LATE_EVENTS_POLICY.DROP;
+        private String lateEventsType;                  // Event type that late events are sent as (with ROUTE policy)
+    }
+
+    @Data
+    public static class CepEngineThreading {
+        private boolean inboundThreadPool;              // With more than one inbound threads, events may be processed out of order
+        private int inboundThreads = 1;
+        private boolean outboundThreadPool;
+        private int outboundThreads = 1;
+        private int threadPoolCapacity = -1;            // Queue capacity of thread pools (unbounded if not positive)
+    }
+
     public enum EVENT_RECORDER_FILTER_MODE { ALL, REGISTERED, ALLOWED }
 
     @Data
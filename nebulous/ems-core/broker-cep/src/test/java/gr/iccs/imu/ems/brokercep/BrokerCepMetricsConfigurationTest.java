@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.brokercep;
+
+import gr.iccs.imu.ems.brokercep.properties.BrokerCepProperties;
+import gr.iccs.imu.ems.util.EmsMetrics;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.*;
+
+@Slf4j
+@DisplayName("BrokerCepMetricsConfiguration Tests")
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class BrokerCepMetricsConfigurationTest {
+    private final static int CALLS = 100_000;
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        Metrics.removeRegistry(registry);
+        registry.close();
+        EmsMetrics.setSampleRate(1);
+        EmsMetrics.setHistogramsEnabled(false);
+    }
+
+    private static void configure(int sampleRate, boolean histogramsEnabled) {
+        BrokerCepProperties properties = new BrokerCepProperties();
+        properties.setMetricsSampleRate(sampleRate);
+        properties.setMetricsHistogramsEnabled(histogramsEnabled);
+        new BrokerCepMetricsConfiguration(properties).afterPropertiesSet();
+    }
+
+    private static int countSampled() {
+        int sampled = 0;
+        for (int i = 0; i < CALLS; i++)
+            if (EmsMetrics.startSample()>=0) sampled++;
+        return sampled;
+    }
+
+    @Test
+    void settingsAreAppliedToMetricsHelper() {
+        configure(25, true);
+        Assertions.assertEquals(25, EmsMetrics.getSampleRate());
+        Assertions.assertTrue(EmsMetrics.isHistogramsEnabled());
+
+        // Non-positive rates mean no sampling
+        configure(0, false);
+        Assertions.assertEquals(1, EmsMetrics.getSampleRate());
+        Assertions.assertFalse(EmsMetrics.isHistogramsEnabled());
+    }
+
+    @Test
+    void samplingHonoursConfiguredRate() {
+        configure(1, false);
+        Assertions.assertEquals(CALLS, countSampled());
+
+        // Binomial with p=0.1: the standard deviation is ~95 calls, so the 10% tolerance is very wide
+        configure(10, false);
+        Assertions.assertEquals(CALLS / 10d, countSampled(), CALLS / 100d);
+
+        configure(100, false);
+        Assertions.assertEquals(CALLS / 100d, countSampled(), CALLS / 1000d * 3);
+    }
+
+    @Test
+    void sampledTimingsAreRecordedAtConfiguredRate() {
+        configure(20, false);
+        for (int i = 0; i < CALLS; i++)
+            EmsMetrics.recordSampled(1, "ems.test.sampled");
+        long count = registry.get("ems.test.sampled").timer().count();
+        Assertions.assertEquals(CALLS / 20d, count, CALLS / 200d);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.brokercep;
+
+import gr.iccs.imu.ems.brokercep.broker.BrokerConfig;
+import gr.iccs.imu.ems.brokercep.cep.CepService;
+import gr.iccs.imu.ems.brokercep.event.EventMap;
+import gr.iccs.imu.ems.brokercep.properties.BrokerCepProperties;
+import jakarta.jms.*;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.junit.jupiter.api.*;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+@Slf4j
+@DisplayName("EventBatchEnvelope Tests")
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class EventBatchEnvelopeTest {
+    private final static String CONSUMED_TOPIC = "cpu_usage";
+
+    private static EventMap event(double value, String producer) {
+        EventMap event = new EventMap(value, 1, 1_000_000L);
+        if (producer!=null) event.setEventProperty("producer", producer);
+        return event;
+    }
+
+    private static List<EventBatchEnvelope.Entry> entries() {
+        return List.of(
+                EventBatchEnvelope.Entry.of(CONSUMED_TOPIC, event(1.5, "node-1")),
+                EventBatchEnvelope.Entry.of("mem_usage", event(2, null)),
+                EventBatchEnvelope.Entry.of(CONSUMED_TOPIC, Map.of(EventMap.METRIC_VALUE_NAME, 3.0)));
+    }
+
+    private static ActiveMQTextMessage textBatch(List<EventBatchEnvelope.Entry> entries) throws JMSException {
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setText(EventBatchEnvelope.toJson(entries));
+        message.setStringProperty(EventBatchEnvelope.BATCH_FORMAT_PROPERTY, EventBatchEnvelope.FORMAT_JSON);
+        return message;
+    }
+
+    private static ActiveMQBytesMessage compressedBatch(List<EventBatchEnvelope.Entry> entries) throws Exception {
+        ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+        message.writeBytes(EventBatchEnvelope.toCompressedJson(entries));
+        message.setStringProperty(EventBatchEnvelope.BATCH_FORMAT_PROPERTY, EventBatchEnvelope.FORMAT_GZIP);
+        message.reset();        // Make body readable, like in received messages
+        return message;
+    }
+
+    private static void assertDecoded(List<EventBatchEnvelope.Entry> decoded) {
+        Assertions.assertEquals(3, decoded.size());
+        Assertions.assertEquals(List.of(CONSUMED_TOPIC, "mem_usage", CONSUMED_TOPIC),
+                decoded.stream().map(EventBatchEnvelope.Entry::topic).toList());
+
+        EventMap first = decoded.get(0).toEventMap();
+        Assertions.assertEquals(1.5, first.getMetricValue());
+        Assertions.assertEquals(1_000_000L, ((Number) first.get(EventMap.TIMESTAMP_NAME)).longValue());
+        Assertions.assertEquals("node-1", first.getEventProperties().get("producer"));
+
+        Assertions.assertNull(decoded.get(1).properties());     // Events without properties carry none
+        Assertions.assertEquals(3.0, decoded.get(2).toEventMap().getMetricValue());
+    }
+
+    @Test
+    void textBatchesRoundTrip() throws Exception {
+        ActiveMQTextMessage message = textBatch(entries());
+        Assertions.assertTrue(EventBatchEnvelope.isBatch(message));
+        assertDecoded(EventBatchEnvelope.fromMessage(message));
+    }
+
+    @Test
+    void compressedBatchesRoundTrip() throws Exception {
+        List<EventBatchEnvelope.Entry> many = new ArrayList<>();
+        for (int i = 0; i < 100; i++) many.addAll(entries());
+        Assertions.assertTrue(EventBatchEnvelope.toCompressedJson(many).length < EventBatchEnvelope.toJson(many).length() / 5);
+
+        ActiveMQBytesMessage message = compressedBatch(entries());
+        Assertions.assertTrue(EventBatchEnvelope.isBatch(message));
+        assertDecoded(EventBatchEnvelope.fromMessage(message));
+    }
+
+    @Test
+    void unsupportedBatchesAreRejected() throws Exception {
+        Assertions.assertFalse(EventBatchEnvelope.isBatch(new ActiveMQTextMessage()));
+
+        ActiveMQTextMessage unknownFormat = textBatch(entries());
+        unknownFormat.setStringProperty(EventBatchEnvelope.BATCH_FORMAT_PROPERTY, "xml");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> EventBatchEnvelope.fromMessage(unknownFormat));
+
+        // Format and message type mismatch
+        ActiveMQBytesMessage bytesAsJson = compressedBatch(entries());
+        bytesAsJson.setStringProperty(EventBatchEnvelope.BATCH_FORMAT_PROPERTY, EventBatchEnvelope.FORMAT_JSON);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> EventBatchEnvelope.fromMessage(bytesAsJson));
+    }
+
+    @Test
+    void consumerHandsBatchedEventsToCepEngine() throws Exception {
+        BrokerCepProperties properties = new BrokerCepProperties();
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.initialize();
+        try {
+            List<String> handled = new CopyOnWriteArrayList<>();
+            CepService cepService = new CepService(properties) {
+                @Override
+                public void handleEvent(Map<String, Object> event, String eventType) {
+                    handled.add(eventType + ":" + event.get(EventMap.METRIC_VALUE_NAME));
+                }
+            };
+            EventCache eventCache = new EventCache(properties);
+            eventCache.afterPropertiesSet();
+            BrokerConfig brokerConfig = new BrokerConfig(properties, null, null, scheduler);
+            BrokerCepConsumer consumer = new BrokerCepConsumer(properties, brokerConfig, null, cepService, scheduler,
+                    eventCache, new EventLoopback(properties)) {
+                @Override
+                public boolean containsDestination(String name) {
+                    return CONSUMED_TOPIC.equals(name);
+                }
+            };
+            List<Message> listened = new CopyOnWriteArrayList<>();
+            consumer.getListeners().add(listened::add);
+            long batchedBefore = BrokerCepConsumer.getBatchedEventCounter();
+
+            // No session exists, so events cannot have been republished through the broker
+            consumer.onMessage(compressedBatch(entries()));
+
+            Assertions.assertEquals(List.of(CONSUMED_TOPIC + ":1.5", CONSUMED_TOPIC + ":3.0"), handled);
+            Assertions.assertEquals(2, BrokerCepConsumer.getBatchedEventCounter() - batchedBefore);
+            Assertions.assertEquals(2, listened.size());
+            TextMessage first = (TextMessage) listened.get(0);
+            Assertions.assertEquals(CONSUMED_TOPIC, ((Topic) first.getJMSDestination()).getTopicName());
+            Assertions.assertEquals("node-1", first.getStringProperty("producer"));
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    void batchSupportIsDetectedFromBatchConsumers() throws Exception {
+        BrokerService broker = new BrokerService();
+        broker.setBrokerName("batch-support-test");
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.start();
+        broker.waitUntilStarted();
+        Connection receiver = null;
+        try {
+            ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory("vm://batch-support-test?create=false");
+            BrokerCepProperties properties = new BrokerCepProperties();
+            BrokerConfig brokerConfig = new BrokerConfig(properties, null, null, null) {
+                @Override
+                public ConnectionFactory getConnectionFactoryFor(String connectionString) {
+                    return connectionFactory;
+                }
+            };
+            BrokerCepService brokerCepService = new BrokerCepService(properties, brokerConfig, broker, null, null, null, null, null, null);
+
+            // An EMS version without batch support does not consume the batch topic
+            Assertions.assertFalse(brokerCepService.hasEventBatchConsumers("vm://batch-support-test", null, null, 500));
+
+            receiver = connectionFactory.createConnection();
+            receiver.start();
+            Session session = receiver.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            session.createConsumer(session.createTopic(EventBatchEnvelope.BATCH_TOPIC));
+            Assertions.assertTrue(brokerCepService.hasEventBatchConsumers("vm://batch-support-test", null, null, 2000));
+        } finally {
+            if (receiver!=null) receiver.close();
+            broker.stop();
+            broker.waitUntilStopped();
+        }
+    }
+}
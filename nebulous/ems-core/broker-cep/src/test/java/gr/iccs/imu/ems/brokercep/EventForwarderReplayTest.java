@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.brokercep;
+
+import gr.iccs.imu.ems.brokercep.event.EventMap;
+import gr.iccs.imu.ems.brokercep.properties.BrokerCepProperties;
+import gr.iccs.imu.ems.util.GroupingConfiguration;
+import jakarta.jms.JMSException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Slf4j
+@DisplayName("EventForwarder Spill and Replay Tests")
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class EventForwarderReplayTest {
+    private final static String LOCAL_BROKER_URL = "tcp://127.0.0.1:61616";
+    private final static String GROUPING = "GLOBAL";
+    private final static String TOPIC = "cpu_usage";
+
+    @TempDir
+    Path directory;
+
+    private volatile boolean targetDown;
+    private final List<Map<String,Object>> published = new CopyOnWriteArrayList<>();
+
+    private BrokerCepProperties newProperties() {
+        BrokerCepProperties.EventSpillProperties spillProperties = new BrokerCepProperties.EventSpillProperties();
+        spillProperties.setEnabled(true);
+        spillProperties.setDirectory(directory.toString());
+        spillProperties.setRingSize(64 * 1024);
+        spillProperties.setDownsampledRingSize(16 * 1024);
+        spillProperties.setReplayBatchSize(2);
+        spillProperties.setReplayCheckInterval(100);
+
+        BrokerCepProperties properties = mock(BrokerCepProperties.class);
+        when(properties.getBrokerUrlForConsumer()).thenReturn(LOCAL_BROKER_URL);
+        when(properties.getMaxEventForwardRetries()).thenReturn(0);
+        when(properties.getMaxEventForwardDuration()).thenReturn(-1L);
+        when(properties.getEventSpill()).thenReturn(spillProperties);
+        when(properties.getEventBatching()).thenReturn(new BrokerCepProperties.EventBatchingProperties());
+        return properties;
+    }
+
+    private BrokerCepService newBrokerCepService(BrokerCepProperties properties) {
+        return new BrokerCepService(properties, null, null, null, null, null, null, null, null) {
+            @Override
+            public synchronized void publishEvent(String connectionString, String username, String password, String destinationName, Map<String, Object> eventMap) throws JMSException {
+                if (targetDown) throw new JMSException("Target broker is down");
+                published.add(eventMap);
+            }
+        };
+    }
+
+    private static Map<String,Object> event(double value, long timestamp) {
+        Map<String,Object> event = new LinkedHashMap<>();
+        event.put(EventMap.METRIC_VALUE_NAME, value);
+        event.put(EventMap.LEVEL_NAME, 1);
+        event.put(EventMap.TIMESTAMP_NAME, timestamp);
+        return event;
+    }
+
+    private static void waitUntil(java.util.function.BooleanSupplier condition, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (! condition.getAsBoolean() && System.currentTimeMillis() < deadline)
+            Thread.sleep(20);
+    }
+
+    @Test
+    void spilledEventsAreReplayedPeriodicallyWithoutOriginalCallbacks() throws Exception {
+        BrokerCepProperties properties = newProperties();
+        BrokerCepService brokerCepService = newBrokerCepService(properties);
+        EventSpillStore spillStore = new EventSpillStore(properties);
+        spillStore.afterPropertiesSet();
+        EventForwarder forwarder = new EventForwarder(properties, brokerCepService, spillStore);
+        forwarder.afterPropertiesSet();
+
+        GroupingConfiguration.BrokerConnectionConfig target =
+                new GroupingConfiguration.BrokerConnectionConfig(GROUPING, "tcp://10.0.0.1:61616", null, "user", "pass");
+        BrokerCepStatementSubscriber sender = new BrokerCepStatementSubscriber("sender", TOPIC, "SELECT * FROM x", brokerCepService, null);
+        sender.setForwardToGroupings(Set.of(target));
+
+        // Target is down: events fail and are spilled
+        AtomicInteger successes = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        targetDown = true;
+        for (int i = 0; i < 5; i++)
+            forwarder.addEventForwardTask(sender, target, TOPIC, event(i, 1_000_000L + i), successes::incrementAndGet, failures::incrementAndGet);
+        waitUntil(() -> failures.get()==5, 5_000);
+        Assertions.assertEquals(5, failures.get());
+        Assertions.assertEquals(5, spillStore.getSpilledCount());
+        Assertions.assertTrue(spillStore.hasSpilledEvents(GROUPING, TOPIC));
+
+        // Replays attempted while target is still down are retried later, without changing event order
+        Thread.sleep(350);
+        Assertions.assertTrue(published.isEmpty());
+
+        // Target recovers: spilled events are replayed, in order, even though no new events are forwarded
+        targetDown = false;
+        waitUntil(() -> published.size()==5, 5_000);
+        Assertions.assertEquals(5, published.size());
+        for (int i = 0; i < 5; i++)
+            Assertions.assertEquals(1_000_000L + i, ((Number) published.get(i).get(EventMap.TIMESTAMP_NAME)).longValue());
+        Assertions.assertFalse(spillStore.hasSpilledEvents(GROUPING, TOPIC));
+
+        // Callbacks of the original events must not run again for their replays
+        Assertions.assertEquals(0, successes.get());
+        Assertions.assertEquals(5, failures.get());
+
+        spillStore.destroy();
+    }
+
+    @Test
+    void eventsSpilledBeforeRestartAreReplayedOnceForwardsAreConfigured() throws Exception {
+        BrokerCepProperties properties = newProperties();
+        BrokerCepService brokerCepService = newBrokerCepService(properties);
+
+        // Events spilled before restart
+        EventSpillStore previousStore = new EventSpillStore(properties);
+        previousStore.afterPropertiesSet();
+        for (int i = 0; i < 3; i++)
+            previousStore.spill(GROUPING, TOPIC, event(i, 1_000_000L + i));
+        previousStore.destroy();
+
+        // After restart, no new events are forwarded, but spilled events are replayed once the sender forwards are set
+        EventSpillStore spillStore = new EventSpillStore(properties);
+        spillStore.afterPropertiesSet();
+        EventForwarder forwarder = new EventForwarder(properties, brokerCepService, spillStore);
+        forwarder.afterPropertiesSet();
+        EventForwarder previousInstance = EventForwarder.getInstance();
+        EventForwarder.setInstance(forwarder);
+        try {
+            GroupingConfiguration.BrokerConnectionConfig target =
+                    new GroupingConfiguration.BrokerConnectionConfig(GROUPING, "tcp://10.0.0.1:61616", null, "user", "pass");
+            BrokerCepStatementSubscriber sender = new BrokerCepStatementSubscriber("sender", TOPIC, "SELECT * FROM x", brokerCepService, null);
+            sender.setForwardToGroupings(Set.of(target));
+
+            waitUntil(() -> published.size()==3, 5_000);
+            Assertions.assertEquals(3, published.size());
+            for (int i = 0; i < 3; i++)
+                Assertions.assertEquals(1_000_000L + i, ((Number) published.get(i).get(EventMap.TIMESTAMP_NAME)).longValue());
+            Assertions.assertFalse(spillStore.hasSpilledEvents(GROUPING, TOPIC));
+        } finally {
+            EventForwarder.setInstance(previousInstance);
+            spillStore.destroy();
+        }
+    }
+}
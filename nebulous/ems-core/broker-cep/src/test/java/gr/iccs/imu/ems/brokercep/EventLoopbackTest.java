@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.brokercep;
+
+import gr.iccs.imu.ems.brokercep.broker.BrokerConfig;
+import gr.iccs.imu.ems.brokercep.cep.CepService;
+import gr.iccs.imu.ems.brokercep.event.EventMap;
+import gr.iccs.imu.ems.brokercep.event.EventRecorder;
+import gr.iccs.imu.ems.brokercep.properties.BrokerCepProperties;
+import jakarta.jms.Message;
+import jakarta.jms.TextMessage;
+import jakarta.jms.Topic;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+@Slf4j
+@DisplayName("EventLoopback Tests")
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class EventLoopbackTest {
+    private final static String CONSUMED_TOPIC = "cpu_usage";
+    private final static String OTHER_TOPIC = "mem_usage";
+
+    @TempDir
+    Path directory;
+
+    private ThreadPoolTaskScheduler scheduler;
+    private BrokerCepProperties properties;
+    private EventRecorder recorder;
+    private EventLoopback loopback;
+    private BrokerCepConsumer consumer;
+    private final List<Map.Entry<String, Map<String,Object>>> routed = new CopyOnWriteArrayList<>();
+    private final List<Message> listened = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        scheduler = new ThreadPoolTaskScheduler();
+        scheduler.initialize();
+        properties = new BrokerCepProperties();
+        properties.setLoopbackEnabled(true);
+        recorder = new EventRecorder(EventRecorder.FORMAT.JSON, directory.resolve("events-%T.json").toString(),
+                BrokerCepProperties.EVENT_RECORDER_FILTER_MODE.REGISTERED, null, scheduler);
+
+        BrokerConfig brokerConfig = new BrokerConfig(properties, null, null, scheduler) {
+            @Override
+            public EventRecorder getEventRecorder() {
+                return recorder;
+            }
+        };
+        CepService cepService = new CepService(properties) {
+            @Override
+            public void routeEvent(Map<String, Object> event, String eventType) {
+                routed.add(Map.entry(eventType, event));
+            }
+        };
+        EventCache eventCache = new EventCache(properties);
+        eventCache.afterPropertiesSet();
+
+        loopback = new EventLoopback(properties);
+        loopback.afterPropertiesSet();
+        consumer = new BrokerCepConsumer(properties, brokerConfig, null, cepService, scheduler, eventCache, loopback) {
+            @Override
+            public boolean containsDestination(String name) {
+                return CONSUMED_TOPIC.equals(name);
+            }
+        };
+        consumer.getListeners().add(listened::add);
+        loopback.setLocalConsumer(consumer);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (! recorder.isClosed()) recorder.close();
+        scheduler.shutdown();
+    }
+
+    private static Map<String,Object> event(double value) {
+        Map<String,Object> event = new LinkedHashMap<>();
+        event.put(EventMap.METRIC_VALUE_NAME, value);
+        event.put(EventMap.LEVEL_NAME, 1);
+        event.put(EventMap.TIMESTAMP_NAME, 1_000_000L);
+        return event;
+    }
+
+    @Test
+    void deliveredEventsAreRecordedRoutedAndPassedToListeners() throws Exception {
+        EventMap event = new EventMap(event(42));
+        event.setEventProperty("producer", "node-1");
+        Assertions.assertTrue(loopback.deliver(CONSUMED_TOPIC, event));
+        Assertions.assertEquals(1, loopback.getLoopbackCounter());
+
+        // CEP engine
+        Assertions.assertEquals(1, routed.size());
+        Assertions.assertEquals(CONSUMED_TOPIC, routed.get(0).getKey());
+        Assertions.assertEquals(42.0, ((Number) routed.get(0).getValue().get(EventMap.METRIC_VALUE_NAME)).doubleValue());
+
+        // Listeners receive a message, like the ones received from the broker
+        Assertions.assertEquals(1, listened.size());
+        TextMessage message = (TextMessage) listened.get(0);
+        Assertions.assertEquals(CONSUMED_TOPIC, ((Topic) message.getJMSDestination()).getTopicName());
+        Assertions.assertEquals("node-1", message.getStringProperty("producer"));
+        EventMap received = BrokerCepConsumer.copyEventProperties(message,
+                new com.google.gson.Gson().fromJson(message.getText(), EventMap.class));
+        Assertions.assertEquals(42.0, received.getMetricValue());
+
+        // Event recorder
+        recorder.run();
+        recorder.close();
+        try (var files = Files.list(directory)) {
+            String recorded = Files.readString(files.findFirst().orElseThrow());
+            Assertions.assertTrue(recorded.contains("\"destination\" : \"" + CONSUMED_TOPIC + "\""), recorded);
+            Assertions.assertTrue(recorded.contains("producer"), recorded);
+        }
+    }
+
+    @Test
+    void eventsAreNotDeliveredIfNotConsumedLocallyOrDisabled() {
+        Assertions.assertFalse(loopback.deliver(OTHER_TOPIC, event(1)));
+        properties.setLoopbackEnabled(false);
+        Assertions.assertFalse(loopback.deliver(CONSUMED_TOPIC, event(2)));
+        Assertions.assertTrue(routed.isEmpty());
+        Assertions.assertTrue(listened.isEmpty());
+        Assertions.assertEquals(0, loopback.getLoopbackCounter());
+    }
+
+    @Test
+    void publishedCopiesAreMarkedAsDelivered() throws Exception {
+        EventMap copy = loopback.markAsDelivered(event(3));
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setStringProperty(EventLoopback.LOOPBACK_ORIGIN_PROPERTY,
+                copy.getEventProperties().get(EventLoopback.LOOPBACK_ORIGIN_PROPERTY).toString());
+        Assertions.assertTrue(loopback.isDeliveredInProcess(message));
+
+        // Marks of other EMS instances are ignored
+        EventLoopback other = new EventLoopback(properties);
+        Assertions.assertFalse(other.isDeliveredInProcess(message));
+        Assertions.assertFalse(loopback.isDeliveredInProcess(new ActiveMQTextMessage()));
+    }
+
+    @Test
+    void subscriberUsesLoopbackOfItsBrokerCepService() {
+        // No external consumers: the CEP output is delivered in-process only, without publishing to the local broker
+        loopback.resetConsumerTracking(true);
+        BrokerCepService brokerCepService = new BrokerCepService(properties, null, null, null, consumer, null, null, loopback, null);
+        BrokerCepStatementSubscriber subscriber = new BrokerCepStatementSubscriber(
+                "subscriber", CONSUMED_TOPIC, "SELECT * FROM x", brokerCepService, null);
+        subscriber.update(event(7));
+
+        Assertions.assertEquals(1, routed.size());
+        Assertions.assertEquals(1, listened.size());
+        Assertions.assertEquals(1, loopback.getLoopbackCounter());
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.brokercep;
+
+import gr.iccs.imu.ems.brokercep.event.EventMap;
+import gr.iccs.imu.ems.brokercep.properties.BrokerCepProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Slf4j
+@DisplayName("EventSpillStore Tests")
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class EventSpillStoreTest {
+    private final static String GROUPING = "GLOBAL";
+    private final static String TOPIC = "cpu_usage";
+
+    @TempDir
+    Path directory;
+
+    private EventSpillStore newStore(int ringSize, int downsampledRingSize) throws Exception {
+        return newStore(ringSize, downsampledRingSize, Long.MAX_VALUE);
+    }
+
+    private EventSpillStore newStore(int ringSize, int downsampledRingSize, long maxDiskSize) throws Exception {
+        BrokerCepProperties.EventSpillProperties spillProperties = new BrokerCepProperties.EventSpillProperties();
+        spillProperties.setEnabled(true);
+        spillProperties.setDirectory(directory.toString());
+        spillProperties.setRingSize(ringSize);
+        spillProperties.setDownsampledRingSize(downsampledRingSize);
+        spillProperties.setDownsamplingResolutions(List.of(10_000L));
+        spillProperties.setMaxDiskSize(maxDiskSize);
+        BrokerCepProperties properties = mock(BrokerCepProperties.class);
+        when(properties.getEventSpill()).thenReturn(spillProperties);
+
+        EventSpillStore store = new EventSpillStore(properties);
+        store.afterPropertiesSet();
+        return store;
+    }
+
+    private static Map<String,Object> event(double value, long timestamp) {
+        Map<String,Object> event = new LinkedHashMap<>();
+        event.put(EventMap.METRIC_VALUE_NAME, value);
+        event.put(EventMap.LEVEL_NAME, 1);
+        event.put(EventMap.TIMESTAMP_NAME, timestamp);
+        return event;
+    }
+
+    private static long timestamp(Map<String,Object> event) {
+        return ((Number) event.get(EventMap.TIMESTAMP_NAME)).longValue();
+    }
+
+    private static List<Map<String,Object>> pollAll(EventSpillStore store) {
+        return pollAll(store, TOPIC);
+    }
+
+    private static List<Map<String,Object>> pollAll(EventSpillStore store, String topic) {
+        List<Map<String,Object>> events = new ArrayList<>();
+        List<Map<String,Object>> batch;
+        while (! (batch = store.poll(GROUPING, topic, 10)).isEmpty())
+            events.addAll(batch);
+        return events;
+    }
+
+    private long spillFileCount() throws Exception {
+        try (var files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void spilledEventsArePolledOldestFirstWithOriginalTimestamps() throws Exception {
+        EventSpillStore store = newStore(64 * 1024, 16 * 1024);
+        for (int i = 0; i < 25; i++)
+            Assertions.assertTrue(store.spill(GROUPING, TOPIC, event(i, 1_000_000L + i)));
+        Assertions.assertTrue(store.hasSpilledEvents(GROUPING, TOPIC));
+        Assertions.assertFalse(store.hasSpilledEvents("OTHER", TOPIC));
+
+        List<Map<String,Object>> events = pollAll(store);
+        Assertions.assertEquals(25, events.size());
+        for (int i = 0; i < events.size(); i++) {
+            Assertions.assertEquals(1_000_000L + i, timestamp(events.get(i)));
+            Assertions.assertEquals((double) i, ((Number) events.get(i).get(EventMap.METRIC_VALUE_NAME)).doubleValue(), 0.0);
+        }
+        Assertions.assertFalse(store.hasSpilledEvents(GROUPING, TOPIC));
+        Assertions.assertEquals(25, store.getSpilledCount());
+        Assertions.assertEquals(25, store.getReplayedCount());
+        store.destroy();
+    }
+
+    @Test
+    void evictedEventsAreDownsampledInsteadOfDropped() throws Exception {
+        // The raw ring holds only a few events, so older ones are averaged into 10s buckets
+        EventSpillStore store = newStore(1024, 16 * 1024);
+        int spilled = 200;
+        for (int i = 0; i < spilled; i++)
+            store.spill(GROUPING, TOPIC, event(i, 1_000_000L + 1000L * i));
+
+        List<Map<String,Object>> events = pollAll(store);
+        Assertions.assertTrue(events.size() < spilled, "Events were not downsampled: " + events.size());
+        Assertions.assertEquals(0, store.getDroppedCount());
+
+        // Downsampled events come first, and all events are still in time order
+        for (int i = 1; i < events.size(); i++)
+            Assertions.assertTrue(timestamp(events.get(i - 1)) <= timestamp(events.get(i)), "Events out of order at: " + i);
+        Assertions.assertEquals(1_000_000L + 1000L * (spilled - 1), timestamp(events.get(events.size() - 1)));
+
+        // A 10s bucket of the first events averages their values (values 0..9 -> 4.5)
+        Assertions.assertEquals(4.5, ((Number) events.get(0).get(EventMap.METRIC_VALUE_NAME)).doubleValue(), 1e-9);
+        store.destroy();
+    }
+
+    @Test
+    void spilledEventsSurviveRestart() throws Exception {
+        EventSpillStore store = newStore(64 * 1024, 16 * 1024);
+        for (int i = 0; i < 10; i++)
+            store.spill(GROUPING, TOPIC, event(i, 1_000_000L + i));
+        store.poll(GROUPING, TOPIC, 3);
+        store.destroy();
+
+        EventSpillStore reopened = newStore(64 * 1024, 16 * 1024);
+        Assertions.assertTrue(reopened.hasSpilledEvents(GROUPING, TOPIC));
+        List<Map<String,Object>> events = pollAll(reopened);
+        Assertions.assertEquals(7, events.size());
+        Assertions.assertEquals(1_000_003L, timestamp(events.get(0)));
+        reopened.destroy();
+    }
+
+    @Test
+    void drainedSpillFilesAreDeletedAndFreeDiskSpace() throws Exception {
+        EventSpillStore probe = newStore(64 * 1024, 16 * 1024);
+        probe.spill(GROUPING, "probe", event(0, 1_000_000L));
+        long fileSize = probe.getDiskUsage();
+        pollAll(probe, "probe");
+        probe.destroy();
+        Assertions.assertEquals(0, spillFileCount());
+
+        // Disk space for a single topic only: the second topic is rejected while the first one has spilled events
+        EventSpillStore store = newStore(64 * 1024, 16 * 1024, fileSize);
+        Assertions.assertTrue(store.spill(GROUPING, TOPIC, event(1, 1_000_001L)));
+        Assertions.assertFalse(store.spill(GROUPING, "other", event(2, 1_000_002L)));
+        Assertions.assertEquals(fileSize, store.getDiskUsage());
+        Assertions.assertEquals(1, spillFileCount());
+
+        // Draining the first topic deletes its file, and the rejected topic can be spilled again
+        Assertions.assertEquals(1, pollAll(store).size());
+        Assertions.assertEquals(0, store.getDiskUsage());
+        Assertions.assertEquals(0, spillFileCount());
+        Assertions.assertTrue(store.spill(GROUPING, "other", event(3, 1_000_003L)));
+        Assertions.assertEquals(fileSize, store.getDiskUsage());
+        Assertions.assertEquals(List.of(new EventSpillStore.SpilledTopic(GROUPING, "other")), store.getSpilledTopics());
+        store.destroy();
+    }
+
+    @Test
+    void onlyNonEmptySpillFilesAreLoadedAtStartup() throws Exception {
+        EventSpillStore store = newStore(64 * 1024, 16 * 1024);
+        store.spill(GROUPING, TOPIC, event(1, 1_000_001L));
+        store.spill(GROUPING, "other", event(2, 1_000_002L));
+        store.destroy();
+
+        EventSpillStore reopened = newStore(64 * 1024, 16 * 1024);
+        Assertions.assertEquals(Set.of(new EventSpillStore.SpilledTopic(GROUPING, TOPIC), new EventSpillStore.SpilledTopic(GROUPING, "other")),
+                new HashSet<>(reopened.getSpilledTopics()));
+        pollAll(reopened, "other");
+        Assertions.assertEquals(List.of(new EventSpillStore.SpilledTopic(GROUPING, TOPIC)), reopened.getSpilledTopics());
+        Assertions.assertEquals(1, spillFileCount());
+        reopened.destroy();
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.brokercep;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+@Slf4j
+@DisplayName("SpillRing Tests")
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class SpillRingTest {
+    private final static int RECORD_OVERHEAD = 12;
+    private final static byte GUARD = (byte) 0x5A;
+
+    private ByteBuffer buffer;
+
+    // Lays out two rings back-to-back, followed by guard bytes, so that writes past the end of a ring are detected
+    private SpillRing[] newRings(int capacity) {
+        buffer = ByteBuffer.allocate(2 * (SpillRing.HEADER_SIZE + capacity) + 64);
+        SpillRing first = new SpillRing(buffer, 0, capacity);
+        SpillRing second = new SpillRing(buffer, SpillRing.HEADER_SIZE + capacity, capacity);
+        for (int i = 2 * (SpillRing.HEADER_SIZE + capacity); i < buffer.capacity(); i++)
+            buffer.put(i, GUARD);
+        return new SpillRing[] { first, second };
+    }
+
+    private static byte[] payload(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(SpillRing.SpilledEvent e) {
+        return new String(e.payload(), StandardCharsets.UTF_8);
+    }
+
+    private static List<String> drain(SpillRing ring) {
+        List<String> list = new ArrayList<>();
+        SpillRing.SpilledEvent e;
+        while ((e = ring.poll())!=null) list.add(text(e));
+        return list;
+    }
+
+    private void assertGuardIntact() {
+        for (int i = buffer.capacity() - 64; i < buffer.capacity(); i++)
+            Assertions.assertEquals(GUARD, buffer.get(i), "Guard byte overwritten at: " + i);
+    }
+
+    @Test
+    void recordsArePolledInAppendOrder() {
+        SpillRing ring = newRings(1024)[0];
+        for (int i = 0; i < 10; i++)
+            Assertions.assertTrue(ring.append(1000L + i, payload("event-" + i), null));
+        Assertions.assertEquals(10, ring.getCount());
+
+        SpillRing.SpilledEvent first = ring.poll();
+        Assertions.assertNotNull(first);
+        Assertions.assertEquals(1000L, first.timestamp());
+        Assertions.assertEquals("event-0", text(first));
+        Assertions.assertEquals(List.of("event-1", "event-2", "event-3", "event-4", "event-5", "event-6", "event-7", "event-8", "event-9"), drain(ring));
+        Assertions.assertTrue(ring.isEmpty());
+        Assertions.assertNull(ring.poll());
+    }
+
+    @Test
+    void ringFilledExactlyToTheEndWrapsWithoutOverwritingNextRing() {
+        // Three 8-byte payloads fill the ring exactly, i.e. tail==capacity with no space left to waste
+        int capacity = 3 * (RECORD_OVERHEAD + 8);
+        SpillRing[] rings = newRings(capacity);
+        rings[1].append(1L, payload("second-0"), null);
+
+        for (int i = 0; i < 3; i++)
+            Assertions.assertTrue(rings[0].append(i, payload("record-" + i), null));
+        List<String> evicted = new ArrayList<>();
+        Assertions.assertTrue(rings[0].append(3, payload("record-3"), e -> evicted.add(text(e))));
+
+        Assertions.assertEquals(List.of("record-0"), evicted);
+        Assertions.assertEquals(List.of("record-1", "record-2", "record-3"), drain(rings[0]));
+
+        // The next ring (header and data) must not have been touched
+        Assertions.assertEquals(1, rings[1].getCount());
+        Assertions.assertEquals(List.of("second-0"), drain(new SpillRing(buffer, SpillRing.HEADER_SIZE + capacity, capacity)));
+    }
+
+    @Test
+    void lastRingFilledExactlyToTheEndDoesNotWritePastTheBuffer() {
+        int capacity = 2 * (RECORD_OVERHEAD + 8);
+        SpillRing last = newRings(capacity)[1];
+        for (int i = 0; i < 10; i++)
+            Assertions.assertTrue(last.append(i, payload("record-" + i), null));
+        assertGuardIntact();
+        Assertions.assertEquals(List.of("record-8", "record-9"), drain(last));
+    }
+
+    @Test
+    void recordsWrapAroundSkippingUnusableSpace() {
+        // 20-byte records in a 50-byte ring leave 10 unusable bytes at the end (enough for a wrap marker)
+        int capacity = 50;
+        SpillRing ring = newRings(capacity)[0];
+        List<String> evicted = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+            Assertions.assertTrue(ring.append(i, payload("record-" + i), e -> evicted.add(text(e))));
+
+        Assertions.assertEquals(List.of("record-0", "record-1", "record-2"), evicted);
+        Assertions.assertEquals(List.of("record-3", "record-4"), drain(ring));
+    }
+
+    @Test
+    void recordsWrapAroundWhenUnusableSpaceIsSmallerThanMarker() {
+        // 20-byte records in a 42-byte ring leave 2 unusable bytes at the end (too few for a wrap marker)
+        SpillRing ring = newRings(42)[0];
+        for (int i = 0; i < 7; i++)
+            Assertions.assertTrue(ring.append(i, payload("record-" + i), null));
+        Assertions.assertEquals(List.of("record-5", "record-6"), drain(ring));
+    }
+
+    @Test
+    void oldestRecordsAreEvictedInOrderWhenFull() {
+        SpillRing ring = newRings(256)[0];
+        List<Long> evicted = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            Assertions.assertTrue(ring.append(i, payload("event-" + i), e -> evicted.add(e.timestamp())));
+
+        List<String> remaining = drain(ring);
+        Assertions.assertFalse(evicted.isEmpty());
+        for (int i = 0; i < evicted.size(); i++)
+            Assertions.assertEquals(i, evicted.get(i));
+        Assertions.assertEquals(100, evicted.size() + remaining.size());
+        Assertions.assertEquals("event-" + evicted.size(), remaining.get(0));
+        Assertions.assertEquals("event-99", remaining.get(remaining.size() - 1));
+    }
+
+    @Test
+    void recordLargerThanRingIsRejected() {
+        SpillRing ring = newRings(64)[0];
+        ring.append(1L, payload("small"), null);
+        Assertions.assertFalse(ring.append(2L, new byte[64], null));
+        Assertions.assertEquals(List.of("small"), drain(ring));
+    }
+
+    @Test
+    void ringContentsSurviveReload() {
+        int capacity = 100;
+        SpillRing ring = newRings(capacity)[0];
+        for (int i = 0; i < 10; i++)
+            ring.append(i, payload("record-" + i), null);
+        ring.poll();
+
+        SpillRing reloaded = new SpillRing(buffer, 0, capacity);
+        Assertions.assertEquals(ring.getCount(), reloaded.getCount());
+        Assertions.assertEquals(drain(ring), drain(reloaded));
+    }
+
+    @Test
+    void randomAppendsAndPollsMatchFifoModel() {
+        int capacity = 1000;
+        SpillRing[] rings = newRings(capacity);
+        SpillRing ring = rings[1];
+        Deque<String> model = new ArrayDeque<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20_000; i++) {
+            if (random.nextInt(4)==0) {
+                SpillRing.SpilledEvent e = ring.poll();
+                Assertions.assertEquals(model.pollFirst(), e!=null ? text(e) : null);
+            } else {
+                String s = i + "-" + "x".repeat(random.nextInt(80));
+                Assertions.assertTrue(ring.append(i, payload(s), e -> Assertions.assertEquals(model.pollFirst(), text(e))));
+                model.addLast(s);
+            }
+            Assertions.assertEquals(model.size(), ring.getCount());
+        }
+        assertGuardIntact();
+        Assertions.assertEquals(new ArrayList<>(model), drain(ring));
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.brokercep.cep;
+
+import com.espertech.esper.client.Configuration;
+import com.espertech.esper.client.EPServiceProvider;
+import com.espertech.esper.client.EPServiceProviderManager;
+import gr.iccs.imu.ems.brokercep.event.EventMap;
+import gr.iccs.imu.ems.brokercep.properties.BrokerCepProperties;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+@Slf4j
+@DisplayName("CepService Tests")
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class CepServiceTest {
+    private CepService cepService;
+
+    @BeforeEach
+    public void setUp() {
+        BrokerCepProperties properties = new BrokerCepProperties();
+        properties.getCepEngines().setIsolationEnabled(true);
+        cepService = new CepService(properties);
+        cepService.afterPropertiesSet();
+        for (String type : List.of("A", "B", "C", "D"))
+            cepService.addEventType(type, EventMap.getPropertyNames(), EventMap.getPropertyClasses());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        cepService.clearStatements();
+        cepService.clearEventTypes();
+        cepService.destroy();
+    }
+
+    private static Map<String,Object> event(double value) {
+        Map<String,Object> event = new HashMap<>();
+        event.put(EventMap.METRIC_VALUE_NAME, value);
+        event.put(EventMap.LEVEL_NAME, 1);
+        event.put(EventMap.TIMESTAMP_NAME, System.currentTimeMillis());
+        return event;
+    }
+
+    private TestSubscriber subscribe(String engineName, String name, String statement, Consumer<Map<String,Object>> action) {
+        TestSubscriber subscriber = new TestSubscriber(name, statement, action);
+        cepService.addStatementSubscriber(engineName, subscriber);
+        return subscriber;
+    }
+
+    private static long eventsEvaluated(String engineName) {
+        return EPServiceProviderManager.getExistingProvider("ems-" + engineName).getEPRuntime().getNumEventsEvaluated();
+    }
+
+    @Test
+    void eventsAreSentOnlyToEnginesConsumingTheirType() {
+        TestSubscriber app1 = subscribe("app1", "s1", "SELECT * FROM A", null);
+        TestSubscriber app2 = subscribe("app2", "s2", "SELECT * FROM B", null);
+        TestSubscriber defaultA = subscribe(null, "s3", "SELECT * FROM A", null);
+        Assertions.assertEquals(Set.of(CepService.DEFAULT_ENGINE, "app1", "app2"), cepService.getEngineNames());
+
+        cepService.handleEvent(event(1), "A");
+        cepService.handleEvent(event(2), "A");
+        cepService.handleEvent(event(3), "C");
+
+        Assertions.assertEquals(2, app1.getReceived().size());
+        Assertions.assertEquals(2, defaultA.getReceived().size());
+        Assertions.assertTrue(app2.getReceived().isEmpty());
+        Assertions.assertEquals(2, eventsEvaluated("app1"));
+        Assertions.assertEquals(0, eventsEvaluated("app2"));
+    }
+
+    @Test
+    void pojoEventsAreSentByTheirRegisteredTypeName() {
+        cepService.addEventType("PojoA", PojoEvent.class);
+        TestSubscriber app1 = subscribe("app1", "s1", "SELECT * FROM PojoA", null);
+        subscribe("app2", "s2", "SELECT * FROM A", null);
+
+        cepService.handleEvent(new PojoEvent(5));
+        Assertions.assertEquals(1, app1.getReceived().size());
+        Assertions.assertEquals(5.0, app1.getReceived().get(0).get(EventMap.METRIC_VALUE_NAME));
+        Assertions.assertEquals(0, eventsEvaluated("app2"));
+    }
+
+    @Test
+    void consumedTypesAreExtractedFromStatements() {
+        Configuration config = new Configuration();
+        for (String type : List.of("A", "B", "C", "D"))
+            config.addEventType(type, Map.<String,Object>of(EventMap.METRIC_VALUE_NAME, Double.class));
+        EPServiceProvider provider = EPServiceProviderManager.getProvider("ems-consumed-types-test", config);
+        try {
+            CepEngine engine = new CepEngine("consumed-types-test", provider, false);
+            Assertions.assertFalse(engine.hasStatements());
+
+            engine.createStatement("s1", "SELECT * FROM A");
+            engine.createStatement("s2", "INSERT INTO D SELECT * FROM B#lastevent");
+            Assertions.assertTrue(engine.consumes("A"));
+            Assertions.assertTrue(engine.consumes("B"));
+            Assertions.assertFalse(engine.consumes("C"));
+            Assertions.assertFalse(engine.consumes("D"));       // Produced, not consumed
+
+            engine.createStatement("s3", "SELECT a.metricValue FROM A#time(10 sec) AS a, C#lastevent AS c");
+            Assertions.assertTrue(engine.consumes("C"));
+            engine.statementDestroyed("s3");
+            Assertions.assertFalse(engine.consumes("C"));
+
+            // Patterns and subqueries are assumed to consume any type
+            engine.createStatement("s4", "SELECT * FROM pattern [ every a=A -> b=B ]");
+            Assertions.assertTrue(engine.consumes("C"));
+            engine.statementDestroyed("s4");
+            engine.createStatement("s5", "SELECT * FROM A WHERE metricValue > (SELECT max(metricValue) FROM C#length(5))");
+            Assertions.assertTrue(engine.consumes("D"));
+
+            engine.destroyAllStatements();
+            Assertions.assertFalse(engine.hasStatements());
+            Assertions.assertFalse(engine.consumes("A"));
+        } finally {
+            provider.destroy();
+        }
+    }
+
+    @Test
+    void eventsProducedDuringProcessingAreRoutedBackToTheProcessingEngine() {
+        List<String> order = new CopyOnWriteArrayList<>();
+        subscribe("app1", "s1", "SELECT * FROM A", event -> {
+            order.add("app1:A:start");
+            cepService.routeEvent(event(10), "B");
+            order.add("app1:A:end");
+        });
+        subscribe("app1", "s2", "SELECT * FROM B", event -> order.add("app1:B"));
+        subscribe(null, "s3", "SELECT * FROM B", event -> order.add("default:B"));
+
+        // The processing engine gets the produced event after the current one (Esper route), other engines immediately
+        cepService.handleEvent(event(1), "A");
+        Assertions.assertEquals(List.of("app1:A:start", "default:B", "app1:A:end", "app1:B"), order);
+
+        // Events not produced during processing are sent to all consuming engines
+        order.clear();
+        cepService.routeEvent(event(2), "B");
+        Assertions.assertEquals(Set.of("app1:B", "default:B"), new HashSet<>(order));
+        Assertions.assertEquals(2, order.size());
+    }
+
+    @Test
+    void clearedEnginesAreDestroyedAfterInFlightEventsComplete() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Boolean> destroyedWhileProcessing = new CopyOnWriteArrayList<>();
+        EPServiceProvider[] provider = new EPServiceProvider[1];
+        TestSubscriber app1 = subscribe("app1", "s1", "SELECT * FROM A", event -> {
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            destroyedWhileProcessing.add(provider[0].isDestroyed());
+        });
+        provider[0] = EPServiceProviderManager.getExistingProvider("ems-app1");
+
+        Thread sender = new Thread(() -> cepService.handleEvent(event(1), "A"));
+        sender.start();
+        Assertions.assertTrue(entered.await(5, TimeUnit.SECONDS));
+        Thread clearer = new Thread(() -> cepService.clearStatements());
+        clearer.start();
+
+        // The engine is removed at once, so new events are not sent to it, but it is destroyed only after the in-flight event
+        clearer.join(200);
+        Assertions.assertTrue(clearer.isAlive());
+        Assertions.assertEquals(Set.of(CepService.DEFAULT_ENGINE), cepService.getEngineNames());
+        cepService.handleEvent(event(2), "A");
+        Assertions.assertFalse(provider[0].isDestroyed());
+
+        release.countDown();
+        sender.join(5_000);
+        clearer.join(5_000);
+        Assertions.assertFalse(clearer.isAlive());
+        Assertions.assertEquals(List.of(false), destroyedWhileProcessing);
+        Assertions.assertEquals(1, app1.getReceived().size());
+        Assertions.assertTrue(provider[0].isDestroyed());
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class TestSubscriber implements StatementSubscriber {
+        private final String name;
+        private final String statement;
+        private final Consumer<Map<String,Object>> action;
+        private final List<Map<String,Object>> received = new CopyOnWriteArrayList<>();
+
+        public void update(Map<String,Object> event) {
+            received.add(event);
+            if (action!=null) action.accept(event);
+        }
+    }
+
+    public static class PojoEvent extends HashMap<String,Object> {
+        public PojoEvent(double value) {
+            put(EventMap.METRIC_VALUE_NAME, value);
+        }
+
+        public double getMetricValue() {
+            return (double) get(EventMap.METRIC_VALUE_NAME);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.brokercep.cep;
+
+import gr.iccs.imu.ems.brokercep.event.EventMap;
+import gr.iccs.imu.ems.brokercep.properties.BrokerCepProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+@Slf4j
+@DisplayName("EventTimeOrderer Tests")
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class EventTimeOrdererTest {
+    private final List<String> released = new CopyOnWriteArrayList<>();
+    private EventTimeOrderer orderer;
+
+    @AfterEach
+    public void tearDown() {
+        if (orderer!=null) orderer.shutdown();
+    }
+
+    private EventTimeOrderer newOrderer(BrokerCepProperties.LATE_EVENTS_POLICY policy) {
+        BrokerCepProperties.EventOrderingProperties properties = new BrokerCepProperties.EventOrderingProperties();
+        properties.setEnabled(true);
+        properties.setAllowedLateness(200);
+        properties.setTickInterval(20);
+        properties.setLateEventsPolicy(policy);
+        properties.setLateEventsType("LateEvent");
+        return new EventTimeOrderer(properties, time -> { },
+                (event, eventType) -> released.add(eventType + ":" + event.get(EventMap.TIMESTAMP_NAME)));
+    }
+
+    private static Map<String,Object> event(long timestamp) {
+        Map<String,Object> event = new HashMap<>();
+        event.put(EventMap.METRIC_VALUE_NAME, 1.0);
+        event.put(EventMap.TIMESTAMP_NAME, timestamp);
+        return event;
+    }
+
+    private static void waitUntil(java.util.function.BooleanSupplier condition, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (! condition.getAsBoolean() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+    }
+
+    @Test
+    void eventsAreReleasedInTimestampOrder() throws InterruptedException {
+        orderer = newOrderer(BrokerCepProperties.LATE_EVENTS_POLICY.DROP);
+        long now = System.currentTimeMillis();
+        orderer.offer(event(now + 30), "A");
+        orderer.offer(event(now + 10), "A");
+        orderer.offer(event(now + 20), "B");
+
+        waitUntil(() -> released.size()==3, 5_000);
+        Assertions.assertEquals(List.of("A:" + (now + 10), "B:" + (now + 20), "A:" + (now + 30)), released);
+        Assertions.assertEquals(0, orderer.getLateEvents());
+    }
+
+    @Test
+    void lateEventsAreCountedAndDropped() {
+        orderer = newOrderer(BrokerCepProperties.LATE_EVENTS_POLICY.DROP);
+        long tooOld = orderer.getCurrentTime() - 1_000;
+        for (int i = 0; i < 5; i++)
+            orderer.offer(event(tooOld - i), "A");
+
+        Assertions.assertEquals(5, orderer.getLateEvents());
+        Assertions.assertTrue(released.isEmpty());
+    }
+
+    @Test
+    void lateEventsAreCountedAndRoutedWithRoutePolicy() {
+        orderer = newOrderer(BrokerCepProperties.LATE_EVENTS_POLICY.ROUTE);
+        long tooOld = orderer.getCurrentTime() - 1_000;
+        orderer.offer(event(tooOld), "A");
+
+        Assertions.assertEquals(1, orderer.getLateEvents());
+        Assertions.assertEquals(List.of("LateEvent:" + tooOld), released);
+    }
+
+    @Test
+    void bufferedEventsAreNotReleasedAfterShutdown() throws InterruptedException {
+        orderer = newOrderer(BrokerCepProperties.LATE_EVENTS_POLICY.DROP);
+        orderer.offer(event(System.currentTimeMillis() + 100), "A");
+        orderer.shutdown();
+
+        Thread.sleep(500);
+        Assertions.assertTrue(released.isEmpty());
+    }
+}
@@ -61,6 +61,7 @@ public class BrokerClient {
     private Connection connection;
     private Session session;
     private HashMap<MessageListener,Set<MessageConsumer>> listeners = new HashMap<>();
+    private final HashMap<String,MessageProducer> producers = new HashMap<>();
     private Gson gson = new GsonBuilder().create();
     private boolean keepRunning;
     private Future<?> receiveEventsWithAutoReconnectFuture;
@@ -209,6 +210,12 @@ public class BrokerClient {
 
     public enum MESSAGE_TYPE { TEXT, OBJECT, BYTES, MAP };
 
+    public static MESSAGE_TYPE getMessageType(String type) {
+        return StringUtils.isNotBlank(type)
+                ? MESSAGE_TYPE.valueOf(type.trim().toUpperCase())
+                : MESSAGE_TYPE.TEXT;
+    }
+
     public synchronized void publishEvent(String connectionString, String destinationName, Map<String, Object> eventMap) throws JMSException {
         _publishEvent(connectionString, destinationName, MESSAGE_TYPE.TEXT, new EventMap(eventMap), null);
     }
@@ -234,9 +241,7 @@ public class BrokerClient {
     }
 
     public synchronized void publishEvent(String connectionString, String destinationName, String type, Serializable eventContents, Map<String,String> propertiesMap) throws JMSException {
-        MESSAGE_TYPE messageType = StringUtils.isNotBlank(type)
-                ? MESSAGE_TYPE.valueOf(type.trim().toUpperCase())
-                : MESSAGE_TYPE.TEXT;
+        MESSAGE_TYPE messageType = getMessageType(type);
         _publishEvent(connectionString, destinationName, messageType, eventContents, propertiesMap);
     }
 
@@ -265,9 +270,7 @@ public class BrokerClient {
     }
 
     public synchronized void publishEventWithCredentials(String connectionString, String username, String password, String destinationName, String type, Serializable eventContents, Map<String,String> propertiesMap) throws JMSException {
-        MESSAGE_TYPE messageType = StringUtils.isNotBlank(type)
-                ? MESSAGE_TYPE.valueOf(type.trim().toUpperCase())
-                : MESSAGE_TYPE.TEXT;
+        MESSAGE_TYPE messageType = getMessageType(type);
         _publishEvent(connectionString, username, password, destinationName, messageType, eventContents, propertiesMap);
     }
 
@@ -288,15 +291,42 @@ public class BrokerClient {
             _closeConn = ! properties.isPreserveConnection();
         }
 
-        // Create the destination (Topic or Queue)
-        //Destination destination = session.createQueue( destinationName );
-        Destination destination = session.createTopic(destinationName);
+        // Get or create a MessageProducer for the destination (Topic or Queue)
+        MessageProducer producer = getOrCreateProducer(session, producers, destinationName);
+
+        // Create a message
+        Message message = createMessage(session, messageType, event, propertiesMap);
+
+        // Tell the producer to send the message
+        long hash = message.hashCode();
+        log.debug("BrokerClient.publishEvent(): Sending {} message: connection={}, username={}, destination={}, hash={}, payload={}, properties={}", messageType, connectionString, properties.getBrokerUsername(), destinationName, hash, event, propertiesMap);
+        producer.send(message);
+        log.debug("BrokerClient.publishEvent(): {} message sent: connection={}, username={}, destination={}, hash={}, payload={}, properties={}", messageType, connectionString, properties.getBrokerUsername(), destinationName, hash, event, propertiesMap);
+
+        // close connection
+        if (_closeConn) {
+            closeConnection();
+        }
+    }
 
-        // Create a MessageProducer from the Session to the Topic or Queue
-        MessageProducer producer = session.createProducer(destination);
-        producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+    /**
+     * Returns the cached producer of 'destinationName', or creates and caches a new one using 'session'.
+     * The cache must be confined to the thread (or lock) that uses 'session', since JMS sessions are single-threaded.
+     */
+    public static MessageProducer getOrCreateProducer(Session session, Map<String,MessageProducer> producers, String destinationName) throws JMSException {
+        MessageProducer producer = producers.get(destinationName);
+        if (producer==null) {
+            //Destination destination = session.createQueue( destinationName );
+            Destination destination = session.createTopic(destinationName);
+            producer = session.createProducer(destination);
+            producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+            producers.put(destinationName, producer);
+        }
+        return producer;
+    }
 
-        // Create a messages
+    @SneakyThrows
+    public Message createMessage(Session session, MESSAGE_TYPE messageType, Serializable event, Map<String,String> propertiesMap) throws JMSException {
         String payloadText = null;
         Message message;
         switch (messageType) {
@@ -312,8 +342,8 @@ public class BrokerClient {
                     message = mapMsg;
                     break;
                 } else {
-                    log.warn("BrokerClient.publishEvent(): Payload is not a Map: {}", event.getClass().getName());
-                    log.warn("BrokerClient.publishEvent(): Will send an Object message");
+                    log.warn("BrokerClient.createMessage(): Payload is not a Map: {}", event.getClass().getName());
+                    log.warn("BrokerClient.createMessage(): Will send an Object message");
                     messageType = MESSAGE_TYPE.OBJECT;
                 }
             case OBJECT:
@@ -347,23 +377,13 @@ public class BrokerClient {
                 message = session.createTextMessage(payloadText);
                 break;
         }
-        log.debug("BrokerClient.publishEvent(): Message payload: payload={}", payloadText);
+        log.debug("BrokerClient.createMessage(): Message payload: payload={}", payloadText);
 
         if (propertiesMap!=null)
             for (Map.Entry<String,String> e : propertiesMap.entrySet())
                 if (StringUtils.isNotBlank(e.getKey()))
                     message.setStringProperty(e.getKey(), e.getValue());
-
-        // Tell the producer to send the message
-        long hash = message.hashCode();
-        log.debug("BrokerClient.publishEvent(): Sending {} message: connection={}, username={}, destination={}, hash={}, payload={}, properties={}", messageType, connectionString, properties.getBrokerUsername(), destinationName, hash, event, propertiesMap);
-        producer.send(message);
-        log.debug("BrokerClient.publishEvent(): {} message sent: connection={}, username={}, destination={}, hash={}, payload={}, properties={}", messageType, connectionString, properties.getBrokerUsername(), destinationName, hash, event, propertiesMap);
-
-        // close connection
-        if (_closeConn) {
-            closeConnection();
-        }
+        return message;
     }
 
     // ------------------------------------------------------------------------
@@ -656,10 +676,14 @@ public class BrokerClient {
 
         this.connection = connection;
         this.session = session;
+        producers.clear();
     }
 
     public synchronized void closeConnection() throws JMSException {
         // Clean up
+        for (MessageProducer producer : producers.values())
+            producer.close();
+        producers.clear();
         if (session!=null)
             session.close();
         if (connection!=null)
@@ -11,17 +11,18 @@ package gr.iccs.imu.ems.brokerclient;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
-import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
 import com.google.gson.Gson;
 import gr.iccs.imu.ems.brokerclient.event.EventGenerator;
 import gr.iccs.imu.ems.brokerclient.event.EventGeneratorCli;
 import gr.iccs.imu.ems.brokerclient.event.EventMap;
+import gr.iccs.imu.ems.brokerclient.event.EventPlayer;
+import gr.iccs.imu.ems.brokerclient.event.LoadGenerator;
 import gr.iccs.imu.ems.util.LogsUtil;
 import jakarta.jms.*;
 import jakarta.jms.Queue;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.activemq.broker.BrokerService;
 import org.apache.activemq.command.ActiveMQMessage;
 import org.apache.activemq.command.ActiveMQTextMessage;
 import org.apache.commons.csv.CSVFormat;
@@ -32,8 +33,10 @@ import javax.script.*;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -55,6 +58,12 @@ public class BrokerClientApp {
     private static long playbackInterval = -1;
     private static long playbackDelay = -1;
     private static double playbackSpeed = 1.0;
+    private static boolean playbackAsFastAsPossible = false;
+    private static double playbackRateLimit = -1;
+    private static int playbackLoops = 1;
+    private static long playbackFrom = Long.MIN_VALUE;
+    private static long playbackTo = Long.MAX_VALUE;
+    private static boolean playbackRewriteTimestamps = false;
     private static Gson gson = new Gson();
     private static boolean printAsJson = true;
 
@@ -171,7 +180,7 @@ public class BrokerClientApp {
         if ("playback".equalsIgnoreCase(command)) {
             String url = processUrlArg( args[aa++] );
             initPlayback(args, aa);
-            playbackEvents(url, username, password);
+            playbackEvents(url, username, password, destinationFilters);
         } else
         // subscribe to topic
         if ("subscribe".equalsIgnoreCase(command)) {
@@ -319,6 +328,71 @@ public class BrokerClientApp {
             log.debug("BrokerClientApp: Exiting...");
 
         } else
+        // start high-rate load generator
+        if ("loadgen".equalsIgnoreCase(command)) {
+            String url = args[aa++];
+            String destinations = args[aa++];
+            String type = args[aa].startsWith("-T") ? args[aa++].substring(2) : "text";
+            int producers = args[aa].startsWith("-N") ? Integer.parseInt(args[aa++].substring(2)) : 4;
+            double endRate = args[aa].startsWith("-R") ? Double.parseDouble(args[aa++].substring(2)) : -1;
+            String burst = args[aa].startsWith("-B") ? args[aa++].substring(2) : null;
+            double rate = Double.parseDouble(args[aa++]);
+            long duration = Long.parseLong(args[aa++]);
+            double lowerValue = Double.parseDouble(args[aa++]);
+            double upperValue = Double.parseDouble(args[aa++]);
+            int level = Integer.parseInt(args[aa++]);
+            Map<String, String> props = collectProperties(args, aa);
+
+            LoadGenerator generator = new LoadGenerator();
+            generator.setBrokerUsername(username);
+            generator.setBrokerPassword(password);
+            generator.setEventType(type);
+            generator.setProducers(producers);
+            generator.setStartRate(rate);
+            generator.setEndRate(endRate);
+            generator.setDuration(duration * 1000);
+            generator.setLowerValue(lowerValue);
+            generator.setUpperValue(upperValue);
+            generator.setLevel(level);
+            generator.setEventProperties(props);
+            if (StringUtils.isNotBlank(burst)) {
+                generator.setBurstSize(Integer.parseInt(StringUtils.substringBefore(burst, "/").trim()));
+                generator.setBurstInterval(Long.parseLong(StringUtils.substringAfter(burst, "/").trim()));
+            }
+            for (String d : destinations.split(",")) {
+                if (StringUtils.isBlank(d)) continue;
+                String[] part = d.split(":", 2);
+                generator.addDestination(part[0].trim(), part.length>1 ? Double.parseDouble(part[1]) : 1);
+            }
+
+            // Start an embedded broker, if requested
+            BrokerService embeddedBroker = null;
+            if ("embedded".equalsIgnoreCase(url)) {
+                embeddedBroker = startEmbeddedBroker();
+                url = "vm://embedded?create=false";
+            }
+            generator.setBrokerUrl(processUrlArg(url));
+
+            try {
+                LoadGenerator.Report report = generator.run();
+                log.info("BrokerClientApp: Load generator results:");
+                log.info("    Duration:          {} ms", report.getDurationMillis());
+                log.info("    Events:            target={}, sent={}, failed={}, missed={}",
+                        report.getTargetEvents(), report.getSentEvents(), report.getFailedEvents(), report.getMissedEvents());
+                log.info("    Rate (events/s):   target={}, achieved={}",
+                        String.format("%.1f", report.getTargetRate()), String.format("%.1f", report.getAchievedRate()));
+                log.info("    Per destination:   {}", report.getEventsPerDestination());
+                log.info("    Send latency (us): p50={}, p90={}, p99={}, p99.9={}, max={}",
+                        report.getLatencyP50Micros(), report.getLatencyP90Micros(), report.getLatencyP99Micros(),
+                        report.getLatencyP999Micros(), report.getLatencyMaxMicros());
+            } catch (InterruptedException e) {
+                log.warn("BrokerClientApp: Load generator interrupted");
+                Thread.currentThread().interrupt();
+            } finally {
+                if (embeddedBroker!=null)
+                    stopEmbeddedBroker(embeddedBroker);
+            }
+        } else
         // Run script
         if ("run".equalsIgnoreCase(command)) {
             ScriptEngineManager manager = new ScriptEngineManager();
@@ -432,6 +506,31 @@ public class BrokerClientApp {
                 ));
     }
 
+    private static BrokerService startEmbeddedBroker() throws IOException {
+        try {
+            BrokerService broker = new BrokerService();
+            broker.setBrokerName("embedded");
+            broker.setPersistent(false);
+            broker.setUseJmx(false);
+            broker.start();
+            broker.waitUntilStarted();
+            log.info("BrokerClientApp: Embedded broker started");
+            return broker;
+        } catch (Exception e) {
+            throw new IOException("Failed to start embedded broker", e);
+        }
+    }
+
+    private static void stopEmbeddedBroker(BrokerService broker) {
+        try {
+            broker.stop();
+            broker.waitUntilStopped();
+            log.info("BrokerClientApp: Embedded broker stopped");
+        } catch (Exception e) {
+            log.warn("BrokerClientApp: Failed to stop embedded broker: ", e);
+        }
+    }
+
     private static String processUrlArg(String url) {
         url = url.replace("%KAP%", "daemon=true&trace=false&useInactivityMonitor=false&connectionTimeout=0&keepAlive=true");
         log.debug("BrokerClientApp: Effective URL: {}", url);
@@ -774,23 +873,58 @@ public class BrokerClientApp {
     }
 
     private static int initPlayback(String[] args, int aa) throws IOException {
-        // Process recording command line arguments
+        // Process playback command line arguments
         playbackInterval = -1L;
         playbackDelay = -1L;
-        int startAa = aa;
-        if (args[aa].startsWith("-I")) {
-            playbackInterval = Long.parseLong(args[aa++].substring(2).toLowerCase());
-            if (playbackInterval<0) throw new IllegalArgumentException("Playback Interval cannot be negative: "+playbackInterval);
-        }
-        if (args[aa].startsWith("-D")) {
-            playbackDelay = Long.parseLong(args[aa++].substring(2).toLowerCase());
-            if (playbackDelay<0) throw new IllegalArgumentException("Playback Delay cannot be negative: "+playbackDelay);
-        }
-        if (args[aa].startsWith("-S")) {
-            playbackSpeed = Double.parseDouble(args[aa++].substring(2).toLowerCase());
-            if (playbackSpeed<=0) throw new IllegalArgumentException("Playback Speed cannot be negative or zero: "+playbackSpeed);
+        playbackSpeed = 1.0;
+        playbackAsFastAsPossible = false;
+        playbackRateLimit = -1;
+        playbackLoops = 1;
+        playbackFrom = Long.MIN_VALUE;
+        playbackTo = Long.MAX_VALUE;
+        playbackRewriteTimestamps = false;
+        int pacingFlags = 0;
+        while (aa<args.length && args[aa].startsWith("-") && !args[aa].startsWith("-M")) {
+            String flag = args[aa++];
+            if (flag.startsWith("-I")) {
+                playbackInterval = Long.parseLong(flag.substring(2).toLowerCase());
+                if (playbackInterval<0) throw new IllegalArgumentException("Playback Interval cannot be negative: "+playbackInterval);
+                pacingFlags++;
+            } else
+            if (flag.startsWith("-D")) {
+                playbackDelay = Long.parseLong(flag.substring(2).toLowerCase());
+                if (playbackDelay<0) throw new IllegalArgumentException("Playback Delay cannot be negative: "+playbackDelay);
+                pacingFlags++;
+            } else
+            if ("-Smax".equalsIgnoreCase(flag)) {
+                playbackAsFastAsPossible = true;
+                pacingFlags++;
+            } else
+            if (flag.startsWith("-S")) {
+                playbackSpeed = Double.parseDouble(flag.substring(2).toLowerCase());
+                if (playbackSpeed<EventPlayer.MIN_SPEED || playbackSpeed>EventPlayer.MAX_SPEED)
+                    throw new IllegalArgumentException("Playback Speed must be between "+EventPlayer.MIN_SPEED+" and "+EventPlayer.MAX_SPEED+": "+playbackSpeed);
+                pacingFlags++;
+            } else
+            if ("-RT".equalsIgnoreCase(flag)) {
+                playbackRewriteTimestamps = true;
+            } else
+            if (flag.startsWith("-R")) {
+                playbackRateLimit = Double.parseDouble(flag.substring(2));
+                if (playbackRateLimit<=0) throw new IllegalArgumentException("Playback Rate limit must be positive: "+playbackRateLimit);
+            } else
+            if (flag.startsWith("-L")) {
+                playbackLoops = flag.length()>2 ? Integer.parseInt(flag.substring(2)) : 0;
+            } else
+            if (flag.startsWith("-TF")) {
+                playbackFrom = parseTimestamp(flag.substring(3));
+            } else
+            if (flag.startsWith("-TT")) {
+                playbackTo = parseTimestamp(flag.substring(3));
+            } else
+                throw new IllegalArgumentException("Unknown playback flag: "+flag);
         }
-        if (aa-startAa>1)
+        if (pacingFlags>1)
             throw new IllegalArgumentException("You cannot use -I, -D, -S switches at the same time");
 
         String format = null;
@@ -821,227 +955,101 @@ public class BrokerClientApp {
         return aa;
     }
 
-    private static long playbackEvents(String url, String username, String password) throws IOException, JMSException {
-        AtomicLong countSuccess = new AtomicLong();
-        AtomicLong countFail = new AtomicLong();
-
-        BrokerClient client = BrokerClient.newClient();
-        client.openConnection(url, username, password, true);
-
-        boolean useInterval = (playbackInterval>=0);
-        boolean useDelay = (playbackDelay>=0);
-
-        log.info("Start playback...");
-        long startTm = System.currentTimeMillis();
-        final long[] prevValues = {-1L, -1L, -1L};   // Previous Event Timestamp, Previous System time, Last sleep time
+    // Accepts epoch millis or ISO-8601 instants (e.g. 2025-01-31T10:15:30Z)
+    private static long parseTimestamp(String s) {
+        s = s.trim();
+        return StringUtils.isNumeric(s) ? Long.parseLong(s) : Instant.parse(s).toEpochMilli();
+    }
 
+    private static long playbackEvents(String url, String username, String password, String destinationFilters) throws IOException, JMSException {
+        List<EventPlayer.RecordedEvent> recording;
         if (recordFormat==RECORD_FORMAT.CSV)
-            playbackEventsFromCsv(client, prevValues, useInterval, useDelay, countSuccess, countFail, url);
+            recording = EventPlayer.readCsv(recordFile);
         else if (recordFormat==RECORD_FORMAT.JSON)
-            playbackEventsFromJson(client, prevValues, useInterval, useDelay, countSuccess, countFail, url);
+            recording = EventPlayer.readJson(recordFile);
         else
             throw new IllegalArgumentException("Unsupported or missing recording format: "+recordFormat);
 
-        long endTm = System.currentTimeMillis();
-        long count = countSuccess.get() + countFail.get();
-
-        client.closeConnection();
-
-        printPlaybackStatistics(endTm - startTm, countSuccess, countFail);
-
-        return count;
-    }
-
-    private static void playbackEventsFromCsv(BrokerClient client, long[] prevValues, boolean useInterval, boolean useDelay,
-                                              AtomicLong countSuccess, AtomicLong countFail, String url)
-            throws IOException, JMSException
-    {
-        CSVFormat.DEFAULT
-                .withFirstRecordAsHeader()
-                .parse(new BufferedReader(new FileReader(recordFile)))
-                .forEach(rec -> {
-                    // read event data
-                    long timestamp = Long.parseLong(rec.get("Timestamp"));
-                    String destinationName = rec.get("Destination");
-                    String mime = rec.get("Mime");
-                    String type = rec.get("Type");
-                    String contents = rec.get("Contents");
-                    String properties = rec.get("Properties");
-
-                    log.trace("REPLAY> Event data: timestamp={}, destination={}, mime={}, type={}, content={}, properties={}",
-                            timestamp, destinationName, mime, type, contents, properties);
-
-                    // read event properties
-                    Map<String, String> propertiesMap = getPropertiesFromString(properties);
-
-                    /*if (properties.startsWith("{") && properties.endsWith("}"))
-                        properties = properties.substring(1, properties.length()-1);
-                    Map<String, String> propertiesMap = Arrays.stream(properties.split(","))
-                            .filter(StringUtils::isNotBlank)
-                            .map(p -> p.split("=",2))
-                            .collect(Collectors.toMap(p->p[0], p->p.length>1 ? p[1] : ""));*/
-
-                    // wait and send
-                    try {
-                        waitAndSend(client, prevValues, useInterval, useDelay, url,
-                                timestamp, destinationName, type, contents, propertiesMap, countSuccess, countFail);
-                    } catch (Exception e) {
-                        log.error("REPLAY> EXCEPTION: Ignoring record entry: timestamp={}, destination={}, mime={}, type={}, content={}, properties={}\n",
-                                timestamp, destinationName, mime, type, contents, properties, e);
-                    }
-                });
-    }
-
-    private static void playbackEventsFromJson(BrokerClient client, long[] prevValues, boolean useInterval, boolean useDelay,
-                                               AtomicLong countSuccess, AtomicLong countFail, String url)
-            throws JMSException, IOException
-    {
-        Reader playbackReader = new BufferedReader(new FileReader(recordFile));
-        JsonParser jsonParser = new JsonFactory().createParser(playbackReader);
-
-        if (jsonParser.nextToken() == JsonToken.START_ARRAY) {
-            while (jsonParser.nextToken() == JsonToken.START_OBJECT) {
-                // read event data
-                long timestamp = -1L;
-                String destinationName = null;
-                String mime = null;
-                String type = null;
-                String contents = null;
-                String properties = "";
-
-                while (jsonParser.nextToken() != JsonToken.END_OBJECT) {
-                    String fieldName = jsonParser.getCurrentName();
-                    jsonParser.nextToken();
-                    if ("timestamp".equals(fieldName)) timestamp = jsonParser.getLongValue();
-                    else if ("destination".equals(fieldName)) destinationName = jsonParser.getText();
-                    else if ("mime".equals(fieldName)) mime = jsonParser.getText();
-                    else if ("type".equals(fieldName)) type = jsonParser.getText();
-                    else if ("content".equals(fieldName)) contents = jsonParser.getText();
-                    else if ("properties".equals(fieldName)) properties = jsonParser.getText();
-                    else
-                        log.warn("REPLAY> UNKNOWN JSON field at event #{}: {}", countSuccess.get()+countFail.get()+1, fieldName);
-                }
-
-                log.trace("REPLAY> Event data: timestamp={}, destination={}, mime={}, type={}, content={}, properties={}",
-                        timestamp, destinationName, mime, type, contents, properties);
-
-                // read event properties
-                Map<String, String> propertiesMap = getPropertiesFromString(properties);
+        BrokerClient client = BrokerClient.newClient();
+        client.openConnection(url, username, password, true);
 
-                /*if (properties.startsWith("{") && properties.endsWith("}"))
-                    properties = properties.substring(1, properties.length()-1);
-                Map<String, String> propertiesMap = Arrays.stream(properties.split(","))
-                        .map(p -> p.split("=",2))
-                        .collect(Collectors.toMap(p->p[0], p->p[1]));*/
+        EventPlayer player = new EventPlayer(client);
+        player.setBrokerUrl(url);
+        if (playbackAsFastAsPossible) {
+            player.setPacing(EventPlayer.PACING.MAX);
+        } else if (playbackInterval>=0) {
+            player.setPacing(EventPlayer.PACING.INTERVAL);
+            player.setInterval(playbackInterval);
+        } else if (playbackDelay>=0) {
+            player.setPacing(EventPlayer.PACING.DELAY);
+            player.setDelay(playbackDelay);
+        } else {
+            player.setPacing(EventPlayer.PACING.RECORDED);
+            player.setSpeed(playbackSpeed);
+        }
+        player.setRateLimit(playbackRateLimit);
+        player.setLoops(playbackLoops);
+        player.setFromTimestamp(playbackFrom);
+        player.setToTimestamp(playbackTo);
+        player.setRewriteTimestamps(playbackRewriteTimestamps);
+        if (StringUtils.isNotBlank(destinationFilters)) {
+            player.setDestinationFilter(Pattern.compile(Arrays.stream(destinationFilters.split(";"))
+                    .filter(StringUtils::isNotBlank)
+                    .map(f -> "(?:" + f.trim() + ")")
+                    .collect(Collectors.joining("|"))));
+        }
 
-                // wait and send
+        // When looping forever, Ctrl+C stops the playback, and the JVM exits after statistics are printed
+        CountDownLatch completed = new CountDownLatch(1);
+        Thread stopHook = null;
+        if (playbackLoops<=0) {
+            stopHook = new Thread(() -> {
+                log.info("Stopping playback...");
+                player.stop();
                 try {
-                    waitAndSend(client, prevValues, useInterval, useDelay, url,
-                            timestamp, destinationName, type, contents, propertiesMap, countSuccess, countFail);
-                } catch (Exception e) {
-                    log.error("REPLAY> EXCEPTION: Ignoring record entry: timestamp={}, destination={}, mime={}, type={}, content={}, properties={}\n",
-                            timestamp, destinationName, mime, type, contents, properties, e);
+                    if (! completed.await(10, TimeUnit.SECONDS))
+                        log.warn("BrokerClientApp: Playback did not stop in time");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                 }
-            }
+            });
+            Runtime.getRuntime().addShutdownHook(stopHook);
         }
 
-        jsonParser.close();
-        playbackReader.close();
-    }
+        try {
+            log.info("Start playback...");
+            EventPlayer.PlaybackStatistics statistics = player.play(recording);
 
-    private static Map<String, String> getPropertiesFromString(String properties) {
-        LinkedHashMap<String,String> result = new LinkedHashMap<>();
-        gson.fromJson(properties, Map.class).forEach((k,v) -> {
-            if (k!=null && v!=null)
-                result.put(k.toString(), v.toString());
-        });
-        return result;
-    }
+            client.closeConnection();
 
-    private static void waitAndSend(BrokerClient client, long[] prevValues, boolean useInterval, boolean useDelay, String url,
-                                    long timestamp, String destinationName, String type, String contents, Map<String,String> propertiesMap,
-                                    AtomicLong countSuccess, AtomicLong countFail)
-            throws IOException, ClassNotFoundException
-    {
-        // prepare event payload
-        Serializable payload;
-        if ("TEXT".equalsIgnoreCase(type)) {
-            payload = contents;
-        } else
-        if ("OBJECT".equalsIgnoreCase(type)) {
-            byte[] bytes = Base64.getDecoder().decode(contents);
-            try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-                 ObjectInputStream ois = new ObjectInputStream(bais))
-            {
-                payload = (Serializable) ois.readObject();
-            }
-        } else
-        if ("MAP".equalsIgnoreCase(type)) {
-            payload = gson.fromJson(contents, EventMap.class);
-        } else
-        if ("BYTES".equalsIgnoreCase(type)) {
-            payload = Base64.getDecoder().decode(contents);
-        } else {
-            throw new IllegalArgumentException("Unexpected message type: " + type);
-        }
+            printPlaybackStatistics(statistics);
 
-        // calculate wait time and sleep
-        if (prevValues[1]>0) {
-            // calculate wait time
-            long sleepTime = 0;
-            long now = System.currentTimeMillis();
-            if (useInterval) {
-                log.trace("REPLAY> Interval: now={}, prev={}, playback={}", now, prevValues[1], playbackInterval);
-                prevValues[1] = prevValues[1] + playbackInterval;
-                sleepTime = prevValues[1] - now;
-                log.trace("REPLAY>         : sleep={}, new-prev={}", sleepTime, prevValues[1]);
-            } else if (useDelay) {
-                log.trace("REPLAY> Delay: now={}, playback={}", now, playbackDelay);
-                sleepTime = playbackDelay;
-            } else {
-                long diff = (long)((timestamp - prevValues[0]) / playbackSpeed);
-                log.trace("REPLAY> Recorded: diff={}, now={}, prev={}", diff, now, prevValues[1]);
-                prevValues[0] = timestamp;
-                prevValues[1] += diff;
-                sleepTime = prevValues[1] - now;
-                log.trace("REPLAY>         : sleep={}, new-prev={}", sleepTime, prevValues[1]);
-            }
-            prevValues[2] = sleepTime;
-            // wait to send
-            try {
-                log.debug("REPLAY>  sleep={}", sleepTime);
-                if (sleepTime > 1)
-                    Thread.sleep(sleepTime);
-            } catch (InterruptedException e) {
-                throw new RuntimeException("Playback interrupted");
+            return statistics.getSent() + statistics.getFailed();
+        } finally {
+            completed.countDown();
+            if (stopHook!=null) {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(stopHook);
+                } catch (java.lang.IllegalStateException e) {
+                    // JVM is already shutting down, i.e. playback was stopped by the hook
+                }
             }
-        } else {
-            prevValues[0] = timestamp;
-            prevValues[1] = System.currentTimeMillis();
-        }
-
-        // send event
-        long counter = countSuccess.get()+countFail.get()+1;
-        try {
-            log.info("BrokerClientApp: Replay event #{}: Payload: {}", counter, payload);
-            log.trace("BrokerClientApp: Publishing {} event: {}", type, payload);
-            client.publishEvent(url, destinationName, type, payload, propertiesMap);
-            log.debug("BrokerClientApp: Event payload: {}", payload);
-            countSuccess.getAndIncrement();
-        } catch (Exception e) {
-            log.error("BrokerClientApp: EXCEPTION while playing back event #{}: ", counter, e);
-            countFail.getAndIncrement();
         }
     }
 
-    private static void printPlaybackStatistics(long duration, AtomicLong countSuccess, AtomicLong countFail) {
-        long count = countSuccess.get() + countFail.get();
+    private static void printPlaybackStatistics(EventPlayer.PlaybackStatistics statistics) {
+        long count = statistics.getSent() + statistics.getFailed();
+        long duration = statistics.getDurationMillis();
         log.info("Playback completed in {}ms", duration);
-        log.info("        Sent: {}", countSuccess.get());
-        log.info("      Failed: {}", countFail.get());
+        log.info("        Sent: {}", statistics.getSent());
+        log.info("      Failed: {}", statistics.getFailed());
         log.info("       Total: {}", count);
+        log.info("    Filtered: {}", statistics.getFiltered());
+        log.info("       Loops: {}", statistics.getLoops());
         log.info("   Send Rate: {}e/s", 1000d * count / (duration));
         log.info("  Mean Delay: {}s", count<=1 ? "N/A" : (duration) / 1000d / (count-1) );
+        log.info("    Mean Lag: {}ms", statistics.getMeanLagMillis());
+        log.info("     Max Lag: {}ms", statistics.getMaxLagMillis());
     }
 
     private static String getDestinationName(Message message) throws JMSException {
@@ -1073,14 +1081,16 @@ public class BrokerClientApp {
         log.info("client receive   [-Q] [-NJP] [-U<USERNAME> [-P<PASSWORD]] <URL> <TOPIC_LIST> [-OE<ON-EXCEPTION-ACTION>]");
         log.info("client subscribe [-Q] [-NJP] [-U<USERNAME> [-P<PASSWORD]] <URL> <TOPIC_LIST> [-OE<ON-EXCEPTION-ACTION>]");
         log.info("client record    [-Q] [-NJP] [-U<USERNAME> [-P<PASSWORD]] <URL> <TOPIC_LIST> [-Mcsv|-Mjson] <REC-FILE> ");
-        log.info("client playback  [-U<USERNAME> [-P<PASSWORD]] <URL> [-Innn|-Dnnn|-Sd[.d]] [-Mcsv|-Mjson] <REC-FILE> ");
+        log.info("client playback  [-FD<regex>] [-U<USERNAME> [-P<PASSWORD]] <URL> [-Innn|-Dnnn|-Sd[.d]|-Smax] [-Rnnn] [-L[nnn]] [-TF<TS>] [-TT<TS>] [-RT] [-Mcsv|-Mjson] <REC-FILE> ");
         log.info("client generator [-U<USERNAME> [-P<PASSWORD]] <URL> <TOPIC> [-T<MSG-TYPE>] <INTERVAL> <HOWMANY> <LOWER-VALUE> <UPPER-VALUE> <LEVEL>  [<PROPERTY>]*");
         log.info("client generator-cli [-U<USERNAME> [-P<PASSWORD]] <URL> <TOPIC>");
         log.info("client generator-rc  [-U<USERNAME> [-P<PASSWORD]] <URL> <TOPIC> [-OE<ON-EXCEPTION-ACTION>]");
+        log.info("client loadgen [-U<USERNAME> [-P<PASSWORD]] <URL|embedded> <DESTINATION_MIX> [-T<MSG-TYPE>] [-N<PRODUCERS>] [-R<END-RATE>] [-B<SIZE>/<INTERVAL>] <RATE> <DURATION> <LOWER-VALUE> <UPPER-VALUE> <LEVEL>  [<PROPERTY>]*");
         log.info("client run [-E<engine-name>] <script-file> ");
         log.info("  More Flags: -LL<level> -Q -FD<regex> -FP<regex>=<regex>;... -NPJ");
         log.info("    <URL>: (tcp:|ssl|amqp:)//<ADDRESS>:<PORT>[?[%KAP%][&...additional properties]*]   KAP: Keep-Alive Properties ");
         log.info("    <TOPIC_LIST>: <TOPIC>[,<TOPIC>]*");
+        log.info("    <DESTINATION_MIX>: <TOPIC>[:<WEIGHT>][,<TOPIC>[:<WEIGHT>]]*");
         log.info("    <MSG-TYPE>: text, object, bytes, map");
         log.info("    <PROPERTY>: <Property name>=<Property value>  (use quotes if needed)");
     }
@@ -1154,12 +1164,18 @@ public class BrokerClientApp {
                 -A: Append to the recording file if it exists.
                 -O: Overwrite the recording file if it exists.
         
-              playback <FLAGS> <URL> [-Innn|-Dnnn|-Sd[.d]] [-Mcsv|-Mjson] <REC-FILE>
+              playback <FLAGS> <URL> [-Innn|-Dnnn|-Sd[.d]|-Smax] [-Rnnn] [-L[nnn]] [-TF<TS>] [-TT<TS>] [-RT] [-Mcsv|-Mjson] <REC-FILE>
                 Playback recorded messages from a file.
+                Only messages whose destination matches the -FD<D_FILTER> flag (if given) are played back.
                 -Innn: Playback interval between event sends, in millis
                 -Dnnn: Playback delay between event sends, in millis
-                -Sd[.d]: Playback using the recorded intervals between events.
-                         Playback speed can be set using d[.d] factor (e.g. -S2.5 means x2.5 faster playback)
+                -Sd[.d]: Playback using the recorded intervals between events (default).
+                         Playback speed can be set using d[.d] factor, from 0.1 to 1000 (e.g. -S2.5 means x2.5 faster playback)
+                -Smax: Playback as fast as possible (use -R to set a rate ceiling)
+                -Rnnn: Playback rate ceiling, in events/sec
+                -L[nnn]: Playback recording nnn times. If nnn is omitted, loop until Ctrl+C is hit, then print statistics
+                -TF<TS>, -TT<TS>: Playback only events recorded from/to the given time (epoch millis or ISO-8601 instant)
+                -RT: Rewrite event timestamps to the current time
         
               generator <FLAGS> <URL> <TOPIC> [-T<MSG-TYPE>] <INTERVAL> <HOWMANY> <LOWER-VALUE> <UPPER-VALUE> <LEVEL> [<PROPERTY>]...
                 Generate and publish messages to a topic at regular intervals.
@@ -1176,6 +1192,19 @@ public class BrokerClientApp {
                 Start a remote control session for controlling event generator with messages.
                 -OE<ON-EXCEPTION-ACTION>: Behaviour if an error occurs. Options: IGNORE, LOG_AND_IGNORE, THROW, LOG_AND_THROW
         
+              loadgen <FLAGS> <URL|embedded> <DESTINATION_MIX> [-T<MSG-TYPE>] [-N<PRODUCERS>] [-R<END-RATE>] [-B<SIZE>/<INTERVAL>] <RATE> <DURATION> <LOWER-VALUE> <UPPER-VALUE> <LEVEL> [<PROPERTY>]...
+                Generate and publish messages at a high rate, using concurrent producers (virtual threads).
+                Achieved vs. target rate and send latency percentiles are reported at the end.
+                embedded:          Start an in-memory broker and publish to it.
+                <DESTINATION_MIX>: Comma-separated list of topics, each with an optional weight (e.g. 'cpu:3,mem:1').
+                -N<PRODUCERS>:     Number of concurrent producers, each with its own connection. Default: 4
+                -R<END-RATE>:      Ramp rate linearly from <RATE> to <END-RATE> events/sec. Default: no ramp
+                -B<SIZE>/<INTERVAL>: Send a burst of <SIZE> extra events every <INTERVAL> millis.
+                <RATE>:            Target rate, in events/sec.
+                <DURATION>:        Test duration, in seconds.
+                <LOWER-VALUE>, <UPPER-VALUE>:  Message metric values are randomly picked from this range.
+                <LEVEL>:           Message metric level.
+        
               run [-E<engine-name>] <script-file>
                 Execute a JavaScript or Python v2 file with a specific engine.
             """);
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.brokerclient.event;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.gson.Gson;
+import gr.iccs.imu.ems.brokerclient.BrokerClient;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+/**
+ * Plays back recorded events on a predictable timeline.
+ * In RECORDED mode the original inter-arrival times are kept, scaled by 'speed' (0.1x to 1000x).
+ * In MAX mode events are sent as fast as possible, but never faster than 'rateLimit' (if positive),
+ * which also applies to the other modes. INTERVAL and DELAY modes send events at fixed intervals or with fixed delays.
+ * Send times are computed from the playback start (not from the previous send), so delays do not accumulate.
+ * Events can be filtered by destination and recording time range, played back in a loop, and get their
+ * timestamps rewritten to the send time.
+ */
+@Slf4j
+@Data
+public class EventPlayer {
+    public final static double MIN_SPEED = 0.1;
+    public final static double MAX_SPEED = 1000;
+    private final static Pattern TIMESTAMP_PATTERN = Pattern.compile("(\"timestamp\"\\s*:\\s*)-?\\d+");
+    private final static Gson gson = new Gson();
+
+    public enum PACING { RECORDED, INTERVAL, DELAY, MAX }
+
+    public record RecordedEvent(long timestamp, String destination, String mime, String type, String contents, Map<String,String> properties) { }
+
+    @Data
+    @Builder
+    public static class PlaybackStatistics {
+        private long durationMillis;
+        private long sent;
+        private long failed;
+        private long filtered;
+        private long loops;
+        private double sendRate;
+        private double meanLagMillis;       // Mean delay of sends, compared to their scheduled time
+        private double maxLagMillis;
+    }
+
+    private final BrokerClient client;
+    private String brokerUrl;
+    private PACING pacing = PACING.RECORDED;
+    private double speed = 1.0;
+    private long interval;                      // millis
+    private long delay;                         // millis
+    private double rateLimit;                   // events per second. Zero or negative means no limit
+    private int loops = 1;                      // Zero or negative means loop forever
+    private Pattern destinationFilter;
+    private long fromTimestamp = Long.MIN_VALUE;
+    private long toTimestamp = Long.MAX_VALUE;
+    private boolean rewriteTimestamps;
+
+    private transient volatile boolean keepRunning;
+
+    public EventPlayer(@NonNull BrokerClient brokerClient) {
+        this.client = brokerClient;
+    }
+
+    public void setSpeed(double speed) {
+        if (speed<MIN_SPEED || speed>MAX_SPEED)
+            throw new IllegalArgumentException("Playback speed must be between "+MIN_SPEED+" and "+MAX_SPEED+": "+speed);
+        this.speed = speed;
+    }
+
+    public void stop() {
+        keepRunning = false;
+    }
+
+    // ------------------------------------------------------------------------
+    //  Recording readers
+    // ------------------------------------------------------------------------
+
+    public static List<RecordedEvent> readCsv(@NonNull File file) throws IOException {
+        List<RecordedEvent> events = new ArrayList<>();
+        try (Reader reader = new BufferedReader(new FileReader(file))) {
+            CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).build()
+                    .parse(reader)
+                    .forEach(rec -> events.add(new RecordedEvent(
+                            Long.parseLong(rec.get("Timestamp")), rec.get("Destination"), rec.get("Mime"),
+                            rec.get("Type"), rec.get("Contents"), getPropertiesFromString(rec.get("Properties")))));
+        }
+        log.debug("EventPlayer.readCsv(): Read {} events from file: {}", events.size(), file);
+        return events;
+    }
+
+    public static List<RecordedEvent> readJson(@NonNull File file) throws IOException {
+        List<RecordedEvent> events = new ArrayList<>();
+        try (Reader reader = new BufferedReader(new FileReader(file));
+             JsonParser jsonParser = new JsonFactory().createParser(reader))
+        {
+            if (jsonParser.nextToken() == JsonToken.START_ARRAY) {
+                while (jsonParser.nextToken() == JsonToken.START_OBJECT) {
+                    long timestamp = -1L;
+                    String destinationName = null;
+                    String mime = null;
+                    String type = null;
+                    String contents = null;
+                    String properties = "";
+
+                    while (jsonParser.nextToken() != JsonToken.END_OBJECT) {
+                        String fieldName = jsonParser.currentName();
+                        jsonParser.nextToken();
+                        if ("timestamp".equals(fieldName)) timestamp = jsonParser.getLongValue();
+                        else if ("destination".equals(fieldName)) destinationName = jsonParser.getText();
+                        else if ("mime".equals(fieldName)) mime = jsonParser.getText();
+                        else if ("type".equals(fieldName)) type = jsonParser.getText();
+                        else if ("content".equals(fieldName)) contents = jsonParser.getText();
+                        else if ("properties".equals(fieldName)) properties = jsonParser.getText();
+                        else
+                            log.warn("EventPlayer.readJson(): UNKNOWN JSON field at event #{}: {}", events.size()+1, fieldName);
+                    }
+                    events.add(new RecordedEvent(timestamp, destinationName, mime, type, contents, getPropertiesFromString(properties)));
+                }
+            }
+        }
+        log.debug("EventPlayer.readJson(): Read {} events from file: {}", events.size(), file);
+        return events;
+    }
+
+    private static Map<String, String> getPropertiesFromString(String properties) {
+        LinkedHashMap<String,String> result = new LinkedHashMap<>();
+        if (properties==null || properties.isBlank()) return result;
+        gson.fromJson(properties, Map.class).forEach((k,v) -> {
+            if (k!=null && v!=null)
+                result.put(k.toString(), v.toString());
+        });
+        return result;
+    }
+
+    // ------------------------------------------------------------------------
+    //  Playback
+    // ------------------------------------------------------------------------
+
+    public PlaybackStatistics play(@NonNull List<RecordedEvent> recording) {
+        // Filter events and decode their payloads once, so that loops do not repeat it
+        List<RecordedEvent> events = new ArrayList<>();
+        List<Serializable> payloads = new ArrayList<>();
+        long filtered = 0;
+        for (RecordedEvent event : recording) {
+            if (! accept(event)) { filtered++; continue; }
+            try {
+                payloads.add(decodePayload(event.type(), event.contents()));
+                events.add(event);
+            } catch (Exception e) {
+                log.error("EventPlayer: Ignoring record entry: {}\n", event, e);
+                filtered++;
+            }
+        }
+        log.info("EventPlayer: Start playback: events={}, filtered-out={}, pacing={}, speed={}, interval={}, delay={}, rate-limit={}, loops={}, rewrite-timestamps={}",
+                events.size(), filtered, pacing, speed, interval, delay, rateLimit, loops, rewriteTimestamps);
+
+        keepRunning = true;
+        long minGapNanos = rateLimit>0 ? (long) (1e9 / rateLimit) : 0;
+        long sent = 0;
+        long failed = 0;
+        long loop = 0;
+        long totalLagNanos = 0;
+        long maxLagNanos = 0;
+        long startNanos = System.nanoTime();
+        long loopStartNanos = startNanos;
+        long prevSlotNanos = Long.MIN_VALUE / 2;
+        long lastSendNanos = startNanos;
+
+        while (keepRunning && ! events.isEmpty() && (loops<=0 || loop<loops)) {
+            long firstTimestamp = events.getFirst().timestamp();
+            int i = 0;
+            for (; keepRunning && i<events.size(); i++) {
+                RecordedEvent event = events.get(i);
+
+                // Compute send time (on playback timeline)
+                long slotNanos = switch (pacing) {
+                    case RECORDED -> loopStartNanos + (long) (TimeUnit.MILLISECONDS.toNanos(event.timestamp() - firstTimestamp) / speed);
+                    case INTERVAL -> loopStartNanos + i * TimeUnit.MILLISECONDS.toNanos(interval);
+                    case DELAY -> lastSendNanos + (i>0 ? TimeUnit.MILLISECONDS.toNanos(delay) : 0);
+                    case MAX -> loopStartNanos;
+                };
+                slotNanos = Math.max(slotNanos, prevSlotNanos + minGapNanos);
+                prevSlotNanos = slotNanos;
+                waitUntil(slotNanos);
+                if (! keepRunning) break;
+
+                // Send event
+                long nowNanos = System.nanoTime();
+                long lag = Math.max(0, nowNanos - slotNanos);
+                totalLagNanos += lag;
+                maxLagNanos = Math.max(maxLagNanos, lag);
+                try {
+                    Serializable payload = preparePayload(payloads.get(i));
+                    log.debug("EventPlayer: Replay event #{}: destination={}, payload={}", sent+failed+1, event.destination(), payload);
+                    client.publishEvent(brokerUrl, event.destination(), event.type(), payload, event.properties());
+                    sent++;
+                } catch (Exception e) {
+                    log.error("EventPlayer: EXCEPTION while playing back event #{}: ", sent+failed+1, e);
+                    failed++;
+                }
+                lastSendNanos = System.nanoTime();
+            }
+            if (i<events.size()) break;         // Stopped, so the last loop is not counted
+            loop++;
+
+            // Next loop starts one mean inter-arrival time after the last scheduled send
+            long loopSpanNanos = Math.max(0, prevSlotNanos - loopStartNanos);
+            loopStartNanos = prevSlotNanos + (events.size()>1 && pacing!=PACING.MAX ? loopSpanNanos / (events.size()-1) : 0);
+            log.debug("EventPlayer: Loop #{} completed", loop);
+        }
+        keepRunning = false;
+
+        long durationMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        PlaybackStatistics statistics = PlaybackStatistics.builder()
+                .durationMillis(durationMillis)
+                .sent(sent)
+                .failed(failed)
+                .filtered(filtered)
+                .loops(loop)
+                .sendRate(1000d * (sent + failed) / durationMillis)
+                .meanLagMillis(sent+failed>0 ? totalLagNanos / 1e6 / (sent+failed) : 0)
+                .maxLagMillis(maxLagNanos / 1e6)
+                .build();
+        log.info("EventPlayer: Playback completed: {}", statistics);
+        return statistics;
+    }
+
+    private boolean accept(RecordedEvent event) {
+        if (event.timestamp()<fromTimestamp || event.timestamp()>toTimestamp) return false;
+        return destinationFilter==null || event.destination()!=null && destinationFilter.matcher(event.destination()).find();
+    }
+
+    private void waitUntil(long targetNanos) {
+        long remaining;
+        while (keepRunning && (remaining = targetNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                keepRunning = false;
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static Serializable decodePayload(String type, String contents) throws IOException, ClassNotFoundException {
+        if ("TEXT".equalsIgnoreCase(type)) {
+            return contents;
+        } else
+        if ("OBJECT".equalsIgnoreCase(type)) {
+            byte[] bytes = Base64.getDecoder().decode(contents);
+            try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
+                 ObjectInputStream ois = new ObjectInputStream(bais))
+            {
+                return (Serializable) ois.readObject();
+            }
+        } else
+        if ("MAP".equalsIgnoreCase(type)) {
+            return gson.fromJson(contents, EventMap.class);
+        } else
+        if ("BYTES".equalsIgnoreCase(type)) {
+            return Base64.getDecoder().decode(contents);
+        } else {
+            throw new IllegalArgumentException("Unexpected message type: " + type);
+        }
+    }
+
+    // Rewrites timestamps of map events and JSON text events to current time. Other payloads are sent as recorded
+    private Serializable preparePayload(Serializable payload) {
+        if (! rewriteTimestamps) return payload;
+        long now = System.currentTimeMillis();
+        if (payload instanceof EventMap eventMap && eventMap.containsKey("timestamp")) {
+            EventMap copy = new EventMap(eventMap);
+            copy.put("timestamp", now);
+            return copy;
+        }
+        if (payload instanceof String text && text.contains("\"timestamp\"")) {
+            return TIMESTAMP_PATTERN.matcher(text).replaceAll("$1" + now);
+        }
+        return payload;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.brokerclient.event;
+
+import gr.iccs.imu.ems.brokerclient.BrokerClient;
+import jakarta.jms.Connection;
+import jakarta.jms.MessageProducer;
+import jakarta.jms.Session;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * High-rate event generator.
+ * A pacer thread releases send permits according to the target rate, with nanosecond time keeping,
+ * and N producers (virtual threads, each with its own broker connection, session and per-destination message producers)
+ * send an event per permit, without any locking.
+ * The target rate can ramp linearly from 'startRate' to 'endRate', and bursts of 'burstSize' extra events
+ * can be added every 'burstInterval' millis. Each event goes to a destination picked by weight from 'destinations'.
+ * When finished, the achieved vs. target rate and the send latency percentiles are reported.
+ */
+@Slf4j
+@Data
+public class LoadGenerator {
+    private final static long PACER_TICK_NANOS = 100_000L;     // 0.1 ms
+
+    private String brokerUrl;
+    private String brokerUsername;
+    private String brokerPassword;
+    private String eventType = "text";
+    private Map<String, String> eventProperties = new HashMap<>();
+    private Map<String, Double> destinations = new LinkedHashMap<>();
+    private int producers = 4;
+    private double startRate = 100;             // events per second
+    private double endRate = -1;                // events per second. Negative means same as 'startRate'
+    private long duration = 10_000L;            // millis
+    private int burstSize;
+    private long burstInterval;                 // millis
+    private double lowerValue;
+    private double upperValue = 100;
+    private int level = 1;
+
+    private transient volatile boolean keepRunning;
+
+    @Data
+    @Builder
+    public static class Report {
+        private long durationMillis;
+        private long targetEvents;
+        private long sentEvents;
+        private long failedEvents;
+        private long missedEvents;          // Permits not used, because producers could not keep up
+        private double targetRate;
+        private double achievedRate;
+        private Map<String, Long> eventsPerDestination;
+        private double latencyP50Micros;
+        private double latencyP90Micros;
+        private double latencyP99Micros;
+        private double latencyP999Micros;
+        private double latencyMaxMicros;
+    }
+
+    public void addDestination(@NonNull String destination, double weight) {
+        if (weight<=0)
+            throw new IllegalArgumentException("Destination weight must be positive: "+destination+"="+weight);
+        destinations.put(destination, weight);
+    }
+
+    public void stop() {
+        keepRunning = false;
+    }
+
+    public Report run() throws InterruptedException {
+        if (destinations.isEmpty())
+            throw new IllegalArgumentException("No destinations specified");
+        if (producers<1)
+            throw new IllegalArgumentException("Number of producers must be positive: "+producers);
+        if (startRate<=0)
+            throw new IllegalArgumentException("Start rate must be positive: "+startRate);
+        log.info("LoadGenerator.run(): Start: producers={}, rate={}..{} e/s, duration={}ms, burst={} every {}ms, destinations={}",
+                producers, startRate, endRate<0 ? startRate : endRate, duration, burstSize, burstInterval, destinations);
+
+        keepRunning = true;
+        Semaphore permits = new Semaphore(0);
+        AtomicLong sent = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        Map<String, AtomicLong> perDestination = new LinkedHashMap<>();
+        destinations.keySet().forEach(d -> perDestination.put(d, new AtomicLong()));
+        String[] destinationNames = destinations.keySet().toArray(new String[0]);
+        double[] cumulativeWeights = getCumulativeWeights();
+
+        // Start producers
+        List<Future<long[]>> latencies = new ArrayList<>();
+        long targetEvents;
+        long startNanos;
+        long endNanos;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i=0; i<producers; i++) {
+                final int producerId = i;
+                latencies.add(executor.submit(() -> produce(producerId, permits, sent, failed, perDestination,
+                        destinationNames, cumulativeWeights)));
+            }
+
+            // Release permits at target rate, until duration expires
+            startNanos = System.nanoTime();
+            targetEvents = pace(permits, startNanos);
+            endNanos = System.nanoTime();
+            keepRunning = false;
+        }
+
+        // Producers have exited. Unused permits were missed
+        long missed = permits.drainPermits();
+        long durationMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos));
+        long[] allLatencies = mergeLatencies(latencies);
+        Arrays.sort(allLatencies);
+        Map<String, Long> eventsPerDestination = new LinkedHashMap<>();
+        perDestination.forEach((d, count) -> eventsPerDestination.put(d, count.get()));
+
+        Report report = Report.builder()
+                .durationMillis(durationMillis)
+                .targetEvents(targetEvents)
+                .sentEvents(sent.get())
+                .failedEvents(failed.get())
+                .missedEvents(missed)
+                .targetRate(1000d * targetEvents / durationMillis)
+                .achievedRate(1000d * sent.get() / durationMillis)
+                .eventsPerDestination(eventsPerDestination)
+                .latencyP50Micros(percentile(allLatencies, 50))
+                .latencyP90Micros(percentile(allLatencies, 90))
+                .latencyP99Micros(percentile(allLatencies, 99))
+                .latencyP999Micros(percentile(allLatencies, 99.9))
+                .latencyMaxMicros(allLatencies.length>0 ? allLatencies[allLatencies.length-1] / 1000d : 0)
+                .build();
+        log.info("LoadGenerator.run(): End: {}", report);
+        return report;
+    }
+
+    // Returns the number of permits released
+    private long pace(Semaphore permits, long startNanos) {
+        long durationNanos = TimeUnit.MILLISECONDS.toNanos(duration);
+        long burstIntervalNanos = TimeUnit.MILLISECONDS.toNanos(burstInterval);
+        double rateSlope = (endRate<0 ? 0 : endRate - startRate) / durationNanos;   // events/s per ns
+        double due = 0;                 // Events due so far (fractional)
+        long released = 0;
+        long nextBurstNanos = burstSize>0 && burstIntervalNanos>0 ? burstIntervalNanos : Long.MAX_VALUE;
+        long prevNanos = 0;
+        while (keepRunning) {
+            long elapsed = System.nanoTime() - startNanos;
+            if (elapsed>=durationNanos) elapsed = durationNanos;
+
+            // Integrate (linearly ramping) rate over elapsed time since previous tick (trapezoidal rule)
+            double prevRate = startRate + rateSlope * prevNanos;
+            double rate = startRate + rateSlope * elapsed;
+            due += (prevRate + rate) / 2 * (elapsed - prevNanos) / 1e9;
+            prevNanos = elapsed;
+            while (elapsed>=nextBurstNanos) {
+                due += burstSize;
+                nextBurstNanos += burstIntervalNanos;
+            }
+
+            long toRelease = (long) due - released;
+            if (toRelease>0) {
+                permits.release((int) Math.min(toRelease, Integer.MAX_VALUE));
+                released += toRelease;
+            }
+            if (elapsed>=durationNanos) break;
+            LockSupport.parkNanos(PACER_TICK_NANOS);
+        }
+        return released;
+    }
+
+    private long[] produce(int producerId, Semaphore permits, AtomicLong sent, AtomicLong failed,
+                           Map<String, AtomicLong> perDestination, String[] destinationNames, double[] cumulativeWeights)
+            throws Exception
+    {
+        long[] latencies = new long[1024];
+        int count = 0;
+        BrokerClient client = BrokerClient.newClient(brokerUsername, brokerPassword);
+        BrokerClient.MESSAGE_TYPE messageType = BrokerClient.getMessageType(eventType);
+        String username = client.getClientProperties().getBrokerUsername();
+        String password = client.getClientProperties().getBrokerPassword();
+
+        // Each producer owns its connection, session and producers, so sending needs no locking
+        // (a synchronized send would also pin the virtual thread while blocked in I/O)
+        Connection connection = client.createConnectionFactory(brokerUrl, username, password).createConnection();
+        Map<String, MessageProducer> messageProducers = new HashMap<>();
+        try {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            log.debug("LoadGenerator: Producer #{} connected to broker: {}", producerId, brokerUrl);
+            while (keepRunning) {
+                if (! permits.tryAcquire(10, TimeUnit.MILLISECONDS)) continue;
+                String destination = pickDestination(destinationNames, cumulativeWeights);
+                double value = ThreadLocalRandom.current().nextDouble() * (upperValue - lowerValue) + lowerValue;
+                EventMap event = new EventMap(value, level, System.currentTimeMillis());
+                long start = System.nanoTime();
+                try {
+                    MessageProducer producer = BrokerClient.getOrCreateProducer(session, messageProducers, destination);
+                    producer.send(client.createMessage(session, messageType, event, eventProperties));
+                    if (count==latencies.length) latencies = Arrays.copyOf(latencies, 2 * count);
+                    latencies[count++] = System.nanoTime() - start;
+                    sent.incrementAndGet();
+                    perDestination.get(destination).incrementAndGet();
+                } catch (Exception e) {
+                    log.warn("LoadGenerator: Producer #{}: Failed to send event: destination={}, event={}, exception={}",
+                            producerId, destination, event, e.getMessage());
+                    failed.incrementAndGet();
+                }
+            }
+        } finally {
+            for (MessageProducer producer : messageProducers.values())
+                producer.close();
+            connection.close();
+            log.debug("LoadGenerator: Producer #{} disconnected from broker: events-sent={}", producerId, count);
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    private double[] getCumulativeWeights() {
+        double[] cumulative = new double[destinations.size()];
+        double sum = 0;
+        int i = 0;
+        for (double weight : destinations.values())
+            cumulative[i++] = sum += weight;
+        for (i=0; i<cumulative.length; i++)
+            cumulative[i] /= sum;
+        return cumulative;
+    }
+
+    private static String pickDestination(String[] destinationNames, double[] cumulativeWeights) {
+        if (destinationNames.length==1) return destinationNames[0];
+        int i = Arrays.binarySearch(cumulativeWeights, ThreadLocalRandom.current().nextDouble());
+        if (i<0) i = -i - 1;
+        return destinationNames[Math.min(i, destinationNames.length - 1)];
+    }
+
+    private static long[] mergeLatencies(List<Future<long[]>> latencies) throws InterruptedException {
+        List<long[]> results = new ArrayList<>();
+        for (Future<long[]> future : latencies) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                log.error("LoadGenerator: Producer failed: ", e.getCause());
+            }
+        }
+        return results.stream().flatMapToLong(Arrays::stream).toArray();
+    }
+
+    private static double percentile(long[] sortedNanos, double percentile) {
+        if (sortedNanos.length==0) return 0;
+        int index = (int) Math.ceil(percentile / 100 * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, Math.min(index, sortedNanos.length - 1))] / 1000d;
+    }
+}
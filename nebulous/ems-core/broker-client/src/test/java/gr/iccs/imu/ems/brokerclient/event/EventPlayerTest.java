@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.brokerclient.event;
+
+import com.google.gson.Gson;
+import gr.iccs.imu.ems.brokerclient.BrokerClient;
+import jakarta.jms.*;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Pattern;
+
+@Slf4j
+@DisplayName("EventPlayer Tests")
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class EventPlayerTest {
+    private final static String BROKER_NAME = "event-player-test";
+    private final static String BROKER_URL = "vm://" + BROKER_NAME + "?create=false";
+    private final static long T0 = 1_700_000_000_000L;     // Recording start
+    private final static long SPACING = 100;                // millis between recorded events
+    private final static Gson gson = new Gson();
+
+    private BrokerService broker;
+    private Connection consumerConnection;
+    private BrokerClient client;
+    private final Map<String, Queue<Message>> received = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        broker = new BrokerService();
+        broker.setBrokerName(BROKER_NAME);
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.setAdvisorySupport(false);
+        broker.start();
+        broker.waitUntilStarted();
+
+        consumerConnection = new ActiveMQConnectionFactory(BROKER_URL).createConnection();
+        consumerConnection.start();
+
+        client = BrokerClient.newClient();
+        client.openConnection(BROKER_URL, null, null, true);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if (client!=null) client.closeConnection();
+        if (consumerConnection!=null) consumerConnection.close();
+        if (broker!=null) {
+            broker.stop();
+            broker.waitUntilStopped();
+        }
+    }
+
+    // Recorded events alternate between 'cpu' (text) and 'mem' (map) destinations, SPACING millis apart
+    private static List<EventPlayer.RecordedEvent> recording(int count) {
+        List<EventPlayer.RecordedEvent> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            long timestamp = T0 + i * SPACING;
+            String contents = gson.toJson(Map.of("metricValue", i, "level", 1, "timestamp", timestamp));
+            events.add(i % 2 == 0
+                    ? new EventPlayer.RecordedEvent(timestamp, "cpu", "text/plain", "TEXT", contents, Map.of("index", "" + i))
+                    : new EventPlayer.RecordedEvent(timestamp, "mem", "map", "MAP", contents, Map.of("index", "" + i)));
+        }
+        return events;
+    }
+
+    private void subscribe(String... destinations) throws JMSException {
+        Session session = consumerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        for (String destination : destinations) {
+            Queue<Message> messages = received.computeIfAbsent(destination, d -> new ConcurrentLinkedQueue<>());
+            session.createConsumer(session.createTopic(destination)).setMessageListener(messages::add);
+        }
+    }
+
+    private List<Message> waitForReceived(String destination, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (received.get(destination).size()<expected && System.currentTimeMillis()<deadline)
+            Thread.sleep(20);
+        return new ArrayList<>(received.get(destination));
+    }
+
+    private static long timestampOf(Message message) throws JMSException {
+        if (message instanceof TextMessage textMessage)
+            return ((Number) gson.fromJson(textMessage.getText(), Map.class).get("timestamp")).longValue();
+        return ((Number) ((MapMessage) message).getObject("timestamp")).longValue();
+    }
+
+    private EventPlayer newPlayer(EventPlayer.PACING pacing) {
+        EventPlayer player = new EventPlayer(client);
+        player.setBrokerUrl(BROKER_URL);
+        player.setPacing(pacing);
+        return player;
+    }
+
+    @Test
+    void recordedTimelineIsScaledBySpeed() throws Exception {
+        subscribe("cpu", "mem");
+        List<EventPlayer.RecordedEvent> recording = recording(6);
+        long span = 5 * SPACING;
+        newPlayer(EventPlayer.PACING.MAX).play(recording);      // Warm up connection and producers
+        waitForReceived("mem", 3);
+
+        for (double speed : new double[] { 1, 2, 10 }) {
+            EventPlayer player = newPlayer(EventPlayer.PACING.RECORDED);
+            player.setSpeed(speed);
+            EventPlayer.PlaybackStatistics statistics = player.play(recording);
+            log.info("EventPlayerTest: speed={}, statistics={}", speed, statistics);
+
+            long expected = (long) (span / speed);
+            Assertions.assertEquals(6, statistics.getSent());
+            Assertions.assertEquals(0, statistics.getFailed());
+            Assertions.assertTrue(statistics.getDurationMillis() >= expected,
+                    "Playback at " + speed + "x was faster than the recording: duration=" + statistics.getDurationMillis() + ", expected=" + expected);
+            Assertions.assertTrue(statistics.getDurationMillis() <= expected + 200,
+                    "Playback at " + speed + "x was too slow: duration=" + statistics.getDurationMillis() + ", expected=" + expected);
+        }
+        Assertions.assertEquals(12, waitForReceived("cpu", 12).size());
+        Assertions.assertEquals(12, waitForReceived("mem", 12).size());
+
+        EventPlayer player = newPlayer(EventPlayer.PACING.RECORDED);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> player.setSpeed(EventPlayer.MIN_SPEED / 2));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> player.setSpeed(EventPlayer.MAX_SPEED * 2));
+    }
+
+    @Test
+    void rateLimitCapsMaxPacing() throws Exception {
+        subscribe("cpu", "mem");
+        List<EventPlayer.RecordedEvent> recording = recording(11);
+        EventPlayer.PlaybackStatistics unlimited = newPlayer(EventPlayer.PACING.MAX).play(recording);
+        log.info("EventPlayerTest: Unlimited: {}", unlimited);
+
+        EventPlayer player = newPlayer(EventPlayer.PACING.MAX);
+        player.setRateLimit(50);
+        EventPlayer.PlaybackStatistics limited = player.play(recording);
+        log.info("EventPlayerTest: Rate limited: {}", limited);
+
+        // 11 events at no more than 50 e/s need at least 10 gaps of 20ms
+        Assertions.assertEquals(11, limited.getSent());
+        Assertions.assertTrue(limited.getDurationMillis() >= 200, "Rate limit exceeded: duration=" + limited.getDurationMillis());
+        Assertions.assertTrue(limited.getDurationMillis() <= 400, "Rate limited playback too slow: duration=" + limited.getDurationMillis());
+        Assertions.assertTrue(unlimited.getDurationMillis() < limited.getDurationMillis());
+        Assertions.assertEquals(12, waitForReceived("cpu", 12).size());
+    }
+
+    @Test
+    void eventsAreFilteredByTimeRangeAndDestination() throws Exception {
+        subscribe("cpu", "mem");
+        List<EventPlayer.RecordedEvent> recording = recording(10);
+
+        // Time range keeps events #2 to #7, inclusive
+        EventPlayer player = newPlayer(EventPlayer.PACING.MAX);
+        player.setFromTimestamp(T0 + 2 * SPACING);
+        player.setToTimestamp(T0 + 7 * SPACING);
+        EventPlayer.PlaybackStatistics statistics = player.play(recording);
+        Assertions.assertEquals(6, statistics.getSent());
+        Assertions.assertEquals(4, statistics.getFiltered());
+        List<Message> cpu = waitForReceived("cpu", 3);
+        Assertions.assertEquals(List.of("2", "4", "6"), cpu.stream().map(m -> {
+            try { return m.getStringProperty("index"); } catch (JMSException e) { throw new RuntimeException(e); }
+        }).toList());
+
+        // Destination filter is combined with the time range
+        received.values().forEach(Queue::clear);
+        player.setDestinationFilter(Pattern.compile("^(?:mem)$"));
+        statistics = player.play(recording);
+        Assertions.assertEquals(3, statistics.getSent());
+        Assertions.assertEquals(7, statistics.getFiltered());
+        Assertions.assertEquals(3, waitForReceived("mem", 3).size());
+        Assertions.assertTrue(received.get("cpu").isEmpty());
+    }
+
+    @Test
+    void recordingIsPlayedBackForTheGivenLoops() throws Exception {
+        subscribe("cpu", "mem");
+        List<EventPlayer.RecordedEvent> recording = recording(6);
+        EventPlayer player = newPlayer(EventPlayer.PACING.RECORDED);
+        player.setSpeed(10);
+        player.setLoops(3);
+        EventPlayer.PlaybackStatistics statistics = player.play(recording);
+        log.info("EventPlayerTest: Loops: {}", statistics);
+
+        // Loops are separated by the mean inter-arrival time: 3 spans of 5 gaps, plus 2 gaps between loops
+        Assertions.assertEquals(18, statistics.getSent());
+        Assertions.assertEquals(3, statistics.getLoops());
+        Assertions.assertTrue(statistics.getDurationMillis() >= 17 * SPACING / 10, "Loops overlapped: duration=" + statistics.getDurationMillis());
+        Assertions.assertEquals(9, waitForReceived("cpu", 9).size());
+        Assertions.assertEquals(9, waitForReceived("mem", 9).size());
+    }
+
+    @Test
+    void endlessPlaybackRunsUntilStopped() throws Exception {
+        subscribe("cpu", "mem");
+        EventPlayer player = newPlayer(EventPlayer.PACING.RECORDED);
+        player.setSpeed(10);
+        player.setLoops(0);
+        Thread stopper = new Thread(() -> {
+            try { Thread.sleep(500); } catch (InterruptedException e) { return; }
+            player.stop();
+        });
+        stopper.start();
+        EventPlayer.PlaybackStatistics statistics = player.play(recording(6));
+        stopper.join();
+        log.info("EventPlayerTest: Stopped: {}", statistics);
+
+        // About 8 loops of 60ms fit in 500ms. Only completed loops are counted, but all sent events are
+        Assertions.assertTrue(statistics.getLoops() >= 3, "Too few loops: " + statistics.getLoops());
+        Assertions.assertTrue(statistics.getDurationMillis() < 1_500, "Playback was not stopped: duration=" + statistics.getDurationMillis());
+        Assertions.assertTrue(statistics.getSent() >= 6 * statistics.getLoops() && statistics.getSent() < 6 * (statistics.getLoops() + 1),
+                "Sent events do not match loops: sent=" + statistics.getSent() + ", loops=" + statistics.getLoops());
+        Assertions.assertFalse(player.isKeepRunning());
+    }
+
+    @Test
+    void timestampsAreRewrittenToSendTime() throws Exception {
+        subscribe("cpu", "mem");
+        List<EventPlayer.RecordedEvent> recording = recording(4);
+
+        // Recorded timestamps are kept by default
+        newPlayer(EventPlayer.PACING.MAX).play(recording);
+        List<Long> timestamps = new ArrayList<>();
+        for (Message message : waitForReceived("cpu", 2)) timestamps.add(timestampOf(message));
+        for (Message message : waitForReceived("mem", 2)) timestamps.add(timestampOf(message));
+        Assertions.assertEquals(List.of(T0, T0 + 2 * SPACING, T0 + SPACING, T0 + 3 * SPACING), timestamps);
+
+        // Both text (JSON) and map payloads get the send time, and keep their other fields
+        received.values().forEach(Queue::clear);
+        EventPlayer player = newPlayer(EventPlayer.PACING.MAX);
+        player.setRewriteTimestamps(true);
+        long before = System.currentTimeMillis();
+        player.play(recording);
+        long after = System.currentTimeMillis();
+        List<Message> messages = new ArrayList<>(waitForReceived("cpu", 2));
+        messages.addAll(waitForReceived("mem", 2));
+        Assertions.assertEquals(4, messages.size());
+        for (Message message : messages) {
+            long timestamp = timestampOf(message);
+            Assertions.assertTrue(timestamp >= before && timestamp <= after, "Timestamp not rewritten: " + timestamp);
+        }
+        TextMessage text = (TextMessage) messages.getFirst();
+        Assertions.assertEquals(0d, gson.fromJson(text.getText(), Map.class).get("metricValue"));
+        MapMessage map = (MapMessage) messages.get(2);
+        Assertions.assertEquals(1d, ((Number) map.getObject("metricValue")).doubleValue());
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.brokerclient.event;
+
+import jakarta.jms.*;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Slf4j
+@DisplayName("LoadGenerator Tests")
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class LoadGeneratorTest {
+    private final static String BROKER_NAME = "load-generator-test";
+    private final static String BROKER_URL = "vm://" + BROKER_NAME + "?create=false";
+
+    private BrokerService broker;
+    private Connection consumerConnection;
+    private final Map<String, AtomicLong> received = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        broker = new BrokerService();
+        broker.setBrokerName(BROKER_NAME);
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.setAdvisorySupport(false);
+        broker.start();
+        broker.waitUntilStarted();
+
+        consumerConnection = new ActiveMQConnectionFactory(BROKER_URL).createConnection();
+        consumerConnection.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if (consumerConnection!=null) consumerConnection.close();
+        if (broker!=null) {
+            broker.stop();
+            broker.waitUntilStopped();
+        }
+    }
+
+    private void subscribe(String... destinations) throws JMSException {
+        Session session = consumerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        for (String destination : destinations) {
+            AtomicLong counter = received.computeIfAbsent(destination, d -> new AtomicLong());
+            session.createConsumer(session.createTopic(destination)).setMessageListener(message -> counter.incrementAndGet());
+        }
+    }
+
+    private long waitForReceived(String destination, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (received.get(destination).get()<expected && System.currentTimeMillis()<deadline)
+            Thread.sleep(20);
+        return received.get(destination).get();
+    }
+
+    private static LoadGenerator newGenerator() {
+        LoadGenerator generator = new LoadGenerator();
+        generator.setBrokerUrl(BROKER_URL);
+        return generator;
+    }
+
+    @Test
+    void allEventsAreDeliveredAndSplitByDestinationWeight() throws Exception {
+        subscribe("cpu", "mem");
+        LoadGenerator generator = newGenerator();
+        generator.addDestination("cpu", 3);
+        generator.addDestination("mem", 1);
+        generator.setProducers(4);
+        generator.setStartRate(4_000);
+        generator.setDuration(1_000);
+
+        LoadGenerator.Report report = generator.run();
+        log.info("Report: {}", report);
+
+        Assertions.assertEquals(0, report.getFailedEvents());
+        Assertions.assertEquals(report.getTargetEvents(), report.getSentEvents() + report.getMissedEvents());
+        Assertions.assertTrue(report.getSentEvents() >= 0.9 * report.getTargetEvents(),
+                "Producers could not keep up: sent=" + report.getSentEvents() + ", target=" + report.getTargetEvents());
+
+        // Every sent event reaches its destination exactly once
+        long cpu = report.getEventsPerDestination().get("cpu");
+        long mem = report.getEventsPerDestination().get("mem");
+        Assertions.assertEquals(report.getSentEvents(), cpu + mem);
+        Assertions.assertEquals(cpu, waitForReceived("cpu", cpu));
+        Assertions.assertEquals(mem, waitForReceived("mem", mem));
+        Assertions.assertEquals(0.75, (double) cpu / (cpu + mem), 0.05);
+    }
+
+    @Test
+    void targetIncludesRampAndBursts() throws Exception {
+        subscribe("ramp");
+        LoadGenerator generator = newGenerator();
+        generator.addDestination("ramp", 1);
+        generator.setProducers(2);
+        generator.setStartRate(100);
+        generator.setEndRate(300);
+        generator.setDuration(1_000);
+        generator.setBurstSize(50);
+        generator.setBurstInterval(400);
+
+        LoadGenerator.Report report = generator.run();
+        log.info("Report: {}", report);
+
+        // Ramp from 100 to 300 e/s over 1s gives 200 events, plus 2 bursts of 50
+        Assertions.assertEquals(300d, report.getTargetEvents(), 2d);
+        Assertions.assertEquals(0, report.getFailedEvents());
+        Assertions.assertEquals(report.getTargetEvents(), report.getSentEvents() + report.getMissedEvents());
+        Assertions.assertTrue(report.getSentEvents() >= 0.9 * report.getTargetEvents(),
+                "Producers could not keep up: sent=" + report.getSentEvents() + ", target=" + report.getTargetEvents());
+        Assertions.assertEquals(report.getSentEvents(), waitForReceived("ramp", report.getSentEvents()));
+    }
+
+    @Test
+    void invalidSettingsAreRejected() {
+        LoadGenerator generator = newGenerator();
+        Assertions.assertThrows(IllegalArgumentException.class, generator::run);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> generator.addDestination("cpu", 0));
+        generator.addDestination("cpu", 1);
+        generator.setProducers(0);
+        Assertions.assertThrows(IllegalArgumentException.class, generator::run);
+    }
+}
@@ -14,6 +14,7 @@ import gr.iccs.imu.ems.common.client.SshClientProperties;
 import gr.iccs.imu.ems.common.misc.EventConstant;
 import gr.iccs.imu.ems.common.recovery.RecoveryConstant;
 import gr.iccs.imu.ems.util.EmsConstant;
+import gr.iccs.imu.ems.util.EmsMetrics;
 import gr.iccs.imu.ems.util.EventBus;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
@@ -28,6 +29,7 @@ import org.springframework.scheduling.TaskScheduler;
 import org.springframework.web.client.RestClient;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ScheduledFuture;
 import java.util.stream.Collectors;
@@ -65,6 +67,8 @@ public abstract class AbstractEndpointCollector<T> implements InitializingBean,
     protected boolean started;
     protected boolean autoStartRunner = true;
     protected ScheduledFuture<?> runner;
+    protected AdaptiveInterval adaptiveInterval;
+    protected DeadbandFilter deadbandFilter;
     protected Set<String> allowedTopics;
     protected Map<String, Set<String>> topicMap;
 
@@ -129,9 +133,17 @@ public abstract class AbstractEndpointCollector<T> implements InitializingBean,
         // Schedule collection execution
         errorsMap.clear();
         ignoredNodes.clear();
-        if (autoStartRunner)
-            runner = taskScheduler.scheduleWithFixedDelay(this, Duration.ofMillis(properties.getDelay()));
+        deadbandFilter = properties.getDeadband().isEnabled()
+                ? new DeadbandFilter(collectorId, properties.getDeadband()) : null;
         started = true;
+        if (autoStartRunner) {
+            if (properties.getAdaptive().isEnabled()) {
+                adaptiveInterval = new AdaptiveInterval(collectorId, collectorId,
+                        Duration.ofMillis(properties.getDelay()), properties.getAdaptive(), null);
+                runner = taskScheduler.schedule(this::runAndReschedule, Instant.now());
+            } else
+                runner = taskScheduler.scheduleWithFixedDelay(this, Duration.ofMillis(properties.getDelay()));
+        }
 
         log.info("Collectors::{}: Started", collectorId);
     }
@@ -153,6 +165,8 @@ public abstract class AbstractEndpointCollector<T> implements InitializingBean,
             runner.cancel(true);
             runner = null;
         }
+        adaptiveInterval = null;
+        if (deadbandFilter!=null) deadbandFilter.clear();
         ignoredNodes.values().stream().filter(Objects::nonNull).forEach(task -> task.cancel(true));
         log.info("Collectors::{}: Stopped", collectorId);
     }
@@ -183,6 +197,21 @@ public abstract class AbstractEndpointCollector<T> implements InitializingBean,
             log.warn("Collectors::{}: onMessage: Event from unexpected topic received. Ignoring it: {}", collectorId, topic);
     }
 
+    // Runs a collection round and schedules the next one, after the adaptive interval
+    private void runAndReschedule() {
+        try {
+            run();
+        } finally {
+            synchronized (this) {
+                if (started && adaptiveInterval!=null) {
+                    Duration next = adaptiveInterval.next();
+                    log.trace("Collectors::{}: Next collection in: {}", collectorId, next);
+                    runner = taskScheduler.schedule(this::runAndReschedule, Instant.now().plus(next));
+                }
+            }
+        }
+    }
+
     public void run() {
         if (!started) return;
 
@@ -373,6 +402,8 @@ public abstract class AbstractEndpointCollector<T> implements InitializingBean,
                 log.debug("Collectors::{}:     Publish statistics: {}", collectorId, stats);
             log.debug("Collectors::{}:     Durations: rest-call={}, extract+publish={}, total={}", collectorId,
                     callEndTm-startTm, endTm-callEndTm, endTm-startTm);
+            EmsMetrics.recordSampled(endTm-startTm, "ems.collector.scrape",
+                    "collector", collectorId, "node", StringUtils.defaultIfBlank(nodeAddress, "local"));
         } else {
             log.warn("Collectors::{}: Collecting data...failed: Http Status: {}", collectorId, response.getStatusCode());
         }
@@ -386,6 +417,16 @@ public abstract class AbstractEndpointCollector<T> implements InitializingBean,
     protected List<CollectorContext.PUBLISH_RESULT> publishMetricEvent(String metricName, EventMap event, String nodeAddress) {
         boolean createTopic = properties.isCreateTopic();
         try {
+            AdaptiveInterval interval = adaptiveInterval;
+            if (interval!=null) {
+                Map<String, List<Double>> sloThresholds = properties.getAdaptive().getSloThresholds();
+                interval.observe(metricName + "@" + nodeAddress, event.getMetricValue(),
+                        sloThresholds!=null ? sloThresholds.get(metricName) : null);
+            }
+            DeadbandFilter filter = deadbandFilter;
+            if (filter!=null && ! filter.shouldSend(metricName, nodeAddress, event.getMetricValue()))
+                return Collections.singletonList( CollectorContext.PUBLISH_RESULT.SKIPPED );
+
             boolean createDestination = (createTopic || allowedTopics!=null && allowedTopics.contains(metricName));
             List<CollectorContext.PUBLISH_RESULT> results = new ArrayList<>();
             boolean sendToOriginal = true;
@@ -13,7 +13,9 @@ import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.InitializingBean;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Slf4j
 @Data
@@ -28,8 +30,40 @@ public class AbstractEndpointCollectorProperties implements InitializingBean {
 
     private int errorLimit;     // num of consecutive errors. Zero or negative value will immediately trigger self-healing
 
+    private AdaptiveIntervalProperties adaptive = new AdaptiveIntervalProperties();
+    private DeadbandProperties deadband = new DeadbandProperties();
+
     @Override
     public void afterPropertiesSet() throws Exception {
         log.debug("AbstractEndpointCollectorProperties: {}", this);
     }
+
+    @Data
+    public static class AdaptiveIntervalProperties {
+        private boolean enabled;                // Can also be enabled per sensor, with 'adaptive: true' in sensor configuration
+        private long minInterval = 5000;        // in millis
+        private long maxInterval = 300000;      // in millis
+        private double tolerance = 0.01;        // relative change of a value considered stable
+        private double growthFactor = 1.5;      // interval growth after a stable collection round
+        private double sloMargin = 0.1;         // relative distance from an SLO threshold considered close
+        private Map<String, List<Double>> sloThresholds;    // metric name -> SLO thresholds (for collectors without sensor configurations)
+    }
+
+    @Data
+    public static class DeadbandProperties {
+        private boolean enabled;
+        private double absolute;                // absolute change of a value considered unchanged
+        private double relative;                // relative change of a value considered unchanged
+        private int heartbeat = 10;             // send at least every N samples of a series, even if unchanged. Zero or negative disables heartbeat
+        private long maxSilence = 300000;       // send at least every N millis of a series, even if unchanged. Longer silent series are forgotten. Zero or negative disables it
+        private Map<String, DeadbandTopicProperties> topics = new HashMap<>();     // per-topic overrides
+    }
+
+    @Data
+    public static class DeadbandTopicProperties {
+        private Double absolute;
+        private Double relative;
+        private Integer heartbeat;
+        private Long maxSilence;
+    }
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.common.collector;
+
+import gr.iccs.imu.ems.util.EmsMetrics;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collection interval adapting to the volatility of the collected values.
+ * The interval grows (by 'growth-factor') after every collection round where all values were stable
+ * (i.e. changed less than 'tolerance', relative to their previous value), falls back to the base interval
+ * when a value changes, and drops to the minimum interval when a value is close to an SLO threshold
+ * (within 'slo-margin', relative to the threshold). It always stays within the min/max bounds.
+ * Series not observed in a collection round (e.g. pods that went away) are forgotten, unless nothing was
+ * observed at all in that round (e.g. a failed scrape).
+ * The effective interval is exported in the 'ems.collector.interval' gauge (in millis).
+ */
+@Slf4j
+public class AdaptiveInterval {
+    public final static String INTERVAL_GAUGE = "ems.collector.interval";
+
+    @Getter
+    private final String name;
+    private final long baseMillis;
+    private final long minMillis;
+    private final long maxMillis;
+    private final double tolerance;
+    private final double growthFactor;
+    private final double sloMargin;
+    private final Collection<Double> sloThresholds;
+
+    private final Map<String, Double> lastValues = new HashMap<>();
+    private final Set<String> observedSeries = new HashSet<>();
+    private final AtomicLong gauge;
+    private long currentMillis;
+    private boolean changed;
+    private boolean nearSlo;
+
+    public AdaptiveInterval(@NonNull String collectorId, @NonNull String name, @NonNull Duration baseInterval,
+                            @NonNull AbstractEndpointCollectorProperties.AdaptiveIntervalProperties settings,
+                            Collection<Double> sloThresholds)
+    {
+        this.name = name;
+        this.minMillis = Math.max(1, settings.getMinInterval());
+        this.maxMillis = Math.max(minMillis, settings.getMaxInterval());
+        this.baseMillis = clamp(baseInterval.toMillis());
+        this.tolerance = Math.max(0, settings.getTolerance());
+        this.growthFactor = Math.max(1, settings.getGrowthFactor());
+        this.sloMargin = Math.max(0, settings.getSloMargin());
+        this.sloThresholds = sloThresholds!=null ? List.copyOf(sloThresholds) : List.of();
+        this.currentMillis = baseMillis;
+        this.gauge = EmsMetrics.gauge(INTERVAL_GAUGE, "collector", collectorId, "metric", name);
+        this.gauge.set(currentMillis);
+    }
+
+    /**
+     * Records a collected value of a series (e.g. a node or a tag combination) of this metric
+     */
+    public void observe(@NonNull String series, double value) {
+        observe(series, value, sloThresholds);
+    }
+
+    public synchronized void observe(@NonNull String series, double value, Collection<Double> thresholds) {
+        if (Double.isNaN(value)) return;
+        observedSeries.add(series);
+        Double last = lastValues.put(series, value);
+        if (last==null || Math.abs(value - last) > tolerance * Math.max(Math.abs(last), Double.MIN_NORMAL))
+            changed = true;
+        if (thresholds!=null) {
+            for (Double threshold : thresholds) {
+                if (threshold!=null && Math.abs(value - threshold) <= sloMargin * Math.max(Math.abs(threshold), Double.MIN_NORMAL))
+                    nearSlo = true;
+            }
+        }
+    }
+
+    /**
+     * Computes the interval until the next collection round, from the values observed in the last round
+     */
+    public synchronized Duration next() {
+        long previousMillis = currentMillis;
+        if (nearSlo) currentMillis = minMillis;
+        else if (changed) currentMillis = Math.min(currentMillis, baseMillis);
+        else currentMillis = clamp(Math.round(currentMillis * growthFactor));
+        if (currentMillis!=previousMillis)
+            log.debug("AdaptiveInterval: Interval changed: metric={}, interval={}ms -> {}ms, changed={}, near-slo={}",
+                    name, previousMillis, currentMillis, changed, nearSlo);
+        changed = false;
+        nearSlo = false;
+        if (! observedSeries.isEmpty()) {
+            lastValues.keySet().retainAll(observedSeries);
+            observedSeries.clear();
+        }
+        gauge.set(currentMillis);
+        return Duration.ofMillis(currentMillis);
+    }
+
+    synchronized int getSeriesCount() {
+        return lastValues.size();
+    }
+
+    public synchronized Duration current() {
+        return Duration.ofMillis(currentMillis);
+    }
+
+    // Adaptive interval is enabled in properties, or per sensor with 'adaptive: true' in sensor configuration.
+    // Sensor configuration can also override the bounds (in seconds) and the tolerance.
+    public static AbstractEndpointCollectorProperties.AdaptiveIntervalProperties getSensorSettings(
+            @NonNull AbstractEndpointCollectorProperties.AdaptiveIntervalProperties defaults, Map<String, ?> sensorConfig)
+    {
+        if (sensorConfig!=null && sensorConfig.get("configuration") instanceof Map configMap) {
+            String adaptive = configMap.getOrDefault("adaptive", Boolean.toString(defaults.isEnabled())).toString();
+            if (! "true".equalsIgnoreCase(adaptive.trim())) return null;
+
+            AbstractEndpointCollectorProperties.AdaptiveIntervalProperties settings = new AbstractEndpointCollectorProperties.AdaptiveIntervalProperties();
+            settings.setEnabled(true);
+            settings.setMinInterval(1000 * Long.parseLong(configMap.getOrDefault("adaptive-min-interval", defaults.getMinInterval() / 1000).toString()));
+            settings.setMaxInterval(1000 * Long.parseLong(configMap.getOrDefault("adaptive-max-interval", defaults.getMaxInterval() / 1000).toString()));
+            settings.setTolerance(Double.parseDouble(configMap.getOrDefault("adaptive-tolerance", defaults.getTolerance()).toString()));
+            settings.setGrowthFactor(defaults.getGrowthFactor());
+            settings.setSloMargin(defaults.getSloMargin());
+            return settings;
+        }
+        return defaults.isEnabled() ? defaults : null;
+    }
+
+    // SLO thresholds are added in sensor specs by EMS server, from the metric constraints of the sensor metric
+    public static List<Double> getSensorSloThresholds(Map<String, ?> sensorConfig) {
+        if (sensorConfig!=null && sensorConfig.get("slo-thresholds") instanceof List list) {
+            List<Double> thresholds = new ArrayList<>();
+            for (Object o : list) {
+                if (o instanceof Number n) thresholds.add(n.doubleValue());
+                else if (o!=null && StringUtils.isNotBlank(o.toString())) thresholds.add(Double.parseDouble(o.toString().trim()));
+            }
+            return thresholds;
+        }
+        return null;
+    }
+
+    private long clamp(long millis) {
+        return Math.max(minMillis, Math.min(maxMillis, millis));
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.common.collector;
+
+import gr.iccs.imu.ems.util.EmsMetrics;
+import io.micrometer.core.instrument.Counter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Send-on-delta (deadband) filter applied to collected values before they are published.
+ * A value is suppressed if it differs from the last sent value of its series by no more than the
+ * absolute or relative deadband of its topic. A suppressed series is still sent every 'heartbeat' samples,
+ * and at least once every 'max-silence' millis, so that downstream windows and liveness checks keep receiving events.
+ * Series state is kept in primitive arrays, indexed per topic and series key. Series not sent for longer
+ * than their max-silence are evicted (their next value would be sent anyway), and their slots are reused.
+ */
+@Slf4j
+public class DeadbandFilter {
+    private final String collectorId;
+    private final AbstractEndpointCollectorProperties.DeadbandProperties properties;
+    private final Counter suppressedCounter;
+    private final LongSupplier clock;
+
+    private final Map<String, Map<Object, Integer>> seriesIndex = new HashMap<>();     // topic -> series key -> slot
+    private int seriesCount;
+    private int nextSlot;
+    private double[] lastSentValues = new double[64];
+    private int[] suppressedCounts = new int[64];
+    private long[] sendDeadlines = new long[64];        // Forced send (or eviction) time of each slot
+    private int[] freeSlots = new int[16];
+    private int freeSlotsCount;
+    private long nextEviction;
+
+    /**
+     * Key of series identified by two values (e.g. tags and node), to avoid building key strings for every sample
+     */
+    public record SeriesKey(Object first, Object second) { }
+
+    public DeadbandFilter(@NonNull String collectorId, @NonNull AbstractEndpointCollectorProperties.DeadbandProperties properties) {
+        this(collectorId, properties, System::currentTimeMillis);
+    }
+
+    DeadbandFilter(@NonNull String collectorId, @NonNull AbstractEndpointCollectorProperties.DeadbandProperties properties, @NonNull LongSupplier clock) {
+        this.collectorId = collectorId;
+        this.properties = properties;
+        this.clock = clock;
+        this.suppressedCounter = EmsMetrics.counter("ems.collector.deadband.suppressed", "collector", collectorId);
+        this.nextEviction = nextEvictionTime(clock.getAsLong());
+    }
+
+    /**
+     * Returns true if value must be sent, or false if it is within the deadband of the last sent value of its series
+     */
+    public synchronized boolean shouldSend(@NonNull String topic, Object series, double value) {
+        long now = clock.getAsLong();
+        if (now >= nextEviction)
+            evictSilentSeries(now);
+
+        AbstractEndpointCollectorProperties.DeadbandTopicProperties topicSettings = properties.getTopics().get(topic);
+        long maxSilence = topicSettings!=null && topicSettings.getMaxSilence()!=null ? topicSettings.getMaxSilence() : properties.getMaxSilence();
+
+        Map<Object, Integer> topicSeries = seriesIndex.computeIfAbsent(topic, t -> new HashMap<>());
+        Integer index = topicSeries.get(series);
+        if (index==null) {
+            index = allocateSlot();
+            topicSeries.put(series, index);
+            return sent(index, value, now, maxSilence);
+        }
+
+        double absolute = topicSettings!=null && topicSettings.getAbsolute()!=null ? topicSettings.getAbsolute() : properties.getAbsolute();
+        double relative = topicSettings!=null && topicSettings.getRelative()!=null ? topicSettings.getRelative() : properties.getRelative();
+        int heartbeat = topicSettings!=null && topicSettings.getHeartbeat()!=null ? topicSettings.getHeartbeat() : properties.getHeartbeat();
+
+        double last = lastSentValues[index];
+        double delta = Math.abs(value - last);
+        boolean withinDeadband = delta <= absolute || delta <= relative * Math.abs(last);
+        if (! withinDeadband || Double.isNaN(delta) || heartbeat>0 && suppressedCounts[index] + 1 >= heartbeat
+                || now >= sendDeadlines[index])
+            return sent(index, value, now, maxSilence);
+
+        suppressedCounts[index]++;
+        suppressedCounter.increment();
+        log.trace("Collectors::{}: Deadband: Suppressed value: topic={}, series={}, value={}, last-sent={}",
+                collectorId, topic, series, value, last);
+        return false;
+    }
+
+    public synchronized int getSeriesCount() {
+        return seriesCount;
+    }
+
+    public synchronized void clear() {
+        seriesIndex.clear();
+        seriesCount = 0;
+        nextSlot = 0;
+        freeSlotsCount = 0;
+    }
+
+    private boolean sent(int index, double value, long now, long maxSilence) {
+        lastSentValues[index] = value;
+        suppressedCounts[index] = 0;
+        sendDeadlines[index] = maxSilence>0 ? now + maxSilence : Long.MAX_VALUE;
+        return true;
+    }
+
+    private void evictSilentSeries(long now) {
+        int evicted = 0;
+        for (Iterator<Map<Object, Integer>> topicIt = seriesIndex.values().iterator(); topicIt.hasNext(); ) {
+            Map<Object, Integer> topicSeries = topicIt.next();
+            for (Iterator<Integer> it = topicSeries.values().iterator(); it.hasNext(); ) {
+                int index = it.next();
+                if (now >= sendDeadlines[index]) {
+                    it.remove();
+                    releaseSlot(index);
+                    evicted++;
+                }
+            }
+            if (topicSeries.isEmpty()) topicIt.remove();
+        }
+        nextEviction = nextEvictionTime(now);
+        if (evicted>0)
+            log.debug("Collectors::{}: Deadband: Evicted silent series: evicted={}, remaining={}", collectorId, evicted, seriesCount);
+    }
+
+    private long nextEvictionTime(long now) {
+        // Check every (shortest) max-silence, so silent series are kept for at most twice their max-silence
+        long interval = properties.getMaxSilence();
+        for (AbstractEndpointCollectorProperties.DeadbandTopicProperties topicSettings : properties.getTopics().values()) {
+            Long topicMaxSilence = topicSettings.getMaxSilence();
+            if (topicMaxSilence!=null && topicMaxSilence>0 && (interval<=0 || topicMaxSilence<interval))
+                interval = topicMaxSilence;
+        }
+        return interval>0 ? now + interval : Long.MAX_VALUE;
+    }
+
+    private int allocateSlot() {
+        seriesCount++;
+        if (freeSlotsCount>0)
+            return freeSlots[--freeSlotsCount];
+        ensureCapacity(nextSlot + 1);
+        return nextSlot++;
+    }
+
+    private void releaseSlot(int index) {
+        seriesCount--;
+        if (freeSlotsCount==freeSlots.length)
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        freeSlots[freeSlotsCount++] = index;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size <= lastSentValues.length) return;
+        int newLength = Math.max(size, lastSentValues.length * 2);
+        lastSentValues = Arrays.copyOf(lastSentValues, newLength);
+        suppressedCounts = Arrays.copyOf(suppressedCounts, newLength);
+        sendDeadlines = Arrays.copyOf(sendDeadlines, newLength);
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.common.recovery;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recovery Scheduler.
+ * The first attempt waits 'delay' plus a random spread (up to 'delaySpread'), so that clients noticing the same failure
+ * (e.g. a broker or server restart) do not start in lockstep. Each attempt is then observed for at least 'retryDelay',
+ * and retried with exponential backoff and full jitter. A global cap limits the recovery attempts running
+ * at the same time, and a per-target circuit breaker postpones attempts against targets that keep failing.
+ * An attempt counts as failed only if its failure has been explicitly reported (see 'targetRecoveryFailed').
+ * Attempts neither reported failed nor recovered (see 'targetRecovered') are retried, but do not trip the circuit breaker.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RecoveryScheduler implements InitializingBean {
+    private final static long MIN_BUSY_RETRY_DELAY = 100L;
+
+    private final SelfHealingProperties selfHealingProperties;
+    private final TaskScheduler taskScheduler;
+
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private Semaphore permits;
+    @Getter private final AtomicInteger activeRecoveries = new AtomicInteger();
+    @Getter private final AtomicInteger peakActiveRecoveries = new AtomicInteger();
+
+    public interface RecoveryAttempt {
+        void run(int retry) throws Exception;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        int maxConcurrent = selfHealingProperties.getRecovery().getMaxConcurrentRecoveries();
+        permits = new Semaphore(maxConcurrent>0 ? maxConcurrent : Integer.MAX_VALUE);
+        log.debug("RecoveryScheduler: Initialized: max-concurrent-recoveries={}", maxConcurrent);
+    }
+
+    public ScheduledRecovery schedule(@NonNull String target, @NonNull RecoveryAttempt attempt, Runnable onGiveUp) {
+        ScheduledRecovery recovery = new ScheduledRecovery(target, attempt, onGiveUp);
+        long delay = getBackoffDelay(0);
+        recovery.firstAttemptAt = Instant.now().plusMillis(delay);
+        recovery.scheduleNext(delay);
+        log.debug("RecoveryScheduler: Scheduled recovery: target={}, first-attempt-at={}", target, recovery.firstAttemptAt);
+        return recovery;
+    }
+
+    /**
+     * Reports that the running or last recovery attempt of a target failed (e.g. on a SELF_HEALING_RECOVERY_FAILED event).
+     * The failure is recorded to the circuit breaker of the target, once the observation window of the attempt is over
+     */
+    public void targetRecoveryFailed(@NonNull String target) {
+        getCircuitBreaker(target).reportFailure();
+    }
+
+    /**
+     * Resets the circuit breaker of a target, when it has been reported recovered (e.g. a lost node rejoined)
+     */
+    public void targetRecovered(@NonNull String target) {
+        CircuitBreaker breaker = circuitBreakers.get(target);
+        if (breaker!=null) breaker.recordSuccess();
+    }
+
+    public boolean isCircuitOpen(@NonNull String target) {
+        CircuitBreaker breaker = circuitBreakers.get(target);
+        return breaker!=null && breaker.isOpen(System.currentTimeMillis());
+    }
+
+    // First attempt: 'delay' plus a random spread. Retries: full jitter, i.e. a random delay up to the exponential backoff delay
+    long getBackoffDelay(int retry) {
+        SelfHealingProperties.Recovery props = selfHealingProperties.getRecovery();
+        if (retry==0)
+            return props.getDelay() + getJitter(props.getDelaySpread());
+        double backoff = props.getRetryDelay() * Math.pow(Math.max(1, props.getBackoffMultiplier()), retry-1);
+        long delay = (long) Math.min(backoff, props.getMaxRetryDelay()>0 ? props.getMaxRetryDelay() : Long.MAX_VALUE);
+        return props.isJitter() ? getJitter(delay) : delay;
+    }
+
+    private long getJitter(long bound) {
+        return selfHealingProperties.getRecovery().isJitter() && bound>0 ? ThreadLocalRandom.current().nextLong(bound) : 0;
+    }
+
+    private CircuitBreaker getCircuitBreaker(String target) {
+        return circuitBreakers.computeIfAbsent(target, t -> new CircuitBreaker(
+                selfHealingProperties.getRecovery().getCircuitBreakerThreshold(),
+                selfHealingProperties.getRecovery().getCircuitBreakerOpenDuration()));
+    }
+
+    // ------------------------------------------------------------------------
+
+    public class ScheduledRecovery implements Runnable {
+        @Getter private final String target;
+        private final RecoveryAttempt attempt;
+        private final Runnable onGiveUp;
+        private final AtomicInteger retries = new AtomicInteger();
+        @Getter private Instant firstAttemptAt;
+        private volatile ScheduledFuture<?> future;
+        private volatile boolean cancelled;
+        private boolean attemptPending;
+
+        private ScheduledRecovery(String target, RecoveryAttempt attempt, Runnable onGiveUp) {
+            this.target = target;
+            this.attempt = attempt;
+            this.onGiveUp = onGiveUp;
+        }
+
+        public int getRetries() {
+            return retries.get();
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public void cancel() {
+            boolean wasCancelled = cancelled;
+            cancelled = true;
+            ScheduledFuture<?> f = future;
+            if (f!=null && ! wasCancelled) f.cancel(true);
+
+            // Release the half-open trial, if held by this recovery, so that other recoveries of target can run
+            CircuitBreaker breaker = circuitBreakers.get(target);
+            if (breaker!=null) breaker.cancelTrial(this);
+        }
+
+        private void scheduleNext(long delay) {
+            if (cancelled) return;
+            future = taskScheduler.schedule(this, Instant.now().plusMillis(delay));
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) return;
+            long now = System.currentTimeMillis();
+            CircuitBreaker breaker = getCircuitBreaker(target);
+
+            // Judge previous attempt (its observation window is over). Only reported failures count
+            if (attemptPending) {
+                attemptPending = false;
+                if (breaker.takeFailureReport()) breaker.recordFailure(now);
+            }
+
+            // Give up, if the last attempt did not recover target
+            if (retries.get() > selfHealingProperties.getRecovery().getMaxRetries()) {
+                log.warn("RecoveryScheduler: Max retries reached. Giving up recovery: target={}", target);
+                cancelled = true;
+                breaker.cancelTrial(this);
+                if (onGiveUp!=null) onGiveUp.run();
+                return;
+            }
+
+            // Postpone attempt if target circuit is open
+            long wait = breaker.delayBeforeAttempt(now, this);
+            if (wait>0) {
+                log.debug("RecoveryScheduler: Circuit open. Postponing recovery for {}ms: target={}", wait, target);
+                scheduleNext(wait + getJitter(selfHealingProperties.getRecovery().getDelaySpread()));
+                return;
+            }
+
+            // Postpone attempt if too many recoveries are running
+            if (! permits.tryAcquire()) {
+                breaker.cancelTrial(this);
+                long delay = Math.max(MIN_BUSY_RETRY_DELAY, getJitter(selfHealingProperties.getRecovery().getDelaySpread()));
+                log.debug("RecoveryScheduler: Too many recoveries running. Postponing recovery for {}ms: target={}", delay, target);
+                scheduleNext(delay);
+                return;
+            }
+
+            int retry = retries.getAndIncrement();
+            long attemptStart = System.currentTimeMillis();
+            breaker.takeFailureReport();        // Discard failures reported before this attempt
+            try {
+                int active = activeRecoveries.incrementAndGet();
+                peakActiveRecoveries.accumulateAndGet(active, Math::max);
+                attemptPending = true;
+                attempt.run(retry);
+            } catch (Exception e) {
+                log.error("RecoveryScheduler: EXCEPTION while running recovery: target={}, retry={} -- Exception: ", target, retry, e);
+            } finally {
+                activeRecoveries.decrementAndGet();
+                permits.release();
+            }
+
+            // Observe attempt for at least 'retryDelay' before judging it. Then, back off before the next attempt (if any)
+            if (cancelled) return;
+            long observation = Math.max(0, attemptStart + selfHealingProperties.getRecovery().getRetryDelay() - System.currentTimeMillis());
+            scheduleNext(retry >= selfHealingProperties.getRecovery().getMaxRetries()
+                    ? observation : observation + getBackoffDelay(retry+1));
+        }
+    }
+
+    // ------------------------------------------------------------------------
+
+    @RequiredArgsConstructor
+    private static class CircuitBreaker {
+        private final int threshold;
+        private final long openDuration;
+        private int consecutiveFailures;
+        private long openUntil;
+        private Object trialOwner;          // The recovery running the half-open trial, if any
+        private boolean failureReported;    // The running or last attempt has been reported failed
+
+        synchronized boolean isOpen(long now) {
+            return threshold>0 && consecutiveFailures>=threshold && now<openUntil;
+        }
+
+        // Returns 0 if an attempt is allowed now (i.e. circuit closed, or half-open with no trial in progress).
+        // In the latter case 'owner' runs the trial, until it fails, succeeds or is cancelled
+        synchronized long delayBeforeAttempt(long now, @NonNull Object owner) {
+            if (threshold<=0 || consecutiveFailures<threshold) return 0;
+            if (now<openUntil) return openUntil - now;
+            if (trialOwner!=null && trialOwner!=owner) return openDuration;
+            trialOwner = owner;
+            return 0;
+        }
+
+        synchronized void cancelTrial(@NonNull Object owner) {
+            if (trialOwner==owner) trialOwner = null;
+        }
+
+        synchronized void reportFailure() {
+            failureReported = true;
+        }
+
+        synchronized boolean takeFailureReport() {
+            boolean reported = failureReported;
+            failureReported = false;
+            return reported;
+        }
+
+        synchronized void recordFailure(long now) {
+            consecutiveFailures++;
+            trialOwner = null;
+            if (threshold>0 && consecutiveFailures>=threshold) {
+                openUntil = now + openDuration;
+                log.warn("RecoveryScheduler: Circuit opened for {}ms after {} consecutive failures", openDuration, consecutiveFailures);
+            }
+        }
+
+        synchronized void recordSuccess() {
+            failureReported = false;
+            consecutiveFailures = 0;
+            openUntil = 0;
+            trialOwner = null;
+        }
+    }
+}
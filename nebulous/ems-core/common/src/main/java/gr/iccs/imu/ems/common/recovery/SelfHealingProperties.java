@@ -35,8 +35,15 @@ public class SelfHealingProperties implements InitializingBean {
 	@Data
 	public static class Recovery {
 		private long delay = 1000;
+		private long delaySpread = 1000;
 		private long retryDelay = 60000;
 		private int maxRetries = 3;
+		private double backoffMultiplier = 2.0;
+		private long maxRetryDelay = 600000;
+		private boolean jitter = true;
+		private int maxConcurrentRecoveries = 2;
+		private int circuitBreakerThreshold = 5;
+		private long circuitBreakerOpenDuration = 600000;
 
 		private Map<String,String> file = new HashMap<>();
 	}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.common.collector;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.*;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+@Slf4j
+@DisplayName("AdaptiveInterval Tests")
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class AdaptiveIntervalTest {
+
+    private static AdaptiveInterval newInterval(List<Double> sloThresholds) {
+        AbstractEndpointCollectorProperties.AdaptiveIntervalProperties settings = new AbstractEndpointCollectorProperties.AdaptiveIntervalProperties();
+        settings.setMinInterval(1000);
+        settings.setMaxInterval(8000);
+        settings.setTolerance(0.01);
+        settings.setGrowthFactor(2);
+        settings.setSloMargin(0.1);
+        return new AdaptiveInterval("test-collector", "test_metric", Duration.ofMillis(2000), settings, sloThresholds);
+    }
+
+    @Test
+    void intervalGrowsWhileValuesAreStableAndResetsOnChange() {
+        AdaptiveInterval interval = newInterval(null);
+        interval.observe("node-1", 10);
+        Assertions.assertEquals(2000, interval.next().toMillis());     // First value counts as a change
+
+        interval.observe("node-1", 10.05);
+        Assertions.assertEquals(4000, interval.next().toMillis());
+        interval.observe("node-1", 10);
+        Assertions.assertEquals(8000, interval.next().toMillis());
+        interval.observe("node-1", 10);
+        Assertions.assertEquals(8000, interval.next().toMillis());     // Capped at max interval
+
+        interval.observe("node-1", 20);
+        Assertions.assertEquals(2000, interval.next().toMillis());
+    }
+
+    @Test
+    void intervalDropsToMinimumNearSloThreshold() {
+        AdaptiveInterval interval = newInterval(List.of(100.0));
+        interval.observe("node-1", 50);
+        interval.next();
+        interval.observe("node-1", 50);
+        Assertions.assertEquals(4000, interval.next().toMillis());
+
+        interval.observe("node-1", 95);
+        Assertions.assertEquals(1000, interval.next().toMillis());
+    }
+
+    @Test
+    void seriesNotObservedInARoundAreForgotten() {
+        AdaptiveInterval interval = newInterval(null);
+        for (int i = 0; i < 100; i++)
+            interval.observe("pod-" + i, i);
+        interval.next();
+        Assertions.assertEquals(100, interval.getSeriesCount());
+
+        // Only a few pods remain
+        for (int i = 0; i < 3; i++)
+            interval.observe("pod-" + i, i);
+        interval.next();
+        Assertions.assertEquals(3, interval.getSeriesCount());
+
+        // A round without any observation (e.g. failed scrape) keeps the known series
+        interval.next();
+        Assertions.assertEquals(3, interval.getSeriesCount());
+
+        // A series coming back counts as a change
+        interval.observe("pod-0", 0);
+        interval.observe("pod-50", 50);
+        Assertions.assertEquals(2000, interval.next().toMillis());
+        Assertions.assertEquals(2, interval.getSeriesCount());
+    }
+
+    @Test
+    void sensorSettingsOverrideDefaults() {
+        AbstractEndpointCollectorProperties.AdaptiveIntervalProperties defaults = new AbstractEndpointCollectorProperties.AdaptiveIntervalProperties();
+        Assertions.assertNull(AdaptiveInterval.getSensorSettings(defaults, Map.of("configuration", Map.of())));
+
+        Map<String, Serializable> sensor = Map.of(
+                "configuration", (Serializable) Map.of("adaptive", "true", "adaptive-min-interval", "2", "adaptive-max-interval", "60"),
+                "slo-thresholds", (Serializable) List.of(80, "90.5"));
+        AbstractEndpointCollectorProperties.AdaptiveIntervalProperties settings = AdaptiveInterval.getSensorSettings(defaults, sensor);
+        Assertions.assertNotNull(settings);
+        Assertions.assertEquals(2000, settings.getMinInterval());
+        Assertions.assertEquals(60000, settings.getMaxInterval());
+        Assertions.assertEquals(defaults.getTolerance(), settings.getTolerance());
+        Assertions.assertEquals(List.of(80.0, 90.5), AdaptiveInterval.getSensorSloThresholds(sensor));
+    }
+}
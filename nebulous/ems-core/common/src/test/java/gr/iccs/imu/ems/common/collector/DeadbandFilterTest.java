@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.common.collector;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.*;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Slf4j
+@DisplayName("DeadbandFilter Tests")
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class DeadbandFilterTest {
+    private final AtomicLong clock = new AtomicLong(1_000_000L);
+
+    private static AbstractEndpointCollectorProperties.DeadbandProperties newProperties(int heartbeat, long maxSilence) {
+        AbstractEndpointCollectorProperties.DeadbandProperties properties = new AbstractEndpointCollectorProperties.DeadbandProperties();
+        properties.setEnabled(true);
+        properties.setAbsolute(0.5);
+        properties.setRelative(0.1);
+        properties.setHeartbeat(heartbeat);
+        properties.setMaxSilence(maxSilence);
+        return properties;
+    }
+
+    private DeadbandFilter newFilter(int heartbeat, long maxSilence) {
+        return new DeadbandFilter("test-collector", newProperties(heartbeat, maxSilence), clock::get);
+    }
+
+    @Test
+    void valuesWithinDeadbandAreSuppressed() {
+        DeadbandFilter filter = newFilter(0, 0);
+        Assertions.assertTrue(filter.shouldSend("cpu", "node-1", 10));       // First value of a series
+        Assertions.assertFalse(filter.shouldSend("cpu", "node-1", 10.4));    // Within absolute deadband
+        Assertions.assertFalse(filter.shouldSend("cpu", "node-1", 10.9));    // Within relative deadband of last sent value
+        Assertions.assertTrue(filter.shouldSend("cpu", "node-1", 11.2));
+        Assertions.assertTrue(filter.shouldSend("cpu", "node-1", Double.NaN));
+
+        // Series are independent, per topic and series key
+        Assertions.assertTrue(filter.shouldSend("cpu", "node-2", 10.4));
+        Assertions.assertTrue(filter.shouldSend("ram", "node-1", 10.4));
+        Assertions.assertTrue(filter.shouldSend("cpu", new DeadbandFilter.SeriesKey("node-1", Map.of("core", "0")), 10));
+        Assertions.assertFalse(filter.shouldSend("cpu", new DeadbandFilter.SeriesKey("node-1", Map.of("core", "0")), 10));
+        Assertions.assertTrue(filter.shouldSend("cpu", new DeadbandFilter.SeriesKey("node-1", Map.of("core", "1")), 10));
+        Assertions.assertEquals(5, filter.getSeriesCount());
+    }
+
+    @Test
+    void unchangedValuesAreSentEveryHeartbeatSamples() {
+        DeadbandFilter filter = newFilter(3, 0);
+        Assertions.assertTrue(filter.shouldSend("cpu", "node-1", 10));
+        Assertions.assertFalse(filter.shouldSend("cpu", "node-1", 10));
+        Assertions.assertFalse(filter.shouldSend("cpu", "node-1", 10));
+        Assertions.assertTrue(filter.shouldSend("cpu", "node-1", 10));
+        Assertions.assertFalse(filter.shouldSend("cpu", "node-1", 10));
+    }
+
+    @Test
+    void unchangedValuesAreSentAfterMaxSilence() {
+        DeadbandFilter filter = newFilter(0, 10_000);
+        Assertions.assertTrue(filter.shouldSend("cpu", "node-1", 10));
+        clock.addAndGet(9_999);
+        Assertions.assertFalse(filter.shouldSend("cpu", "node-1", 10));
+        clock.addAndGet(1);
+        Assertions.assertTrue(filter.shouldSend("cpu", "node-1", 10));
+
+        // Max silence counts from the last sent value
+        clock.addAndGet(5_000);
+        Assertions.assertTrue(filter.shouldSend("cpu", "node-1", 20));
+        clock.addAndGet(9_000);
+        Assertions.assertFalse(filter.shouldSend("cpu", "node-1", 20));
+        clock.addAndGet(1_000);
+        Assertions.assertTrue(filter.shouldSend("cpu", "node-1", 20));
+    }
+
+    @Test
+    void topicSettingsOverrideDefaults() {
+        AbstractEndpointCollectorProperties.DeadbandTopicProperties topicSettings = new AbstractEndpointCollectorProperties.DeadbandTopicProperties();
+        topicSettings.setAbsolute(0.0);
+        topicSettings.setRelative(0.0);
+        topicSettings.setMaxSilence(1_000L);
+        AbstractEndpointCollectorProperties.DeadbandProperties properties = newProperties(0, 10_000);
+        properties.getTopics().put("exact", topicSettings);
+        DeadbandFilter filter = new DeadbandFilter("test-collector", properties, clock::get);
+
+        Assertions.assertTrue(filter.shouldSend("exact", "node-1", 10));
+        Assertions.assertTrue(filter.shouldSend("exact", "node-1", 10.1));
+        Assertions.assertFalse(filter.shouldSend("exact", "node-1", 10.1));
+        clock.addAndGet(1_000);
+        Assertions.assertTrue(filter.shouldSend("exact", "node-1", 10.1));
+
+        // Other topics use the defaults
+        Assertions.assertTrue(filter.shouldSend("cpu", "node-1", 10));
+        Assertions.assertFalse(filter.shouldSend("cpu", "node-1", 10.1));
+    }
+
+    @Test
+    void silentSeriesAreEvictedAndTheirSlotsReused() {
+        DeadbandFilter filter = newFilter(0, 10_000);
+        for (int i = 0; i < 100; i++)
+            Assertions.assertTrue(filter.shouldSend("cpu", "pod-" + i, i));
+        Assertions.assertEquals(100, filter.getSeriesCount());
+
+        // Pods are replaced: only 'pod-0' keeps reporting (and is sent when max silence expires)
+        for (int t = 0; t < 3; t++) {
+            clock.addAndGet(5_000);
+            filter.shouldSend("cpu", "pod-0", 0);
+        }
+        Assertions.assertEquals(1, filter.getSeriesCount());
+        for (int i = 100; i < 200; i++)
+            Assertions.assertTrue(filter.shouldSend("cpu", "pod-" + i, i));
+        Assertions.assertEquals(101, filter.getSeriesCount());
+
+        // Evicted series behave like new series, i.e. their next value is sent, as it would be after max silence
+        Assertions.assertTrue(filter.shouldSend("cpu", "pod-1", 1));
+        Assertions.assertFalse(filter.shouldSend("cpu", "pod-1", 1));
+        Assertions.assertFalse(filter.shouldSend("cpu", "pod-150", 150));
+
+        filter.clear();
+        Assertions.assertEquals(0, filter.getSeriesCount());
+        Assertions.assertTrue(filter.shouldSend("cpu", "pod-150", 150));
+    }
+
+    @Test
+    void seriesAreNotEvictedIfMaxSilenceIsDisabled() {
+        DeadbandFilter filter = newFilter(0, 0);
+        for (int i = 0; i < 10; i++)
+            filter.shouldSend("cpu", "pod-" + i, i);
+        clock.addAndGet(365L * 24 * 3600 * 1000);
+        filter.shouldSend("cpu", "pod-0", 0);
+        Assertions.assertEquals(10, filter.getSeriesCount());
+        Assertions.assertFalse(filter.shouldSend("cpu", "pod-1", 1));
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.common.recovery;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.*;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Slf4j
+@DisplayName("RecoveryScheduler Tests")
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class RecoverySchedulerTest {
+    private ThreadPoolTaskScheduler taskScheduler;
+
+    @BeforeEach
+    public void setUp() {
+        taskScheduler = new ThreadPoolTaskScheduler();
+        taskScheduler.setPoolSize(16);
+        taskScheduler.setThreadNamePrefix("recovery-test-");
+        taskScheduler.initialize();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        taskScheduler.shutdown();
+    }
+
+    private RecoveryScheduler newScheduler(SelfHealingProperties.Recovery recovery) {
+        SelfHealingProperties properties = new SelfHealingProperties();
+        properties.setRecovery(recovery);
+        RecoveryScheduler scheduler = new RecoveryScheduler(properties, taskScheduler);
+        scheduler.afterPropertiesSet();
+        return scheduler;
+    }
+
+    private static void waitUntil(java.util.function.BooleanSupplier condition, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (! condition.getAsBoolean() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+    }
+
+    @Test
+    void massFailureRecoversAllTargetsWithinConcurrencyCap() throws Exception {
+        int targets = 200;
+        int maxConcurrent = 4;
+        SelfHealingProperties.Recovery settings = new SelfHealingProperties.Recovery();
+        settings.setDelay(200);
+        settings.setDelaySpread(200);
+        settings.setRetryDelay(50);
+        settings.setBackoffMultiplier(2);
+        settings.setMaxRetryDelay(400);
+        settings.setMaxRetries(20);
+        settings.setMaxConcurrentRecoveries(maxConcurrent);
+        settings.setCircuitBreakerThreshold(5);
+        settings.setCircuitBreakerOpenDuration(200);
+        RecoveryScheduler scheduler = newScheduler(settings);
+
+        // All targets fail at once. Each one needs 1 to 3 attempts, reports the failed ones, and rejoins shortly after its last attempt
+        Map<String, CompletableFuture<RecoveryScheduler.ScheduledRecovery>> recoveries = new ConcurrentHashMap<>();
+        Set<String> recovered = ConcurrentHashMap.newKeySet();
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicInteger givenUp = new AtomicInteger();
+        for (int i = 0; i < targets; i++)
+            recoveries.put("node-" + i, new CompletableFuture<>());
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < targets; i++) {
+            String target = "node-" + i;
+            int attemptsNeeded = 1 + i % 3;
+            RecoveryScheduler.ScheduledRecovery recovery = scheduler.schedule(target, retry -> {
+                attempts.incrementAndGet();
+                Thread.sleep(2);
+                if (retry + 1 < attemptsNeeded) {
+                    scheduler.targetRecoveryFailed(target);
+                } else {
+                    taskScheduler.schedule(() -> recoveries.get(target).thenAccept(r -> {
+                        recovered.add(target);
+                        scheduler.targetRecovered(target);
+                        r.cancel();
+                    }), Instant.now().plusMillis(5));
+                }
+            }, givenUp::incrementAndGet);
+            recoveries.get(target).complete(recovery);
+        }
+
+        waitUntil(() -> recovered.size()==targets, 30_000);
+        long duration = System.currentTimeMillis() - startTime;
+        log.info("RecoverySchedulerTest: targets={}, attempts={}, peak-active={}, duration={}ms",
+                targets, attempts.get(), scheduler.getPeakActiveRecoveries().get(), duration);
+
+        // Convergence bound, derived from the settings: the latest first attempt (delay + spread), plus the observation
+        // windows and the max. backoffs of 2 retries, plus the time to run all attempts within the concurrency cap,
+        // plus 2 postponements of an attempt while the cap is reached, plus scheduling slack
+        long attemptMillis = 3;
+        long busyPostponement = Math.max(100, settings.getDelaySpread());
+        long bound = settings.getDelay() + settings.getDelaySpread()
+                + 2 * settings.getRetryDelay() + (long) (settings.getRetryDelay() * (1 + settings.getBackoffMultiplier()))
+                + 2L * targets * attemptMillis / maxConcurrent
+                + 2 * busyPostponement + 250;
+        Assertions.assertEquals(targets, recovered.size(), "Recoveries did not converge");
+        int expectedAttempts = 0;
+        for (int i = 0; i < targets; i++) expectedAttempts += 1 + i % 3;
+        Assertions.assertEquals(expectedAttempts, attempts.get(), "Targets were retried after they rejoined");
+        Assertions.assertTrue(duration <= bound, "Recoveries converged too slowly: duration=" + duration + "ms, bound=" + bound + "ms");
+        Assertions.assertEquals(0, givenUp.get());
+        Assertions.assertTrue(scheduler.getPeakActiveRecoveries().get() <= maxConcurrent,
+                "Concurrency cap exceeded: " + scheduler.getPeakActiveRecoveries().get());
+        Assertions.assertEquals(0, scheduler.getActiveRecoveries().get());
+        for (int i = 0; i < targets; i++)
+            Assertions.assertFalse(scheduler.isCircuitOpen("node-" + i));
+    }
+
+    @Test
+    void cancelledHalfOpenTrialDoesNotBlockLaterRecoveries() throws Exception {
+        String target = "node-1";
+        SelfHealingProperties.Recovery settings = new SelfHealingProperties.Recovery();
+        settings.setDelay(10);
+        settings.setRetryDelay(50);
+        settings.setJitter(false);
+        settings.setMaxRetries(0);
+        settings.setMaxConcurrentRecoveries(2);
+        settings.setCircuitBreakerThreshold(1);
+        settings.setCircuitBreakerOpenDuration(200);
+        RecoveryScheduler scheduler = newScheduler(settings);
+
+        // A failed recovery opens the circuit
+        CountDownLatch failedGivenUp = new CountDownLatch(1);
+        scheduler.schedule(target, retry -> scheduler.targetRecoveryFailed(target), failedGivenUp::countDown);
+        Assertions.assertTrue(failedGivenUp.await(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(scheduler.isCircuitOpen(target));
+
+        // Once the circuit is half-open, a new recovery runs the trial attempt, and is cancelled while it is pending
+        settings.setMaxRetries(5);
+        CountDownLatch trialRun = new CountDownLatch(1);
+        RecoveryScheduler.ScheduledRecovery trial = scheduler.schedule(target, retry -> trialRun.countDown(), null);
+        Assertions.assertTrue(trialRun.await(5, TimeUnit.SECONDS));
+        trial.cancel();
+
+        // A later recovery of the same target must not wait for the cancelled trial
+        CountDownLatch nextRun = new CountDownLatch(1);
+        RecoveryScheduler.ScheduledRecovery next = scheduler.schedule(target, retry -> nextRun.countDown(), null);
+        Assertions.assertTrue(nextRun.await(2, TimeUnit.SECONDS), "Recovery blocked by cancelled half-open trial");
+        next.cancel();
+    }
+
+    @Test
+    void onlyReportedFailuresAreRecordedAfterTheObservationWindow() throws Exception {
+        SelfHealingProperties.Recovery settings = new SelfHealingProperties.Recovery();
+        settings.setDelay(10);
+        settings.setRetryDelay(200);
+        settings.setJitter(false);
+        settings.setMaxRetries(0);
+        settings.setCircuitBreakerThreshold(1);
+        settings.setCircuitBreakerOpenDuration(10_000);
+        RecoveryScheduler scheduler = newScheduler(settings);
+
+        // An attempt that reports nothing is not a failure, even when recovery gives up
+        CountDownLatch silentGivenUp = new CountDownLatch(1);
+        long startTime = System.currentTimeMillis();
+        scheduler.schedule("node-1", retry -> { }, silentGivenUp::countDown);
+        Assertions.assertTrue(silentGivenUp.await(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(System.currentTimeMillis() - startTime >= settings.getDelay() + settings.getRetryDelay(),
+                "Gave up before the observation window was over");
+        Assertions.assertFalse(scheduler.isCircuitOpen("node-1"));
+
+        // A reported failure is recorded once the observation window is over, and giving up does not add another one
+        CountDownLatch failedRun = new CountDownLatch(1);
+        CountDownLatch failedGivenUp = new CountDownLatch(1);
+        scheduler.schedule("node-2", retry -> {
+            scheduler.targetRecoveryFailed("node-2");
+            failedRun.countDown();
+        }, failedGivenUp::countDown);
+        Assertions.assertTrue(failedRun.await(5, TimeUnit.SECONDS));
+        Assertions.assertFalse(scheduler.isCircuitOpen("node-2"));
+        Assertions.assertTrue(failedGivenUp.await(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(scheduler.isCircuitOpen("node-2"));
+
+        // A failure reported before the attempt (e.g. for an earlier recovery) does not count against it
+        settings.setCircuitBreakerThreshold(2);
+        CountDownLatch laterGivenUp = new CountDownLatch(1);
+        scheduler.targetRecoveryFailed("node-3");
+        scheduler.schedule("node-3", retry -> { }, laterGivenUp::countDown);
+        Assertions.assertTrue(laterGivenUp.await(5, TimeUnit.SECONDS));
+        scheduler.targetRecoveryFailed("node-3");
+        scheduler.schedule("node-3", retry -> scheduler.targetRecoveryFailed("node-3"), null);
+        waitUntil(() -> scheduler.isCircuitOpen("node-3"), 1_000);
+        Assertions.assertFalse(scheduler.isCircuitOpen("node-3"), "Failures reported before attempts were counted");
+    }
+
+    @Test
+    void backoffDelayGrowsExponentiallyUpToMax() {
+        SelfHealingProperties.Recovery settings = new SelfHealingProperties.Recovery();
+        settings.setDelay(100);
+        settings.setRetryDelay(1000);
+        settings.setBackoffMultiplier(2);
+        settings.setMaxRetryDelay(5000);
+        settings.setJitter(false);
+        RecoveryScheduler scheduler = newScheduler(settings);
+        Assertions.assertEquals(100, scheduler.getBackoffDelay(0));
+        Assertions.assertEquals(1000, scheduler.getBackoffDelay(1));
+        Assertions.assertEquals(2000, scheduler.getBackoffDelay(2));
+        Assertions.assertEquals(4000, scheduler.getBackoffDelay(3));
+        Assertions.assertEquals(5000, scheduler.getBackoffDelay(4));
+
+        // First attempt waits delay plus spread. Retries use full jitter
+        settings.setJitter(true);
+        settings.setDelaySpread(50);
+        for (int i = 0; i < 100; i++) {
+            long first = scheduler.getBackoffDelay(0);
+            Assertions.assertTrue(first >= 100 && first < 150, "First attempt delay out of range: " + first);
+            long delay = scheduler.getBackoffDelay(3);
+            Assertions.assertTrue(delay >= 0 && delay < 4000, "Jittered delay out of range: " + delay);
+        }
+    }
+}
@@ -44,8 +44,7 @@ public class ServerCollectorContext implements CollectorContext {
         if (nodeRegistry==null || nodeRegistry.getCoordinator()==null) return null;
         return nodeRegistry.getCoordinator().supportsAggregators()
                 ? Collections.emptySet()
-                : nodeRegistry.getNodes().stream()
-                    .filter(entry -> entry.getState()== NodeRegistryEntry.STATE.NOT_INSTALLED)
+                : nodeRegistry.getNodesByState(NodeRegistryEntry.STATE.NOT_INSTALLED).stream()
                     .map(NodeRegistryEntry::getIpAddress)
                     .collect(Collectors.toCollection(HashSet::new));
     }
@@ -740,7 +740,7 @@ public class ControlServiceCoordinator implements InitializingBean {
                 for (Map.Entry<String, Set<String>> topicRules : ruleStatements.entrySet()) {
                     String topicName = topicRules.getKey();
                     for (String rule : topicRules.getValue()) {
-                        brokerCep.getCepService().addStatementSubscriber(
+                        brokerCep.getCepService().addStatementSubscriber(appModelId,
                                 new BrokerCepStatementSubscriber("Subscriber_" + cnt++, topicName, rule, brokerCep, passwordUtil)
                         );
                     }
@@ -17,6 +17,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import jakarta.jms.JMSException;
@@ -142,6 +143,12 @@ public class ManagementController {
         topicBeacon.transmitInfo();
     }
 
+    @PostMapping("/beacon/snapshot")
+    public void beaconSnapshot() throws JMSException {
+        log.info("ManagementController.beaconSnapshot(): Invoked");
+        topicBeacon.transmitInfo();
+    }
+
     // ------------------------------------------------------------------------------------------------------------
 
     @GetMapping("/health")
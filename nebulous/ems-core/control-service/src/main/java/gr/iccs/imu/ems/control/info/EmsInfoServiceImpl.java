@@ -47,6 +47,8 @@ public class EmsInfoServiceImpl implements IEmsInfoService {
     private final AtomicLong currentClientMetricsVersion = new AtomicLong(0);
     private Map<String,Object> currentServerMetrics;
     private Map<String,Object> currentClientMetrics;
+    private volatile long lastClientStatisticsVersion = -1;
+    private volatile Set<String> lastActiveClientIds = Set.of();
 
     private final ApplicationContext applicationContext;
     private final ControlServiceProperties controlServiceProperties;
@@ -312,37 +314,33 @@ public class EmsInfoServiceImpl implements IEmsInfoService {
             }
         }
 
+        // Skip rebuilding if no client statistics or active clients have changed
+        long statsVersion = ClientShellCommand.getStatisticsVersion();
+        Set<ClientShellCommand> activeClients = ClientShellCommand.getActive();
+        Set<String> activeClientIds = activeClients.stream().map(ClientShellCommand::getId).collect(Collectors.toSet());
+        if (currentClientMetrics!=null && statsVersion==lastClientStatisticsVersion && activeClientIds.equals(lastActiveClientIds)) {
+            log.debug("updateClientMetricValues(): STOP: No client statistics changes");
+            return;
+        }
+
         long timestamp = System.currentTimeMillis();
         log.trace("updateClientMetricValues(): new-timestamp: {}", timestamp);
 
         Map<String,Object> clientMetrics = new LinkedHashMap<>();
 
-        // Collecting EMS clients' metrics
-        List<String> clientIds = managementCoordinator.clientList();
-        log.trace("updateClientMetricValues(): active-baguette-clients: {}", clientIds);
-        for (String clientId : clientIds.stream().map(s->s.split(" ")[0]).toList()) {
-            /*log.trace("updateClientMetricValues(): Requesting metrics from client: {}", clientId);
-            Object o = baguetteServer.readFromClient(clientId, "SHOW-STATS", org.slf4j.event.Level.DEBUG);
-            log.trace("updateClientMetricValues(): Metrics from client: {}, metrics: {}", clientId, o);
-            if (o instanceof Map) {
-                clientMetrics.put(clientId, o);
-                log.trace("updateClientMetricValues(): client-metrics: id={}, Client metrics ADDED in results map", clientId);
-            }*/
-
-            log.trace("updateClientMetricValues(): Retrieving cached statistics of client: id={}", clientId);
-            ClientShellCommand csc = ClientShellCommand.getActiveById(clientId);
-            log.trace("updateClientMetricValues(): CSC of client: id={}, CSC={}", clientId, csc);
-            if (csc!=null) {
-                if (csc.getClientStatistics()!=null) {
-                    clientMetrics.put(clientId, csc.getClientStatistics());
-                    log.trace("updateClientMetricValues(): client-metrics: id={}, Client metrics ADDED in results map", clientId);
-                } else {
-                    log.debug("updateClientMetricValues(): No client statistics available: client-id={}", clientId);
-                }
+        // Collecting EMS clients' metrics (precomputed snapshots, pushed by clients)
+        log.trace("updateClientMetricValues(): active-baguette-clients: {}", activeClients);
+        for (ClientShellCommand csc : activeClients) {
+            Map<String, Object> stats = csc.getClientStatisticsSnapshot();
+            if (stats!=null) {
+                clientMetrics.put(csc.getId(), stats);
+                log.trace("updateClientMetricValues(): client-metrics: id={}, Client metrics ADDED in results map", csc.getId());
             } else {
-                log.warn("updateClientMetricValues(): CSC NOT FOUND: client-id={}", clientId);
+                log.debug("updateClientMetricValues(): No client statistics available: client-id={}", csc.getId());
             }
         }
+        lastClientStatisticsVersion = statsVersion;
+        lastActiveClientIds = activeClientIds;
         log.debug("updateClientMetricValues(): Collected client metrics: {}", clientMetrics);
 
         synchronized (currentClientMetricsVersion) {
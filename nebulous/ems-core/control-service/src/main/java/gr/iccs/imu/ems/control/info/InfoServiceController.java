@@ -12,6 +12,8 @@ package gr.iccs.imu.ems.control.info;
 //XXX: TODO: Temporarily disabled logviewer: import com.logviewer.data2.LogFormat;
 //XXX: TODO: Temporarily disabled logviewer: import com.logviewer.logLibs.LogConfigurationLoader;
 //XXX: TODO: Temporarily disabled logviewer: import com.logviewer.springboot.LogViewerSpringBootConfig;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import gr.iccs.imu.ems.control.controller.ControlServiceCoordinator;
 import gr.iccs.imu.ems.control.controller.ManagementCoordinator;
 import gr.iccs.imu.ems.control.plugin.WebAdminPlugin;
@@ -38,6 +40,9 @@ import reactor.core.publisher.Mono;
 //XXX: TODO: Temporarily disabled logviewer: import java.nio.file.Path;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -53,6 +58,8 @@ public class InfoServiceController implements InitializingBean {
     private final List<WebAdminPlugin> webAdminPlugins;
     private List<Object> restCallCommands;
     private Map<String, Map<String, List<WebAdminPlugin.RestCallFormField>>> restCallForms;
+    private final Map<Integer, Flux<MetricsSnapshot>> sharedStreams = new ConcurrentHashMap<>();
+    private final ObjectMapper patchMapper = new ObjectMapper();     // Keeps nulls, i.e. removed fields in merge-patches
 
     @Override
     public void afterPropertiesSet() throws Exception {
@@ -83,27 +90,25 @@ public class InfoServiceController implements InitializingBean {
     }
 
     @GetMapping("/info/metrics/stream")
-    public Flux<ServerSentEvent<Map<String,Object>>> serverMetricsStream(
-            @QueryParam("interval") Optional<Integer> interval, HttpServletRequest request, @AuthenticationPrincipal UserDetails user)
+    public Flux<ServerSentEvent<Object>> serverMetricsStream(
+            @QueryParam("interval") Optional<Integer> interval,
+            @QueryParam("metrics") String metrics,
+            @QueryParam("delta") Boolean delta,
+            HttpServletRequest request, @AuthenticationPrincipal UserDetails user)
     {
         String sid = UUID.randomUUID().toString();
-        log.info("serverMetricsStream(): interval={} --- client: {}:{}, Stream-Id: {}",
-                interval, request.getRemoteAddr(), request.getRemotePort(), sid);
+        log.info("serverMetricsStream(): interval={}, metrics={}, delta={} --- client: {}:{}, Stream-Id: {}",
+                interval, metrics, delta, request.getRemoteAddr(), request.getRemotePort(), sid);
         int intervalInSeconds = interval.orElse(-1);
         if (intervalInSeconds<1) intervalInSeconds = properties.getMetricsStreamUpdateInterval();
         log.debug("serverMetricsStream(): effective-interval={}", intervalInSeconds);
 
-        return Flux.interval(Duration.ofSeconds(intervalInSeconds))
-                .onBackpressureDrop()
-                .map(sequence -> {
-                    Map<String,Object> message = createServerMetricsResult(sid, sequence, user);
-                    log.debug("serverMetricsStream(): seq={}, id={}, message={}", sequence, sid, message);
-                    return ServerSentEvent.<Map<String,Object>> builder()
-                            .id(String.valueOf(sequence))
-                            .event(properties.getMetricsStreamEventName())
-                            .data(message)
-                            .build();
-                });
+        Set<String> metricNames = parseMetricNames(metrics);
+        return createMetricsStream(sid, intervalInSeconds, Boolean.TRUE.equals(delta), snapshot -> {
+            Map<String,Object> message = createServerMetricsResult(sid, snapshot, user, metricNames);
+            log.debug("serverMetricsStream(): seq={}, id={}, message={}", snapshot.sequence(), sid, message);
+            return message;
+        });
     }
 
     @GetMapping("/info/metrics/clear")
@@ -127,29 +132,26 @@ public class InfoServiceController implements InitializingBean {
     }
 
     @GetMapping("/info/client-metrics/stream/{clientIds}")
-    public Flux<ServerSentEvent<Map<String,Object>>> clientMetricsStream(
+    public Flux<ServerSentEvent<Object>> clientMetricsStream(
             @PathVariable List<String> clientIds,
             @QueryParam("interval") Integer interval,
+            @QueryParam("metrics") String metrics,
+            @QueryParam("delta") Boolean delta,
             HttpServletRequest request)
     {
         String sid = UUID.randomUUID().toString();
-        log.info("clientMetricsStream(): interval={}, baguette-client-ids={} --- client: {}:{}, Stream-Id: {}",
-                interval, clientIds, request.getRemoteAddr(), request.getRemotePort(), sid);
+        log.info("clientMetricsStream(): interval={}, baguette-client-ids={}, metrics={}, delta={} --- client: {}:{}, Stream-Id: {}",
+                interval, clientIds, metrics, delta, request.getRemoteAddr(), request.getRemotePort(), sid);
         int intervalInSeconds = interval!=null ? interval : -1;
         if (intervalInSeconds<1) intervalInSeconds = properties.getMetricsStreamUpdateInterval();
         log.debug("clientMetricsStream(): effective-interval={}", intervalInSeconds);
 
-        return Flux.interval(Duration.ofSeconds(intervalInSeconds))
-                .onBackpressureDrop()
-                .map(sequence -> {
-                    Map<String,Object> message = createClientMetricsResult(sid, sequence, clientIds);
-                    log.debug("clientMetricsStream(): seq={}, id={}, message={}", sequence, sid, message);
-                    return ServerSentEvent.<Map<String,Object>> builder()
-                            .id(String.valueOf(sequence))
-                            .event(properties.getMetricsStreamEventName())
-                            .data(message)
-                            .build();
-                });
+        Set<String> metricNames = parseMetricNames(metrics);
+        return createMetricsStream(sid, intervalInSeconds, Boolean.TRUE.equals(delta), snapshot -> {
+            Map<String,Object> message = createClientMetricsResult(sid, snapshot, clientIds, metricNames);
+            log.debug("clientMetricsStream(): seq={}, id={}, message={}", snapshot.sequence(), sid, message);
+            return message;
+        });
     }
 
     @GetMapping("/info/client-metrics/clear/{clientIds}")
@@ -178,34 +180,29 @@ public class InfoServiceController implements InitializingBean {
     }
 
     @GetMapping("/info/all-metrics/stream/{clientIds}")
-    public Flux<ServerSentEvent<Map<String,Object>>> allMetricsStream(
+    public Flux<ServerSentEvent<Object>> allMetricsStream(
             @PathVariable List<String> clientIds,
             @QueryParam("interval") Integer interval,
+            @QueryParam("metrics") String metrics,
+            @QueryParam("delta") Boolean delta,
             HttpServletRequest request,
             @AuthenticationPrincipal UserDetails user)
     {
         String sid = UUID.randomUUID().toString();
-        log.info("allMetricsStream(): interval={}, baguette-client-ids={} --- client: {}:{}, Stream-Id: {}",
-                interval, clientIds, request.getRemoteAddr(), request.getRemotePort(), sid);
+        log.info("allMetricsStream(): interval={}, baguette-client-ids={}, metrics={}, delta={} --- client: {}:{}, Stream-Id: {}",
+                interval, clientIds, metrics, delta, request.getRemoteAddr(), request.getRemotePort(), sid);
         int intervalInSeconds = interval!=null ? interval : -1;
         if (intervalInSeconds<1) intervalInSeconds = properties.getMetricsStreamUpdateInterval();
         log.debug("allMetricsStream(): effective-interval={}", intervalInSeconds);
 
-        return Flux.interval(Duration.ofSeconds(intervalInSeconds))
-                .onBackpressureDrop()
-                .map(sequence -> {
-                    Map<String,Object> message1 = createServerMetricsResult(sid, sequence, user);
-                    Map<String,Object> message2 = createClientMetricsResult(sid, sequence, clientIds);
-                    Map<String,Object> message = new LinkedHashMap<>();
-                    message.put("ems", message1);
-                    message.put("clients", message2);
-                    log.debug("allMetricsStream(): seq={}, id={}, message={}", sequence, sid, message);
-                    return ServerSentEvent.<Map<String,Object>> builder()
-                            .id(String.valueOf(sequence))
-                            .event(properties.getMetricsStreamEventName())
-                            .data(message)
-                            .build();
-                });
+        Set<String> metricNames = parseMetricNames(metrics);
+        return createMetricsStream(sid, intervalInSeconds, Boolean.TRUE.equals(delta), snapshot -> {
+            Map<String,Object> message = new LinkedHashMap<>();
+            message.put("ems", createServerMetricsResult(sid, snapshot, user, metricNames));
+            message.put("clients", createClientMetricsResult(sid, snapshot, clientIds, metricNames));
+            log.debug("allMetricsStream(): seq={}, id={}, message={}", snapshot.sequence(), sid, message);
+            return message;
+        });
     }
 
     @GetMapping("/info/all-metrics/clear")
@@ -219,6 +216,90 @@ public class InfoServiceController implements InitializingBean {
 
     // ------------------------------------------------------------------------
 
+    // ------------------------------------------------------------------------
+    //  Shared metrics streams
+    // ------------------------------------------------------------------------
+
+    /**
+     * Metrics computed once per stream interval, and shared by all subscribers of streams with that interval
+     */
+    public record MetricsSnapshot(long sequence, Map<String,Object> serverMetrics, Map<String,Object> clientMetrics) { }
+
+    private Flux<MetricsSnapshot> getSharedStream(int intervalInSeconds) {
+        return sharedStreams.computeIfAbsent(intervalInSeconds, interval -> {
+            log.debug("getSharedStream(): Creating shared metrics stream: interval={}", interval);
+            return Flux.interval(Duration.ofSeconds(interval))
+                    .onBackpressureDrop()
+                    .map(this::createMetricsSnapshot)
+                    .replay(1)
+                    .refCount();
+        });
+    }
+
+    private MetricsSnapshot createMetricsSnapshot(long sequence) {
+        log.trace("createMetricsSnapshot: BEGIN: seq={}", sequence);
+        Map<String, Object> serverMetrics = new LinkedHashMap<>(emsInfoService.getServerMetricValues());
+        addMetricsFromEnvVars(serverMetrics);
+        addRestCallCommands(serverMetrics);
+        Map<String, Object> clientMetrics = createClientMetrics(List.of("*"), null);
+        log.trace("createMetricsSnapshot: END: seq={}", sequence);
+        return new MetricsSnapshot(sequence, serverMetrics, clientMetrics);
+    }
+
+    /**
+     * Per-subscriber view of the shared stream. In delta mode, the first event carries the full message
+     * and subsequent events carry JSON merge-patches against the previously sent message.
+     */
+    private Flux<ServerSentEvent<Object>> createMetricsStream(String sid, int intervalInSeconds, boolean delta,
+                                                              Function<MetricsSnapshot, Map<String,Object>> messageBuilder)
+    {
+        return Flux.defer(() -> {
+            AtomicReference<Map<String,Object>> lastSent = new AtomicReference<>();
+            return getSharedStream(intervalInSeconds)
+                    .map(snapshot -> {
+                        Map<String,Object> message = messageBuilder.apply(snapshot);
+                        Object data = message;
+                        if (delta) {
+                            Map<String,Object> previous = lastSent.getAndSet(message);
+                            data = toJson(previous!=null ? JsonMergePatch.diff(previous, message) : message);
+                        }
+                        return ServerSentEvent.builder(data)
+                                .id(String.valueOf(snapshot.sequence()))
+                                .event(properties.getMetricsStreamEventName())
+                                .build();
+                    })
+                    .doOnCancel(() -> log.debug("createMetricsStream(): Stream cancelled: id={}", sid));
+        });
+    }
+
+    private String toJson(Map<String,Object> message) {
+        try {
+            return patchMapper.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Set<String> parseMetricNames(String metrics) {
+        if (StringUtils.isBlank(metrics)) return null;
+        return Arrays.stream(metrics.split(","))
+                .map(String::trim)
+                .filter(StringUtils::isNotBlank)
+                .collect(Collectors.toSet());
+    }
+
+    private static Map<String,Object> filterMetrics(Map<String,Object> metrics, Set<String> metricNames) {
+        if (metricNames==null || metricNames.isEmpty()) return metrics;
+        Map<String,Object> filtered = new LinkedHashMap<>();
+        metrics.forEach((k, v) -> {
+            if (k.startsWith(".") || "client-info".equals(k) || metricNames.contains(k))
+                filtered.put(k, v);
+        });
+        return filtered;
+    }
+
+    // ------------------------------------------------------------------------
+
     public Map<String,Object> createServerMetricsResult(String sid, long sequence, UserDetails userDetails) {
         log.trace("createServerMetricsResult: BEGIN: sid={}, seq={}", sid, sequence);
         Map<String, Object> metrics = new LinkedHashMap<>(emsInfoService.getServerMetricValues());
@@ -234,39 +315,65 @@ public class InfoServiceController implements InitializingBean {
         return metrics;
     }
 
+    private Map<String,Object> createServerMetricsResult(String sid, MetricsSnapshot snapshot, UserDetails userDetails, Set<String> metricNames) {
+        Map<String, Object> metrics = new LinkedHashMap<>(filterMetrics(snapshot.serverMetrics(), metricNames));
+        addAuthenticationInfo(metrics, userDetails);
+        metrics.put(".stream-id", sid);
+        metrics.put(".sequence", snapshot.sequence());
+        return metrics;
+    }
+
     public Map<String,Object> createClientMetricsResult(String sid, long sequence, @NonNull List<String> clientIds) {
         log.trace("createClientMetricsResult: BEGIN: sid={}, seq={}, client-ids={}", sid, sequence, clientIds);
+        Map<String,Object> clientMetrics = new LinkedHashMap<>();
+        clientMetrics.put("client-metrics", createClientMetrics(clientIds, null));
+        clientMetrics.put(".stream-id", sid);
+        clientMetrics.put(".sequence", sequence);
+        log.trace("createClientMetricsResult: END: sid={}, seq={} ==> {}", sid, sequence, clientMetrics);
+        return clientMetrics;
+    }
+
+    private Map<String,Object> createClientMetricsResult(String sid, MetricsSnapshot snapshot, @NonNull List<String> clientIds, Set<String> metricNames) {
+        Map<String,Object> clientMetrics = new LinkedHashMap<>();
+        clientMetrics.put("client-metrics", filterClientMetrics(snapshot.clientMetrics(), clientIds, metricNames));
+        clientMetrics.put(".stream-id", sid);
+        clientMetrics.put(".sequence", snapshot.sequence());
+        return clientMetrics;
+    }
+
+    private Map<String,Object> createClientMetrics(@NonNull List<String> clientIds, Set<String> metricNames) {
         Map<String, Object> metrics = emsInfoService.getClientMetricValues();
-        log.trace("createClientMetricsResult: metrics: {}", metrics);
-        if (metrics!=null && clientIds.size()>0 && !clientIds.contains("*")) {
-            clientIds = clientIds.stream()
-                    .filter(StringUtils::isNotBlank)
-                    .map(s->s.startsWith("#") ? s : "#"+s)
-                    .collect(Collectors.toList());
-            log.trace("createClientMetricsResult(): CLIENT-FILTER: PREPARE: client-ids: {}", clientIds);
-            metrics = new LinkedHashMap<>(metrics);
-            log.trace("createClientMetricsResult(): CLIENT-FILTER: BEFORE: metrics: {}", metrics);
-            metrics.keySet().retainAll(clientIds);
-            log.trace("createClientMetricsResult(): CLIENT-FILTER: AFTER: metrics: {}", metrics);
-        }
+        log.trace("createClientMetrics: metrics: {}", metrics);
+        if (metrics==null) return new LinkedHashMap<>();
+        metrics = filterClientMetrics(metrics, clientIds, metricNames);
 
-        // Add client info in results
+        // Add client info in results (client statistics snapshots are not modified)
         Map<String, Map<String, String>> clientsInfo = managementCoordinator.clientMap();
         for (Map.Entry<String, Object> entry : metrics.entrySet()) {
             Map<String, String> info = clientsInfo.get(entry.getKey());
-            Object o = entry.getValue();
-            if (o instanceof Map) {
-                StrUtil.castToMapStringObject(o)
-                        .put("client-info", info);
+            if (entry.getValue() instanceof Map<?,?> m) {
+                Map<String, Object> clientMetrics = new LinkedHashMap<>(StrUtil.castToMapStringObject(m));
+                clientMetrics.put("client-info", info);
+                entry.setValue(clientMetrics);
             }
         }
+        return metrics;
+    }
 
-        Map<String,Object> clientMetrics = new LinkedHashMap<>();
-        clientMetrics.put("client-metrics", metrics);
-        clientMetrics.put(".stream-id", sid);
-        clientMetrics.put(".sequence", sequence);
-        log.trace("createClientMetricsResult: END: sid={}, seq={} ==> {}", sid, sequence, clientMetrics);
-        return clientMetrics;
+    private Map<String,Object> filterClientMetrics(@NonNull Map<String,Object> metrics, @NonNull List<String> clientIds, Set<String> metricNames) {
+        Map<String,Object> result = new LinkedHashMap<>(metrics);
+        if (clientIds.size()>0 && !clientIds.contains("*")) {
+            Set<String> ids = clientIds.stream()
+                    .filter(StringUtils::isNotBlank)
+                    .map(s->s.startsWith("#") ? s : "#"+s)
+                    .collect(Collectors.toSet());
+            log.trace("filterClientMetrics(): CLIENT-FILTER: client-ids: {}", ids);
+            result.keySet().removeIf(k -> ! k.startsWith(".") && ! ids.contains(k));
+        }
+        if (metricNames!=null && ! metricNames.isEmpty()) {
+            result.replaceAll((k, v) -> v instanceof Map<?,?> m ? filterMetrics(StrUtil.castToMapStringObject(m), metricNames) : v);
+        }
+        return result;
     }
 
     protected void addMetricsFromEnvVars(Map<String, Object> metrics) {
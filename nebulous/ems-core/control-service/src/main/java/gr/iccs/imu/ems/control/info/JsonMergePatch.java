@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.control.info;
+
+import gr.iccs.imu.ems.util.StrUtil;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Computes JSON merge-patches (RFC 7396) between two map-based JSON documents.
+ * Removed keys are set to null, nested maps are diffed recursively, and any other changed value is replaced.
+ */
+class JsonMergePatch {
+    static Map<String, Object> diff(Map<String, Object> source, Map<String, Object> target) {
+        Map<String, Object> patch = new LinkedHashMap<>();
+        source.keySet().forEach(key -> {
+            if (! target.containsKey(key)) patch.put(key, null);
+        });
+        target.forEach((key, newValue) -> {
+            Object oldValue = source.get(key);
+            if (oldValue instanceof Map<?,?> oldMap && newValue instanceof Map<?,?> newMap) {
+                Map<String, Object> nestedPatch = diff(StrUtil.castToMapStringObject(oldMap), StrUtil.castToMapStringObject(newMap));
+                if (! nestedPatch.isEmpty()) patch.put(key, nestedPatch);
+            } else if (! source.containsKey(key) || ! Objects.equals(oldValue, newValue)) {
+                patch.put(key, newValue);
+            }
+        });
+        return patch;
+    }
+}
@@ -32,6 +32,7 @@ public class TopicBeaconProperties implements InitializingBean {
     @Min(1) private long delay = 60000;
     @Min(1) private long rate = 60000;
     private boolean useDelay = true;
+    @Min(1) private int fullSnapshotEvery = 10;     // Transmissions in between send only changes (1 means always full)
 
     private Set<String> heartbeatTopics = new HashSet<>();
     private Set<String> thresholdTopics = new HashSet<>();
@@ -21,6 +21,7 @@ import gr.iccs.imu.ems.control.controller.ControlServiceCoordinator;
 import gr.iccs.imu.ems.control.plugin.BeaconPlugin;
 import gr.iccs.imu.ems.control.properties.TopicBeaconProperties;
 import gr.iccs.imu.ems.translate.TranslationContext;
+import gr.iccs.imu.ems.translate.model.MetricConstraint;
 import jakarta.jms.JMSException;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
@@ -37,6 +38,7 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 @Slf4j
 @Service
@@ -56,6 +58,12 @@ public class TopicBeacon implements InitializingBean {
     private String previousModelId = "";
     private final AtomicLong modelVersion = new AtomicLong(0);
 
+    // Serialized payloads, cached between transmissions
+    private final PayloadCache<String> thresholdPayloads = new PayloadCache<>();
+    private final PayloadCache<JsonElement> instancePayloads = new PayloadCache<>();
+    private final PayloadCache<JsonElement> basicMetricsPayloads = new PayloadCache<>();
+    private final AtomicLong transmissionCount = new AtomicLong(0);
+
     @Override
     public void afterPropertiesSet() throws Exception {
         if (!properties.isEnabled()) {
@@ -78,13 +86,13 @@ public class TopicBeacon implements InitializingBean {
 
         // configure and start scheduler
         Date startTime = new Date(System.currentTimeMillis() + properties.getInitialDelay());
-        log.debug("Topic Beacon settings: init-delay={}, delay={}, heartbeat-topics={}, threshold-topics={}, instance-topics={}",
+        log.debug("Topic Beacon settings: init-delay={}, delay={}, heartbeat-topics={}, threshold-topics={}, instance-topics={}, full-snapshot-every={}",
                 properties.getInitialDelay(), properties.getDelay(), properties.getHeartbeatTopics(), properties.getThresholdTopics(),
-                properties.getInstanceTopics());
+                properties.getInstanceTopics(), properties.getFullSnapshotEvery());
 
         Runnable transmitInfoTask = () -> {
             try {
-                transmitInfo();
+                transmitInfo(false);
             } catch (Exception e) {
                 log.error("Topic Beacon: Exception while sending info: ", e);
             }
@@ -162,15 +170,28 @@ public class TopicBeacon implements InitializingBean {
         return gson.fromJson(s, type);
     }
 
+    /**
+     * Transmits a full snapshot of the beacon info. Subscribers that detect a gap in message sequence numbers
+     * can request a resync this way.
+     */
     public void transmitInfo() throws JMSException {
+        transmitInfo(true);
+    }
+
+    private synchronized void transmitInfo(boolean forceSnapshot) throws JMSException {
         log.debug("Topic Beacon: Start transmitting info: {}", new Date());
-        updateModelVersion();
+        boolean modelChanged = updateModelVersion();
+
+        // Full snapshots are sent periodically, on model change, or on demand. Only changes are sent in between
+        boolean periodicSnapshot = transmissionCount.getAndIncrement() % properties.getFullSnapshotEvery() == 0;
+        boolean snapshot = forceSnapshot || modelChanged || periodicSnapshot;
+        log.debug("Topic Beacon: Transmitting {}", snapshot ? "full snapshot" : "changes since last transmission");
 
         // Call standard transmit methods
         transmitHeartbeat();
-        transmitThresholdInfo();
-        transmitInstanceInfo();
-        transmitBasicMetrics();
+        transmitThresholdInfo(snapshot);
+        transmitInstanceInfo(snapshot);
+        transmitBasicMetrics(snapshot);
 
         // Call Beacon plugins
         beaconPlugins.stream().filter(Objects::nonNull).forEach(plugin -> {
@@ -193,19 +214,35 @@ public class TopicBeacon implements InitializingBean {
         sendMessageToTopics(message, properties.getHeartbeatTopics());
     }
 
-    public void transmitThresholdInfo() {
+    public synchronized void transmitThresholdInfo() {
+        transmitThresholdInfo(true);
+    }
+
+    private void transmitThresholdInfo(boolean snapshot) {
         if (emptyIfNull(properties.getThresholdTopics()).isEmpty()) return;
 
-        if (coordinator.getTranslationContextOfAppModel(coordinator.getCurrentAppModelId())==null)
+        TranslationContext _TC = coordinator.getTranslationContextOfAppModel(coordinator.getCurrentAppModelId());
+        if (_TC==null)
             return;
-        coordinator.getTranslationContextOfAppModel(coordinator.getCurrentAppModelId())
-                .getMetricConstraints()
-                .forEach(c -> {
-                    String message = toJson(c);
-                    log.debug("Topic Beacon: Transmitting Metric Constraint threshold info: message={}, topics={}",
-                            message, properties.getThresholdTopics());
+        Map<String, MetricConstraint> constraints = new LinkedHashMap<>();
+        _TC.getMetricConstraints().forEach(c -> constraints.put(c.getName(), c));
+        Map<String, Object> versions = new LinkedHashMap<>();
+        constraints.forEach((name, c) -> versions.put(name,
+                Arrays.asList(modelVersion.get(), c.getThreshold(), c.getComparisonOperator())));
+
+        transmitPayloads(thresholdPayloads, versions, name -> toJson(constraints.get(name)), snapshot,
+                (name, message, sequence) -> {
+                    log.debug("Topic Beacon: Transmitting Metric Constraint threshold info: message={}, sequence={}, topics={}",
+                            message, sequence, properties.getThresholdTopics());
                     try {
-                        sendEventToTopics(message, properties.getThresholdTopics());
+                        EventMap event = new EventMap(-1);
+                        if (message!=null)
+                            event.put("message", message);
+                        event.put("sequence", sequence);
+                        event.put("snapshot", snapshot);
+                        if (message==null)
+                            event.put("removed", name);
+                        sendMessageToTopics(event, properties.getThresholdTopics());
                     } catch (JMSException e) {
                         log.error("Topic Beacon: EXCEPTION while transmitting Metric Constraint threshold info: message={}, topics={}, exception: ",
                                 message, properties.getThresholdTopics(), e);
@@ -213,32 +250,47 @@ public class TopicBeacon implements InitializingBean {
                 });
     }
 
-    public void transmitInstanceInfo() throws JMSException {
+    public synchronized void transmitInstanceInfo() throws JMSException {
+        transmitInstanceInfo(true);
+    }
+
+    private void transmitInstanceInfo(boolean snapshot) throws JMSException {
         if (emptyIfNull(properties.getInstanceTopics()).isEmpty()) return;
 
         if (coordinator.getBaguetteServer().isServerRunning()) {
             log.debug("Topic Beacon: Transmitting Instance info: topics={}", properties.getInstanceTopics());
-            List<NodeRegistryEntry> nodesList = new ArrayList<>(coordinator.getBaguetteServer().getNodeRegistry().getNodes());
-            log.debug("Topic Beacon: Transmitting Instance info: nodes={}", nodesList);
-            for (NodeRegistryEntry node : nodesList) {
-                String nodeName = node.getPreregistration().getOrDefault("name", "");
-                String nodeIp = node.getIpAddress();
-                //String nodeIp = node.getPreregistration().getOrDefault("ip","");
-//                String message = toJson(node);
-                log.debug("Topic Beacon: Transmitting Instance info for: instance={}, ip-address={}, message={}, topics={}",
-                        nodeName, nodeIp, node, properties.getInstanceTopics());
-                sendEventToTopics(node, properties.getInstanceTopics());
-            }
+            Map<String, NodeRegistryEntry> nodes = new LinkedHashMap<>();
+            coordinator.getBaguetteServer().getNodeRegistry().getNodes()
+                    .forEach(node -> nodes.put(node.getNodeAddress(), node));
+            log.debug("Topic Beacon: Transmitting Instance info: nodes={}", nodes.values());
+            Map<String, Object> versions = new LinkedHashMap<>();
+            nodes.forEach((address, node) -> versions.put(address, Arrays.asList(node.getState(),
+                    node.getStateLastUpdate(), node.getReference(), node.getErrors().size(), node.getHostname(), node.getClientId())));
+
+            transmitPayloads(instancePayloads, versions, address -> gson().toJsonTree(nodes.get(address)), snapshot,
+                    (address, message, sequence) -> {
+                        NodeRegistryEntry node = nodes.get(address);
+                        log.debug("Topic Beacon: Transmitting Instance info for: instance={}, ip-address={}, message={}, sequence={}, topics={}",
+                                node!=null ? node.getPreregistration().getOrDefault("name", "") : "", address,
+                                node, sequence, properties.getInstanceTopics());
+                        sendEventToTopics(address, message, sequence, snapshot, properties.getInstanceTopics());
+                    });
         }
     }
 
-    public void transmitBasicMetrics() {
+    public synchronized void transmitBasicMetrics() {
+        transmitBasicMetrics(true);
+    }
+
+    private void transmitBasicMetrics(boolean snapshot) {
         log.trace("Topic Beacon: transmitBasicMetrics: BEGIN: topics={}", properties.getBasicMetricsTopics());
         if (emptyIfNull(properties.getBasicMetricsTopics()).isEmpty()) return;
 
         log.trace("Topic Beacon: transmitBasicMetrics: Baguette Server is running: {}", coordinator.getBaguetteServer().isServerRunning());
         if (coordinator.getBaguetteServer().isServerRunning()) {
             log.trace("Topic Beacon: transmitBasicMetrics: Num of Active CSC's: {}", ClientShellCommand.getActive());
+            Map<String, Map<String, Object>> clientStats = new LinkedHashMap<>();
+            Map<String, Object> versions = new LinkedHashMap<>();
             for (ClientShellCommand csc : ClientShellCommand.getActive()) {
                 // Get client id and address
                 String clientId = csc.getClientId();
@@ -257,7 +309,7 @@ public class TopicBeacon implements InitializingBean {
                     continue;
                 }
 
-                // Transmit client statistics
+                // Prepare client statistics. Statistics are versioned by the time they were received at server
                 try {
                     long timestamp = Long.parseLong(StringUtils.defaultIfBlank(
                             stats.getOrDefault("_received_at_server_timestamp", "").toString().trim(),
@@ -266,34 +318,108 @@ public class TopicBeacon implements InitializingBean {
                     stats.put("clientId", clientId);
                     stats.put("ipAddress", clientIpAddress);
                     stats.put("receivedAtServer", Instant.ofEpochMilli(timestamp).toString());
-                    log.debug("Topic Beacon: Transmitting Basic Metrics for: instance={}, ip-address={}, message={}, topics={}",
-                            clientId, clientIpAddress, stats, properties.getBasicMetricsTopics());
-                    sendEventToTopics(stats, properties.getBasicMetricsTopics());
+                    clientStats.put(clientId, stats);
+                    versions.put(clientId, timestamp>=0 ? timestamp : new LinkedHashMap<>(stats));
                 } catch (Exception e) {
                     log.error("Topic Beacon: Transmitting Basic Metrics for: EXCEPTION while preparing basic metrics for client: id={}, ip-address={}, metrics={}\n",
                             csc.getId(), csc.getClientIpAddress(), stats, e);
                 }
             }
+
+            // Transmit client statistics
+            transmitPayloads(basicMetricsPayloads, versions, clientId -> gson().toJsonTree(clientStats.get(clientId)), snapshot,
+                    (clientId, message, sequence) -> {
+                        log.debug("Topic Beacon: Transmitting Basic Metrics for: instance={}, message={}, sequence={}, topics={}",
+                                clientId, message, sequence, properties.getBasicMetricsTopics());
+                        try {
+                            sendEventToTopics(clientId, message, sequence, snapshot, properties.getBasicMetricsTopics());
+                        } catch (Exception e) {
+                            log.error("Topic Beacon: Transmitting Basic Metrics for: EXCEPTION while sending basic metrics for client: id={}, metrics={}\n",
+                                    clientId, message, e);
+                        }
+                    });
         }
         log.trace("Topic Beacon: transmitBasicMetrics: END");
     }
 
     // ------------------------------------------------------------------------
 
-    private void sendEventToTopics(String message, Set<String> topics) throws JMSException {
-        EventMap event = new EventMap(-1);
-        event.put("message", message);
-        sendMessageToTopics(event, topics);
+    // Sends the payloads of a snapshot, or only the new, changed and removed ones (i.e. a delta).
+    // Payloads are serialized only when their version changes. Messages get consecutive sequence numbers.
+    static <T, E extends Exception> void transmitPayloads(PayloadCache<T> cache, Map<String, Object> versions,
+                                                         Function<String, T> serializer, boolean snapshot,
+                                                         PayloadSender<T, E> sender) throws E
+    {
+        List<String> removed = new ArrayList<>(cache.payloads.keySet());
+        removed.removeAll(versions.keySet());
+        removed.forEach(cache.payloads::remove);
+
+        int serialized = 0;
+        int sent = 0;
+        for (Map.Entry<String, Object> entry : versions.entrySet()) {
+            String key = entry.getKey();
+            CachedPayload<T> cached = cache.payloads.get(key);
+            boolean changed = cached==null || ! Objects.equals(cached.version(), entry.getValue());
+            if (changed) {
+                cached = new CachedPayload<>(entry.getValue(), serializer.apply(key));
+                cache.payloads.put(key, cached);
+                serialized++;
+            }
+            if (snapshot || changed) {
+                sender.send(key, cached.payload(), cache.sequence.incrementAndGet());
+                sent++;
+            }
+        }
+        if (! snapshot) {
+            for (String key : removed) {
+                sender.send(key, null, cache.sequence.incrementAndGet());
+                sent++;
+            }
+        }
+        log.trace("Topic Beacon: transmitPayloads: snapshot={}, payloads={}, serialized={}, sent={}, removed={}",
+                snapshot, versions.size(), serialized, sent, removed.size());
     }
 
-    private void sendEventToTopics(Object message, Set<String> topics) throws JMSException {
-        EventMap event = new EventMap(-1);
-        event.put("message", message);
-        String s = toJson(event);
+    record CachedPayload<T>(Object version, T payload) { }
+
+    static class PayloadCache<T> {
+        final Map<String, CachedPayload<T>> payloads = new HashMap<>();
+        final AtomicLong sequence = new AtomicLong(0);
+    }
+
+    // A null payload means that the payload with the given key has been removed
+    @FunctionalInterface
+    interface PayloadSender<T, E extends Exception> {
+        void send(String key, T payload, long sequence) throws E;
+    }
+
+    // ------------------------------------------------------------------------
+
+    private Gson gson() {
+        if (gson==null)
+            initializeGson();
+        return gson;
+    }
+
+    private void sendEventToTopics(String key, JsonElement message, long sequence, boolean snapshot, Set<String> topics) throws JMSException {
+        JsonObject event = gson().toJsonTree(new EventMap(-1)).getAsJsonObject();
+        if (message!=null)
+            event.add("message", message);
+        event.addProperty("sequence", sequence);
+        event.addProperty("snapshot", snapshot);
+        if (message==null)
+            event.addProperty("removed", key);
+        String s = gson().toJson(event);
         log.trace("Topic Beacon: Converted event to JSON string: {}", s);
         sendMessageToTopics(s, topics);
     }
 
+    private void sendEventToTopics(String message, Set<String> topics) throws JMSException {
+        EventMap event = new EventMap(-1);
+        event.put("message", message);
+        sendMessageToTopics(event, topics);
+    }
+
     private void sendMessageToTopics(Serializable event, Set<String> topics) throws JMSException {
         for (String topicName : topics) {
             log.trace("Topic Beacon: Sending event to topic: event={}, topic={}", event, topicName);
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.control.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+
+@Slf4j
+@DisplayName("TopicBeacon Tests")
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class TopicBeaconTest {
+    private final TopicBeacon.PayloadCache<String> cache = new TopicBeacon.PayloadCache<>();
+    private final List<String> serialized = new ArrayList<>();
+    private final List<Sent> sent = new ArrayList<>();
+
+    private record Sent(String key, String payload, long sequence) { }
+
+    private static Map<String, Object> versions(Object... keysAndVersions) {
+        Map<String, Object> versions = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndVersions.length; i += 2)
+            versions.put((String) keysAndVersions[i], keysAndVersions[i + 1]);
+        return versions;
+    }
+
+    private List<Sent> transmit(Map<String, Object> versions, boolean snapshot) {
+        sent.clear();
+        serialized.clear();
+        TopicBeacon.transmitPayloads(cache, versions, key -> {
+                    serialized.add(key);
+                    return key + "@" + versions.get(key);
+                }, snapshot,
+                (key, payload, sequence) -> sent.add(new Sent(key, payload, sequence)));
+        return sent;
+    }
+
+    @Test
+    void snapshotsSendAllPayloads() {
+        Assertions.assertEquals(List.of(new Sent("a", "a@1", 1), new Sent("b", "b@1", 2)),
+                transmit(versions("a", 1, "b", 1), true));
+        Assertions.assertEquals(List.of("a", "b"), serialized);
+
+        // Unchanged payloads are sent again from cache, without being serialized
+        Assertions.assertEquals(List.of(new Sent("a", "a@1", 3), new Sent("b", "b@1", 4)),
+                transmit(versions("a", 1, "b", 1), true));
+        Assertions.assertTrue(serialized.isEmpty());
+    }
+
+    @Test
+    void deltasSendOnlyNewAndChangedPayloads() {
+        transmit(versions("a", 1, "b", 1, "c", 1), true);
+
+        Assertions.assertTrue(transmit(versions("a", 1, "b", 1, "c", 1), false).isEmpty());
+        Assertions.assertTrue(serialized.isEmpty());
+
+        Assertions.assertEquals(List.of(new Sent("b", "b@2", 4), new Sent("d", "d@1", 5)),
+                transmit(versions("a", 1, "b", 2, "c", 1, "d", 1), false));
+        Assertions.assertEquals(List.of("b", "d"), serialized);
+
+        // Versions are compared by value, e.g. lists of node state fields
+        transmit(versions("a", Arrays.asList("UP", 10L), "b", 2, "c", 1, "d", 1), false);
+        Assertions.assertTrue(transmit(versions("a", Arrays.asList("UP", 10L), "b", 2, "c", 1, "d", 1), false).isEmpty());
+        Assertions.assertEquals(List.of(new Sent("a", "a@[UP, 11]", 7)),
+                transmit(versions("a", Arrays.asList("UP", 11L), "b", 2, "c", 1, "d", 1), false));
+    }
+
+    @Test
+    void removedPayloadsAreAnnouncedInDeltasOnly() {
+        transmit(versions("a", 1, "b", 1, "c", 1), true);
+
+        // Removals are sent after changes, with a null payload
+        Assertions.assertEquals(List.of(new Sent("a", "a@2", 4), new Sent("b", null, 5)),
+                transmit(versions("a", 2, "c", 1), false));
+        Assertions.assertFalse(cache.payloads.containsKey("b"));
+        Assertions.assertTrue(transmit(versions("a", 2, "c", 1), false).isEmpty());
+
+        // Snapshots replace subscriber state, so they carry no removals
+        Assertions.assertEquals(List.of(new Sent("a", "a@2", 6)),
+                transmit(versions("a", 2), true));
+        Assertions.assertTrue(transmit(versions("a", 2), false).isEmpty());
+
+        // Payloads added back are new, even with their old version
+        Assertions.assertEquals(List.of(new Sent("b", "b@1", 7)),
+                transmit(versions("a", 2, "b", 1), false));
+        Assertions.assertEquals(List.of("b"), serialized);
+    }
+
+    @Test
+    void sequenceNumbersAreConsecutivePerCache() {
+        List<Long> sequences = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100; i++) {
+            Map<String, Object> versions = new LinkedHashMap<>();
+            for (int k = 0; k < 10; k++)
+                if (random.nextInt(4) > 0) versions.put("key-" + k, random.nextInt(3));
+            transmit(versions, i % 10 == 0).forEach(s -> sequences.add(s.sequence()));
+        }
+        Assertions.assertFalse(sequences.isEmpty());
+        for (int i = 0; i < sequences.size(); i++)
+            Assertions.assertEquals(i + 1, sequences.get(i));
+        Assertions.assertEquals(sequences.size(), cache.sequence.get());
+
+        // Every kind of payload has its own sequence
+        TopicBeacon.PayloadCache<String> other = new TopicBeacon.PayloadCache<>();
+        List<Long> otherSequences = new ArrayList<>();
+        TopicBeacon.transmitPayloads(other, versions("x", 1), key -> key, false,
+                (key, payload, sequence) -> otherSequences.add(sequence));
+        Assertions.assertEquals(List.of(1L), otherSequences);
+    }
+}
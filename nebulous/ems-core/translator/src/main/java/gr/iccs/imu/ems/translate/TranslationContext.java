@@ -416,6 +416,11 @@ public class TranslationContext implements Serializable {
         rules.forEach(rule -> addGroupingRulePair(grouping, topic, rule));
     }
 
+    public void replaceGroupingRules(String grouping, String topic, Collection<String> rules) {
+        Map<String, Set<String>> topics = G2R.computeIfAbsent(grouping, k -> new HashMap<>());
+        topics.put(topic, new HashSet<>(rules));
+    }
+
     public void addCompositeMetricVariable(MetricVariable mv) {
         CMVar.add(mv.getName());
         CMVar_1.add(mv);
@@ -138,6 +138,24 @@ public class TranslationContextPrinter {
 				exportName = StringUtils.stripToEmpty(exportName);
 				if (exportName.isEmpty()) exportName = "export";
 				String baseFileName = "%s/%s-%d".formatted(exportPath, exportName, System.currentTimeMillis());
+				if (! dagExporter.isExportable(_TC.getDAG())) return;
+				if (properties.getDag().isExportInBackground()) {
+					// DOT is generated here, so that the DAG is not read while being modified. Rendering is done in background
+					if (dot == null) dot = dagExporter.exportToDot(_TC.getDAG());
+					if (dot == null) {
+						log.warn("Decomposition Graph export to file(s): Cannot export: DAG has not been initialized");
+						return;
+					}
+					dagExporter.exportDAGInBackground(dot, baseFileName, exportFormats, imageWidth)
+							.thenAccept(exportFiles -> {
+								if (exportFiles != null) {
+									_TC.setExportFiles(exportFiles);
+									log.info("Decomposition Graph exported to file(s): {}", exportFiles);
+								}
+							});
+					log.info("Decomposition Graph export to file(s): Rendering in background: {}", baseFileName);
+					return;
+				}
 				List<String> exportFiles;
 				if (dot !=null) {
 					exportFiles = dagExporter.exportDAG(dot, baseFileName, exportFormats, imageWidth);
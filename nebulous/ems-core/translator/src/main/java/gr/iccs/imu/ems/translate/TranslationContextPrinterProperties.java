@@ -41,5 +41,10 @@ public class TranslationContextPrinterProperties implements InitializingBean {
         private String exportPath;
         private String[] exportFormats;
         private int exportImageWidth = -1;
+
+        // Background rendering of export files. Export files are set in translation context when rendering completes
+        private boolean exportInBackground;
+        private int exportQueueSize = 2;                // Max. pending renderings. Exports are skipped when queue is full
+        private int exportMaxNodes = 500;               // Graphs with more nodes are not exported to files (non-positive: no limit)
     }
 }
@@ -16,7 +16,6 @@ import org.jgrapht.graph.DirectedAcyclicGraph;
 
 import java.util.*;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 @Slf4j
 public class DAG {
@@ -30,7 +29,16 @@ public class DAG {
     private transient Map<NamedElement, DAGNode> _namedElementToNodesMapping;
     @JsonIgnore
     private transient Map<String, DAGNode> _nameToNodesMapping;
+    @JsonIgnore
+    private transient volatile DAGIndexes _indexes;
+    @JsonIgnore
+    private transient volatile DAGOrder _order;
+
+    // Adjacency and leaf indexes. Built on first query, and then updated on every graph change
+    private record DAGIndexes(Map<DAGNode, Set<DAGNode>> parents, Map<DAGNode, Set<DAGNode>> children, Set<DAGNode> leafs) { }
 
+    // Depth and topological order indexes. Built on first query, and discarded on every graph change
+    private record DAGOrder(Map<DAGNode, Integer> depths, List<DAGNode> topologicalOrder) { }
 
     public DAG() {
         // let everything 'null'
@@ -55,9 +63,7 @@ public class DAG {
             log.debug("DAG.getTopLevelNodes(): _graph or _root is null. Returning empty set");
             return Collections.emptySet();
         }
-        Set<DAGNode> children = _graph.outgoingEdgesOf(_root).stream()
-                .map(DAGEdge::getTarget)
-                .collect(Collectors.toSet());
+        Set<DAGNode> children = new HashSet<>(getIndexes().children().getOrDefault(_root, Collections.emptySet()));
         log.debug("DAG.getTopLevelNodes(): top-level-nodes={}", children);
         return children;
     }
@@ -71,31 +77,158 @@ public class DAG {
     }
 
     public Set<DAGNode> getLeafNodes() {
-        Iterator<DAGNode> it = _graph.iterator();
-        Set<DAGNode> leafs = new HashSet<>();
-        it.forEachRemaining(node -> {
-            if (node != _root && _graph.outgoingEdgesOf(node).isEmpty()) {
-                leafs.add(node);
-            }
-        });
-        return leafs;
+        return new HashSet<>(getIndexes().leafs());
     }
 
     public Set<DAGNode> getParentNodes(DAGNode node) {
-        Set<DAGEdge> edges = _graph.incomingEdgesOf(node);
-        return edges.stream().map(DAGEdge::getSource).collect(Collectors.toSet());
+        Set<DAGNode> parents = getIndexes().parents().get(node);
+        if (parents == null) throw new IllegalArgumentException("no such vertex in graph: " + node);
+        return new HashSet<>(parents);
     }
 
     public Set<DAGNode> getNodeChildren(DAGNode node) {
-        try {
-            //log.debug("DAG.getNodeChildren(): node={}", node);
-            Set<DAGNode> children = _graph.outgoingEdgesOf(node).stream().map(DAGEdge::getTarget).collect(java.util.stream.Collectors.toSet());
-            //log.debug("DAG.getNodeChildren(): parent={}, children={}", node, children);
-            return children;
-        } catch (IllegalArgumentException iae) {
+        Set<DAGNode> children = getIndexes().children().get(node);
+        if (children == null) {
             log.warn("DAG.getNodeChildren(): Node not in DAG: node={}", node);
             return null;
         }
+        return new HashSet<>(children);
+    }
+
+    /**
+     * Returns the length of the longest path from root (or from a parent-less node) to node, or -1 if node is not in DAG
+     */
+    public int getNodeDepth(DAGNode node) {
+        return getOrder().depths().getOrDefault(node, -1);
+    }
+
+    /**
+     * Returns DAG nodes in topological order (i.e. parents before children), including root
+     */
+    public List<DAGNode> getTopologicalOrder() {
+        return getOrder().topologicalOrder();
+    }
+
+    private DAGIndexes getIndexes() {
+        DAGIndexes indexes = _indexes;
+        if (indexes == null) {
+            synchronized (this) {
+                indexes = _indexes;
+                if (indexes == null)
+                    _indexes = indexes = buildIndexes();
+            }
+        }
+        return indexes;
+    }
+
+    private DAGIndexes buildIndexes() {
+        if (_graph == null)
+            return new DAGIndexes(Map.of(), Map.of(), Set.of());
+        int size = _graph.vertexSet().size();
+        Map<DAGNode, Set<DAGNode>> parents = new HashMap<>(size * 2);
+        Map<DAGNode, Set<DAGNode>> children = new HashMap<>(size * 2);
+        Set<DAGNode> leafs = new HashSet<>();
+        for (DAGNode node : _graph.vertexSet()) {
+            Set<DAGNode> nodeParents = new HashSet<>();
+            for (DAGEdge edge : _graph.incomingEdgesOf(node))
+                nodeParents.add(edge.getSource());
+            Set<DAGNode> nodeChildren = new HashSet<>();
+            for (DAGEdge edge : _graph.outgoingEdgesOf(node))
+                nodeChildren.add(edge.getTarget());
+            parents.put(node, nodeParents);
+            children.put(node, nodeChildren);
+            if (node != _root && nodeChildren.isEmpty()) leafs.add(node);
+        }
+        log.trace("DAG.buildIndexes(): Indexes built: nodes={}", size);
+        return new DAGIndexes(parents, children, leafs);
+    }
+
+    private DAGOrder getOrder() {
+        DAGOrder order = _order;
+        if (order == null) {
+            synchronized (this) {
+                order = _order;
+                if (order == null)
+                    _order = order = buildOrder();
+            }
+        }
+        return order;
+    }
+
+    private DAGOrder buildOrder() {
+        if (_graph == null)
+            return new DAGOrder(Map.of(), List.of());
+        DAGIndexes indexes = getIndexes();
+        Map<DAGNode, Integer> depths = new HashMap<>(_graph.vertexSet().size() * 2);
+        List<DAGNode> topologicalOrder = new ArrayList<>(_graph.vertexSet().size());
+
+        // DirectedAcyclicGraph iterates vertices in topological order, so parent depths are known before children's
+        _graph.iterator().forEachRemaining(node -> {
+            int depth = 0;
+            for (DAGNode parent : indexes.parents().get(node))
+                depth = Math.max(depth, depths.getOrDefault(parent, 0) + 1);
+            depths.put(node, depth);
+            topologicalOrder.add(node);
+        });
+        return new DAGOrder(depths, Collections.unmodifiableList(topologicalOrder));
+    }
+
+    // Graph mutations. Indexes are updated only if the graph has changed
+
+    private boolean addVertex(DAGNode node) {
+        if (! _graph.addVertex(node)) return false;
+        DAGIndexes indexes = _indexes;
+        if (indexes != null) {
+            indexes.parents().put(node, new HashSet<>());
+            indexes.children().put(node, new HashSet<>());
+            if (node != _root) indexes.leafs().add(node);
+        }
+        _order = null;
+        return true;
+    }
+
+    private boolean addEdge(DAGNode source, DAGNode target, DAGEdge edge) {
+        if (! _graph.addEdge(source, target, edge)) return false;
+        DAGIndexes indexes = _indexes;
+        if (indexes != null) {
+            indexes.children().get(source).add(target);
+            indexes.parents().get(target).add(source);
+            indexes.leafs().remove(source);
+        }
+        _order = null;
+        return true;
+    }
+
+    private DAGEdge removeEdgeBetween(DAGNode source, DAGNode target) {
+        DAGEdge edge = _graph.removeEdge(source, target);
+        if (edge == null) return null;
+        DAGIndexes indexes = _indexes;
+        if (indexes != null) {
+            indexes.parents().get(target).remove(source);
+            childRemoved(indexes, source, target);
+        }
+        _order = null;
+        return edge;
+    }
+
+    private boolean removeVertex(DAGNode node) {
+        if (! _graph.removeVertex(node)) return false;       // This also removes edges touching this node
+        DAGIndexes indexes = _indexes;
+        if (indexes != null) {
+            for (DAGNode parent : indexes.parents().remove(node))
+                childRemoved(indexes, parent, node);
+            for (DAGNode child : indexes.children().remove(node))
+                indexes.parents().get(child).remove(node);
+            indexes.leafs().remove(node);
+        }
+        _order = null;
+        return true;
+    }
+
+    private void childRemoved(DAGIndexes indexes, DAGNode parent, DAGNode child) {
+        Set<DAGNode> siblings = indexes.children().get(parent);
+        siblings.remove(child);
+        if (parent != _root && siblings.isEmpty()) indexes.leafs().add(parent);
     }
 
     public DAGNode getNodeByElement(NamedElement elem) {
@@ -130,7 +263,7 @@ public class DAG {
             if (!_nameToNodesMapping.containsKey(fullName)) {
 
                 node = new DAGNode(elem, fullName);
-                newNode = _graph.addVertex(node);
+                newNode = addVertex(node);
                 if (newNode) log.debug("DAG.addTopLevelNode(): Element added in DAG: {}", node.getName());
                 else log.debug("DAG.addTopLevelNode(): Element already in DAG and replaced: {}", node.getName());
 
@@ -142,7 +275,7 @@ public class DAG {
 
             } else {
                 node = _nameToNodesMapping.get(fullName);
-                newNode = _graph.addVertex(node);
+                newNode = addVertex(node);
                 if (newNode) log.debug("DAG.addTopLevelNode()-2: Element added in DAG: {}", node.getName());
                 else log.debug("DAG.addTopLevelNode()-2: Element already in DAG and replaced: {}", node.getName());
 
@@ -153,7 +286,7 @@ public class DAG {
         }
 
         DAGEdge edge = new DAGEdge();
-        boolean newEdge = _graph.addEdge(_root, node, edge);
+        boolean newEdge = addEdge(_root, node, edge);
         if (newNode) log.debug("DAG.addTopLevelNode(): Element set as Top-Level in DAG: {}", node.getName());
         else log.debug("DAG.addTopLevelNode(): Element is already set as Top-Level in DAG: {}", node.getName());
 
@@ -174,7 +307,7 @@ public class DAG {
             if (!_nameToNodesMapping.containsKey(fullName)) {
 
                 node = new DAGNode(elem, fullName);
-                newNode = _graph.addVertex(node);
+                newNode = addVertex(node);
                 if (newNode) log.debug("DAG.addNode(): Element added in DAG: {}", node.getName());
                 else log.debug("DAG.addNode(): Element already in DAG and replaced: {}", node.getName());
 
@@ -186,7 +319,7 @@ public class DAG {
 
             } else {
                 node = _nameToNodesMapping.get(fullName);
-                newNode = _graph.addVertex(node);
+                newNode = addVertex(node);
                 if (newNode) log.debug("DAG.addNode()-2: Element added in DAG: {}", node.getName());
                 else log.debug("DAG.addNode()-2: Element already in DAG and replaced: {}", node.getName());
 
@@ -198,7 +331,7 @@ public class DAG {
 
         DAGNode parentNode = _namedElementToNodesMapping.get(parent);
         DAGEdge edge = new DAGEdge();
-        boolean newEdge = _graph.addEdge(parentNode, node, edge);
+        boolean newEdge = addEdge(parentNode, node, edge);
         if (newNode) log.debug("DAG.addNode(): Edge added in DAG: {} --> {} ", parent.getName(), node.getName());
         else log.debug("DAG.addNode(): Edge is already in DAG: {} --> {}", parent.getName(), node.getName());
 
@@ -222,7 +355,7 @@ public class DAG {
             throw new RuntimeException("Element being removed has children: " + node.getName());
 
         // remove node from DAG
-        _graph.removeVertex(node);        // This also removes edges touching this node
+        removeVertex(node);
         _namedElementToNodesMapping.remove(elem);
         log.debug("DAG.removeNode(): Element removed from DAG: {}", node.getName());
 
@@ -247,7 +380,7 @@ public class DAG {
         }
         if (nodeFrom != null && nodeTo != null) {
             DAGEdge edge = new DAGEdge();
-            boolean newEdge = _graph.addEdge(nodeFrom, nodeTo, edge);
+            boolean newEdge = addEdge(nodeFrom, nodeTo, edge);
             if (newEdge) log.debug("DAG.addEdge(): Edge added in DAG: {} --> {} ", elemFrom.getName(), elemTo.getName());
             else log.debug("DAG.addEdge(): Edge is already in DAG: {} --> {}", elemFrom.getName(), elemTo.getName());
             return edge;
@@ -273,7 +406,7 @@ public class DAG {
         }
         if (nodeFrom != null && nodeTo != null) {
             DAGEdge edge = new DAGEdge();
-            boolean newEdge = _graph.addEdge(nodeFrom, nodeTo, edge);
+            boolean newEdge = addEdge(nodeFrom, nodeTo, edge);
             if (newEdge) log.debug("DAG.addEdge(): Edge added in DAG: {} --> {} ", elemFrom, elemTo);
             else log.debug("DAG.addEdge(): Edge is already in DAG: {} --> {}", elemFrom, elemTo);
             return edge;
@@ -297,7 +430,7 @@ public class DAG {
             if (node.getElement() == elemTo) nodeTo = node;
         }
         if (nodeFrom != null && nodeTo != null) {
-            DAGEdge deletedEdge = _graph.removeEdge(nodeFrom, nodeTo);
+            DAGEdge deletedEdge = removeEdgeBetween(nodeFrom, nodeTo);
             if (deletedEdge != null)
                 log.debug("DAG.removeEdge(): Edge removed from DAG: {} --> {} ", elemFrom.getName(), elemTo.getName());
             else log.warn("DAG.removeEdge(): Edge not found in DAG: {} --> {}", elemFrom.getName(), elemTo.getName());
@@ -313,7 +446,7 @@ public class DAG {
             throw new IllegalArgumentException("DAG.removeEdge(): Argument #1 'nodeFrom' cannot be null");
         if (nodeTo == null) throw new IllegalArgumentException("DAG.removeEdge(): Argument #2 'nodeTo' cannot be null");
 
-        DAGEdge deletedEdge = _graph.removeEdge(nodeFrom, nodeTo);
+        DAGEdge deletedEdge = removeEdgeBetween(nodeFrom, nodeTo);
         if (deletedEdge != null)
             log.debug("DAG.removeEdge(): Edge removed from DAG: {} --> {} ", nodeFrom.getElementName(), nodeTo.getElementName());
         else
@@ -339,16 +472,18 @@ public class DAG {
     }
 
     public void clearDAG() {
-        _graph.removeAllEdges(_graph.edgeSet());
-        _graph.removeAllVertices(_graph.vertexSet());
+        _graph.removeAllEdges(new ArrayList<>(_graph.edgeSet()));
+        _graph.removeAllVertices(new ArrayList<>(_graph.vertexSet()));
+        _indexes = null;
+        _order = null;
     }
 
     public void addDAGNode(DAGNode node) {
-        _graph.addVertex(node);
+        addVertex(node);
     }
 
     public void addDAGEdge(DAGNode src, DAGNode trg) {
-        _graph.addEdge(src, trg);
+        addEdge(src, trg, new DAGEdge());
     }
 
     public String toString() {
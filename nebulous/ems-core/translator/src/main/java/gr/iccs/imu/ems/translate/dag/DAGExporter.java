@@ -14,7 +14,9 @@ import guru.nidi.graphviz.engine.Graphviz;
 import guru.nidi.graphviz.engine.GraphvizV8Engine;
 import guru.nidi.graphviz.model.MutableGraph;
 import guru.nidi.graphviz.parse.Parser;
+import gr.iccs.imu.ems.translate.TranslationContextPrinterProperties;
 import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.text.StringEscapeUtils;
@@ -22,6 +24,7 @@ import org.jgrapht.nio.Attribute;
 import org.jgrapht.nio.AttributeType;
 import org.jgrapht.nio.DefaultAttribute;
 import org.jgrapht.nio.dot.DOTExporter;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
@@ -31,10 +34,21 @@ import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.*;
 
 @Slf4j
 @Service
-public class DAGExporter {
+@RequiredArgsConstructor
+public class DAGExporter implements DisposableBean {
+    private final TranslationContextPrinterProperties properties;
+    private ThreadPoolExecutor renderExecutor;
+
+    @Override
+    public synchronized void destroy() {
+        if (renderExecutor!=null)
+            renderExecutor.shutdownNow();
+    }
+
     public String exportToDot(DAG dag) {
         if (dag._graph==null) {
             log.warn("DAG.exportToDot(): Cannot export: DAG has not been initialized");
@@ -200,6 +214,48 @@ public class DAGExporter {
         }
     }
 
+    /**
+     * Renders DOT into the specified formats in a background thread, so that translation does not wait for image
+     * generation. Renderings are queued in a bounded queue. When it is full, the export is skipped,
+     * and the returned future completes with null.
+     */
+    public CompletableFuture<List<String>> exportDAGInBackground(@NonNull String dot, String baseFileName, String[] exportFormats, int imageWidth) {
+        if (!checkExportConfiguration(baseFileName, exportFormats, imageWidth))
+            return CompletableFuture.completedFuture(null);
+        try {
+            return CompletableFuture.supplyAsync(() -> exportDAG(dot, baseFileName, exportFormats, imageWidth), getRenderExecutor());
+        } catch (RejectedExecutionException e) {
+            log.warn("DAG.exportDAGInBackground(): Export queue is full. Skipping graph export: {}", baseFileName);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private synchronized Executor getRenderExecutor() {
+        if (renderExecutor==null) {
+            int queueSize = Math.max(1, properties.getDag().getExportQueueSize());
+            renderExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueSize), r -> {
+                        Thread t = new Thread(r, "dag-exporter");
+                        t.setDaemon(true);
+                        return t;
+                    });
+        }
+        return renderExecutor;
+    }
+
+    /**
+     * Checks if DAG is small enough to be exported to files
+     */
+    public boolean isExportable(@NonNull DAG dag) {
+        int maxNodes = properties.getDag().getExportMaxNodes();
+        int nodes = dag._graph!=null ? dag._graph.vertexSet().size() : 0;
+        if (maxNodes > 0 && nodes > maxNodes) {
+            log.warn("DAG.isExportable(): Graph is too large to export: nodes={}, max-nodes={}", nodes, maxNodes);
+            return false;
+        }
+        return true;
+    }
+
     protected boolean checkExportConfiguration(String baseFileName, String[] exportFormats, int imageWidth) {
         // check export configuration
         if (exportFormats == null || exportFormats.length == 0) {
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.translate.dag;
+
+import gr.iccs.imu.ems.translate.model.*;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+@Slf4j
+@DisplayName("DAG Tests")
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class DAGTest {
+
+    // Builds a DAG shaped like the DAG of a translated metric model: SLO-like metric variables on top,
+    // composite metric contexts sharing raw metric contexts, and metric variables calculated from MVVs
+    private static DAG buildModelDag() {
+        DAG dag = new DAG(NamedElement::getName);
+
+        Metric cpu = RawMetric.builder().name("cpu").build();
+        Metric ram = RawMetric.builder().name("ram").build();
+        Metric meanCpu = CompositeMetric.builder().name("mean_cpu").formula("mean(cpu)").build();
+        Metric maxRam = CompositeMetric.builder().name("max_ram").formula("max(ram)").build();
+        RawMetricContext cpuCtx = RawMetricContext.builder().name("cpu_ctx").metric(cpu).build();
+        RawMetricContext ramCtx = RawMetricContext.builder().name("ram_ctx").metric(ram).build();
+        CompositeMetricContext meanCpuCtx = CompositeMetricContext.builder().name("mean_cpu_ctx").metric(meanCpu).build();
+        CompositeMetricContext maxRamCtx = CompositeMetricContext.builder().name("max_ram_ctx").metric(maxRam).build();
+
+        MetricVariable cores = MetricVariable.builder().name("cores").currentConfiguration(true).build();
+        MetricVariable replicas = MetricVariable.builder().name("replicas").currentConfiguration(true).build();
+        MetricVariable capacity = MetricVariable.builder().name("capacity").formula("cores*replicas").build();
+        MetricVariable cpuLoad = MetricVariable.builder().name("cpu_load").formula("mean_cpu/capacity").build();
+
+        dag.addTopLevelNode(meanCpuCtx);
+        dag.addTopLevelNode(maxRamCtx);
+        dag.addTopLevelNode(cpuLoad);
+        dag.addTopLevelNode(capacity);
+        dag.addNode(meanCpuCtx, cpuCtx);
+        dag.addNode(maxRamCtx, ramCtx);
+        dag.addNode(maxRamCtx, cpuCtx);             // Raw contexts shared by composite contexts
+        dag.addNode(cpuLoad, meanCpuCtx);
+        dag.addNode(cpuLoad, capacity);
+        dag.addNode(capacity, cores);
+        dag.addNode(capacity, replicas);
+        return dag;
+    }
+
+    // Same as GraphTransformer.removeMVV: prunes metric variables calculated exclusively from MVVs
+    private static void removeMVV(DAG dag, DAGNode node) {
+        Set<DAGNode> children = dag.getNodeChildren(node);
+        if (children != null)
+            children.forEach(child -> removeMVV(dag, child));
+        children = dag.getNodeChildren(node);
+        if (node.getElement() instanceof MetricVariable && (children == null || children.isEmpty()))
+            dag.removeNode(node.getElement());
+    }
+
+    // Same as GraphTransformer.addTopLevelMetrics: puts the metric of each top-level metric context above it
+    private static void addTopLevelMetrics(DAG dag) {
+        dag.getTopLevelNodes().forEach(tln -> {
+            if (tln.getElement() instanceof MetricContext mc) {
+                dag.addTopLevelNode(mc.getMetric());
+                dag.addNode(mc.getMetric(), mc);
+                dag.removeEdge(dag.getRootNode(), tln);
+            }
+        });
+    }
+
+    // Compares the indexed query results with plain walks of the graph edges
+    private static void assertIndexesMatchGraph(DAG dag) {
+        Set<DAGNode> leafs = new HashSet<>();
+        for (DAGNode node : dag._graph.vertexSet()) {
+            Set<DAGNode> parents = dag._graph.incomingEdgesOf(node).stream().map(DAGEdge::getSource).collect(Collectors.toSet());
+            Set<DAGNode> children = dag._graph.outgoingEdgesOf(node).stream().map(DAGEdge::getTarget).collect(Collectors.toSet());
+            Assertions.assertEquals(parents, dag.getParentNodes(node), "Parents of " + node);
+            Assertions.assertEquals(children, dag.getNodeChildren(node), "Children of " + node);
+            Assertions.assertEquals(longestPathTo(dag, node, new HashMap<>()), dag.getNodeDepth(node), "Depth of " + node);
+            if (node != dag.getRootNode() && children.isEmpty()) leafs.add(node);
+        }
+        Assertions.assertEquals(leafs, dag.getLeafNodes());
+        Assertions.assertEquals(dag._graph.outgoingEdgesOf(dag.getRootNode()).stream().map(DAGEdge::getTarget).collect(Collectors.toSet()),
+                dag.getTopLevelNodes());
+
+        List<DAGNode> order = dag.getTopologicalOrder();
+        Assertions.assertEquals(dag._graph.vertexSet(), new HashSet<>(order));
+        Assertions.assertEquals(dag._graph.vertexSet().size(), order.size());
+        for (DAGEdge edge : dag._graph.edgeSet())
+            Assertions.assertTrue(order.indexOf(edge.getSource()) < order.indexOf(edge.getTarget()), "Edge out of order: " + edge);
+    }
+
+    private static int longestPathTo(DAG dag, DAGNode node, Map<DAGNode, Integer> depths) {
+        Integer depth = depths.get(node);
+        if (depth != null) return depth;
+        depth = 0;
+        for (DAGEdge edge : dag._graph.incomingEdgesOf(node))
+            depth = Math.max(depth, longestPathTo(dag, edge.getSource(), depths) + 1);
+        depths.put(node, depth);
+        return depth;
+    }
+
+    private static DAGNode node(DAG dag, String name) {
+        return dag.getNodeByElementName(name);
+    }
+
+    @Test
+    void indexesFollowTheTransformationsOfAModel() {
+        DAG dag = buildModelDag();
+        assertIndexesMatchGraph(dag);
+        Assertions.assertEquals(Set.of(node(dag, "cpu_ctx"), node(dag, "ram_ctx"), node(dag, "cores"), node(dag, "replicas")), dag.getLeafNodes());
+        Assertions.assertEquals(3, dag.getNodeDepth(node(dag, "cpu_ctx")));     // root -> cpu_load -> mean_cpu_ctx -> cpu_ctx
+
+        removeMVV(dag, dag.getRootNode());
+        assertIndexesMatchGraph(dag);
+        Assertions.assertFalse(dag.getAllDAGNodes().contains(node(dag, "capacity")));
+        Assertions.assertFalse(dag.getAllDAGNodes().contains(node(dag, "cores")));
+        Assertions.assertTrue(dag.getAllDAGNodes().contains(node(dag, "cpu_load")));
+
+        addTopLevelMetrics(dag);
+        assertIndexesMatchGraph(dag);
+        Assertions.assertEquals(Set.of("cpu_load", "mean_cpu", "max_ram"),
+                dag.getTopLevelNodes().stream().map(DAGNode::getName).collect(Collectors.toSet()));
+        Assertions.assertEquals(Set.of(node(dag, "max_ram")), dag.getParentNodes(node(dag, "max_ram_ctx")));
+    }
+
+    @Test
+    void indexesFollowRandomMutations() {
+        DAG dag = buildModelDag();
+        Random random = new Random(42);
+        List<NamedElement> added = new ArrayList<>();
+        for (int step = 0; step < 2_000; step++) {
+            List<DAGNode> nodes = new ArrayList<>(dag.getAllDAGNodes());
+            nodes.sort(Comparator.comparingLong(DAGNode::getId));
+            DAGNode a = nodes.get(random.nextInt(nodes.size()));
+            DAGNode b = nodes.get(random.nextInt(nodes.size()));
+            switch (random.nextInt(5)) {
+                case 0 -> {
+                    NamedElement elem = RawMetricContext.builder().name("ctx_" + step).build();
+                    added.add(elem);
+                    if (a.getElement() != null) dag.addNode(a.getElement(), elem);
+                    else dag.addTopLevelNode(elem);
+                }
+                case 1 -> {
+                    try {
+                        if (b != dag.getRootNode()) dag.addDAGEdge(a, b);
+                    } catch (IllegalArgumentException e) {
+                        // Edge would create a cycle (or a loop) and has been rejected
+                    }
+                }
+                case 2 -> dag.removeEdge(a, b);
+                case 3 -> {
+                    if (a.getElement() != null && dag.getNodeChildren(a).isEmpty()) dag.removeNode(a.getElement());
+                }
+                default -> dag.getNodeDepth(a);      // Query only
+            }
+            if (step % 10 == 0) assertIndexesMatchGraph(dag);
+        }
+        assertIndexesMatchGraph(dag);
+        log.info("DAGTest: After random mutations: nodes={}, edges={}, added-elements={}",
+                dag.getAllDAGNodes().size(), dag.getAllDAGEdges().size(), added.size());
+    }
+
+    @Test
+    void indexesAreKeptWhenNothingChanges() {
+        DAG dag = buildModelDag();
+        DAGNode meanCpuCtx = node(dag, "mean_cpu_ctx");
+        DAGNode cpuCtx = node(dag, "cpu_ctx");
+        List<DAGNode> order = dag.getTopologicalOrder();
+
+        // Adding existing nodes and edges, and removing missing edges, do not change the graph
+        dag.addDAGNode(cpuCtx);
+        dag.addDAGEdge(meanCpuCtx, cpuCtx);
+        dag.addTopLevelNode(meanCpuCtx.getElement());
+        dag.removeEdge(cpuCtx, meanCpuCtx);
+        Assertions.assertSame(order, dag.getTopologicalOrder());
+
+        dag.removeEdge(meanCpuCtx, cpuCtx);
+        Assertions.assertNotSame(order, dag.getTopologicalOrder());
+        assertIndexesMatchGraph(dag);
+    }
+
+    @Test
+    void queriesReturnCopiesThatCanBeIteratedWhileChangingTheDag() {
+        DAG dag = buildModelDag();
+        Set<DAGNode> topLevelNodes = dag.getTopLevelNodes();
+        topLevelNodes.forEach(tln -> dag.removeEdge(dag.getRootNode(), tln));
+        Assertions.assertEquals(4, topLevelNodes.size());
+        Assertions.assertTrue(dag.getTopLevelNodes().isEmpty());
+        assertIndexesMatchGraph(dag);
+
+        dag.clearDAG();
+        Assertions.assertTrue(dag.getLeafNodes().isEmpty());
+        Assertions.assertTrue(dag.getTopologicalOrder().isEmpty());
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hot-path metrics helper. Meters are registered in the Micrometer global registry, where Spring Boot
+ * (on EMS server) or the client metrics exporter (on EMS clients) add the Prometheus registry.
+ * Timings are sampled (one in 'sampleRate' calls), so timer counts must be multiplied by the sample rate.
+ * Counters are always updated.
+ */
+@Slf4j
+public class EmsMetrics {
+    private final static Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final static Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final static Map<String, AtomicLong> gauges = new ConcurrentHashMap<>();
+
+    @Getter @Setter
+    private static volatile int sampleRate = 1;
+    @Getter @Setter
+    private static volatile boolean histogramsEnabled;
+
+    public static MeterRegistry getRegistry() {
+        return Metrics.globalRegistry;
+    }
+
+    /**
+     * Returns the start time (in nanos) if this call is sampled, or -1 otherwise.
+     */
+    public static long startSample() {
+        int rate = sampleRate;
+        if (rate>1 && ThreadLocalRandom.current().nextInt(rate)!=0) return -1L;
+        return System.nanoTime();
+    }
+
+    public static void stopSample(long startNanos, @NonNull String name, String... tags) {
+        if (startNanos<0) return;
+        timer(name, tags).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public static void recordSampled(long durationMillis, @NonNull String name, String... tags) {
+        int rate = sampleRate;
+        if (rate>1 && ThreadLocalRandom.current().nextInt(rate)!=0) return;
+        timer(name, tags).record(durationMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static Timer timer(@NonNull String name, String... tags) {
+        return timers.computeIfAbsent(meterKey(name, tags), k -> Timer.builder(name)
+                .tags(tags)
+                .publishPercentileHistogram(histogramsEnabled)
+                .register(Metrics.globalRegistry));
+    }
+
+    public static Counter counter(@NonNull String name, String... tags) {
+        return counters.computeIfAbsent(meterKey(name, tags), k -> Counter.builder(name)
+                .tags(tags)
+                .register(Metrics.globalRegistry));
+    }
+
+    /**
+     * Returns the (strongly referenced) value holder of a gauge. The same holder is returned for the same name and tags.
+     */
+    public static AtomicLong gauge(@NonNull String name, String... tags) {
+        return gauges.computeIfAbsent(meterKey(name, tags), k ->
+                Metrics.globalRegistry.gauge(name, Tags.of(tags), new AtomicLong()));
+    }
+
+    private static String meterKey(String name, String... tags) {
+        return tags.length==0 ? name : name + "|" + String.join("|", tags);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.util;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compact, delta-encoded text format for EMS client statistics (numeric values only).
+ * Format: '&lt;seq&gt;|&lt;F or D&gt;|key=value;key=value;...'. 'F' (full) frames carry all values,
+ * 'D' (delta) frames carry only the changed values, and removed keys with an empty value.
+ * Keys are URL-encoded. A decoder receiving a delta frame out of sequence reports a gap,
+ * and the sender should then be asked to send a full frame.
+ */
+@Slf4j
+public class StatisticsDeltaCodec {
+    public final static char FULL_FRAME = 'F';
+    public final static char DELTA_FRAME = 'D';
+
+    /**
+     * Keeps only the numeric entries of a statistics map
+     */
+    public static Map<String, Number> numericOnly(Map<String, Object> stats) {
+        Map<String, Number> result = new LinkedHashMap<>();
+        if (stats!=null) {
+            stats.forEach((k, v) -> {
+                if (k!=null && v instanceof Number n) result.put(k, n);
+            });
+        }
+        return result;
+    }
+
+    // ------------------------------------------------------------------------
+    //  Encoder (EMS client side)
+    // ------------------------------------------------------------------------
+
+    public static class Encoder {
+        private Map<String, Number> previous = Map.of();
+        private long sequence;
+        private boolean fullRequested = true;
+
+        public synchronized void requestFullFrame() {
+            fullRequested = true;
+        }
+
+        public synchronized String encode(@NonNull Map<String, Number> current, boolean forceFull) {
+            boolean full = forceFull || fullRequested;
+            StringBuilder sb = new StringBuilder(full ? 32 * current.size() : 64);
+            sb.append(++sequence).append('|').append(full ? FULL_FRAME : DELTA_FRAME).append('|');
+            boolean first = true;
+            for (Map.Entry<String, Number> e : current.entrySet()) {
+                if (! full && e.getValue().equals(previous.get(e.getKey()))) continue;
+                if (! first) sb.append(';');
+                sb.append(encodeKey(e.getKey())).append('=').append(e.getValue());
+                first = false;
+            }
+            if (! full) {
+                for (String removedKey : previous.keySet()) {
+                    if (current.containsKey(removedKey)) continue;
+                    if (! first) sb.append(';');
+                    sb.append(encodeKey(removedKey)).append('=');
+                    first = false;
+                }
+            }
+            previous = new HashMap<>(current);
+            fullRequested = false;
+            return sb.toString();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    //  Decoder (EMS server side)
+    // ------------------------------------------------------------------------
+
+    public static class Decoder {
+        private final Map<String, Number> current = new HashMap<>();
+        private long lastSequence = -1;
+        @Getter
+        private boolean gapDetected;
+
+        /**
+         * Applies a frame and returns the resulting statistics (a new map),
+         * or null if a delta frame was received out of sequence (a full frame is needed).
+         */
+        public synchronized Map<String, Number> decode(@NonNull String frame) {
+            String[] part = frame.split("\\|", 3);
+            if (part.length<3 || part[1].length()!=1)
+                throw new IllegalArgumentException("Invalid statistics frame: "+frame);
+            long seq = Long.parseLong(part[0]);
+            boolean full = part[1].charAt(0)==FULL_FRAME;
+
+            if (! full && seq!=lastSequence+1) {
+                log.debug("StatisticsDeltaCodec: Sequence gap: expected={}, received={}", lastSequence+1, seq);
+                gapDetected = true;
+                return null;
+            }
+            if (full) current.clear();
+            lastSequence = seq;
+            gapDetected = false;
+
+            if (! part[2].isEmpty()) {
+                for (String entry : part[2].split(";")) {
+                    int p = entry.indexOf('=');
+                    if (p<=0) continue;
+                    String key = decodeKey(entry.substring(0, p));
+                    String value = entry.substring(p+1);
+                    if (value.isEmpty()) current.remove(key);
+                    else current.put(key, parseNumber(value));
+                }
+            }
+            return new LinkedHashMap<>(current);
+        }
+    }
+
+    private static String encodeKey(String key) {
+        return URLEncoder.encode(key, StandardCharsets.UTF_8);
+    }
+
+    private static String decodeKey(String key) {
+        return URLDecoder.decode(key, StandardCharsets.UTF_8);
+    }
+
+    private static Number parseNumber(String s) {
+        for (int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            if (c=='.' || c=='E' || c=='e' || c=='N' || c=='I')     // Decimal, exponent, NaN, Infinity
+                return Double.parseDouble(s);
+        }
+        return Long.parseLong(s);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2017-2023 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0, unless
+ * Esper library is used, in which case it is subject to the terms of General Public License v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package gr.iccs.imu.ems.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Slf4j
+@DisplayName("StatisticsDeltaCodec Tests")
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class StatisticsDeltaCodecTest {
+
+    private static Map<String, Number> stats(Object... keyValues) {
+        Map<String, Number> stats = new LinkedHashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2)
+            stats.put((String) keyValues[i], (Number) keyValues[i + 1]);
+        return stats;
+    }
+
+    @Test
+    void framesRoundTripThroughDecoder() {
+        StatisticsDeltaCodec.Encoder encoder = new StatisticsDeltaCodec.Encoder();
+        StatisticsDeltaCodec.Decoder decoder = new StatisticsDeltaCodec.Decoder();
+
+        // The first frame is always full. Keys with separators survive encoding
+        Map<String, Number> first = stats("count", 10L, "rate;avg=x|y", 1.5, "nan", Double.NaN);
+        String frame = encoder.encode(first, false);
+        Assertions.assertEquals("1|F|", frame.substring(0, 4));
+        Assertions.assertEquals(first, decoder.decode(frame));
+
+        // Delta frames carry only changed and removed keys
+        Map<String, Number> second = stats("count", 11L, "rate;avg=x|y", 1.5, "new", -2.0E-3);
+        frame = encoder.encode(second, false);
+        Assertions.assertEquals("2|D|count=11;new=-0.002;nan=", frame);
+        Assertions.assertEquals(second, decoder.decode(frame));
+        Assertions.assertFalse(decoder.isGapDetected());
+
+        // No changes give an empty delta frame
+        frame = encoder.encode(second, false);
+        Assertions.assertEquals("3|D|", frame);
+        Assertions.assertEquals(second, decoder.decode(frame));
+    }
+
+    @Test
+    void sequenceGapIsDetected() {
+        StatisticsDeltaCodec.Encoder encoder = new StatisticsDeltaCodec.Encoder();
+        StatisticsDeltaCodec.Decoder decoder = new StatisticsDeltaCodec.Decoder();
+        Assertions.assertNotNull(decoder.decode(encoder.encode(stats("a", 1L), false)));
+
+        // A lost delta frame: the next one is out of sequence and is rejected
+        encoder.encode(stats("a", 2L), false);
+        Assertions.assertNull(decoder.decode(encoder.encode(stats("a", 3L, "b", 4L), false)));
+        Assertions.assertTrue(decoder.isGapDetected());
+
+        // Further delta frames are rejected too, until a full frame arrives
+        Assertions.assertNull(decoder.decode(encoder.encode(stats("a", 5L), false)));
+        Assertions.assertTrue(decoder.isGapDetected());
+    }
+
+    @Test
+    void fullFrameResynchronizesDecoder() {
+        StatisticsDeltaCodec.Encoder encoder = new StatisticsDeltaCodec.Encoder();
+        StatisticsDeltaCodec.Decoder decoder = new StatisticsDeltaCodec.Decoder();
+        decoder.decode(encoder.encode(stats("a", 1L, "stale", 9L), false));
+        encoder.encode(stats("a", 2L), false);          // Lost
+        Assertions.assertNull(decoder.decode(encoder.encode(stats("a", 3L), false)));
+
+        // The server asks for a full frame. It replaces all decoder state, including keys removed in lost frames
+        encoder.requestFullFrame();
+        String frame = encoder.encode(stats("a", 4L, "b", 0.25), false);
+        Assertions.assertEquals(StatisticsDeltaCodec.FULL_FRAME, frame.split("\\|")[1].charAt(0));
+        Assertions.assertEquals(stats("a", 4L, "b", 0.25), decoder.decode(frame));
+        Assertions.assertFalse(decoder.isGapDetected());
+
+        // Delta frames are accepted again
+        Assertions.assertEquals(stats("a", 5L, "b", 0.25), decoder.decode(encoder.encode(stats("a", 5L, "b", 0.25), false)));
+
+        // Forced full frames resynchronize as well
+        frame = encoder.encode(stats("c", 1L), true);
+        Assertions.assertEquals(stats("c", 1L), decoder.decode(frame));
+    }
+
+    @Test
+    void invalidFramesAndNonNumericValuesAreHandled() {
+        StatisticsDeltaCodec.Decoder decoder = new StatisticsDeltaCodec.Decoder();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> decoder.decode("1|F"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> decoder.decode("1|FD|a=1"));
+
+        Map<String, Object> mixed = new LinkedHashMap<>();
+        mixed.put("n", 1);
+        mixed.put("s", "text");
+        mixed.put(null, 2);
+        mixed.put("d", 2.5);
+        Assertions.assertEquals(Map.of("n", 1, "d", 2.5), StatisticsDeltaCodec.numericOnly(mixed));
+        Assertions.assertTrue(StatisticsDeltaCodec.numericOnly(null).isEmpty());
+    }
+}
@@ -32,10 +32,17 @@ public class EmsBootProperties implements InitializingBean {
 
     private boolean enabled;
 
-    private long processorPeriod = 500; // millis
+    private int processorWorkers = 4;
+    private int processorQueueWarnThreshold = 1000;
     private String applicationIdPropertyName = "application";
     private String modelsDir = "models";
-    private String modelsIndexFile = "models/index.json";
+    private String modelsIndexFile = "models/index.json";       // Legacy index file. Migrated to index log, if found
+    private String modelsIndexLogFile;                          // If blank, '<modelsDir>/index.log' is used
+    private int indexSyncBatchSize = 16;                        // Index log records written between fsync's
+    private long indexSyncMaxDelay = 1000;                      // millis
+    private int indexCompactionFactor = 4;                      // Compact when log records > factor * index entries
+    private int indexCompactionMinRecords = 1000;
+    private int modelsCacheSize = 200;                          // Models store files kept in the read cache
 
     private String dslTopic              = NEBULOUS_TOPIC_PREFIX + "ui.dsl.generic";
     private String optimiserMetricsTopic = NEBULOUS_TOPIC_PREFIX + "optimiser.controller.metric_list";
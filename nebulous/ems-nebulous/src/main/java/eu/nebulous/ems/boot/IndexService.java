@@ -15,132 +15,147 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import okio.Path;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.ApplicationContext;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
-public class IndexService implements InitializingBean {
+public class IndexService implements InitializingBean, DisposableBean {
 	private final Collection<String> FILES_TO_EXCLUDE_FROM_PURGE = new LinkedHashSet<>(Set.of("index.json", "empty.yml", "edge.yml"));
 
 	private final NebulousEmsTranslatorProperties translatorProperties;
 	private final ApplicationContext applicationContext;
 	private final EmsBootProperties properties;
 	private final ObjectMapper objectMapper;
-	private final Object LOCK = new Object();
+	private final TaskScheduler taskScheduler;
+	private IndexStore store;
+	private ScheduledFuture<?> syncTask;
 
 	@Override
 	public void afterPropertiesSet() throws Exception {
 		if (translatorProperties!=null && StringUtils.isNotBlank(translatorProperties.getExtensionModel())) {
 			FILES_TO_EXCLUDE_FROM_PURGE.add(translatorProperties.getExtensionModel());
 		}
+		FILES_TO_EXCLUDE_FROM_PURGE.add(getIndexLogFile().getFileName().toString());
+		FILES_TO_EXCLUDE_FROM_PURGE.add(getIndexLogFile().getFileName().toString() + ".tmp");
 		log.debug("IndexService: FILES_TO_EXCLUDE_FROM_PURGE: {}", FILES_TO_EXCLUDE_FROM_PURGE);
 	}
 
-	public void initIndexFile() throws IOException {
-		try {
-			// Load index file contents (if it exists)
-			@NonNull Map<String, Object> indexContents = loadIndexContents();
-			if (! indexContents.isEmpty()) {
-				log.warn("Index file is not empty. Will not initialize it.");
-				return;
+	private synchronized IndexStore getStore() throws IOException {
+		if (store==null) {
+			IndexStore newStore = new IndexStore(getIndexLogFile(), objectMapper,
+					properties.getIndexSyncBatchSize(), properties.getIndexSyncMaxDelay(),
+					properties.getIndexCompactionFactor(), properties.getIndexCompactionMinRecords());
+			newStore.open(Paths.get(properties.getModelsIndexFile()));
+			store = newStore;
+
+			// Periodically fsync the log tail, in case no more records arrive to trigger it
+			if (taskScheduler!=null && properties.getIndexSyncMaxDelay()>0) {
+				syncTask = taskScheduler.scheduleWithFixedDelay(
+						this::syncStore, Duration.ofMillis(properties.getIndexSyncMaxDelay()));
 			}
-		} catch (IOException e) {
-			log.debug("Initializing index file: ", e);
 		}
+		return store;
+	}
+
+	private void syncStore() {
+		IndexStore indexStore;
+		synchronized (this) {
+			indexStore = store;
+		}
+		if (indexStore==null) return;
+		try {
+			indexStore.syncIfDue();
+		} catch (Exception e) {
+			log.warn("IndexService: EXCEPTION while syncing index store: ", e);
+		}
+	}
 
-		// Initialize index file
-		storeIndexContents(Map.of());
-		log.info("Index file initialized");
+	private java.nio.file.Path getIndexLogFile() {
+		return StringUtils.isNotBlank(properties.getModelsIndexLogFile())
+				? Paths.get(properties.getModelsIndexLogFile())
+				: Paths.get(properties.getModelsDir(), "index.log");
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		synchronized (this) {
+			if (syncTask!=null) syncTask.cancel(false);
+			syncTask = null;
+			if (store!=null) store.close();
+			store = null;
+		}
+	}
+
+	public void initIndexFile() throws IOException {
+		// Open index store (also migrates the legacy index file, if needed)
+		if (! getStore().isEmpty()) {
+			log.warn("Index store is not empty. Will not initialize it.");
+			return;
+		}
+		log.info("Index store initialized: {}", getIndexLogFile());
 	}
 
 	void storeToIndex(String appId, Map<String,String> values) throws IOException {
 		log.debug("storeToIndex: BEGIN: app-id={}, values={}", appId, values);
-		synchronized (LOCK) {
-			// Load index file contents
-			Map<String, Object> indexContents = loadIndexContents();
-
+		// Same lock as the delete methods, so that a concurrent store cannot re-create an entry being deleted
+		synchronized (this) {
 			// Create or update entry
-			Map<String,String> entry = (Map<String, String>) indexContents.computeIfAbsent(appId, k -> new HashMap<>());
+			Map<String,String> entry = new HashMap<>(Objects.requireNonNullElse(getStore().get(appId), Map.of()));
 			values.forEach((key, val) -> {
 				if (StringUtils.isNotBlank(key) && StringUtils.isNotBlank(val))
 					entry.put(key, val);
 			});
 			entry.put("creation-ts", Instant.now().toString());
 
-			// Store index contents back to file
-			storeIndexContents(indexContents);
+			// Append entry to index store
+			getStore().put(appId, entry);
 		}
 	}
 
 	Map<String,String> getFromIndex(String appId) throws IOException {
 		log.debug("getFromIndex: BEGIN: app-id={}", appId);
 
-		// Load info from models store
-		Map<String, Object> indexContents = loadIndexContents();
-
 		// Find the entry for 'appId'
-		Object entry = indexContents.entrySet().stream()
-				.filter(e -> e.getKey().equalsIgnoreCase(appId))
-				.map(Map.Entry::getValue)
-				.findFirst().orElse(null);
-		log.debug("getFromIndex: END: app-id={}, result={}", appId, entry);
-
-		return (Map) entry;
-	}
-
-	@NonNull
-	private Map<String, Object> loadIndexContents() throws IOException {
-		Map<String,Object> indexContents = null;
-		if (Path.get(properties.getModelsIndexFile()).toFile().exists()) {
-			try (FileReader reader = new FileReader(properties.getModelsIndexFile())) {
-				indexContents = objectMapper.readValue(reader, Map.class);
-			}
+		IndexStore indexStore = getStore();
+		Map<String,String> entry = indexStore.get(appId);
+		if (entry==null) {
+			entry = indexStore.getAll().entrySet().stream()
+					.filter(e -> e.getKey().equalsIgnoreCase(appId))
+					.map(Map.Entry::getValue)
+					.findFirst().orElse(null);
 		}
-		log.debug("Model Index contents loaded: {}", indexContents);
-		if (indexContents==null)
-			indexContents = new LinkedHashMap<>();
-		return indexContents;
-	}
-
-	private void storeIndexContents(Map<String, Object> indexContents) throws IOException {
-		log.debug("Model Index contents to write: {}", indexContents);
-		if (indexContents==null) indexContents = Map.of();
-		try (FileWriter writer = new FileWriter(properties.getModelsIndexFile())) {
-			objectMapper.writeValue(writer, indexContents);
-		}
-	}
+		log.debug("getFromIndex: END: app-id={}, result={}", appId, entry);
 
-	private Map<String,Map<String,String>> castToMapMap(Map<String,Object> map) {
-		return map.entrySet().stream().collect(Collectors.toMap(
-				Map.Entry::getKey, e->(Map<String,String>) e.getValue()
-		));
+		return entry;
 	}
 
 	// ------------------------------  Public API  ------------------------------
 	public Map<String,Map<String,String>> getAll() throws IOException {
-		return castToMapMap( loadIndexContents() );
+		return getStore().getAll();
 	}
 
 	public Set<String> getAppIds() throws IOException {
-		return loadIndexContents().keySet();
+		return getStore().keySet();
 	}
 
 	public Map<String, String> getAppData(@NonNull String appId) throws IOException {
-		return (Map<String,String>) loadIndexContents().get(appId);
+		return getStore().get(appId);
 	}
 
 	public String getAppMetricModel(@NonNull String appId) throws IOException {
@@ -161,10 +176,7 @@ public class IndexService implements InitializingBean {
 	}
 
 	public synchronized boolean deleteAppData(@NonNull String appId) throws IOException {
-		@NonNull Map<String, Object> map = loadIndexContents();
-		boolean removed = map.remove(appId) != null;
-		storeIndexContents(map);
-		return removed;
+		return getStore().delete(appId);
 	}
 
 	public synchronized boolean deleteAll() throws IOException {
@@ -185,12 +197,19 @@ public class IndexService implements InitializingBean {
 			}
 		}
 
-		// Initialize index file
-		storeIndexContents(Map.of());
-		log.info("Index file initialized");
+		// Clear index store
+		getStore().clear();
+		clearModelsCache();
+		log.info("Index store cleared");
 		return true;
 	}
 
+	private void clearModelsCache() {
+		// Cached model files must not be served after their index entries (or files) are deleted
+		if (applicationContext!=null)
+			applicationContext.getBean(ModelsService.class).clearFilesCache();
+	}
+
 	public synchronized boolean deleteUnused() throws IOException {
 		log.info("Purging unused files from EMS Boot cache...");
 
@@ -213,6 +232,7 @@ public class IndexService implements InitializingBean {
 					});
 		}
 
+		if (deletedCnt.get()>0) clearModelsCache();
 		log.info("{} unused files removed from EMS Boot cache", deletedCnt);
 		return true;
 	}
@@ -261,6 +281,7 @@ public class IndexService implements InitializingBean {
 						});
 			}
 
+			clearModelsCache();
 			log.info("{} files removed from EMS Boot cache", deletedCnt);
 		}
 		return true;
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2023-2025 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package eu.nebulous.ems.boot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only, crash-safe store for the EMS Boot application index.
+ * Every update is appended to a log file as one JSON line, while the current state is kept in an in-memory index.
+ * The log is fsync'ed in batches (by record count or max. delay) and compacted, i.e. rewritten as a snapshot,
+ * when it grows much larger than the live index.
+ * A truncated last line (e.g. after a crash) is ignored on load.
+ */
+@Slf4j
+class IndexStore implements Closeable {
+	private final static String OP_PUT = "put";
+	private final static String OP_DELETE = "del";
+
+	private final Path logFile;
+	private final ObjectMapper objectMapper;
+	private final int syncBatchSize;
+	private final long syncMaxDelayMillis;
+	private final int compactionFactor;
+	private final int compactionMinRecords;
+
+	private final Map<String,Map<String,String>> index = new ConcurrentHashMap<>();
+	private FileChannel channel;
+	private int recordsInLog;
+	private int unsyncedRecords;
+	private long lastSyncTimestamp;
+
+	IndexStore(@NonNull Path logFile, @NonNull ObjectMapper objectMapper, int syncBatchSize, long syncMaxDelayMillis, int compactionFactor, int compactionMinRecords) {
+		this.logFile = logFile;
+		this.objectMapper = objectMapper;
+		this.syncBatchSize = Math.max(1, syncBatchSize);
+		this.syncMaxDelayMillis = Math.max(0, syncMaxDelayMillis);
+		this.compactionFactor = Math.max(2, compactionFactor);
+		this.compactionMinRecords = Math.max(1, compactionMinRecords);
+	}
+
+	synchronized void open(Path legacyIndexFile) throws IOException {
+		if (channel!=null) return;
+		if (Files.exists(logFile)) {
+			// Rewrite the log if it contains bad records, so that new records are not appended to a partial line
+			if (! replayLog())
+				writeSnapshot();
+		} else if (legacyIndexFile!=null && Files.exists(legacyIndexFile)) {
+			migrateFrom(legacyIndexFile);
+		}
+		channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		log.debug("IndexStore: Opened: file={}, entries={}, records-in-log={}", logFile, index.size(), recordsInLog);
+	}
+
+	private boolean replayLog() throws IOException {
+		int lineNum = 0;
+		boolean clean = true;
+		try (BufferedReader reader = new BufferedReader(new FileReader(logFile.toFile(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lineNum++;
+				if (line.isBlank()) continue;
+				try {
+					applyRecord(objectMapper.readValue(line, Map.class));
+					recordsInLog++;
+				} catch (IOException e) {
+					log.warn("IndexStore: Ignoring corrupt or truncated record at line {} of {}: {}", lineNum, logFile, e.getMessage());
+					clean = false;
+				}
+			}
+		}
+		log.debug("IndexStore: Replayed {} records from log: {}", recordsInLog, logFile);
+		return clean;
+	}
+
+	private void migrateFrom(Path legacyIndexFile) throws IOException {
+		log.info("IndexStore: Migrating index file to log-based store: {} -> {}", legacyIndexFile, logFile);
+		Map<String,Object> contents;
+		try (FileReader reader = new FileReader(legacyIndexFile.toFile(), StandardCharsets.UTF_8)) {
+			contents = objectMapper.readValue(reader, Map.class);
+		}
+		if (contents!=null) {
+			contents.forEach((appId, data) -> {
+				if (data instanceof Map<?,?> map)
+					index.put(appId, copyOf((Map<String,String>) map));
+			});
+		}
+		writeSnapshot();
+		log.info("IndexStore: Migrated {} entries from: {}", index.size(), legacyIndexFile);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void applyRecord(Map<String,Object> record) {
+		String op = String.valueOf(record.get("op"));
+		String appId = (String) record.get("app");
+		switch (op) {
+			case OP_PUT -> index.put(appId, copyOf((Map<String,String>) record.get("data")));
+			case OP_DELETE -> index.remove(appId);
+			default -> log.warn("IndexStore: Unknown record operation: {}", op);
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	Map<String,String> get(@NonNull String appId) {
+		return index.get(appId);
+	}
+
+	Map<String,Map<String,String>> getAll() {
+		return new LinkedHashMap<>(index);
+	}
+
+	Set<String> keySet() {
+		return new LinkedHashSet<>(index.keySet());
+	}
+
+	boolean isEmpty() {
+		return index.isEmpty();
+	}
+
+	synchronized void put(@NonNull String appId, @NonNull Map<String,String> data) throws IOException {
+		Map<String,String> copy = copyOf(data);
+		append(Map.of("op", OP_PUT, "app", appId, "data", copy));
+		index.put(appId, copy);
+	}
+
+	synchronized boolean delete(@NonNull String appId) throws IOException {
+		if (! index.containsKey(appId)) return false;
+		append(Map.of("op", OP_DELETE, "app", appId));
+		index.remove(appId);
+		return true;
+	}
+
+	synchronized void clear() throws IOException {
+		index.clear();
+		writeSnapshot();
+	}
+
+	// Called periodically, so that the log tail is fsync'ed even if no more records arrive
+	synchronized void syncIfDue() throws IOException {
+		if (channel!=null && unsyncedRecords>0 && System.currentTimeMillis() - lastSyncTimestamp >= syncMaxDelayMillis)
+			sync();
+	}
+
+	synchronized void sync() throws IOException {
+		if (channel!=null && unsyncedRecords>0) {
+			channel.force(false);
+			unsyncedRecords = 0;
+		}
+		lastSyncTimestamp = System.currentTimeMillis();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (channel!=null) {
+			sync();
+			channel.close();
+			channel = null;
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	private void append(Map<String,Object> record) throws IOException {
+		if (channel==null)
+			throw new IllegalStateException("IndexStore is not open: "+logFile);
+		byte[] bytes = (objectMapper.writeValueAsString(record) + "\n").getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		recordsInLog++;
+		if (++unsyncedRecords >= syncBatchSize || System.currentTimeMillis() - lastSyncTimestamp >= syncMaxDelayMillis)
+			sync();
+		if (recordsInLog >= compactionMinRecords && recordsInLog > compactionFactor * Math.max(1, index.size()))
+			compact();
+	}
+
+	synchronized void compact() throws IOException {
+		log.debug("IndexStore: Compacting log: records-in-log={}, entries={}", recordsInLog, index.size());
+		writeSnapshot();
+	}
+
+	private void writeSnapshot() throws IOException {
+		// Write the live entries in a temp file, fsync it, and atomically replace the log
+		Path tmpFile = logFile.resolveSibling(logFile.getFileName() + ".tmp");
+		try (FileChannel tmp = FileChannel.open(tmpFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (Map.Entry<String, Map<String, String>> e : index.entrySet()) {
+				byte[] bytes = (objectMapper.writeValueAsString(Map.of("op", OP_PUT, "app", e.getKey(), "data", e.getValue())) + "\n")
+						.getBytes(StandardCharsets.UTF_8);
+				ByteBuffer buffer = ByteBuffer.wrap(bytes);
+				while (buffer.hasRemaining())
+					tmp.write(buffer);
+			}
+			tmp.force(true);
+		}
+
+		boolean reopen = channel!=null;
+		if (reopen) channel.close();
+		try {
+			Files.move(tmpFile, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmpFile, logFile, StandardCopyOption.REPLACE_EXISTING);
+		}
+		if (reopen)
+			channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		recordsInLog = index.size();
+		unsyncedRecords = 0;
+		lastSyncTimestamp = System.currentTimeMillis();
+	}
+
+	private static Map<String,String> copyOf(Map<String,String> data) {
+		return data==null ? new LinkedHashMap<>() : Collections.unmodifiableMap(new LinkedHashMap<>(data));
+	}
+}
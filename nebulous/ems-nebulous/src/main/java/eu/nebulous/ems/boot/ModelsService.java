@@ -20,12 +20,9 @@ import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -45,7 +42,14 @@ public class ModelsService implements InitializingBean {
 	private final ObjectMapper objectMapper;
 	private final IndexService indexService;
 
-	private final Map<String,Map<String,Double>> allVariableValues = new HashMap<>();
+	private final Map<String,Map<String,Double>> allVariableValues = new ConcurrentHashMap<>();
+	private final Object translationLock = new Object();
+	private final Map<String,String> filesCache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > properties.getModelsCacheSize();
+		}
+	});
 
 	@Override
 	public void afterPropertiesSet() throws Exception {
@@ -283,12 +287,16 @@ public class ModelsService implements InitializingBean {
 			// Store metric model in a new file
 			modelFile = StringUtils.isBlank(modelFile) ? getFileName("model", appId, "yml") : modelFile;
 			translationService.storeModel(appId, modelFile, modelStr);
+			filesCache.remove(modelFile);
 
 			// Validate metric model
 			String result = null;
 			boolean valid = true;
 			if (properties.isValidateModels()) {
-				result = translationService.translateModel(appId, modelFile, modelStr);
+				// Translations share the control service state, so they must not run in parallel
+				synchronized (translationLock) {
+					result = translationService.translateModel(appId, modelFile, modelStr);
+				}
 				valid = "OK".equalsIgnoreCase(result);
 			}
 
@@ -317,16 +325,35 @@ public class ModelsService implements InitializingBean {
 				: String.format("%s--%d.%s", type, System.currentTimeMillis(), suffix);
 	}
 
+	void clearFilesCache() {
+		filesCache.clear();
+		log.debug("Cleared models files cache");
+	}
+
 	String readFromFile(String fileName) throws IOException {
+		String cached = filesCache.get(fileName);
+		if (cached!=null) {
+			log.trace("Read from cache: {}", fileName);
+			return cached;
+		}
 		Path path = Paths.get(properties.getModelsDir(), fileName);
 		String modelStr = Files.readString(path);
+		filesCache.put(fileName, modelStr);
 		log.debug("Read from file: {}", path);
 		return modelStr;
 	}
 
 	private void storeToFile(String fileName, String modelStr) throws IOException {
+		// Write to a temp file and then atomically rename, so that a crash never leaves a partially written file
 		Path path = Paths.get(properties.getModelsDir(), fileName);
-		Files.writeString(path, modelStr);
+		Path tmpPath = Paths.get(properties.getModelsDir(), fileName + ".tmp");
+		Files.writeString(tmpPath, modelStr);
+		try {
+			Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+		filesCache.put(fileName, modelStr);
 		log.debug("Wrote to file: {}", path);
 	}
 }
\ No newline at end of file
@@ -9,43 +9,41 @@
 package eu.nebulous.ems.boot;
 
 import eu.nebulous.ems.service.ExternalBrokerServiceProperties;
+import eu.nebulous.ems.service.KeyedCommandProcessor;
 import eu.nebulouscloud.exn.Connector;
 import eu.nebulouscloud.exn.core.*;
 import eu.nebulouscloud.exn.handlers.ConnectorHandler;
 import eu.nebulouscloud.exn.settings.StaticExnConfig;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.qpid.protonj2.client.Message;
 import org.apache.qpid.protonj2.client.exceptions.ClientException;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
-import org.springframework.scheduling.TaskScheduler;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.time.Duration;
-import java.time.Instant;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ScheduledFuture;
 
 @Slf4j
 @Service
 @EnableScheduling
 @RequiredArgsConstructor
-public class NebulousEventsService implements InitializingBean {
+public class NebulousEventsService implements InitializingBean, DisposableBean {
 	private final EmsBootProperties properties;
 	private final ExternalBrokerServiceProperties externalBrokerServiceProperties;
-	private final TaskScheduler taskScheduler;
 	private final BootService bootService;
 	private final ModelsService modelsService;
+	private final ObjectProvider<MeterRegistry> meterRegistryProvider;
     private Publisher modelsResponsePublisher;
 	private Publisher emsBootResponsePublisher;
-	private final ArrayBlockingQueue<Command> commandQueue = new ArrayBlockingQueue<>(100);
-	private ScheduledFuture<?> processorFuture;
+	private KeyedCommandProcessor<Command> commandProcessor;
 
 	@Override
 	public void afterPropertiesSet() throws Exception {
@@ -55,8 +53,14 @@ public class NebulousEventsService implements InitializingBean {
 		}
 
 		log.info("EMS Boot is enabled");
-		initializeConnector();
 		startCommandProcessor();
+		initializeConnector();
+	}
+
+	@Override
+	public void destroy() {
+		if (commandProcessor!=null)
+			commandProcessor.shutdown();
 	}
 
 	private void initializeConnector() {
@@ -68,9 +72,7 @@ public class NebulousEventsService implements InitializingBean {
 					log.info("MessageHandler: Got new message: key={}, address={}, body={}, message={}",
 							key, address, body, message);
 					super.onMessage(key, address, body, message, context);
-					commandQueue.add(new Command(key, address, body, message, context));
-				} catch (IllegalStateException e) {
-					log.warn("MessageHandler: Commands queue is full. Dropping command: queue-size={}", commandQueue.size());
+					commandProcessor.submit(new Command(key, address, body, message, context));
 				} catch (Exception e) {
 					log.warn("MessageHandler: Error while processing message: ", e);
 				}
@@ -121,19 +123,29 @@ public class NebulousEventsService implements InitializingBean {
 	}
 
 	private void startCommandProcessor() {
-		processorFuture = taskScheduler.scheduleAtFixedRate(() -> {
-			if (! commandQueue.isEmpty()) {
-				try {
-					Command command = commandQueue.take();
-					processMessage(command);
-				} catch (InterruptedException e) {
-					log.warn("Command processor interrupted. Exiting process loop");
-					processorFuture.cancel(false);
-				} catch (Exception e) {
-					log.warn("Exception while processing command: {}\n", commandQueue, e);
-				}
-			}
-		}, Instant.now(), Duration.ofMillis(properties.getProcessorPeriod()));
+		// Commands of different applications are processed in parallel, and of the same application in order
+		commandProcessor = new KeyedCommandProcessor<>("ems-boot-processor",
+				properties.getProcessorWorkers(), properties.getProcessorQueueWarnThreshold(),
+				this::getAppIdSafe, this::getCoalescingKey, this::processMessage);
+		commandProcessor.registerMetrics(meterRegistryProvider.getIfAvailable());
+	}
+
+	private String getAppIdSafe(Command command) {
+		try {
+			return getAppId(command);
+		} catch (Exception e) {
+			log.debug("Could not get app id of command: ", e);
+			return null;
+		}
+	}
+
+	private String getCoalescingKey(Command command) {
+		// A newer solution or optimiser metrics list supersedes the pending one of the same app
+		if (properties.getSolutionsTopic().equals(command.address()))
+			return "solution-" + Boolean.parseBoolean(command.body().getOrDefault("DeploySolution", "false").toString());
+		if (properties.getOptimiserMetricsTopic().equals(command.address()))
+			return "optimiser-metrics";
+		return null;
 	}
 
 	private void processMessage(Command command) throws ClientException, IOException {
@@ -13,26 +13,36 @@ import eu.nebulous.ems.EmsNebulousProperties;
 import gr.iccs.imu.ems.baguette.server.ClientShellCommand;
 import gr.iccs.imu.ems.common.k8s.K8sClient;
 import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Service;
 
 import java.io.Serializable;
-import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
- * Kubernetes cluster pods watcher service
+ * Kubernetes cluster pods watcher service.
+ * Keeps a local index of the running pods (by UID, host IP and app label), fed by a Kubernetes informer
+ * (watch with periodic resync), and pushes pod info only to the EMS clients whose host pods have changed.
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
-public class K8sPodWatcher implements InitializingBean {
+public class K8sPodWatcher implements InitializingBean, DisposableBean {
+    final static String UID_INDEX = "uid";
+    final static String HOST_IP_INDEX = "hostIP";
+    final static String APP_LABEL_INDEX = "appLabel";
+
     private final K8sServiceProperties properties;
     private final TaskScheduler taskScheduler;
     private final EmsNebulousProperties emsNebulousProperties;
@@ -40,109 +50,195 @@ public class K8sPodWatcher implements InitializingBean {
     private String EMS_SERVER_POD_UID;
     private String APP_POD_LABEL;
 
+    private K8sClient k8sClient;
+    private SharedIndexInformer<Pod> informer;
+    private final Set<String> changedHosts = ConcurrentHashMap.newKeySet();
+    private final Map<String, Set<K8sClient.PodEntry>> podInfoSent = new ConcurrentHashMap<>();   // EMS client pod UID -> pods sent
+
     @Override
     public void afterPropertiesSet() throws Exception {
+        EMS_SERVER_POD_UID = StringUtils.defaultIfBlank(
+                emsNebulousProperties.getEmsServerPodUid(), "");
+        APP_POD_LABEL = emsNebulousProperties.getAppPodLabel();
+
         boolean envVarEnable = Boolean.parseBoolean(K8sClient.getConfig("K8S_WATCHER_ENABLED", "false"));
         if (properties.isEnabled() || envVarEnable) {
             Instant initDelay = Instant.now().plus(properties.getInitDelay());
-            Duration period = properties.getPeriod();
-            taskScheduler.scheduleAtFixedRate(this::doWatch, initDelay, period);
-            log.info("K8sPodWatcher: Enabled  (running every {}, init-delay={})", period, properties.getInitDelay());
+            taskScheduler.schedule(this::startInformer, initDelay);
+            taskScheduler.scheduleWithFixedDelay(() -> pushPodChanges(false), initDelay, properties.getPushCheckPeriod());
+            taskScheduler.scheduleWithFixedDelay(() -> pushPodChanges(true), initDelay, properties.getPeriod());
+            log.info("K8sPodWatcher: Enabled  (period={}, push-check-period={}, resync-period={}, init-delay={})",
+                    properties.getPeriod(), properties.getPushCheckPeriod(), properties.getResyncPeriod(), properties.getInitDelay());
         } else {
             log.info("K8sPodWatcher: Disabled  (to enable set 'k8s-watcher.enable' property or K8S_WATCHER_ENABLED env. var. to true)");
         }
-        EMS_SERVER_POD_UID = StringUtils.defaultIfBlank(
-                emsNebulousProperties.getEmsServerPodUid(), "");
-        APP_POD_LABEL = emsNebulousProperties.getAppPodLabel();
     }
 
-    private void doWatch() {
+    @Override
+    public void destroy() throws Exception {
+        if (informer!=null) informer.close();
+        if (k8sClient!=null) k8sClient.close();
+    }
+
+    private void startInformer() {
         try {
-            // Get running pods and apply exclusions
-            log.debug("K8sPodWatcher: BEGIN: Retrieving active Kubernetes cluster pods");
-
-            HashMap<String, K8sClient.PodEntry> uuidToPodsMap = new HashMap<>();
-            HashMap<String, Set<K8sClient.PodEntry>> podsPerHost = new HashMap<>();
-            try (K8sClient client = K8sClient.create()) {
-                List<Pod> podsList = client.getRunningPodsInfo();
-                log.trace("K8sPodWatcher: Got pods list: {}", podsList);
-                if (podsList==null) {
-                    log.warn("K8sPodWatcher: PROBLEM with Kubernetes? No pods retrieved from K8S API server");
-                    log.debug("K8sPodWatcher: END");
+            k8sClient = K8sClient.create();
+            start(k8sClient.client());
+        } catch (Exception e) {
+            log.warn("K8sPodWatcher: ERROR while starting pods informer: ", e);
+        }
+    }
+
+    void start(KubernetesClient client) {
+        log.debug("K8sPodWatcher: Starting pods informer");
+        informer = client.pods().inAnyNamespace().runnableInformer(properties.getResyncPeriod().toMillis());
+        informer.addIndexers(Map.of(
+                UID_INDEX, pod -> isIncluded(pod) ? List.of(pod.getMetadata().getUid()) : List.of(),
+                HOST_IP_INDEX, pod -> isIncluded(pod) && pod.getStatus().getHostIP()!=null
+                        ? List.of(pod.getStatus().getHostIP()) : List.of(),
+                APP_LABEL_INDEX, pod -> isIncluded(pod) && getAppLabel(pod)!=null
+                        ? List.of(getAppLabel(pod)) : List.of()
+        ));
+        informer.addEventHandler(new ResourceEventHandler<>() {
+            @Override
+            public void onAdd(Pod pod) {
+                markHostChanged(pod);
+            }
+
+            @Override
+            public void onUpdate(Pod oldPod, Pod newPod) {
+                markHostChanged(oldPod);
+                markHostChanged(newPod);
+            }
+
+            @Override
+            public void onDelete(Pod pod, boolean deletedFinalStateUnknown) {
+                markHostChanged(pod);
+            }
+        });
+        informer.start();
+        log.info("K8sPodWatcher: Pods informer started");
+    }
+
+    private boolean isIncluded(Pod pod) {
+        if (pod.getStatus()==null || ! "Running".equalsIgnoreCase(pod.getStatus().getPhase()))
+            return false;
+        if (properties.getIgnorePodsInNamespaces().contains(pod.getMetadata().getNamespace()))
+            return false;
+        String appLabelValue = getAppLabel(pod);
+        return StringUtils.isBlank(appLabelValue) || ! properties.getIgnorePodsWithAppLabel().contains(appLabelValue);
+    }
+
+    private String getAppLabel(Pod pod) {
+        Map<String, String> labels = pod.getMetadata().getLabels();
+        return labels!=null ? labels.get(APP_POD_LABEL) : null;
+    }
+
+    private void markHostChanged(Pod pod) {
+        String hostIp = pod.getStatus()!=null ? pod.getStatus().getHostIP() : null;
+        if (StringUtils.isNotBlank(hostIp)) {
+            changedHosts.add(hostIp);
+            log.trace("K8sPodWatcher: Pod changed: uid={}, name={}, host={}",
+                    pod.getMetadata().getUid(), pod.getMetadata().getName(), hostIp);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    //  Pod index queries
+    // ------------------------------------------------------------------------
+
+    boolean isSynced() {
+        return informer!=null && informer.hasSynced();
+    }
+
+    K8sClient.PodEntry getPod(String podUid) {
+        if (informer==null || podUid==null) return null;
+        return informer.getIndexer().byIndex(UID_INDEX, podUid).stream()
+                .findFirst().map(K8sClient.PodEntry::new).orElse(null);
+    }
+
+    List<K8sClient.PodEntry> getPodsInHost(String hostIp) {
+        if (informer==null || hostIp==null) return List.of();
+        return informer.getIndexer().byIndex(HOST_IP_INDEX, hostIp).stream()
+                .map(K8sClient.PodEntry::new).toList();
+    }
+
+    List<K8sClient.PodEntry> getPodsWithAppLabel(String appLabelValue) {
+        if (informer==null || appLabelValue==null) return List.of();
+        return informer.getIndexer().byIndex(APP_LABEL_INDEX, appLabelValue).stream()
+                .map(K8sClient.PodEntry::new).toList();
+    }
+
+    /**
+     * Returns the pods in the same host with the given EMS client pod (excluding EMS server and client pods).
+     * Returns null if the EMS client pod is not known.
+     */
+    Set<K8sClient.PodEntry> getPodInfoForEmsClient(String emsClientPodUid) {
+        K8sClient.PodEntry emsClientPod = getPod(emsClientPodUid);
+        if (emsClientPod==null) return null;
+        return getPodsInHost(emsClientPod.hostIP()).stream()
+                .filter(pod -> ! pod.podUid().equalsIgnoreCase(EMS_SERVER_POD_UID))
+                .filter(pod -> ! pod.podUid().equalsIgnoreCase(emsClientPodUid))
+                .collect(Collectors.toSet());
+    }
+
+    Set<String> getChangedHosts() {
+        return Collections.unmodifiableSet(changedHosts);
+    }
+
+    // ------------------------------------------------------------------------
+    //  Push pod changes to EMS clients
+    // ------------------------------------------------------------------------
+
+    // Pushes pod changes to the EMS clients in changed hosts and to new EMS clients, or to all EMS clients if 'checkAllClients' is true
+    private synchronized void pushPodChanges(boolean checkAllClients) {
+        try {
+            if (! isSynced()) {
+                log.debug("K8sPodWatcher: Pods informer not synced yet");
+                return;
+            }
+
+            // Take changed hosts
+            Set<String> hosts = new HashSet<>(changedHosts);
+            changedHosts.removeAll(hosts);
+
+            // Forget EMS clients that are no longer active
+            List<ClientShellCommand> activeClients = new ArrayList<>(ClientShellCommand.getActive());
+            Set<String> activeClientIds = activeClients.stream().map(ClientShellCommand::getClientId)
+                    .filter(Objects::nonNull).collect(Collectors.toSet());
+            podInfoSent.keySet().retainAll(activeClientIds);
+
+            // Update EMS clients in changed hosts, and new EMS clients
+            activeClients.forEach(csc -> {
+                String clientId = csc.getClientId();
+                if (clientId==null) return;
+                boolean isNewClient = ! podInfoSent.containsKey(clientId);
+                K8sClient.PodEntry emsClientPod = getPod(clientId);
+                if (emsClientPod==null) {
+                    log.trace("K8sPodWatcher: EMS client pod not found in index: pod-uid={}", clientId);
                     return;
                 }
+                if (! checkAllClients && ! isNewClient && ! hosts.contains(emsClientPod.hostIP()))
+                    return;
 
-                podsList.forEach(pod -> {
-                    String ns = pod.getMetadata().getNamespace();
-                    String appLabelValue = pod.getMetadata().getLabels().get(APP_POD_LABEL);
-                    log.trace("K8sPodWatcher: Got pod: uid={}, name={}, address={}, namespace={}, app-label={}",
-                            pod.getMetadata().getUid(), pod.getMetadata().getName(), pod.getStatus().getPodIP(),
-                            ns, appLabelValue);
-                    if (properties.getIgnorePodsInNamespaces().contains(ns))
-                        return;
-                    if (StringUtils.isNotBlank(appLabelValue) && properties.getIgnorePodsWithAppLabel().contains(appLabelValue))
-                        return;
-                    K8sClient.PodEntry entry = new K8sClient.PodEntry(pod);
-                    uuidToPodsMap.put(pod.getMetadata().getUid(), entry);
-                    String podHostIp = pod.getStatus().getHostIP();
-                    podsPerHost.computeIfAbsent(podHostIp, s -> new HashSet<>()).add(entry);
-                    log.trace("K8sPodWatcher: Keeping pod: uid={}, name={}, address={}",
-                            pod.getMetadata().getUid(), pod.getMetadata().getName(), pod.getStatus().getPodIP());
-                });
-
-            } // End of try-with-resources
-            log.debug("K8sPodWatcher: Active Kubernetes cluster pods: uuidToPodsMap: {}", uuidToPodsMap);
-            log.debug("K8sPodWatcher: Active Kubernetes cluster pods:   podsPerHost: {}", podsPerHost);
-
-            // Group running pods per host IP
-            log.debug("K8sPodWatcher: Processing active pods per active EMS client: ems-clients: {}", ClientShellCommand.getActive());
-            Map<ClientShellCommand,List<K8sClient.PodEntry>> emsClientPodLists = new HashMap<>();
-            ClientShellCommand.getActive().forEach(csc -> {
-                //String id = csc.getId();
-                String emsClientPodUuid = csc.getClientId();
-                String address = csc.getClientIpAddress();
-                log.trace("K8sPodWatcher: EMS client: pod-uid={}, address={}", emsClientPodUuid, address);
-
-                K8sClient.PodEntry emsClientPod = uuidToPodsMap.get(emsClientPodUuid);
-                log.trace("K8sPodWatcher: EMS client: pod-entry: {}", emsClientPod);
-                String emsClientPodHostIp = emsClientPod.hostIP();
-                Set<K8sClient.PodEntry> podsInHost = podsPerHost.get(emsClientPodHostIp);
-                log.trace("K8sPodWatcher: EMS client: pod-host-address={}, pods-in-host: {}", emsClientPodHostIp, podsInHost);
-                List<K8sClient.PodEntry> podsInHostWithoutEmsClient = podsInHost.stream()
-                        .filter(pod -> ! pod.podUid().equalsIgnoreCase(EMS_SERVER_POD_UID))
-                        .filter(pod -> ! pod.podUid().equalsIgnoreCase(emsClientPodUuid))
-                        .toList();
-                log.trace("K8sPodWatcher: EMS client: pod-host-address={}, Filtered-pods-in-host: {}", emsClientPodHostIp, podsInHostWithoutEmsClient);
-                LinkedList<K8sClient.PodEntry> list = new LinkedList<>();
-                list.add(emsClientPod);
-                list.addAll(podsInHostWithoutEmsClient);
-                emsClientPodLists.put(csc, list);
-            });
-            log.debug("K8sPodWatcher: Active Kubernetes cluster pods per EMS client: {}", emsClientPodLists);
+                Set<K8sClient.PodEntry> newPodInfo = getPodInfoForEmsClient(clientId);
+                if (newPodInfo==null || newPodInfo.equals(podInfoSent.get(clientId)))
+                    return;
 
-            // Update EMS client configurations
-            log.debug("K8sPodWatcher: Updating EMS client configurations with active pods: {}", emsClientPodLists);
-            emsClientPodLists.forEach((csc, podList) -> {
-                K8sClient.PodEntry emsClientPod = podList.get(0);
-                List<K8sClient.PodEntry> otherPods = podList.subList(1, podList.size());
-                String clientId = csc.getClientId();
                 String hostIp = emsClientPod.hostIP();
-
                 Set<Serializable> oldPodSet = csc.getClientConfiguration().getNodesWithoutClient();
-                Set<Serializable> newPodSet = otherPods.stream().map(K8sClient.PodEntry::podIP).collect(Collectors.toSet());
+                Set<Serializable> newPodSet = newPodInfo.stream().map(K8sClient.PodEntry::podIP).collect(Collectors.toSet());
                 log.info("K8sPodWatcher: EMS client: {} @{} -- Old pod set: {} -- New pod set: {}", clientId, hostIp, oldPodSet, newPodSet);
                 csc.getClientConfiguration().setNodesWithoutClient(newPodSet);
-                csc.getClientConfiguration().setPodInfo(new HashSet<>(otherPods));
+                csc.getClientConfiguration().setPodInfo(new HashSet<>(newPodInfo));
 
                 log.trace("K8sPodWatcher: EMS client: {} @{} -- Sending configuration to EMS client", clientId, hostIp);
                 csc.sendClientConfiguration();
+                podInfoSent.put(clientId, newPodInfo);
             });
-            log.debug("K8sPodWatcher: Updated EMS client configurations with active pods");
-
-            log.debug("K8sPodWatcher: END");
 
         } catch (Exception e) {
-            log.warn("K8sPodWatcher: ERROR while running doWatch: ", e);
+            log.warn("K8sPodWatcher: ERROR while pushing pod changes: ", e);
         }
     }
 }
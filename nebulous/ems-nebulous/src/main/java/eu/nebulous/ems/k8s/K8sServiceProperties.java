@@ -28,7 +28,9 @@ import static gr.iccs.imu.ems.util.EmsConstant.EMS_PROPERTIES_PREFIX;
 public class K8sServiceProperties implements InitializingBean {
     private boolean enabled = true;
     private Duration initDelay = Duration.ofSeconds(30);
-    private Duration period = Duration.ofSeconds(60);
+    private Duration period = Duration.ofSeconds(60);              // Pod watch period. All EMS client pod sets are re-checked
+    private Duration pushCheckPeriod = Duration.ofSeconds(5);      // Check period for pushing pod changes reported by the informer
+    private Duration resyncPeriod = Duration.ofMinutes(10);        // Pods informer resync period
     private boolean deployEmsClientsOnKubernetesEnabled = true;
 
     // Pod filters
@@ -13,27 +13,29 @@ import eu.nebulouscloud.exn.core.Consumer;
 import eu.nebulouscloud.exn.core.Context;
 import eu.nebulouscloud.exn.core.Handler;
 import eu.nebulouscloud.exn.core.Publisher;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.qpid.protonj2.client.Message;
 import org.apache.qpid.protonj2.client.exceptions.ClientException;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Service;
 
-import java.time.Instant;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
 
 @Slf4j
 @Service
-public class ExternalBrokerListenerService extends AbstractExternalBrokerService implements InitializingBean {
-	private final ArrayBlockingQueue<Command> commandQueue = new ArrayBlockingQueue<>(100);
+public class ExternalBrokerListenerService extends AbstractExternalBrokerService implements InitializingBean, DisposableBean {
 	private final ExternalBrokerCommandsReceiver externalBrokerCommandsReceiver;
 	private final EmsNebulousProperties emsNebulousProperties;
 	private final MvvService mvvService;
+	private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+	private KeyedCommandProcessor<Command> commandProcessor;
 	private List<Consumer> consumers;
 	@Getter
 	private Publisher commandsResponsePublisher;
@@ -46,12 +48,14 @@ public class ExternalBrokerListenerService extends AbstractExternalBrokerService
 										 ExternalBrokerServiceProperties properties,
 										 EmsNebulousProperties emsNebulousProperties,
 										 TaskScheduler taskScheduler,
-										 MvvService mvvService)
+										 MvvService mvvService,
+										 ObjectProvider<MeterRegistry> meterRegistryProvider)
 	{
 		super(properties, taskScheduler);
 		this.externalBrokerCommandsReceiver = externalBrokerCommandsReceiver;
 		this.emsNebulousProperties = emsNebulousProperties;
 		this.mvvService = mvvService;
+		this.meterRegistryProvider = meterRegistryProvider;
 	}
 
 	@Override
@@ -78,6 +82,12 @@ public class ExternalBrokerListenerService extends AbstractExternalBrokerService
 		}
 	}
 
+	@Override
+	public void destroy() {
+		if (commandProcessor!=null)
+			commandProcessor.shutdown();
+	}
+
 	private void initializeConsumers() {
 		// Create message handler
 		Handler messageHandler = new Handler() {
@@ -87,9 +97,7 @@ public class ExternalBrokerListenerService extends AbstractExternalBrokerService
 					log.info("ExternalBrokerListenerService: messageHandler: Got new message: key={}, address={}, body={}, message={}",
 							key, address, body, message);
 					super.onMessage(key, address, body, message, context);
-					commandQueue.add(new Command(key, address, body, message, context));
-				} catch (IllegalStateException e) {
-					log.warn("ExternalBrokerListenerService: Commands queue is full. Dropping command: queue-size={}", commandQueue.size());
+					commandProcessor.submit(new Command(key, address, body, message, context));
 				} catch (Exception e) {
 					log.warn("ExternalBrokerListenerService: Error while processing message: ", e);
 				}
@@ -110,19 +118,30 @@ public class ExternalBrokerListenerService extends AbstractExternalBrokerService
 	}
 
 	private void startCommandProcessor() {
-		taskScheduler.schedule(()->{
-			while (true) {
-				try {
-					Command command = commandQueue.take();
-					processMessage(command);
-				} catch (InterruptedException e) {
-					log.warn("ExternalBrokerListenerService: Command processor interrupted. Exiting process loop");
-					break;
-				} catch (Exception e) {
-					log.warn("ExternalBrokerListenerService: Exception while processing command: {}\n", commandQueue, e);
-				}
+		// Commands of different applications are processed in parallel, and of the same application in order
+		commandProcessor = new KeyedCommandProcessor<>("external-broker-processor",
+				properties.getProcessorWorkers(), properties.getProcessorQueueWarnThreshold(),
+				this::getCommandKey, this::getCoalescingKey, this::processMessage);
+		commandProcessor.registerMetrics(meterRegistryProvider.getIfAvailable());
+	}
+
+	private String getCommandKey(Command command) {
+		Object appId = command.body!=null ? command.body.get("application") : null;
+		if (appId==null && command.message!=null) {
+			try {
+				appId = command.message.property(properties.getApplicationIdPropertyName());
+			} catch (ClientException e) {
+				log.debug("ExternalBrokerListenerService: Could not read application id property: ", e);
 			}
-		}, Instant.now());
+		}
+		return appId!=null ? appId.toString() : applicationId;
+	}
+
+	private String getCoalescingKey(Command command) {
+		// A newer solution supersedes the pending one
+		if (properties.getSolutionsTopic().equals(command.address) && command.body!=null)
+			return "solution-" + command.body.get("DeploySolution");
+		return null;
 	}
 
 	private void processMessage(Command command) throws ClientException {
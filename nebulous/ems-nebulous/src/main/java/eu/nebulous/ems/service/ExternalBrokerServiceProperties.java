@@ -46,6 +46,9 @@ public class ExternalBrokerServiceProperties implements InitializingBean {
 
     private String applicationIdPropertyName = "application";
 
+    private int processorWorkers = 2;
+    private int processorQueueWarnThreshold = 1000;
+
     private String commandsTopic         = BASE_TOPIC_PREFIX + "commands";
     private String commandsResponseTopic = BASE_TOPIC_PREFIX + "commands.reply";
 
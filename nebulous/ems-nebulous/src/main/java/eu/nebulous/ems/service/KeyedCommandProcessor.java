@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2023-2025 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package eu.nebulous.ems.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Processes commands concurrently across keys (e.g. application ids), while keeping
+ * the commands of the same key in arrival order. Commands are never dropped.
+ * Consecutive pending commands of the same key with the same (non-null) coalescing key
+ * are collapsed, keeping only the latest one (e.g. superseded solution updates).
+ */
+@Slf4j
+public class KeyedCommandProcessor<T> {
+	@FunctionalInterface
+	public interface CommandHandler<T> {
+		void handle(T command) throws Exception;
+	}
+
+	private record Pending<T>(T command, String coalescingKey) { }
+
+	private final String name;
+	private final Function<T,String> keyFunction;
+	private final Function<T,String> coalescingKeyFunction;
+	private final CommandHandler<T> handler;
+	private final int queueWarnThreshold;
+	private final ExecutorService executor;
+
+	private final Map<String,Deque<Pending<T>>> lanes = new ConcurrentHashMap<>();
+	private final AtomicInteger queueDepth = new AtomicInteger();
+	private final AtomicLong processedCount = new AtomicLong();
+	private final AtomicLong coalescedCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+
+	public KeyedCommandProcessor(@NonNull String name, int workers, int queueWarnThreshold,
+								 @NonNull Function<T,String> keyFunction, Function<T,String> coalescingKeyFunction,
+								 @NonNull CommandHandler<T> handler)
+	{
+		this.name = name;
+		this.keyFunction = keyFunction;
+		this.coalescingKeyFunction = coalescingKeyFunction;
+		this.handler = handler;
+		this.queueWarnThreshold = queueWarnThreshold;
+		AtomicInteger threadNum = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(Math.max(1, workers), r -> {
+			Thread t = new Thread(r, name + "-" + threadNum.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	public void submit(@NonNull T command) {
+		String key = Objects.requireNonNullElse(keyFunction.apply(command), "");
+		String coalescingKey = coalescingKeyFunction!=null ? coalescingKeyFunction.apply(command) : null;
+		Pending<T> pending = new Pending<>(command, coalescingKey);
+
+		boolean startLane;
+		Deque<Pending<T>> lane;
+		while (true) {
+			lane = lanes.computeIfAbsent(key, k -> new ArrayDeque<>());
+			synchronized (lane) {
+				// Lanes are removed from 'lanes' when drained, so retry if this lane is stale
+				if (lanes.get(key)!=lane) continue;
+				Pending<T> last = lane.peekLast();
+				if (coalescingKey!=null && last!=null && lane.size()>1 && coalescingKey.equals(last.coalescingKey())) {
+					// The head of the lane is being processed, so only pending commands are replaced
+					lane.pollLast();
+					coalescedCount.incrementAndGet();
+					queueDepth.decrementAndGet();
+					log.debug("{}: Coalesced superseded command: key={}, coalescing-key={}", name, key, coalescingKey);
+				}
+				lane.addLast(pending);
+				startLane = lane.size()==1;
+				break;
+			}
+		}
+		int depth = queueDepth.incrementAndGet();
+		if (queueWarnThreshold>0 && depth>queueWarnThreshold)
+			log.warn("{}: Commands queue depth is high: depth={}, keys={}", name, depth, lanes.size());
+
+		if (startLane) {
+			Deque<Pending<T>> laneToDrain = lane;
+			executor.execute(() -> drain(key, laneToDrain));
+		}
+	}
+
+	private void drain(String key, Deque<Pending<T>> lane) {
+		while (true) {
+			Pending<T> pending;
+			synchronized (lane) {
+				pending = lane.peekFirst();
+			}
+			if (pending==null) return;
+
+			try {
+				handler.handle(pending.command());
+				processedCount.incrementAndGet();
+			} catch (Exception e) {
+				failedCount.incrementAndGet();
+				log.warn("{}: Exception while processing command: key={}, command={}\n", name, key, pending.command(), e);
+			}
+
+			synchronized (lane) {
+				lane.pollFirst();
+				queueDepth.decrementAndGet();
+				if (lane.isEmpty()) {
+					lanes.remove(key, lane);
+					return;
+				}
+			}
+		}
+	}
+
+	public void registerMetrics(MeterRegistry meterRegistry) {
+		if (meterRegistry==null) return;
+		Gauge.builder("ems-command-queue-depth", queueDepth, AtomicInteger::get)
+				.description("Commands pending or in-process")
+				.tags("processor", name)
+				.register(meterRegistry);
+		Gauge.builder("ems-command-queue-keys", lanes, Map::size)
+				.description("Keys with pending or in-process commands")
+				.tags("processor", name)
+				.register(meterRegistry);
+		FunctionCounter.builder("ems-command-processed", processedCount, AtomicLong::get)
+				.tags("processor", name).register(meterRegistry);
+		FunctionCounter.builder("ems-command-coalesced", coalescedCount, AtomicLong::get)
+				.tags("processor", name).register(meterRegistry);
+		FunctionCounter.builder("ems-command-failed", failedCount, AtomicLong::get)
+				.tags("processor", name).register(meterRegistry);
+	}
+
+	public void shutdown() {
+		executor.shutdown();
+		try {
+			if (! executor.awaitTermination(5, TimeUnit.SECONDS))
+				executor.shutdownNow();
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public int getQueueDepth() { return queueDepth.get(); }
+	public int getActiveKeys() { return lanes.size(); }
+	public long getProcessedCount() { return processedCount.get(); }
+	public long getCoalescedCount() { return coalescedCount.get(); }
+	public long getFailedCount() { return failedCount.get(); }
+}
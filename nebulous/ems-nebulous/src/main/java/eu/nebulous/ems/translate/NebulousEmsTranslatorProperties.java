@@ -55,6 +55,10 @@ public class NebulousEmsTranslatorProperties implements InitializingBean {
     private boolean addTopLevelMetrics = true;
     private String fullNamePattern = "{ELEM}";
 
+    // Rule generation settings
+    private boolean compileRuleTemplates = true;        // Pre-compile rule templates, instead of processing them with Thymeleaf for each rule
+    private boolean optimizeRules;                      // Canonicalize window view parameters, so that identical data windows are shared by the CEP engine
+
     // Busy-Status metric settings
     private String busyStatusDestinationNameFormatter = "busy.%s";
 
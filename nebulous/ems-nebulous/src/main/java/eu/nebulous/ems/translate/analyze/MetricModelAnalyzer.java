@@ -8,10 +8,6 @@
 
 package eu.nebulous.ems.translate.analyze;
 
-import com.jayway.jsonpath.Configuration;
-import com.jayway.jsonpath.DocumentContext;
-import com.jayway.jsonpath.JsonPath;
-import com.jayway.jsonpath.ParseContext;
 import eu.nebulous.ems.translate.NebulousEmsTranslatorProperties;
 import gr.iccs.imu.ems.translate.Grouping;
 import gr.iccs.imu.ems.translate.TranslationContext;
@@ -55,14 +51,14 @@ public class MetricModelAnalyzer {
         nodeUpdatingHelper.reset();
         sensorsHelper.reset();
 
-        // ----- Initialize jsonpath context ----------------------------------
-        Configuration jsonpathConfig = Configuration.defaultConfiguration();
-        ParseContext parseContext = JsonPath.using(jsonpathConfig);
-        DocumentContext ctx = parseContext.parse(metricModel);
-
         // ----- Model processing ---------------------------------------------
         log.debug("MetricModelAnalyzer.analyzeModel(): Analyzing metric model: {}", metricModel);
-        Map<String, Object> topLevelModelElements = ctx.read("$", Map.class);
+        Map<String, Object> topLevelModelElements = asMap(metricModel);
+
+        // ----- Index model elements, in a single walk -----
+        // Also sets container name and makes mutable all 'spec' elements (and sub-elements)
+        log.debug("MetricModelAnalyzer.analyzeModel(): Index model elements");
+        MetricModelIndex index = MetricModelIndex.build(topLevelModelElements);
 
         // ----- Define additional translation structures and cache them in _TC -----
         _TC.setExtensionContext(new AdditionalTranslationContextData());
@@ -76,15 +72,14 @@ public class MetricModelAnalyzer {
         // ----- Process function specifications -----
         log.debug("MetricModelAnalyzer.analyzeModel(): Process function specs");
         if (topLevelModelElements.containsKey("functions")) {
-            List<Object> functionSpecsList = ctx.read("$.functions.*", List.class);
-            functionSpecsList.stream().filter(s -> s instanceof Map).forEach(s -> {
+            index.getFunctionSpecs().stream().filter(s -> s instanceof Map).forEach(s -> {
                 functionsHelper.processFunction(_TC, s);
             });
         }
 
         // ----- Check if component and scope specifications exist -----
         log.debug("MetricModelAnalyzer.analyzeModel(): Checking for component and scope specs");
-        Map specs = ctx.read("$.spec", Map.class);
+        Map<String, Object> specs = index.getSpecs();
         if (log.isDebugEnabled()) {
             log.debug("MetricModelAnalyzer.analyzeModel():  spec.components: {}", specs.get("components"));
             log.debug("MetricModelAnalyzer.analyzeModel():  spec.scopes: {}", specs.get("scopes"));
@@ -101,9 +96,9 @@ public class MetricModelAnalyzer {
 
         // ----- Get component and scope names -----
         log.debug("MetricModelAnalyzer.analyzeModel(): Check name uniqueness");
-        List<String> componentNamesList = ctx.read("$.spec.components.*.name", List.class);
+        List<String> componentNamesList = index.getComponentNames();
         List<String> scopeNamesList = hasScopes
-                ? ctx.read("$.spec.scopes.*.name", List.class) : Collections.emptyList();
+                ? index.getScopeNames() : Collections.emptyList();
         log.debug("Component names: {}", componentNamesList);
         log.debug("    Scope names: {}", scopeNamesList);
 
@@ -113,14 +108,7 @@ public class MetricModelAnalyzer {
         Set<String> scopeNames = new LinkedHashSet<>(scopeNamesList);
 
         // Check name uniqueness
-        checkAllNamesUniqueness(ctx, componentNames, scopeNames);
-
-        // ----- Set container name and make mutable all 'spec' elements (and sub-elements) -----
-        log.debug("MetricModelAnalyzer.analyzeModel(): Set element containers");
-        Map<String, Object> modelRoot = asMap(ctx.read("$"));
-        Object specNode = modelRoot.get("spec");
-        specNode = addContainerNameAndMakeMutable(specNode, null);
-        modelRoot.put("spec", specNode);
+        checkAllNamesUniqueness(index, componentNames, scopeNames);
 
         // ----- Create object contexts for components -----
         log.debug("MetricModelAnalyzer.analyzeModel(): Create object contexts");
@@ -128,18 +116,18 @@ public class MetricModelAnalyzer {
 
         // ----- Build flat lists of metrics, constraints and SLOs, and check their specs -----
         log.debug("MetricModelAnalyzer.analyzeModel(): Build element lists");
-        buildElementLists(_TC, modelRoot);
+        buildElementLists(_TC, index);
         log.debug("    All Metrics: {}", $$(_TC).allMetrics);
         log.debug("All Constraints: {}", $$(_TC).allConstraints);
         log.debug("       All SLOs: {}", $$(_TC).allSLOs);
 
         // ----- Build scope-to-components map -----
         $$(_TC).scopesComponents = hasScopes
-                ? nodeUpdatingHelper.createScopesToComponentsMap(ctx, componentNames) : Collections.emptyMap();
+                ? nodeUpdatingHelper.createScopesToComponentsMap(index, componentNames) : Collections.emptyMap();
 
         // ----- Build of constants lists -----
         log.debug("MetricModelAnalyzer.analyzeModel(): Build constants list");
-        buildConstantsList(_TC, modelRoot);
+        buildConstantsList(_TC, index);
 
         // ----- Process SLOs -----
         log.debug("MetricModelAnalyzer.analyzeModel(): Process SLOs");
@@ -158,7 +146,7 @@ public class MetricModelAnalyzer {
             log.debug("MetricModelAnalyzer.analyzeModel(): Updating DAG nodes with requiring component names");
 
             // Build component to SLO maps
-            nodeUpdatingHelper.buildComponentsToSLOsMap(_TC, ctx, componentNames);
+            nodeUpdatingHelper.buildComponentsToSLOsMap(_TC, index, componentNames);
             nodeUpdatingHelper.buildSLOToComponentsMap(_TC);
 
             // Update DAG nodes with components requiring them (busy-status and orphans are required by all components)
@@ -221,7 +209,7 @@ public class MetricModelAnalyzer {
         }
     }
 
-    private void checkAllNamesUniqueness(DocumentContext ctx, Set<String> componentNames, Set<String> scopeNames) {
+    private void checkAllNamesUniqueness(MetricModelIndex index, Set<String> componentNames, Set<String> scopeNames) {
         /*List<String> allNames = Stream.of(
                 $$(_TC).allMetrics.keySet().stream().map(NamesKey::name),
                 $$(_TC).allSLOs.keySet().stream().map(NamesKey::name),
@@ -237,7 +225,7 @@ public class MetricModelAnalyzer {
         allNames.addAll(scopeNames);
 
         // Add metric names
-        filterSpecsList(asList(ctx.read("$.spec.*.*.metrics.*"))).forEach(spec -> {
+        filterSpecsList(index.getMetricSpecs()).forEach(spec -> {
             log.trace("check-name-uniqueness: {}", spec);
             String name = getSpecName(spec);
             if (StringUtils.isNotBlank(name))
@@ -245,7 +233,7 @@ public class MetricModelAnalyzer {
         });
 
         // Add SLO names (but not constraint names that use the corresponding SLO names)
-        filterSpecsList(asList(ctx.read("$.spec.*.*.requirements.*"))).forEach(spec -> {
+        filterSpecsList(index.getRequirementSpecs()).forEach(spec -> {
             log.trace("check-name-uniqueness: {}", spec);
             String name = getSpecName(spec);
             if (StringUtils.isNotBlank(name))
@@ -253,7 +241,7 @@ public class MetricModelAnalyzer {
         });
 
         // Add function names
-        filterSpecsList(asList(ctx.read("$[?(@.functions!=null)].functions.*.*"))).forEach(spec -> {
+        filterSpecsList(index.getFunctionElementSpecs()).forEach(spec -> {
             log.trace("check-name-uniqueness: {}", spec);
             String name = getSpecName(spec);
             if (StringUtils.isNotBlank(name))
@@ -274,23 +262,6 @@ public class MetricModelAnalyzer {
         }
     }
 
-    private Object addContainerNameAndMakeMutable(Object o, String parentName) {
-        if (o instanceof Map m) {
-            Map<String, Object> newM = new LinkedHashMap<>();
-            newM.put(CONTAINER_NAME_KEY, parentName);
-            String myName0 = getSpecName(o);
-            String myName = parentName != null ? parentName : myName0;
-            m.forEach((k,v) -> newM.put(k.toString(), addContainerNameAndMakeMutable(v, myName)));
-            return newM;
-        } else
-        if (o instanceof List l) {
-            List<Object> newL = new LinkedList<>();
-            l.forEach(v -> newL.add(addContainerNameAndMakeMutable(v, parentName)));
-            return newL;
-        }
-        return o;
-    }
-
     private void createObjectContexts(TranslationContext _TC, Set<String> componentNames) {
         Map<String, ObjectContext> objectContexts = componentNames.stream()
                 .collect(Collectors.toMap(
@@ -302,17 +273,15 @@ public class MetricModelAnalyzer {
         $$(_TC).objectContexts.putAll(objectContexts);
     }
 
-    private void buildElementLists(TranslationContext _TC, Map<String, Object> modelRoot) {
-        filterSpecsList(asList(JsonPath.read(modelRoot, "$.spec.*.*"))).forEach(spec -> {
+    private void buildElementLists(TranslationContext _TC, MetricModelIndex index) {
+        filterSpecsList(index.getParentSpecs()).forEach(spec -> {
             log.debug("buildElementLists: {}", spec);
             String parentName = getSpecName(spec);
             if (StringUtils.isBlank(parentName)) throw createException("Component or Scope with no name: " + spec);
             $$(_TC).parentSpecs.computeIfAbsent(parentName, (key)->spec);
 
             // Requirements (SLOs) flat list building
-            List<Object> slos = JsonPath.read(spec,
-                    "$[?(@.requirements!=null && @.requirements.*[?(@.type=='slo')])].requirements.*");
-            slos = filterSpecsList(slos);
+            List<Object> slos = filterSpecsList(index.getSloSpecs(spec));
             slos.forEach(sloSpec -> {
                 log.debug("buildElementLists: SLO (requirements): {}", sloSpec);
                 String sloName = getSpecName(sloSpec);
@@ -345,8 +314,7 @@ public class MetricModelAnalyzer {
             });
 
             // Metrics flat list building
-            List<Object> metrics = JsonPath.read(spec, "$[?(@.metrics!=null)].metrics.*");
-            filterSpecsList(metrics).forEach(metricSpec -> {
+            filterSpecsList(index.getMetricSpecs(spec)).forEach(metricSpec -> {
                 log.debug("buildElementLists: Metric: {}", metricSpec);
                 String metricName = getSpecName(metricSpec);
                 if (StringUtils.isBlank(metricName)) throw createException("Metric spec with no name: " + metricSpec);
@@ -365,8 +333,8 @@ public class MetricModelAnalyzer {
                 .toList();
     }
 
-    private void buildConstantsList(TranslationContext _TC, Map<String, Object> modelRoot) {
-        filterSpecsList(asList(JsonPath.read(modelRoot, "$.spec.*.*.metrics.*[?(@.type=='constant')]"))).forEach(spec -> {
+    private void buildConstantsList(TranslationContext _TC, MetricModelIndex index) {
+        filterSpecsList(index.getConstantSpecs()).forEach(spec -> {
             metricsHelper.processConstant(_TC, asMap(spec), getContainerName(spec));
         });
     }
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2023-2025 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package eu.nebulous.ems.translate.analyze;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+
+import static eu.nebulous.ems.translate.analyze.AnalysisUtils.*;
+
+/**
+ * Indexes of the metric model elements used during model analysis, built in a single walk of the model.
+ * While walked, the 'spec' section is replaced by a mutable copy, where every map has its container name set.
+ * Each index holds the same elements, in the same order, as the JsonPath query noted next to it
+ * (run against the model after 'spec' replacement).
+ */
+@Slf4j
+@Getter
+class MetricModelIndex {
+    private final Map<String, Object> modelRoot;                                    // $
+    private final Map<String, Object> specs;                                        // $.spec
+    private final List<Object> functionSpecs = new ArrayList<>();                   // $.functions.*
+    private final List<Object> functionElementSpecs = new ArrayList<>();            // $[?(@.functions!=null)].functions.*.*
+    private final List<String> componentNames = new ArrayList<>();                  // $.spec.components.*.name
+    private final List<String> scopeNames = new ArrayList<>();                      // $.spec.scopes.*.name
+    private final List<Object> scopeSpecs = new ArrayList<>();                      // $.spec.scopes.*
+    private final List<Object> parentSpecs = new ArrayList<>();                     // $.spec.*.*
+    private final List<Object> metricSpecs = new ArrayList<>();                     // $.spec.*.*.metrics.*
+    private final List<Object> requirementSpecs = new ArrayList<>();                // $.spec.*.*.requirements.*
+    private final List<Object> constantSpecs = new ArrayList<>();                   // $.spec.*.*.metrics.*[?(@.type=='constant')]
+    @Getter(AccessLevel.NONE)
+    private final Map<Object, List<Object>> parentMetricSpecs = new IdentityHashMap<>();
+    @Getter(AccessLevel.NONE)
+    private final Map<Object, List<Object>> parentSloSpecs = new IdentityHashMap<>();
+
+    private MetricModelIndex(Map<String, Object> modelRoot, Map<String, Object> specs) {
+        this.modelRoot = modelRoot;
+        this.specs = specs;
+    }
+
+    static MetricModelIndex build(@NonNull Map<String, Object> modelRoot) {
+        Object specNode = modelRoot.get("spec");
+        if (! (specNode instanceof Map))
+            throw createException("Metric model has no 'spec' section");
+
+        // Walk 'spec' section, replacing it with a mutable copy (with container names set)
+        Map<String, Object> specs = new LinkedHashMap<>();
+        specs.put(CONTAINER_NAME_KEY, null);
+        String specName = getSpecName(specNode);
+        MetricModelIndex index = new MetricModelIndex(modelRoot, specs);
+        asMap(specNode).forEach((k, v) -> {
+            Object section = copy(v, specName);
+            specs.put(k.toString(), section);
+            index.indexSection(k.toString(), section);
+        });
+        modelRoot.put("spec", specs);
+
+        // Index function specs
+        Object functions = modelRoot.get("functions");
+        children(functions).forEach(function -> {
+            index.functionSpecs.add(function);
+            index.functionElementSpecs.addAll(children(function));
+        });
+
+        log.trace("MetricModelIndex.build(): parents={}, metrics={}, requirements={}, constants={}, functions={}",
+                index.parentSpecs.size(), index.metricSpecs.size(), index.requirementSpecs.size(),
+                index.constantSpecs.size(), index.functionSpecs.size());
+        return index;
+    }
+
+    List<Object> getMetricSpecs(Object parentSpec) {                // $[?(@.metrics!=null)].metrics.*
+        return parentMetricSpecs.getOrDefault(parentSpec, Collections.emptyList());
+    }
+
+    List<Object> getSloSpecs(Object parentSpec) {                   // $[?(@.requirements!=null && @.requirements.*[?(@.type=='slo')])].requirements.*
+        return parentSloSpecs.getOrDefault(parentSpec, Collections.emptyList());
+    }
+
+    private void indexSection(String sectionName, Object section) {
+        for (Object parent : children(section)) {
+            parentSpecs.add(parent);
+            if ("components".equals(sectionName))
+                addName(componentNames, parent);
+            if ("scopes".equals(sectionName)) {
+                scopeSpecs.add(parent);
+                addName(scopeNames, parent);
+            }
+            if (! (parent instanceof Map<?, ?> parentMap)) continue;
+
+            // Index parent metrics, including constants
+            List<Object> metrics = children(parentMap.get("metrics"));
+            metricSpecs.addAll(metrics);
+            metrics.stream()
+                    .filter(m -> m instanceof Map<?, ?> metric && "constant".equals(metric.get("type")))
+                    .forEach(constantSpecs::add);
+            if (! metrics.isEmpty())
+                parentMetricSpecs.put(parent, metrics);
+
+            // Index parent requirements. SLO list includes all requirements, if any of them is an SLO
+            List<Object> requirements = children(parentMap.get("requirements"));
+            requirementSpecs.addAll(requirements);
+            boolean hasSLOs = requirements.stream()
+                    .anyMatch(r -> r instanceof Map<?, ?> requirement && "slo".equals(requirement.get("type")));
+            if (hasSLOs)
+                parentSloSpecs.put(parent, requirements);
+        }
+    }
+
+    private static void addName(List<String> names, Object spec) {
+        if (spec instanceof Map<?, ?> m && m.containsKey("name")) {
+            Object name = m.get("name");
+            names.add(name != null ? name.toString() : null);
+        }
+    }
+
+    // Same as JsonPath wildcard ('*'), i.e. map values or list items
+    private static List<Object> children(Object o) {
+        if (o instanceof Map<?, ?> m) return new ArrayList<>(m.values());
+        if (o instanceof List<?> l) return new ArrayList<>(l);
+        return Collections.emptyList();
+    }
+
+    private static Object copy(Object o, String parentName) {
+        if (o instanceof Map<?, ?> m) {
+            Map<String, Object> newM = new LinkedHashMap<>();
+            newM.put(CONTAINER_NAME_KEY, parentName);
+            String myName0 = getSpecName(o);
+            String myName = parentName != null ? parentName : myName0;
+            m.forEach((k, v) -> newM.put(k.toString(), copy(v, myName)));
+            return newM;
+        } else
+        if (o instanceof List<?> l) {
+            List<Object> newL = new LinkedList<>();
+            l.forEach(v -> newL.add(copy(v, parentName)));
+            return newL;
+        }
+        return o;
+    }
+}
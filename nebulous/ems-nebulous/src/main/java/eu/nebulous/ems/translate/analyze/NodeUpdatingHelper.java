@@ -8,7 +8,6 @@
 
 package eu.nebulous.ems.translate.analyze;
 
-import com.jayway.jsonpath.DocumentContext;
 import com.jayway.jsonpath.JsonPath;
 import eu.nebulous.ems.translate.NebulousEmsTranslatorProperties;
 import gr.iccs.imu.ems.translate.TranslationContext;
@@ -40,7 +39,7 @@ import static eu.nebulous.ems.translate.analyze.AnalysisUtils.*;
 class NodeUpdatingHelper extends AbstractHelper {
     private final NebulousEmsTranslatorProperties properties;
 
-    void buildComponentsToSLOsMap(TranslationContext _TC, DocumentContext ctx, Set<String> componentNames) {
+    void buildComponentsToSLOsMap(TranslationContext _TC, MetricModelIndex index, Set<String> componentNames) {
         // Group SLOs per component or scope
         ConcurrentMap<String, Set<NamesKey>> componentOrScopesToSLOsMapping = $$(_TC).allSLOs.entrySet().stream()
                 .collect(Collectors.groupingByConcurrent(
@@ -49,7 +48,7 @@ class NodeUpdatingHelper extends AbstractHelper {
         log.trace("NodeUpdatingHelper: componentOrScopesToSLOsMapping: {}", componentOrScopesToSLOsMapping);
 
         // Build component-to-scope mapping
-        Map<String, Set<String>> componentsToScopesMap = createComponentsToScopesMap(ctx, componentNames);
+        Map<String, Set<String>> componentsToScopesMap = createComponentsToScopesMap(index, componentNames);
         log.trace("NodeUpdatingHelper: componentsToScopesMap: {}", componentsToScopesMap);
 
         // Build integrated components SLO sets
@@ -73,13 +72,13 @@ class NodeUpdatingHelper extends AbstractHelper {
         $$(_TC).componentsToSLOsMap = componentsToSLOsMap;
     }
 
-    Map<String, Set<String>> createComponentsToScopesMap(DocumentContext ctx, Set<String> componentNames) {
-        Map specs = ctx.read("$.spec", Map.class);
+    Map<String, Set<String>> createComponentsToScopesMap(MetricModelIndex index, Set<String> componentNames) {
+        Map<String, Object> specs = index.getSpecs();
         if (isNullOrEmpty(specs.get("scopes")))
             return Collections.emptyMap();
 
         Map<String, Set<String>> componentToScopeMap = new LinkedHashMap<>();
-        ctx.read("$.spec.scopes.*", List.class).stream().filter(Objects::nonNull).forEach(scope -> {
+        index.getScopeSpecs().stream().filter(Objects::nonNull).forEach(scope -> {
             // Get scope name and scope components
             String scopeName = JsonPath.read(scope, "$.name").toString();
             Object oComponents = ((Map)scope).get("components");
@@ -110,13 +109,13 @@ class NodeUpdatingHelper extends AbstractHelper {
         return componentToScopeMap;
     }
 
-    Map<String, Set<String>> createScopesToComponentsMap(DocumentContext ctx, Set<String> componentNames) {
-        Map specs = ctx.read("$.spec", Map.class);
+    Map<String, Set<String>> createScopesToComponentsMap(MetricModelIndex index, Set<String> componentNames) {
+        Map<String, Object> specs = index.getSpecs();
         if (isNullOrEmpty(specs.get("scopes")))
             return Collections.emptyMap();
 
         Map<String, Set<String>> scopeToComponentMap = new LinkedHashMap<>();
-        ctx.read("$.spec.scopes.*", List.class).stream().filter(Objects::nonNull).forEach(scope -> {
+        index.getScopeSpecs().stream().filter(Objects::nonNull).forEach(scope -> {
             // Get scope name and scope components
             String scopeName = JsonPath.read(scope, "$.name").toString();
             Object oComponents = ((Map)scope).get("components");
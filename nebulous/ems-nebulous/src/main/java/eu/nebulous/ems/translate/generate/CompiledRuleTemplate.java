@@ -0,0 +1,388 @@
+/*
+ * Copyright (C) 2023-2025 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package eu.nebulous.ems.translate.generate;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.thymeleaf.context.IContext;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rule template pre-parsed into a substitution plan, rendering the same output as the Thymeleaf TEXT mode
+ * template engine, without re-parsing the template on every rule.
+ * Supported constructs are literal text, '[(${var})]' inlined variables, and '[# ...] ... [/]' elements with
+ * 'th:each' (joins with a 'th:text' of the form "!${iterStat.last} ? A + 'SEP' : A"), 'th:switch'/'th:case',
+ * 'th:if' (null checks) and 'th:text'/'th:utext' (concatenations of variables and literals).
+ * Templates with other constructs are not compiled (see {@link #isCompiled()}), and {@link #render(IContext)}
+ * returns null when context values cannot be rendered exactly as Thymeleaf would. Callers must then fall back
+ * to the template engine.
+ */
+@Slf4j
+public class CompiledRuleTemplate {
+    private final static Pattern VARIABLE_PATTERN = Pattern.compile("\\$\\{\\s*(\\w+)\\s*}");
+    private final static Pattern ATTRIBUTE_PATTERN = Pattern.compile("\\s*([\\w:]+)=\"([^\"]*)\"\\s*");
+    private final static Pattern EACH_PATTERN = Pattern.compile("\\s*(\\w+)\\s*(?:,\\s*(\\w+)\\s*)?:\\s*\\$\\{\\s*(\\w+)\\s*}\\s*");
+    private final static Pattern IF_PATTERN = Pattern.compile("\\$\\{\\s*(\\w+)\\s*(!=|==)\\s*null\\s*}");
+    private final static Pattern LAST_PATTERN = Pattern.compile("!\\s*\\$\\{\\s*(\\w+)\\.last\\s*}");
+    private final static Pattern CASE_PATTERN = Pattern.compile("'([^']*)'");
+
+    @Getter
+    private final String source;
+    private final List<Node> plan;
+
+    private CompiledRuleTemplate(String source, List<Node> plan) {
+        this.source = source;
+        this.plan = plan;
+    }
+
+    /**
+     * Compiles template. If it contains unsupported constructs, the returned template is not compiled.
+     */
+    public static CompiledRuleTemplate compile(@NonNull String template) {
+        try {
+            return new CompiledRuleTemplate(template, new Parser(template).parse());
+        } catch (UnsupportedTemplateException e) {
+            log.debug("CompiledRuleTemplate.compile(): Template not compiled: {}: {}", e.getMessage(), template);
+            return new CompiledRuleTemplate(template, null);
+        }
+    }
+
+    public boolean isCompiled() {
+        return plan!=null;
+    }
+
+    /**
+     * Renders template using the variables of context, or returns null if template must be rendered by Thymeleaf
+     */
+    public String render(@NonNull IContext context) {
+        if (plan==null) return null;
+        StringBuilder sb = new StringBuilder(source.length() + 64);
+        Scope scope = new Scope(context::getVariable, false);
+        for (Node node : plan)
+            if (! node.render(scope, sb)) return null;
+        return sb.toString();
+    }
+
+    // ------------------------------------------------------------------------
+    // Plan nodes
+    // ------------------------------------------------------------------------
+
+    private record Scope(Function<String, Object> variables, boolean last) {
+        Object get(String name) { return variables.apply(name); }
+    }
+
+    private interface Node {
+        /** Appends node output to sb, or returns false if it cannot be rendered exactly as Thymeleaf would */
+        boolean render(Scope scope, StringBuilder sb);
+    }
+
+    private record Literal(String text) implements Node {
+        public boolean render(Scope scope, StringBuilder sb) {
+            sb.append(text);
+            return true;
+        }
+    }
+
+    private record Variable(String name) implements Node {
+        public boolean render(Scope scope, StringBuilder sb) {
+            Object value = scope.get(name);
+            if (value==null) return true;
+            if (! (value instanceof CharSequence || value instanceof Number || value instanceof Boolean))
+                return false;
+            sb.append(value);
+            return true;
+        }
+    }
+
+    private record Term(String literal, String variable) {
+        Object value(Scope scope) { return variable!=null ? scope.get(variable) : literal; }
+    }
+
+    // Concatenation of literals and variables, with an optional '!${iterStat.last} ? A : B' condition
+    private record Text(List<Term> notLast, List<Term> terms) {
+        boolean render(Scope scope, StringBuilder sb) {
+            List<Term> selected = notLast!=null && ! scope.last() ? notLast : terms;
+            if (selected.size()==1) {
+                Object value = selected.get(0).value(scope);
+                if (value==null) return true;
+                if (! (value instanceof CharSequence)) return false;
+                sb.append(value);
+                return true;
+            }
+            // Thymeleaf adds numeric operands, and turns nulls into 'null'. Leave such cases to Thymeleaf
+            int start = sb.length();
+            for (Term term : selected) {
+                if (! (term.value(scope) instanceof CharSequence value) || isNumeric(value.toString())) {
+                    sb.setLength(start);
+                    return false;
+                }
+                sb.append(value);
+            }
+            return true;
+        }
+    }
+
+    private record TextElement(Text text) implements Node {
+        public boolean render(Scope scope, StringBuilder sb) {
+            return text.render(scope, sb);
+        }
+    }
+
+    private record Each(String var, String list, Text text) implements Node {
+        public boolean render(Scope scope, StringBuilder sb) {
+            Object value = scope.get(list);
+            if (value==null) return true;
+            if (! (value instanceof Collection<?> items)) return false;
+            int remaining = items.size();
+            for (Object item : items) {
+                Scope itemScope = new Scope(name -> var.equals(name) ? item : scope.get(name), --remaining==0);
+                if (! text.render(itemScope, sb)) return false;
+            }
+            return true;
+        }
+    }
+
+    private record If(String var, boolean notNull, Text text, List<Node> children) implements Node {
+        public boolean render(Scope scope, StringBuilder sb) {
+            if ((scope.get(var)!=null) != notNull) return true;
+            if (text!=null) return text.render(scope, sb);
+            return renderAll(children, scope, sb);
+        }
+    }
+
+    private record Case(String value, List<Node> children) implements Node {
+        public boolean render(Scope scope, StringBuilder sb) {
+            return renderAll(children, scope, sb);
+        }
+    }
+
+    private record Switch(String var, List<Node> children) implements Node {
+        public boolean render(Scope scope, StringBuilder sb) {
+            Object value = scope.get(var);
+            if (value!=null && (! (value instanceof CharSequence) || isNumeric(value.toString()))) return false;
+            boolean matched = false;
+            for (Node child : children) {
+                if (child instanceof Case c) {
+                    if (matched || c.value()!=null && ! c.value().equals(value!=null ? value.toString() : null)) continue;
+                    matched = true;
+                }
+                if (! child.render(scope, sb)) return false;
+            }
+            return true;
+        }
+    }
+
+    private static boolean renderAll(List<Node> nodes, Scope scope, StringBuilder sb) {
+        for (Node node : nodes)
+            if (! node.render(scope, sb)) return false;
+        return true;
+    }
+
+    private static boolean isNumeric(String s) {
+        if (NumberUtils.isCreatable(s.trim())) return true;
+        try {
+            new BigDecimal(s.trim());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Template parser
+    // ------------------------------------------------------------------------
+
+    private static class UnsupportedTemplateException extends RuntimeException {
+        UnsupportedTemplateException(String message) { super(message); }
+    }
+
+    private static class Parser {
+        private final String template;
+        private int pos;
+
+        Parser(String template) {
+            this.template = template;
+        }
+
+        List<Node> parse() {
+            List<Node> nodes = parseNodes(false, null);
+            if (pos < template.length()) throw new UnsupportedTemplateException("Unexpected element end at "+pos);
+            return nodes;
+        }
+
+        private List<Node> parseNodes(boolean inElement, String statusVar) {
+            List<Node> nodes = new ArrayList<>();
+            StringBuilder literal = new StringBuilder();
+            while (pos < template.length()) {
+                if (template.startsWith("[/]", pos)) {
+                    if (! inElement) break;
+                    pos += 3;
+                    addLiteral(nodes, literal);
+                    return nodes;
+                } else if (template.startsWith("[(", pos)) {
+                    addLiteral(nodes, literal);
+                    nodes.add(parseInlinedVariable());
+                } else if (template.startsWith("[#", pos)) {
+                    addLiteral(nodes, literal);
+                    nodes.add(parseElement(statusVar));
+                } else if (template.startsWith("[[", pos) || template.startsWith("[/", pos)) {
+                    throw new UnsupportedTemplateException("Unsupported construct at "+pos);
+                } else {
+                    literal.append(template.charAt(pos++));
+                }
+            }
+            if (inElement) throw new UnsupportedTemplateException("Unclosed element");
+            addLiteral(nodes, literal);
+            return nodes;
+        }
+
+        private void addLiteral(List<Node> nodes, StringBuilder literal) {
+            if (literal.isEmpty()) return;
+            nodes.add(new Literal(literal.toString()));
+            literal.setLength(0);
+        }
+
+        private Node parseInlinedVariable() {
+            int end = template.indexOf(")]", pos);
+            if (end < 0) throw new UnsupportedTemplateException("Unclosed inlined expression at "+pos);
+            Matcher matcher = VARIABLE_PATTERN.matcher(template.substring(pos + 2, end));
+            if (! matcher.matches()) throw new UnsupportedTemplateException("Unsupported inlined expression at "+pos);
+            pos = end + 2;
+            return new Variable(matcher.group(1));
+        }
+
+        private Node parseElement(String statusVar) {
+            // Find element header end, skipping quoted attribute values
+            int end = pos + 2;
+            boolean quoted = false;
+            while (end < template.length() && (quoted || template.charAt(end)!=']')) {
+                if (template.charAt(end)=='"') quoted = ! quoted;
+                end++;
+            }
+            if (end >= template.length() || template.charAt(end - 1)=='/')
+                throw new UnsupportedTemplateException("Unsupported element at "+pos);
+            Map<String, String> attributes = parseAttributes(template.substring(pos + 2, end));
+            pos = end + 1;
+
+            String text = attributes.containsKey("th:text") ? attributes.get("th:text") : attributes.get("th:utext");
+            if (attributes.containsKey("th:text") && attributes.containsKey("th:utext"))
+                throw new UnsupportedTemplateException("Both th:text and th:utext");
+            int otherAttributes = attributes.size() - (text!=null ? 1 : 0);
+
+            if (attributes.containsKey("th:each") && otherAttributes==1 && text!=null) {
+                Matcher matcher = EACH_PATTERN.matcher(attributes.get("th:each"));
+                if (! matcher.matches()) throw new UnsupportedTemplateException("Unsupported th:each: "+attributes.get("th:each"));
+                parseNodes(true, null);     // Body is replaced by th:text
+                return new Each(matcher.group(1), matcher.group(3), parseText(text, matcher.group(2)));
+            }
+            if (attributes.containsKey("th:if") && otherAttributes==1) {
+                Matcher matcher = IF_PATTERN.matcher(attributes.get("th:if").trim());
+                if (! matcher.matches()) throw new UnsupportedTemplateException("Unsupported th:if: "+attributes.get("th:if"));
+                List<Node> children = parseChildren(statusVar);
+                return new If(matcher.group(1), "!=".equals(matcher.group(2)),
+                        text!=null ? parseText(text, statusVar) : null, children);
+            }
+            if (attributes.containsKey("th:switch") && otherAttributes==1 && text==null) {
+                Matcher matcher = VARIABLE_PATTERN.matcher(attributes.get("th:switch").trim());
+                if (! matcher.matches()) throw new UnsupportedTemplateException("Unsupported th:switch: "+attributes.get("th:switch"));
+                return new Switch(matcher.group(1), parseNodes(true, statusVar));
+            }
+            if (attributes.containsKey("th:case") && otherAttributes==1 && text==null) {
+                String value = attributes.get("th:case").trim();
+                if ("*".equals(value)) return new Case(null, parseChildren(statusVar));
+                Matcher matcher = CASE_PATTERN.matcher(value);
+                if (! matcher.matches() || isNumeric(matcher.group(1)))
+                    throw new UnsupportedTemplateException("Unsupported th:case: "+value);
+                return new Case(matcher.group(1), parseChildren(statusVar));
+            }
+            if (otherAttributes==0 && text!=null) {
+                parseNodes(true, null);     // Body is replaced by th:text
+                return new TextElement(parseText(text, statusVar));
+            }
+            throw new UnsupportedTemplateException("Unsupported element attributes: "+attributes.keySet());
+        }
+
+        // Parses element body. 'th:case' elements are only allowed directly in 'th:switch' elements
+        private List<Node> parseChildren(String statusVar) {
+            List<Node> children = parseNodes(true, statusVar);
+            if (children.stream().anyMatch(Case.class::isInstance))
+                throw new UnsupportedTemplateException("th:case outside th:switch");
+            return children;
+        }
+
+        private Map<String, String> parseAttributes(String header) {
+            Map<String, String> attributes = new LinkedHashMap<>();
+            Matcher matcher = ATTRIBUTE_PATTERN.matcher(header);
+            int end = 0;
+            while (matcher.find() && matcher.start()==end) {
+                if (attributes.put(matcher.group(1), matcher.group(2))!=null)
+                    throw new UnsupportedTemplateException("Duplicate attribute: "+matcher.group(1));
+                end = matcher.end();
+            }
+            if (end!=header.length() || attributes.isEmpty())
+                throw new UnsupportedTemplateException("Unsupported element header: "+header);
+            return attributes;
+        }
+
+        // Parses "!${stat.last} ? A : B" or "A", where A and B are '+' concatenations of ${var} and 'literals'
+        private Text parseText(String expression, String statusVar) {
+            int question = indexOfUnquoted(expression, '?', 0);
+            if (question < 0) return new Text(null, parseTerms(expression));
+
+            Matcher matcher = LAST_PATTERN.matcher(expression.substring(0, question).trim());
+            if (! matcher.matches() || ! matcher.group(1).equals(statusVar))
+                throw new UnsupportedTemplateException("Unsupported condition: "+expression);
+            int colon = indexOfUnquoted(expression, ':', question + 1);
+            if (colon < 0) throw new UnsupportedTemplateException("Unsupported condition: "+expression);
+            return new Text(parseTerms(expression.substring(question + 1, colon)), parseTerms(expression.substring(colon + 1)));
+        }
+
+        private List<Term> parseTerms(String concatenation) {
+            List<Term> terms = new ArrayList<>();
+            int start = 0;
+            int plus;
+            do {
+                plus = indexOfUnquoted(concatenation, '+', start);
+                String term = (plus < 0 ? concatenation.substring(start) : concatenation.substring(start, plus)).trim();
+                Matcher matcher = VARIABLE_PATTERN.matcher(term);
+                if (matcher.matches()) {
+                    terms.add(new Term(null, matcher.group(1)));
+                } else if (term.length() >= 2 && term.startsWith("'") && term.endsWith("'")
+                        && term.indexOf('\'', 1)==term.length() - 1 && ! isNumeric(term.substring(1, term.length() - 1)))
+                {
+                    terms.add(new Term(term.substring(1, term.length() - 1), null));
+                } else {
+                    throw new UnsupportedTemplateException("Unsupported text expression term: "+term);
+                }
+                start = plus + 1;
+            } while (plus >= 0);
+            return terms;
+        }
+
+        private static int indexOfUnquoted(String s, char ch, int from) {
+            boolean quoted = false;
+            int braces = 0;
+            for (int i = from; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c=='\'') quoted = ! quoted;
+                else if (! quoted && c=='{') braces++;
+                else if (! quoted && c=='}') braces--;
+                else if (! quoted && braces==0 && c==ch) return i;
+            }
+            return -1;
+        }
+    }
+}
@@ -26,6 +26,7 @@ import org.thymeleaf.templatemode.TemplateMode;
 import org.thymeleaf.templateresolver.StringTemplateResolver;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -40,7 +41,9 @@ public class RuleGenerator implements InitializingBean {
     private final NebulousEmsTranslatorProperties properties;
     private final RuleTemplateRegistry ruleTemplatesRegistry;
     private final NameNormalization nameNormalization;
+    private final RuleOptimizer ruleOptimizer;
     private SpringTemplateEngine templateEngine;
+    private final Map<String, CompiledRuleTemplate> compiledTemplates = new ConcurrentHashMap<>();
 
     // ========================================================================
     // Public API
@@ -49,11 +52,14 @@ public class RuleGenerator implements InitializingBean {
     @Override
     public void afterPropertiesSet() {
         initTemplateEngine();
+        compileTemplates();
     }
 
     public void generateRules(TranslationContext _TC) {
         log.debug("RuleGenerator.ruleTemplates:\n{}", ruleTemplatesRegistry.getRuleTemplates());
         _generateRules(_TC);
+        if (properties.isOptimizeRules())
+            ruleOptimizer.optimize(_TC);
         _TC.getTopicConnections();  // force topicConnections population
         _updateMonitors(_TC);
     }
@@ -77,6 +83,36 @@ public class RuleGenerator implements InitializingBean {
         log.debug("RuleGenerator.initTemplateEngine(): Template engine initialized: {}", engine.getClass().getName());
     }
 
+    private void compileTemplates() {
+        if (! properties.isCompileRuleTemplates()) return;
+        compiledTemplates.clear();
+        ruleTemplatesRegistry.getRuleTemplates().forEach((type, groupings) -> groupings.forEach((grouping, templates) -> {
+            for (int i = 0; i < templates.size(); i++) {
+                if (templates.get(i) != null)
+                    compiledTemplates.put(RuleTemplateRegistry.getTemplateId(type, grouping, i), CompiledRuleTemplate.compile(templates.get(i).trim()));
+            }
+        }));
+        log.debug("RuleGenerator.compileTemplates(): Compiled rule templates: {}",
+                compiledTemplates.entrySet().stream().filter(e -> e.getValue().isCompiled()).map(Map.Entry::getKey).sorted().toList());
+        log.debug("RuleGenerator.compileTemplates(): Rule templates processed by Thymeleaf: {}",
+                compiledTemplates.entrySet().stream().filter(e -> ! e.getValue().isCompiled()).map(Map.Entry::getKey).sorted().toList());
+    }
+
+    // Renders the template with the given id using its compiled plan, if possible, otherwise using Thymeleaf
+    protected String processTemplate(String templateId, String template, Context context) {
+        template = template.trim();
+        if (properties.isCompileRuleTemplates()) {
+            CompiledRuleTemplate compiled = compiledTemplates.get(templateId);
+            if (compiled == null || ! compiled.getSource().equals(template)) {
+                compiled = CompiledRuleTemplate.compile(template);
+                compiledTemplates.put(templateId, compiled);
+            }
+            String result = compiled.render(context);
+            if (result != null) return result;
+        }
+        return templateEngine.process(template, context);
+    }
+
     // ========================================================================
     // Rule generation methods
     // ========================================================================
@@ -590,12 +626,14 @@ public class RuleGenerator implements InitializingBean {
         String[] groupingLabels = {grouping, "__ANY__"};
         for (String label : groupingLabels) {
             log.debug("RuleGenerator._generateRule():      Getting rule templates for: type={}, grouping={}", type, label);
-            for (String ruleTpl : ruleTemplatesRegistry.getTemplatesFor(type, label)) {
+            List<String> ruleTemplates = ruleTemplatesRegistry.getTemplatesFor(type, label);
+            for (int i = 0; i < ruleTemplates.size(); i++) {
+                String ruleTpl = ruleTemplates.get(i);
                 log.debug("RuleGenerator._generateRule():      Rule template for: type={}, grouping={} => {}", type, label, ruleTpl);
                 if (ruleTpl != null) {
                     // Use template engine to process the selected rule template
                     context.setVariable("outputStream", elemName);
-                    String ruleStr = templateEngine.process(ruleTpl.trim(), context);
+                    String ruleStr = processTemplate(RuleTemplateRegistry.getTemplateId(type, label, i), ruleTpl, context);
 
                     // Store the generated rule in _TC
                     _TC.addGroupingRulePair(grouping, elemName, ruleStr);
@@ -936,7 +974,7 @@ public class RuleGenerator implements InitializingBean {
             context.setVariable("type", sched.getType().toString());
             context.setVariable("period", schedPeriod);
             context.setVariable("unit", schedUnit);
-            String schedStr = templateEngine.process(schedTpl.trim(), context);
+            String schedStr = processTemplate(RuleTemplateRegistry.getTemplateId("SCHEDULE", selector, 0), schedTpl, context);
             log.debug("RuleGenerator._generateScheduleClause(): schedule-clause: {}", schedStr);
             return schedStr;
         } else {
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2023-2025 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package eu.nebulous.ems.translate.generate;
+
+import gr.iccs.imu.ems.translate.TranslationContext;
+import lombok.Builder;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Post-generation optimization of the EPL rules of a Translation Context.
+ * Time periods in window view parameters are canonicalized (e.g. '1 min' and '60 sec' both become '60 sec'),
+ * so that statements over the same stream and window have identical view specifications, and the CEP engine
+ * shares their data windows, instead of keeping a copy of the window events per statement.
+ * Statement and data window counts, with and without canonicalization, are logged and returned.
+ */
+@Slf4j
+@Service
+public class RuleOptimizer {
+    private final static Pattern COMMENT_PATTERN = Pattern.compile("/\\*.*?\\*/", Pattern.DOTALL);
+    private final static Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+    private final static Pattern VIEW_PATTERN = Pattern.compile("\\b(win|ext):(\\w+)\\(([^)]*)\\)");
+    private final static String TIME_UNITS = "(milliseconds?|msec|seconds?|sec|minutes?|min|hours?|days?)\\b";
+    private final static Pattern TIME_PERIOD_PATTERN = Pattern.compile(
+            "(?<![\\d.])\\d+\\s*" + TIME_UNITS + "(?:\\s*\\d+\\s*" + TIME_UNITS + ")*", Pattern.CASE_INSENSITIVE);
+    private final static Pattern TIME_PERIOD_PART_PATTERN = Pattern.compile("(\\d+)\\s*" + TIME_UNITS, Pattern.CASE_INSENSITIVE);
+    private final static Pattern WINDOW_PATTERN = Pattern.compile("\\b(\\w+)((?:\\.\\w+:\\w+\\([^)]*\\))+)");
+
+    @Data
+    @Builder
+    public static class OptimizationReport {
+        private int statements;
+        private int canonicalizedStatements;    // Statements with rewritten view parameters
+        private int windows;                    // Data window instances without view sharing
+        private int sharedWindowsBefore;        // Data window instances with view sharing, before canonicalization
+        private int sharedWindowsAfter;         // Data window instances with view sharing, after canonicalization
+    }
+
+    public OptimizationReport optimize(TranslationContext _TC) {
+        Map<String, Map<String, Set<String>>> g2r = _TC.getG2R();
+        int[] canonicalized = { 0 };
+        g2r.forEach((grouping, topicRules) -> topicRules.forEach((topic, rules) -> {
+            Set<String> canonicalRules = new LinkedHashSet<>();
+            for (String rule : rules) {
+                String canonicalRule = canonicalizeViews(rule);
+                if (! canonicalRule.equals(rule)) canonicalized[0]++;
+                canonicalRules.add(canonicalRule);
+            }
+            if (! canonicalRules.equals(rules)) {
+                _TC.replaceGroupingRules(grouping, topic, canonicalRules);
+                log.debug("RuleOptimizer.optimize(): Canonicalized window views: grouping={}, topic={}", grouping, topic);
+            }
+        }));
+
+        OptimizationReport report = OptimizationReport.builder()
+                .statements(countStatements(g2r))
+                .canonicalizedStatements(canonicalized[0])
+                .windows(countWindows(g2r, false, false))
+                .sharedWindowsBefore(countWindows(g2r, true, false))
+                .sharedWindowsAfter(countWindows(g2r, true, true))
+                .build();
+        log.info("RuleOptimizer.optimize(): Model {}: statements: {}, canonicalized statements: {}, data windows: without view sharing: {}, with view sharing: {} -> {}",
+                _TC.getModelName(), report.getStatements(), report.getCanonicalizedStatements(),
+                report.getWindows(), report.getSharedWindowsBefore(), report.getSharedWindowsAfter());
+        return report;
+    }
+
+    private int countStatements(Map<String, Map<String, Set<String>>> g2r) {
+        return g2r.values().stream().flatMap(topicRules -> topicRules.values().stream()).mapToInt(Set::size).sum();
+    }
+
+    // Counts data windows. Shared windows are counted once per grouping, since each grouping is deployed to its own engine
+    private int countWindows(Map<String, Map<String, Set<String>>> g2r, boolean shared, boolean canonical) {
+        int windows = 0;
+        for (Map<String, Set<String>> topicRules : g2r.values()) {
+            List<String> groupingWindows = new ArrayList<>();
+            for (Set<String> rules : topicRules.values()) {
+                for (String rule : rules) {
+                    String stmt = canonical ? canonicalizeStatement(rule) : normalizeStatement(rule);
+                    Matcher matcher = WINDOW_PATTERN.matcher(stmt);
+                    while (matcher.find())
+                        groupingWindows.add(matcher.group(1) + matcher.group(2));
+                }
+            }
+            windows += shared ? new HashSet<>(groupingWindows).size() : groupingWindows.size();
+        }
+        return windows;
+    }
+
+    // Removes comments and redundant whitespace, and canonicalizes view parameters
+    static String canonicalizeStatement(String rule) {
+        return canonicalizeViews(normalizeStatement(rule));
+    }
+
+    // Removes comments and redundant whitespace
+    private static String normalizeStatement(String rule) {
+        String stmt = COMMENT_PATTERN.matcher(rule).replaceAll(" ");
+        return WHITESPACE_PATTERN.matcher(stmt).replaceAll(" ").trim();
+    }
+
+    // Rewrites time periods in 'win:' and 'ext:' view parameters in sec, or msec if not whole seconds
+    static String canonicalizeViews(String rule) {
+        Matcher viewMatcher = VIEW_PATTERN.matcher(rule);
+        StringBuilder sb = new StringBuilder();
+        while (viewMatcher.find()) {
+            Matcher periodMatcher = TIME_PERIOD_PATTERN.matcher(viewMatcher.group(3));
+            StringBuilder params = new StringBuilder();
+            while (periodMatcher.find()) {
+                // A time period may consist of several parts (e.g. '1 min 30 sec')
+                long millis = 0;
+                Matcher partMatcher = TIME_PERIOD_PART_PATTERN.matcher(periodMatcher.group());
+                while (partMatcher.find())
+                    millis += Long.parseLong(partMatcher.group(1)) * unitMillis(partMatcher.group(2));
+                String period = millis % 1000==0 ? (millis / 1000) + " sec" : millis + " msec";
+                periodMatcher.appendReplacement(params, Matcher.quoteReplacement(period));
+            }
+            periodMatcher.appendTail(params);
+            String view = viewMatcher.group(1) + ":" + viewMatcher.group(2) + "(" + params.toString().trim() + ")";
+            viewMatcher.appendReplacement(sb, Matcher.quoteReplacement(view));
+        }
+        viewMatcher.appendTail(sb);
+        return sb.toString();
+    }
+
+    private static long unitMillis(String unit) {
+        unit = unit.toLowerCase();
+        if (unit.startsWith("millisecond") || unit.equals("msec")) return 1L;
+        if (unit.startsWith("sec")) return 1000L;
+        if (unit.startsWith("min")) return 60_000L;
+        if (unit.startsWith("hour")) return 3_600_000L;
+        return 86_400_000L;
+    }
+}
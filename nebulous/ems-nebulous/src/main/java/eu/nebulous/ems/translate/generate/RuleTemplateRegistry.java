@@ -64,4 +64,8 @@ public class RuleTemplateRegistry implements InitializingBean {
         log.trace("RuleTemplateProperties.getTemplatesFor: results={}", list);
         return list;
     }
+
+    public static String getTemplateId(String type, String grouping, int index) {
+        return type + "/" + grouping + "#" + index;
+    }
 }
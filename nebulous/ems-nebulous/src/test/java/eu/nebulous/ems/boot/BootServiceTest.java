@@ -32,7 +32,7 @@ class BootServiceTest {
     public void setUp() throws IOException {
         log.info("BootServiceTest: Setting up");
         properties = TestUtils.initializeEmsBootProperties(this);
-        indexService = new IndexService(null, null, properties, TestUtils.objectMapper);
+        indexService = new IndexService(null, null, properties, TestUtils.objectMapper, null);
         bootService = new BootService(properties, indexService, TestUtils.objectMapper);
         log.debug("BootServiceTest: bootService: {}", bootService);
         indexService.initIndexFile();
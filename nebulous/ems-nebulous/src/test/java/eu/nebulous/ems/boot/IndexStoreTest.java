@@ -0,0 +1,81 @@
+package eu.nebulous.ems.boot;
+
+import eu.nebulous.ems.test.TestUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+@Slf4j
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class IndexStoreTest {
+
+    private Path dir;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        EmsBootProperties properties = TestUtils.initializeEmsBootProperties(this);
+        dir = Paths.get(properties.getModelsDir());
+        Files.deleteIfExists(dir.resolve("index.log"));
+        Files.deleteIfExists(dir.resolve("index.json"));
+    }
+
+    private IndexStore openStore(int compactionMinRecords) throws IOException {
+        IndexStore store = new IndexStore(dir.resolve("index.log"), TestUtils.objectMapper, 4, 1000, 2, compactionMinRecords);
+        store.open(dir.resolve("index.json"));
+        return store;
+    }
+
+    @Test
+    void entriesSurviveReopen() throws IOException {
+        try (IndexStore store = openStore(1000)) {
+            store.put("app-1", Map.of("model-file", "m1.yml"));
+            store.put("app-2", Map.of("model-file", "m2.yml"));
+            store.put("app-1", Map.of("model-file", "m1b.yml"));
+            Assertions.assertTrue(store.delete("app-2"));
+            Assertions.assertFalse(store.delete("app-3"));
+        }
+        try (IndexStore store = openStore(1000)) {
+            Assertions.assertEquals(Map.of("app-1", Map.of("model-file", "m1b.yml")), store.getAll());
+        }
+    }
+
+    @Test
+    void truncatedLastRecordIsIgnored() throws IOException {
+        try (IndexStore store = openStore(1000)) {
+            store.put("app-1", Map.of("model-file", "m1.yml"));
+        }
+        Files.writeString(dir.resolve("index.log"), "{\"op\":\"put\",\"app\":\"app-2\",\"da", StandardOpenOption.APPEND);
+        try (IndexStore store = openStore(1000)) {
+            Assertions.assertEquals(Map.of("app-1", Map.of("model-file", "m1.yml")), store.getAll());
+        }
+    }
+
+    @Test
+    void logIsCompacted() throws IOException {
+        try (IndexStore store = openStore(10)) {
+            for (int i = 0; i < 100; i++)
+                store.put("app-1", Map.of("solution-file", "sol-" + i + ".json"));
+        }
+        long lines = Files.readAllLines(dir.resolve("index.log")).stream().filter(l -> !l.isBlank()).count();
+        Assertions.assertTrue(lines < 10, "Log not compacted: lines=" + lines);
+        try (IndexStore store = openStore(10)) {
+            Assertions.assertEquals(Map.of("solution-file", "sol-99.json"), store.get("app-1"));
+        }
+    }
+
+    @Test
+    void legacyIndexFileIsMigrated() throws IOException {
+        Files.writeString(dir.resolve("index.json"), "{\"app-1\":{\"model-file\":\"m1.yml\"}}");
+        try (IndexStore store = openStore(1000)) {
+            Assertions.assertEquals(Map.of("model-file", "m1.yml"), store.get("app-1"));
+        }
+        Assertions.assertTrue(Files.exists(dir.resolve("index.log")));
+    }
+}
@@ -29,7 +29,7 @@ class ModelsServiceTest {
         log.info("ModelsServiceTest: Setting up");
         TranslationService translationService = new TranslationService(null, null);
         EmsBootProperties properties = TestUtils.initializeEmsBootProperties(this);
-        IndexService indexService = new IndexService(null, null, properties, TestUtils.objectMapper);
+        IndexService indexService = new IndexService(null, null, properties, TestUtils.objectMapper, null);
         modelsService = new ModelsService(translationService, properties, TestUtils.objectMapper, indexService);
         log.debug("ModelsServiceTest: modelsService: {}", modelsService);
         indexService.initIndexFile();
@@ -0,0 +1,103 @@
+package eu.nebulous.ems.k8s;
+
+import eu.nebulous.ems.EmsNebulousProperties;
+import gr.iccs.imu.ems.common.k8s.K8sClient;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.server.mock.EnableKubernetesMockClient;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.*;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+@Slf4j
+@EnableKubernetesMockClient(crud = true)
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class K8sPodWatcherTest {
+
+    KubernetesClient client;
+
+    private K8sPodWatcher watcher;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        K8sServiceProperties properties = new K8sServiceProperties();
+        properties.setEnabled(false);
+        properties.setResyncPeriod(Duration.ofMinutes(1));
+        EmsNebulousProperties emsNebulousProperties = new EmsNebulousProperties();
+        emsNebulousProperties.setEmsServerPodUid("uid-ems-server");
+        watcher = new K8sPodWatcher(properties, null, emsNebulousProperties);
+        watcher.afterPropertiesSet();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        watcher.destroy();
+    }
+
+    private void createPod(String namespace, String name, String uid, String app, String hostIp, String phase) {
+        Pod pod = new PodBuilder()
+                .withNewMetadata()
+                    .withNamespace(namespace).withName(name).withUid(uid)
+                    .addToLabels("app", app)
+                .endMetadata()
+                .withNewStatus()
+                    .withPhase(phase).withHostIP(hostIp).withPodIP("10.0.0." + name.length())
+                .endStatus()
+                .build();
+        client.pods().inNamespace(namespace).resource(pod).create();
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (! condition.getAsBoolean()) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "Condition not met in time");
+            Thread.sleep(50);
+        }
+    }
+
+    private static Set<String> names(Set<K8sClient.PodEntry> pods) {
+        return pods.stream().map(K8sClient.PodEntry::podName).collect(Collectors.toSet());
+    }
+
+    @Test
+    void podsAreIndexedByUidHostAndAppLabel() throws InterruptedException {
+        createPod("default", "ems-client", "uid-client", "ems-client", "192.168.1.1", "Running");
+        createPod("default", "app-a", "uid-a", "app-a", "192.168.1.1", "Running");
+        createPod("default", "app-b", "uid-b", "app-b", "192.168.1.2", "Running");
+        createPod("default", "app-pending", "uid-p", "app-a", "192.168.1.1", "Pending");
+        createPod("kube-system", "coredns", "uid-dns", "coredns", "192.168.1.1", "Running");
+        createPod("default", "netdata", "uid-nd", "netdata", "192.168.1.1", "Running");
+
+        watcher.start(client);
+        waitUntil(watcher::isSynced);
+
+        Assertions.assertEquals("app-a", watcher.getPod("uid-a").podName());
+        Assertions.assertNull(watcher.getPod("uid-p"));
+        Assertions.assertEquals(3, watcher.getPodsInHost("192.168.1.1").size() + watcher.getPodsInHost("192.168.1.2").size());
+        Assertions.assertEquals(1, watcher.getPodsWithAppLabel("app-a").size());
+        Assertions.assertEquals(Set.of("app-a"), names(watcher.getPodInfoForEmsClient("uid-client")));
+        Assertions.assertNull(watcher.getPodInfoForEmsClient("uid-unknown"));
+    }
+
+    @Test
+    void podChangesUpdateIndexAndMarkHosts() throws InterruptedException {
+        createPod("default", "ems-client", "uid-client", "ems-client", "192.168.1.1", "Running");
+        watcher.start(client);
+        waitUntil(watcher::isSynced);
+        Assertions.assertEquals(Set.of(), watcher.getPodInfoForEmsClient("uid-client"));
+
+        createPod("default", "app-c", "uid-c", "app-c", "192.168.1.1", "Running");
+        waitUntil(() -> watcher.getPod("uid-c")!=null);
+        Assertions.assertEquals(Set.of("app-c"), names(watcher.getPodInfoForEmsClient("uid-client")));
+        Assertions.assertTrue(watcher.getChangedHosts().contains("192.168.1.1"));
+
+        client.pods().inNamespace("default").withName("app-c").delete();
+        waitUntil(() -> watcher.getPod("uid-c")==null);
+        Assertions.assertEquals(Set.of(), watcher.getPodInfoForEmsClient("uid-client"));
+    }
+}
@@ -0,0 +1,146 @@
+package eu.nebulous.ems.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Slf4j
+@DisplayName("KeyedCommandProcessor Tests")
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class KeyedCommandProcessorTest {
+
+    private record Cmd(String key, int seq, String coalescingKey) { }
+
+    private KeyedCommandProcessor<Cmd> processor;
+
+    @AfterEach
+    public void tearDown() {
+        if (processor!=null) processor.shutdown();
+    }
+
+    private static void waitUntilIdle(KeyedCommandProcessor<?> processor) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (processor.getQueueDepth()>0 && System.currentTimeMillis()<deadline)
+            Thread.sleep(10);
+        Assertions.assertEquals(0, processor.getQueueDepth(), "Commands still pending");
+    }
+
+    @Test
+    void commandsOfSameKeyAreProcessedInArrivalOrder() throws InterruptedException {
+        int keys = 10;
+        int commandsPerKey = 500;
+        Map<String,List<Integer>> processed = new ConcurrentHashMap<>();
+        processor = new KeyedCommandProcessor<>("test-ordering", 4, 0, Cmd::key, null,
+                cmd -> processed.computeIfAbsent(cmd.key(), k -> Collections.synchronizedList(new ArrayList<>())).add(cmd.seq()));
+
+        // Interleave keys, so that lanes are repeatedly drained and restarted
+        for (int i = 0; i < commandsPerKey; i++)
+            for (int k = 0; k < keys; k++)
+                processor.submit(new Cmd("app-" + k, i, null));
+        waitUntilIdle(processor);
+
+        Assertions.assertEquals(keys, processed.size());
+        processed.forEach((key, seqs) -> {
+            Assertions.assertEquals(commandsPerKey, seqs.size(), "Commands lost for key: " + key);
+            for (int i = 0; i < seqs.size(); i++)
+                Assertions.assertEquals(i, seqs.get(i), "Out-of-order command for key: " + key);
+        });
+        Assertions.assertEquals((long) keys * commandsPerKey, processor.getProcessedCount());
+        Assertions.assertEquals(0, processor.getActiveKeys());
+    }
+
+    @Test
+    void commandsOfDifferentKeysAreProcessedConcurrently() throws InterruptedException {
+        CountDownLatch otherKeyProcessed = new CountDownLatch(1);
+        AtomicBoolean concurrent = new AtomicBoolean();
+        processor = new KeyedCommandProcessor<>("test-concurrency", 2, 0, Cmd::key, null, cmd -> {
+            if ("app-a".equals(cmd.key())) {
+                // Blocks until the other key's command is processed, which can only happen in parallel
+                concurrent.set(otherKeyProcessed.await(5, TimeUnit.SECONDS));
+            } else {
+                otherKeyProcessed.countDown();
+            }
+        });
+
+        processor.submit(new Cmd("app-a", 0, null));
+        processor.submit(new Cmd("app-b", 0, null));
+        waitUntilIdle(processor);
+
+        Assertions.assertTrue(concurrent.get(), "Commands of different keys were not processed concurrently");
+    }
+
+    @Test
+    void slowKeyDoesNotDelayOtherKeys() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> processed = Collections.synchronizedList(new ArrayList<>());
+        processor = new KeyedCommandProcessor<>("test-isolation", 2, 0, Cmd::key, null, cmd -> {
+            if ("slow".equals(cmd.key())) release.await(5, TimeUnit.SECONDS);
+            processed.add(cmd.key() + "-" + cmd.seq());
+        });
+
+        processor.submit(new Cmd("slow", 0, null));
+        processor.submit(new Cmd("slow", 1, null));
+        for (int i = 0; i < 20; i++)
+            processor.submit(new Cmd("fast", i, null));
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (processed.size()<20 && System.currentTimeMillis()<deadline)
+            Thread.sleep(10);
+        Assertions.assertEquals(20, processed.size(), "Fast key commands were delayed by the slow key");
+        Assertions.assertTrue(processed.stream().allMatch(s -> s.startsWith("fast-")));
+
+        release.countDown();
+        waitUntilIdle(processor);
+        Assertions.assertEquals(List.of("slow-0", "slow-1"), processed.subList(20, 22));
+    }
+
+    @Test
+    void pendingCommandsWithSameCoalescingKeyAreCollapsed() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+        processor = new KeyedCommandProcessor<>("test-coalescing", 1, 0, Cmd::key, Cmd::coalescingKey, cmd -> {
+            if (cmd.seq()==0) {
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            processed.add(cmd.seq());
+        });
+
+        processor.submit(new Cmd("app", 0, "solution"));
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+        processor.submit(new Cmd("app", 1, "solution"));
+        processor.submit(new Cmd("app", 2, "solution"));
+        processor.submit(new Cmd("app", 3, "solution"));
+        processor.submit(new Cmd("app", 4, null));
+        processor.submit(new Cmd("app", 5, "solution"));
+        release.countDown();
+        waitUntilIdle(processor);
+
+        // The in-process command is never replaced, and non-consecutive commands are not collapsed
+        Assertions.assertEquals(List.of(0, 3, 4, 5), processed);
+        Assertions.assertEquals(2, processor.getCoalescedCount());
+    }
+
+    @Test
+    void failedCommandDoesNotBlockItsKey() throws InterruptedException {
+        List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+        processor = new KeyedCommandProcessor<>("test-failures", 2, 0, Cmd::key, null, cmd -> {
+            if (cmd.seq()==1) throw new IllegalStateException("Test failure");
+            processed.add(cmd.seq());
+        });
+
+        for (int i = 0; i < 4; i++)
+            processor.submit(new Cmd("app", i, null));
+        waitUntilIdle(processor);
+
+        Assertions.assertEquals(List.of(0, 2, 3), processed);
+        Assertions.assertEquals(1, processor.getFailedCount());
+        Assertions.assertEquals(3, processor.getProcessedCount());
+    }
+}
@@ -3,12 +3,18 @@ package eu.nebulous.ems.test;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import eu.nebulous.ems.boot.EmsBootProperties;
+import eu.nebulous.ems.translate.NameNormalization;
+import eu.nebulous.ems.translate.NebulousEmsTranslator;
+import eu.nebulous.ems.translate.NebulousEmsTranslatorProperties;
+import gr.iccs.imu.ems.control.collector.ServerCollectorContext;
+import gr.iccs.imu.ems.translate.TranslationContext;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.jupiter.api.Named;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.platform.engine.TestExecutionResult;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -55,6 +61,25 @@ public abstract class TestUtils {
         return properties;
     }
 
+    /**
+     * Translates a metric model (and its extension model, if not null) from the models directory,
+     * using the Nebulous translator and its analysis, transformation and generation components
+     */
+    public static TranslationContext translate(@NonNull String modelsDir, @NonNull String model, String extensionModel) {
+        NebulousEmsTranslatorProperties properties = new NebulousEmsTranslatorProperties();
+        properties.setModelsDir(modelsDir);
+        properties.setExtensionModel(extensionModel);
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+            context.getBeanFactory().registerSingleton("nebulousEmsTranslatorProperties", properties);
+            context.getBeanFactory().registerSingleton("serverCollectorContext", new ServerCollectorContext(null, null, context));
+            context.scan("eu.nebulous.ems.translate.analyze", "eu.nebulous.ems.translate.transform",
+                    "eu.nebulous.ems.translate.generate", "eu.nebulous.ems.translate.plugins");
+            context.register(NameNormalization.class, NebulousEmsTranslator.class);
+            context.refresh();
+            return context.getBean(NebulousEmsTranslator.class).translate(model);
+        }
+    }
+
     protected static Map<String, Object> parserYaml(@NonNull String testsFile) throws IOException {
         try (InputStream inputStream = new FileInputStream(testsFile)) {
             return yamlMapper.readValue(inputStream, Map.class);
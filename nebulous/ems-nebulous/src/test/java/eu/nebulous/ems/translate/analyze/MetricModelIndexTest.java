@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2023-2025 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package eu.nebulous.ems.translate.analyze;
+
+import com.jayway.jsonpath.JsonPath;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.DisplayNameGeneration;
+import org.junit.jupiter.api.DisplayNameGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.InputStream;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the model indexes hold the same elements as the JsonPath queries they replace,
+ * and compares their build time with the time of the queries, on a synthetic model with thousands of metrics.
+ */
+@Slf4j
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class MetricModelIndexTest {
+    private final static String SAMPLE_MODEL = """
+            functions:
+              - name: scale
+                expression: 'x * 100'
+                arguments: [ x ]
+            spec:
+              components:
+                - name: spec-comp
+                  requirements:
+                    - name: cpu_slo
+                      type: slo
+                      constraint: 'mean_cpu > 80'
+                    - name: latency_slo
+                      type: slo
+                      constraint:
+                        type: metric
+                        metric: avg_latency
+                        operator: '>'
+                        threshold: 500
+                  metrics:
+                    - name: raw_cpu
+                      sensor: 'netdata system.cpu'
+                      output: 'all 30 sec'
+                    - name: mean_cpu
+                      formula: 'mean(raw_cpu)'
+                      window: 'sliding 1 min'
+                      output: 'all 30 sec'
+                    - name: cpu_limit
+                      type: constant
+                      default: 80
+                - name: worker
+                  metrics:
+                    - name: avg_latency
+                      sensor:
+                        type: prometheus
+                        config:
+                          metric: request_latency
+                    - name: max_workers
+                      type: constant
+                      default: 10
+              scopes:
+                - name: app-wide
+                  components: [ spec-comp, worker ]
+                  requirements:
+                    - name: app_slo
+                      type: slo
+                      constraint: 'app_load > max_workers'
+                  metrics:
+                    - name: app_load
+                      formula: 'mean_cpu * max_workers'
+                - name: workers-only
+                  components: 'worker'
+                  requirements:
+            """;
+
+    static Stream<Map<String, Object>> sampleModels() throws Exception {
+        Yaml yaml = new Yaml();
+        try (InputStream in = MetricModelIndexTest.class.getResourceAsStream("/extension.yml")) {
+            assertNotNull(in, "Sample model not found: extension.yml");
+            Map<String, Object> sampleModel = yaml.load(SAMPLE_MODEL);
+            Map<String, Object> extensionModel = yaml.load(in);
+            return Stream.of(sampleModel, extensionModel, createSyntheticModel(5, 20));
+        }
+    }
+
+    private static Map<String, Object> createSyntheticModel(int components, int metricsPerComponent) {
+        List<Object> componentSpecs = new ArrayList<>();
+        for (int c = 0; c < components; c++) {
+            List<Object> metrics = new ArrayList<>();
+            List<Object> requirements = new ArrayList<>();
+            for (int m = 0; m < metricsPerComponent; m++) {
+                String name = "metric_" + c + "_" + m;
+                Map<String, Object> metric = new LinkedHashMap<>();
+                metric.put("name", name);
+                switch (m % 3) {
+                    case 0 -> metric.put("sensor", Map.of("type", "netdata", "config", Map.of("context", "system.cpu")));
+                    case 1 -> metric.put("formula", "mean(metric_" + c + "_" + (m - 1) + ")");
+                    default -> { metric.put("type", "constant"); metric.put("default", m); }
+                }
+                metrics.add(metric);
+                if (m % 10 == 1)
+                    requirements.add(new LinkedHashMap<>(Map.of(
+                            "name", name + "_slo", "type", "slo", "constraint", name + " > " + m)));
+            }
+            componentSpecs.add(new LinkedHashMap<>(Map.of(
+                    "name", "component_" + c, "metrics", metrics, "requirements", requirements)));
+        }
+        Map<String, Object> spec = new LinkedHashMap<>();
+        spec.put("components", componentSpecs);
+        spec.put("scopes", List.of(new LinkedHashMap<>(Map.of(
+                "name", "all_components", "metrics", List.of(Map.of("name", "scope_metric", "formula", "1"))))));
+        Map<String, Object> model = new LinkedHashMap<>();
+        model.put("spec", spec);
+        return model;
+    }
+
+    private static List<Object> filterSpecs(List<Object> list) {
+        return list.stream().filter(o -> o instanceof Map).toList();
+    }
+
+    @ParameterizedTest
+    @MethodSource("sampleModels")
+    void testIndexesEqualJsonPathQueryResults(Map<String, Object> model) {
+        MetricModelIndex index = MetricModelIndex.build(model);
+        log.info("MetricModelIndexTest: parents={}, metrics={}, requirements={}, constants={}",
+                index.getParentSpecs().size(), index.getMetricSpecs().size(),
+                index.getRequirementSpecs().size(), index.getConstantSpecs().size());
+
+        if (model.containsKey("functions"))
+            assertEquals(JsonPath.read(model, "$.functions.*"), index.getFunctionSpecs());
+        assertEquals(filterSpecs(JsonPath.read(model, "$[?(@.functions!=null)].functions.*.*")),
+                filterSpecs(index.getFunctionElementSpecs()));
+        assertEquals(JsonPath.read(model, "$.spec"), index.getSpecs());
+        assertEquals(JsonPath.read(model, "$.spec.components.*.name"), index.getComponentNames());
+        assertEquals(JsonPath.read(model, "$.spec.scopes.*.name"), index.getScopeNames());
+        assertEquals(JsonPath.read(model, "$.spec.scopes.*"), index.getScopeSpecs());
+        assertEquals(filterSpecs(JsonPath.read(model, "$.spec.*.*")), filterSpecs(index.getParentSpecs()));
+        assertEquals(filterSpecs(JsonPath.read(model, "$.spec.*.*.metrics.*")), filterSpecs(index.getMetricSpecs()));
+        assertEquals(filterSpecs(JsonPath.read(model, "$.spec.*.*.requirements.*")), filterSpecs(index.getRequirementSpecs()));
+        assertEquals(filterSpecs(JsonPath.read(model, "$.spec.*.*.metrics.*[?(@.type=='constant')]")),
+                filterSpecs(index.getConstantSpecs()));
+
+        for (Object parent : filterSpecs(index.getParentSpecs())) {
+            assertEquals(filterSpecs(JsonPath.read(parent, "$[?(@.metrics!=null)].metrics.*")),
+                    filterSpecs(index.getMetricSpecs(parent)));
+            assertEquals(filterSpecs(JsonPath.read(parent,
+                            "$[?(@.requirements!=null && @.requirements.*[?(@.type=='slo')])].requirements.*")),
+                    filterSpecs(index.getSloSpecs(parent)));
+        }
+    }
+
+    @Test
+    void testContainerNamesAreSet() {
+        Map<String, Object> model = new Yaml().load(SAMPLE_MODEL);
+        MetricModelIndex index = MetricModelIndex.build(model);
+
+        assertEquals(List.of("spec-comp", "worker"), index.getComponentNames());
+        assertEquals(List.of("app-wide", "workers-only"), index.getScopeNames());
+        index.getMetricSpecs().forEach(metric -> assertNotNull(AnalysisUtils.getContainerName(metric)));
+        assertEquals("worker", AnalysisUtils.getContainerName(index.getConstantSpecs().get(1)));
+        assertTrue(index.getSloSpecs(index.getScopeSpecs().get(1)).isEmpty());
+    }
+
+    @Test
+    void testIndexBuildAndJsonPathQueryTimesOnLargeModel() {
+        int components = 100;
+        int metricsPerComponent = 50;
+        int rounds = 5;
+
+        long queriesNanos = 0;
+        long indexNanos = 0;
+        for (int round = 0; round <= rounds; round++) {
+            // Queries run on the model with 'spec' already replaced, so their time excludes the copying
+            Map<String, Object> model = createSyntheticModel(components, metricsPerComponent);
+            MetricModelIndex.build(model);
+            long start = System.nanoTime();
+            runJsonPathQueries(model);
+            long queriesTime = System.nanoTime() - start;
+
+            model = createSyntheticModel(components, metricsPerComponent);
+            start = System.nanoTime();
+            MetricModelIndex index = MetricModelIndex.build(model);
+            long indexTime = System.nanoTime() - start;
+            assertEquals(components * metricsPerComponent + 1, index.getMetricSpecs().size());
+
+            // First round is warm-up
+            if (round > 0) {
+                queriesNanos += queriesTime;
+                indexNanos += indexTime;
+            }
+        }
+        log.info("MetricModelIndexTest: Model with {} metrics: JsonPath queries: {} ms, index build: {} ms, speedup: {}x",
+                components * metricsPerComponent, queriesNanos / rounds / 1_000_000, indexNanos / rounds / 1_000_000,
+                String.format("%.1f", (double) queriesNanos / Math.max(1, indexNanos)));
+    }
+
+    // Same queries as those MetricModelAnalyzer used to run
+    private static void runJsonPathQueries(Map<String, Object> model) {
+        JsonPath.read(model, "$.spec.components.*.name");
+        JsonPath.read(model, "$.spec.scopes.*.name");
+        JsonPath.read(model, "$.spec.*.*.metrics.*");
+        JsonPath.read(model, "$.spec.*.*.requirements.*");
+        JsonPath.read(model, "$[?(@.functions!=null)].functions.*.*");
+        List<Object> parents = JsonPath.read(model, "$.spec.*.*");
+        for (Object parent : filterSpecs(parents)) {
+            JsonPath.read(parent, "$[?(@.requirements!=null && @.requirements.*[?(@.type=='slo')])].requirements.*");
+            JsonPath.read(parent, "$[?(@.metrics!=null)].metrics.*");
+        }
+        JsonPath.read(model, "$.spec.scopes.*");
+        JsonPath.read(model, "$.spec.*.*.metrics.*[?(@.type=='constant')]");
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2023-2025 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package eu.nebulous.ems.translate.generate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayNameGeneration;
+import org.junit.jupiter.api.DisplayNameGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.spring6.dialect.SpringStandardDialect;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.StringTemplateResolver;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Golden-output test: every template in rule-templates.yml must render the same with its compiled plan and with Thymeleaf
+ */
+@Slf4j
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class CompiledRuleTemplateTest {
+    private static RuleTemplateRegistry registry;
+    private static SpringTemplateEngine templateEngine;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        registry = new RuleTemplateRegistry(new DefaultResourceLoader());
+        registry.afterPropertiesSet();
+
+        // Same configuration as in RuleGenerator
+        StringTemplateResolver templateResolver = new StringTemplateResolver();
+        templateResolver.setTemplateMode(TemplateMode.TEXT);
+        SpringStandardDialect dialect = new SpringStandardDialect();
+        dialect.setEnableSpringELCompiler(true);
+        templateEngine = new SpringTemplateEngine();
+        templateEngine.setDialect(dialect);
+        templateEngine.setEnableSpringELCompiler(true);
+        templateEngine.setTemplateResolver(templateResolver);
+    }
+
+    static Stream<Arguments> templates() {
+        List<Arguments> arguments = new ArrayList<>();
+        registry.getRuleTemplates().forEach((type, groupings) -> groupings.forEach((grouping, templates) -> {
+            for (int i = 0; i < templates.size(); i++)
+                arguments.add(Arguments.of(RuleTemplateRegistry.getTemplateId(type, grouping, i), templates.get(i).trim()));
+        }));
+        return arguments.stream();
+    }
+
+    static List<Map<String, Object>> variableSets() {
+        List<Map<String, Object>> sets = new ArrayList<>();
+        for (List<String> names : List.of(List.<String>of(), List.of("cpu_ctx"), List.of("cpu_ctx", "mem_ctx", "disk_ctx"))) {
+            for (String selectMode : Arrays.asList(null, "epl", "other")) {
+                Map<String, Object> vars = new HashMap<>();
+                vars.put("outputStream", "out_stream");
+                vars.put("leftEvent", "left_event");
+                vars.put("rightEvent", "right_event");
+                vars.put("unaryEvent", "unary_event");
+                vars.put("event", "some_event");
+                vars.put("occurrenceNum", 3);
+                vars.put("operator", "AND");
+                vars.put("metricConstraint", "mc_1");
+                vars.put("metricContext", "metric_ctx");
+                vars.put("threshold", 80.5);
+                vars.put("ifConstraint", "if_constr");
+                vars.put("thenConstraint", "then_constr");
+                vars.put("elseConstraint", names.size() > 1 ? "else_constr" : null);
+                vars.put("constraints", names);
+                vars.put("formula", "a + b / 2");
+                vars.put("metric", "some_metric");
+                vars.put("components", names.stream().map(s -> s.replace("_ctx", "")).toList());
+                vars.put("contexts", names);
+                vars.put("windowClause", ".win:time(30 sec)");
+                vars.put("scheduleClause", "OUTPUT LAST EVERY 10 SECONDS");
+                vars.put("sensor", "some_sensor");
+                vars.put("definition", "SELECT * FROM some_stream");
+                vars.put("context", "some_context");
+                vars.put("variable", "some_variable");
+                vars.put("constraint", "some_constraint");
+                vars.put("type", "LAST");
+                vars.put("period", 30L);
+                vars.put("unit", "SECONDS");
+                vars.put("selectMode", selectMode);
+                sets.add(vars);
+            }
+        }
+        return sets;
+    }
+
+    @ParameterizedTest
+    @MethodSource("templates")
+    void testCompiledTemplateOutputEqualsThymeleafOutput(String templateId, String template) {
+        CompiledRuleTemplate compiled = CompiledRuleTemplate.compile(template);
+        log.info("CompiledRuleTemplateTest: Template {}: compiled={}", templateId, compiled.isCompiled());
+        for (Map<String, Object> vars : variableSets()) {
+            Context context = new Context(Locale.ROOT, vars);
+            String expected = templateEngine.process(template, context);
+            String actual = compiled.render(context);
+            if (compiled.isCompiled())
+                assertNotNull(actual, "Compiled template not rendered: " + templateId);
+            if (actual != null)
+                assertEquals(expected, actual, "Template output differs: " + templateId + ", variables: " + vars);
+        }
+    }
+
+    @Test
+    void testTemplatesWithoutEscapedInliningAreCompiled() {
+        registry.getRuleTemplates().forEach((type, groupings) -> groupings.forEach((grouping, templates) -> {
+            for (int i = 0; i < templates.size(); i++) {
+                String template = templates.get(i).trim();
+                if (! template.contains("[["))
+                    assertTrue(CompiledRuleTemplate.compile(template).isCompiled(),
+                            "Template not compiled: " + RuleTemplateRegistry.getTemplateId(type, grouping, i));
+            }
+        }));
+    }
+
+    @Test
+    void testUnsupportedConstructsFallBack() {
+        assertFalse(CompiledRuleTemplate.compile("SELECT [[${metric}]] FROM x").isCompiled());
+        assertFalse(CompiledRuleTemplate.compile("SELECT [(${metric.name})] FROM x").isCompiled());
+        assertFalse(CompiledRuleTemplate.compile("SELECT [# th:unless=\"${x}\"] y [/] FROM x").isCompiled());
+        assertFalse(CompiledRuleTemplate.compile("SELECT [# th:if=\"${x}\"] y FROM x").isCompiled());
+
+        // Numeric operands are added by Thymeleaf, so they are left to it
+        CompiledRuleTemplate compiled = CompiledRuleTemplate.compile(
+                "[# th:each=\"c,s : ${list}\" th:text=\"!${s.last} ? ${c} + ',' : ${c}\"] [/]");
+        assertTrue(compiled.isCompiled());
+        assertNull(compiled.render(new Context(Locale.ROOT, Map.of("list", List.of("1", "2")))));
+        assertEquals("a,b", compiled.render(new Context(Locale.ROOT, Map.of("list", List.of("a", "b")))));
+    }
+}
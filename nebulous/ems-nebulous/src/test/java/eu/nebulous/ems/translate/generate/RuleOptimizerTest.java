@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2023-2025 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package eu.nebulous.ems.translate.generate;
+
+import com.espertech.esper.client.EPServiceProviderManager;
+import com.espertech.esper.client.soda.*;
+import eu.nebulous.ems.test.TestUtils;
+import gr.iccs.imu.ems.brokercep.cep.CepExtensions;
+import gr.iccs.imu.ems.brokercep.cep.CepService;
+import gr.iccs.imu.ems.brokercep.cep.StatementSubscriber;
+import gr.iccs.imu.ems.brokercep.event.EventMap;
+import gr.iccs.imu.ems.brokercep.properties.BrokerCepProperties;
+import gr.iccs.imu.ems.translate.TranslationContext;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.DisplayNameGeneration;
+import org.junit.jupiter.api.DisplayNameGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the rule optimizer on the rules of real metric models, translated by the Nebulous translator,
+ * and measures the heap used by CEP engines running the original and the optimized rules.
+ * Heap measurements are approximate (taken after GC), so they are logged, not asserted.
+ */
+@Slf4j
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class RuleOptimizerTest {
+    private final static String MODELS_DIR = "src/main/resources";
+    private final static int EVENTS_PER_STREAM = 5_000;
+    private final static String COMP_CTX = """
+            /* COMP-CTX-any */ /*INSERT INTO %s*/
+            SELECT EVALAGG( 'mean(cpu)', 'cpu', cpu ) AS metricValue,
+                   3 AS level,
+                   current_timestamp AS timestamp
+            FROM cpu.win:time(%s) AS cpu
+            OUTPUT SNAPSHOT EVERY 30 SECONDS""";
+
+    static Stream<Arguments> realModels() {
+        return Stream.of(
+                Arguments.of("edge.yml", null),
+                Arguments.of("edge.yml", "extension.yml"));
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Collects the event types a statement consumes, from its FROM clause streams and patterns
+    private static void collectEventTypes(PatternExpr expr, Set<String> types) {
+        if (expr instanceof PatternFilterExpr filterExpr)
+            types.add(filterExpr.getFilter().getEventTypeName());
+        if (expr!=null && expr.getChildren()!=null)
+            expr.getChildren().forEach(child -> collectEventTypes(child, types));
+    }
+
+    private static Set<String> getEventTypes(String rule) {
+        Set<String> types = new HashSet<>();
+        EPStatementObjectModel model = EPServiceProviderManager.getDefaultProvider().getEPAdministrator().compileEPL(rule);
+        for (com.espertech.esper.client.soda.Stream stream : model.getFromClause().getStreams()) {
+            if (stream instanceof FilterStream filterStream)
+                types.add(filterStream.getFilter().getEventTypeName());
+            else if (stream instanceof PatternStream patternStream)
+                collectEventTypes(patternStream.getExpression(), types);
+        }
+        return types;
+    }
+
+    /**
+     * Deploys the rules of each grouping to its own CEP engine, sends events to every consumed stream,
+     * and returns the heap used by the engines (with view sharing, as in EMS)
+     */
+    private static long measureEngineMemory(String name, Map<String, Map<String, Set<String>>> g2r, int[] deployed) throws Exception {
+        BrokerCepProperties properties = new BrokerCepProperties();
+        properties.getCepEngines().setIsolationEnabled(true);
+        CepService cepService = new CepService(properties);
+        cepService.afterPropertiesSet();
+        try (GenericApplicationContext context = new GenericApplicationContext()) {
+            context.getBeanFactory().registerSingleton("cepService", cepService);
+            context.refresh();
+            new CepExtensions(context);
+
+            Set<String> eventTypes = new TreeSet<>();
+            g2r.values().forEach(topicRules -> {
+                eventTypes.addAll(topicRules.keySet());
+                topicRules.values().forEach(rules -> rules.forEach(rule -> eventTypes.addAll(getEventTypes(rule))));
+            });
+            eventTypes.forEach(type -> cepService.addEventType(type, EventMap.getPropertyNames(), EventMap.getPropertyClasses()));
+
+            long before = usedHeap();
+            g2r.forEach((grouping, topicRules) -> topicRules.forEach((topic, rules) -> {
+                int index = 0;
+                for (String rule : rules) {
+                    try {
+                        cepService.addStatementSubscriber(name + "-" + grouping,
+                                new RuleSubscriber(name + "-" + grouping + "-" + topic + "-" + (index++), rule));
+                        deployed[0]++;
+                    } catch (Exception e) {
+                        log.warn("RuleOptimizerTest: Could not deploy rule: topic={}, rule={}, exception: {}", topic, rule, e.getMessage());
+                    }
+                }
+            }));
+            Random random = new Random(42);
+            for (int i = 0; i < EVENTS_PER_STREAM; i++)
+                for (String type : eventTypes)
+                    cepService.handleEvent(new EventMap(random.nextDouble() * 100, 1, System.currentTimeMillis()), type);
+            long used = usedHeap() - before;
+
+            cepService.clearStatements();
+            cepService.clearEventTypes();
+            return used;
+        } finally {
+            cepService.destroy();
+        }
+    }
+
+    @ParameterizedTest(name = "#{index}: {0} + {1}")
+    @MethodSource("realModels")
+    void realModelsAreOptimizedWithoutChangingTheirStatements(String model, String extensionModel) throws Exception {
+        TranslationContext _TC = TestUtils.translate(MODELS_DIR, model, extensionModel);
+        Map<String, Map<String, Set<String>>> originalRules = _TC.getG2R();
+        RuleOptimizer.OptimizationReport report = new RuleOptimizer().optimize(_TC);
+        Map<String, Map<String, Set<String>>> optimizedRules = _TC.getG2R();
+
+        int[] originalDeployed = { 0 };
+        int[] optimizedDeployed = { 0 };
+        long originalMemory = measureEngineMemory("original", originalRules, originalDeployed);
+        long optimizedMemory = measureEngineMemory("optimized", optimizedRules, optimizedDeployed);
+        log.info("RuleOptimizerTest: Model {} (extension: {}): statements: {}, canonicalized statements: {}, data windows: without view sharing: {}, with view sharing: {} -> {}, CEP engine heap: {} KB -> {} KB ({} events per stream)",
+                model, extensionModel, report.getStatements(), report.getCanonicalizedStatements(),
+                report.getWindows(), report.getSharedWindowsBefore(), report.getSharedWindowsAfter(),
+                originalMemory / 1024, optimizedMemory / 1024, EVENTS_PER_STREAM);
+
+        // Optimization rewrites view parameters only: no topics are added or removed, and no statements are broken
+        assertEquals(originalRules.keySet(), optimizedRules.keySet());
+        originalRules.forEach((grouping, topicRules) ->
+                assertEquals(topicRules.keySet(), optimizedRules.get(grouping).keySet()));
+        assertTrue(report.getStatements() > 0);
+        assertEquals(originalDeployed[0], optimizedDeployed[0]);
+        assertTrue(report.getSharedWindowsAfter() <= report.getSharedWindowsBefore());
+        assertTrue(report.getSharedWindowsBefore() <= report.getWindows());
+    }
+
+    @Test
+    void equivalentWindowsBecomeShareable() {
+        TranslationContext _TC = new TranslationContext("equivalent-windows");
+        Map.of("mean_cpu_1", "1 min", "mean_cpu_2", "60 sec", "mean_cpu_3", "2 min").forEach((topic, period) -> {
+            _TC.addGroupingRulePair("GLOBAL", topic, COMP_CTX.formatted(topic, period));
+            _TC.provideGroupingTopicPair("GLOBAL", topic);
+        });
+
+        RuleOptimizer.OptimizationReport report = new RuleOptimizer().optimize(_TC);
+        log.info("RuleOptimizerTest: Report: {}", report);
+
+        assertEquals(3, report.getStatements());
+        assertEquals(2, report.getCanonicalizedStatements());
+        assertEquals(3, report.getWindows());
+        assertEquals(3, report.getSharedWindowsBefore());
+        assertEquals(2, report.getSharedWindowsAfter());
+
+        Map<String, Set<String>> rules = _TC.getG2R().get("GLOBAL");
+        assertTrue(rules.get("mean_cpu_1").iterator().next().contains("cpu.win:time(60 sec) AS cpu"));
+        assertTrue(rules.get("mean_cpu_2").iterator().next().contains("cpu.win:time(60 sec) AS cpu"));
+        assertTrue(rules.get("mean_cpu_3").iterator().next().contains("cpu.win:time(120 sec) AS cpu"));
+        assertTrue(rules.get("mean_cpu_1").iterator().next().startsWith("/* COMP-CTX-any */ /*INSERT INTO mean_cpu_1*/"));
+    }
+
+    @Test
+    void testTimePeriodsAreCanonicalized() {
+        assertEquals("x.win:time(90 sec)", RuleOptimizer.canonicalizeViews("x.win:time(1 min 30 sec)"));
+        assertEquals("x.win:time(1500 msec)", RuleOptimizer.canonicalizeViews("x.win:time(1500 milliseconds)"));
+        assertEquals("x.win:time(7200 sec)", RuleOptimizer.canonicalizeViews("x.win:time( 2 HOURS )"));
+        assertEquals("x.win:time(1.5 min)", RuleOptimizer.canonicalizeViews("x.win:time(1.5 min)"));
+        assertEquals("x.win:length(10)", RuleOptimizer.canonicalizeViews("x.win:length(10)"));
+        assertEquals("SELECT '1 min' FROM x.std:lastevent()", RuleOptimizer.canonicalizeViews("SELECT '1 min' FROM x.std:lastevent()"));
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class RuleSubscriber implements StatementSubscriber {
+        private final String name;
+        private final String statement;
+        private final AtomicLong outputs = new AtomicLong();
+
+        public void update(Map<String,Object> event) {
+            outputs.incrementAndGet();
+        }
+    }
+}
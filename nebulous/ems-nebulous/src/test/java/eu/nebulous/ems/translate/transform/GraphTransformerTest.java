@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2023-2025 Institute of Communication and Computer Systems (imu.iccs.gr)
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v2.0.
+ * If a copy of the MPL was not distributed with this file, you can obtain one at
+ * https://www.mozilla.org/en-US/MPL/2.0/
+ */
+
+package eu.nebulous.ems.translate.transform;
+
+import eu.nebulous.ems.test.TestUtils;
+import gr.iccs.imu.ems.translate.TranslationContext;
+import gr.iccs.imu.ems.translate.dag.DAG;
+import gr.iccs.imu.ems.translate.dag.DAGEdge;
+import gr.iccs.imu.ems.translate.dag.DAGNode;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.DisplayNameGeneration;
+import org.junit.jupiter.api.DisplayNameGenerator;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the DAG queries (served from indexes that the DAG updates on every change) against plain walks
+ * of the DAG edges, on the DAGs of real metric models transformed by GraphTransformer during translation.
+ */
+@Slf4j
+@DisplayNameGeneration(DisplayNameGenerator.IndicativeSentences.class)
+class GraphTransformerTest {
+    private final static String MODELS_DIR = "src/main/resources";
+
+    static Stream<Arguments> realModels() {
+        return Stream.of(
+                Arguments.of("edge.yml", null),
+                Arguments.of("edge.yml", "extension.yml"));
+    }
+
+    private static void assertQueriesMatchEdges(DAG dag) {
+        Map<DAGNode, Set<DAGNode>> parents = new HashMap<>();
+        Map<DAGNode, Set<DAGNode>> children = new HashMap<>();
+        dag.getAllDAGNodes().forEach(node -> {
+            parents.put(node, new HashSet<>());
+            children.put(node, new HashSet<>());
+        });
+        for (DAGEdge edge : dag.getAllDAGEdges()) {
+            children.get(edge.getSource()).add(edge.getTarget());
+            parents.get(edge.getTarget()).add(edge.getSource());
+        }
+
+        Set<DAGNode> leafs = new HashSet<>();
+        children.forEach((node, nodeChildren) -> {
+            assertEquals(parents.get(node), dag.getParentNodes(node), "Parents of " + node);
+            assertEquals(nodeChildren, dag.getNodeChildren(node), "Children of " + node);
+            if (node != dag.getRootNode() && nodeChildren.isEmpty()) leafs.add(node);
+        });
+        assertEquals(leafs, dag.getLeafNodes());
+        assertEquals(children.get(dag.getRootNode()), dag.getTopLevelNodes());
+
+        List<DAGNode> order = dag.getTopologicalOrder();
+        assertEquals(dag.getAllDAGNodes().size(), order.size());
+        for (DAGEdge edge : dag.getAllDAGEdges()) {
+            assertTrue(order.indexOf(edge.getSource()) < order.indexOf(edge.getTarget()), "Edge out of order: " + edge);
+            assertTrue(dag.getNodeDepth(edge.getSource()) < dag.getNodeDepth(edge.getTarget()), "Depths out of order: " + edge);
+        }
+    }
+
+    @ParameterizedTest(name = "#{index}: {0} + {1}")
+    @MethodSource("realModels")
+    void dagQueriesMatchEdgesOfTransformedModels(String model, String extensionModel) {
+        TranslationContext _TC = TestUtils.translate(MODELS_DIR, model, extensionModel);
+        DAG dag = _TC.getDAG();
+        log.info("GraphTransformerTest: Model {} (extension: {}): nodes={}, edges={}, top-level-nodes={}, leafs={}",
+                model, extensionModel, dag.getAllDAGNodes().size(), dag.getAllDAGEdges().size(),
+                dag.getTopLevelNodes().size(), dag.getLeafNodes().size());
+        assertTrue(dag.getAllDAGNodes().size() > 1);
+        assertQueriesMatchEdges(dag);
+
+        // Detach nodes bottom-up, like MVV pruning does, and remove those that can be removed by element
+        List<DAGNode> bottomUp = new ArrayList<>(dag.getTopologicalOrder());
+        Collections.reverse(bottomUp);
+        int removed = 0;
+        for (DAGNode node : bottomUp) {
+            if (node == dag.getRootNode()) continue;
+            assertTrue(dag.getLeafNodes().contains(node));
+            for (DAGNode parent : dag.getParentNodes(node))
+                dag.removeEdge(parent, node);
+            if (dag.getNodeByElement(node.getElement()) == node) {
+                dag.removeNode(node.getElement());
+                removed++;
+            }
+            assertQueriesMatchEdges(dag);
+        }
+        assertTrue(dag.getAllDAGEdges().isEmpty());
+        assertTrue(removed > 0);
+    }
+}